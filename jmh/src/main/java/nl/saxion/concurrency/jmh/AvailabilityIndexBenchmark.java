@@ -0,0 +1,93 @@
+package nl.saxion.concurrency.jmh;
+
+import nl.saxion.concurrency.messages.RentARoomMessage;
+import nl.saxion.concurrency.util.AvailabilityIndex;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the availability view of an agent: finding the hotels with at least 20 free rooms, top 50, with and
+ * without a name prefix, and an update of one hotel. The scan benchmark finds the same hotels by looking at every
+ * hotel and sorting the ones that match, as a baseline.
+ *
+ * The hotels are named "Hotel 0" to "Hotel n-1" and have 0 to 100 free rooms at random. The prefix "Hotel 12" matches
+ * about 1% of the hotels.
+ *
+ * Run with: java -jar target/benchmarks.jar AvailabilityIndex (see pom.xml)
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class AvailabilityIndexBenchmark {
+    static final int MINIMUM_FREE_ROOMS = 20;
+    static final int LIMIT = 50;
+    static final String PREFIX = "Hotel 12";
+
+    @Param({"1000", "10000", "100000"})
+    int hotels;
+
+    AvailabilityIndex index;
+    HashMap<String, RentARoomMessage.AvailabilityChanged> byId;
+    Random random;
+    long version;
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+            .parent(new CommandLineOptions(args))
+            .include(AvailabilityIndexBenchmark.class.getSimpleName())
+            .build()).run();
+    }
+
+    @Setup(Level.Trial)
+    public void createHotels() {
+        index = new AvailabilityIndex();
+        byId = new HashMap<>();
+        random = new Random(42);
+        for (int hotel = 0; hotel < hotels; hotel++) {
+            RentARoomMessage.AvailabilityChanged availability = new RentARoomMessage.AvailabilityChanged(
+                "id-" + hotel, "Hotel " + hotel, 100, random.nextInt(101), 0);
+            index.put(availability);
+            byId.put(availability.hotelId, availability);
+        }
+    }
+
+    @Benchmark
+    public List<RentARoomMessage.AvailabilityChanged> findTop() {
+        return index.withFreeRooms(MINIMUM_FREE_ROOMS, LIMIT, null);
+    }
+
+    @Benchmark
+    public List<RentARoomMessage.AvailabilityChanged> findTopWithPrefix() {
+        return index.withFreeRooms(MINIMUM_FREE_ROOMS, LIMIT, PREFIX);
+    }
+
+    @Benchmark
+    public List<RentARoomMessage.AvailabilityChanged> scan() {
+        List<RentARoomMessage.AvailabilityChanged> found = new ArrayList<>();
+        for (RentARoomMessage.AvailabilityChanged hotel : byId.values()) {
+            if(hotel.availableRooms >= MINIMUM_FREE_ROOMS){
+                found.add(hotel);
+            }
+        }
+        found.sort(Comparator.comparingInt(hotel -> -hotel.availableRooms));
+        return found.subList(0, Math.min(LIMIT, found.size()));
+    }
+
+    @Benchmark
+    public void update() {
+        int hotel = random.nextInt(hotels);
+        index.put(new RentARoomMessage.AvailabilityChanged("id-" + hotel, "Hotel " + hotel, 100, random.nextInt(101), ++version));
+    }
+}
@@ -0,0 +1,211 @@
+package nl.saxion.concurrency.jmh;
+
+import nl.saxion.concurrency.domain.Hotel;
+import nl.saxion.concurrency.domain.ReservationException;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.lang.reflect.Field;
+import java.time.LocalDate;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the hot paths of the Hotel: reserving, cancelling and confirming rooms and rendering the hotel, for
+ * hotels from 10 to 100k rooms at different occupancies. The occupied rooms are spread at random over the hotel,
+ * and are different for every night.
+ *
+ * Every invocation does one operation on each of the first NIGHTS nights, so the operations do not interfere with
+ * each other. Before every invocation the calendar is put back in its original state by copying it, which does not
+ * allocate, so gc.alloc.rate.norm only shows the allocations of the operations themselves.
+ *
+ * Run with: java -jar target/benchmarks.jar (see pom.xml), or run this class to add the gc profiler.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HotelBenchmark {
+    //amount of nights that are used, one operation per night in every invocation
+    static final int NIGHTS = 256;
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+            .parent(new CommandLineOptions(args))
+            .include(HotelBenchmark.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .build()).run();
+    }
+
+    /**
+     * A hotel with the given amount of rooms of which the given fraction is occupied on every night, and one free
+     * room per night that the benchmarks hold, cancel and confirm.
+     */
+    @State(Scope.Thread)
+    public static class Calendar {
+        @Param({"10", "100", "1000", "10000", "100000"})
+        int rooms;
+
+        @Param({"0", "0.5", "0.9"})
+        double occupancy;
+
+        Hotel hotel;
+        final LocalDate[] checkIn = new LocalDate[NIGHTS];
+        final LocalDate[] checkOut = new LocalDate[NIGHTS];
+        //a free room of every night
+        final int[][] held = new int[NIGHTS][];
+        //whether the room of tonight is held, for the rendering benchmark
+        boolean tonightHeld;
+
+        //the calendar of the hotel and a copy of the original, to undo the operations without allocating
+        private long[] free, pending;
+        private int[] freeCount;
+        private long[] originalFree, originalPending;
+        private int[] originalFreeCount;
+
+        @Setup(Level.Trial)
+        public void createHotel() throws Exception {
+            hotel = new Hotel("benchmark", "Benchmark hotel", rooms);
+            Random random = new Random(42);
+            int[] roomNumbers = new int[rooms];
+            for (int room = 0; room < rooms; room++) {
+                roomNumbers[room] = room;
+            }
+            //leave at least one room free on every night
+            int occupied = Math.min(rooms - 1, (int) (rooms * occupancy));
+            for (int night = 0; night < NIGHTS; night++) {
+                checkIn[night] = hotel.getFirstNight().plusDays(night);
+                checkOut[night] = checkIn[night].plusDays(1);
+                //pick the occupied rooms of this night at random, they end up at the start of the array
+                for (int i = 0; i < occupied; i++) {
+                    int other = i + random.nextInt(rooms - i);
+                    int room = roomNumbers[other];
+                    roomNumbers[other] = roomNumbers[i];
+                    roomNumbers[i] = room;
+                }
+                if(occupied > 0){
+                    int[] taken = new int[occupied];
+                    System.arraycopy(roomNumbers, 0, taken, 0, occupied);
+                    hotel.reserveRooms(taken, checkIn[night], checkOut[night]);
+                    hotel.confirmReservation(taken, checkIn[night], checkOut[night]);
+                }
+                held[night] = hotel.findAvailableRooms(1, checkIn[night], checkOut[night]);
+            }
+
+            free = (long[]) field("free").get(hotel);
+            pending = (long[]) field("pending").get(hotel);
+            freeCount = (int[]) field("freeCount").get(hotel);
+            originalFree = free.clone();
+            originalPending = pending.clone();
+            originalFreeCount = freeCount.clone();
+        }
+
+        /**
+         * Put the calendar back in the state after createHotel.
+         */
+        void reset() {
+            System.arraycopy(originalFree, 0, free, 0, free.length);
+            System.arraycopy(originalPending, 0, pending, 0, pending.length);
+            System.arraycopy(originalFreeCount, 0, freeCount, 0, freeCount.length);
+            tonightHeld = false;
+        }
+
+        private static Field field(String name) throws NoSuchFieldException {
+            Field field = Hotel.class.getDeclaredField(name);
+            field.setAccessible(true);
+            return field;
+        }
+    }
+
+    /**
+     * The calendar without holds.
+     */
+    @State(Scope.Thread)
+    public static class Free {
+        @Setup(Level.Invocation)
+        public void reset(Calendar calendar) {
+            calendar.reset();
+        }
+    }
+
+    /**
+     * The calendar with the free room of every night held.
+     */
+    @State(Scope.Thread)
+    public static class Held {
+        @Setup(Level.Invocation)
+        public void hold(Calendar calendar) throws ReservationException {
+            calendar.reset();
+            for (int night = 0; night < NIGHTS; night++) {
+                calendar.hotel.reserveRooms(calendar.held[night], calendar.checkIn[night], calendar.checkOut[night]);
+            }
+        }
+    }
+
+    /**
+     * Find and hold a free room.
+     */
+    @Benchmark
+    @OperationsPerInvocation(NIGHTS)
+    public void reserveRooms(Calendar calendar, Free free, Blackhole blackhole) throws ReservationException {
+        for (int night = 0; night < NIGHTS; night++) {
+            blackhole.consume(calendar.hotel.reserveRooms(1, calendar.checkIn[night], calendar.checkOut[night]));
+        }
+    }
+
+    /**
+     * Only the search of reserveRooms, the calendar is not changed.
+     */
+    @Benchmark
+    @OperationsPerInvocation(NIGHTS)
+    public void findAvailableRooms(Calendar calendar, Blackhole blackhole) throws ReservationException {
+        for (int night = 0; night < NIGHTS; night++) {
+            blackhole.consume(calendar.hotel.findAvailableRooms(1, calendar.checkIn[night], calendar.checkOut[night]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NIGHTS)
+    public void cancelReservation(Calendar calendar, Held held) throws ReservationException {
+        for (int night = 0; night < NIGHTS; night++) {
+            calendar.hotel.cancelReservation(calendar.held[night], calendar.checkIn[night], calendar.checkOut[night]);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NIGHTS)
+    public void confirmReservation(Calendar calendar, Held held) throws ReservationException {
+        for (int night = 0; night < NIGHTS; night++) {
+            calendar.hotel.confirmReservation(calendar.held[night], calendar.checkIn[night], calendar.checkOut[night]);
+        }
+    }
+
+    /**
+     * Listing a hotel that did not change since the last listing.
+     */
+    @Benchmark
+    public String toStringUnchanged(Calendar calendar) {
+        return calendar.hotel.toString();
+    }
+
+    /**
+     * Listing a hotel after a room changed tonight: a room of tonight is held or released, then the hotel is rendered
+     * again.
+     */
+    @Benchmark
+    public String toStringAfterChange(Calendar calendar) throws ReservationException {
+        if(calendar.tonightHeld){
+            calendar.hotel.cancelReservation(calendar.held[0], calendar.checkIn[0], calendar.checkOut[0]);
+        }
+        else{
+            calendar.hotel.reserveRooms(calendar.held[0], calendar.checkIn[0], calendar.checkOut[0]);
+        }
+        calendar.tonightHeld = !calendar.tonightHeld;
+        return calendar.hotel.toString();
+    }
+}
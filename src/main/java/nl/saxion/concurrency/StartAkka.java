@@ -3,9 +3,14 @@ package nl.saxion.concurrency;
 import akka.actor.typed.ActorSystem;
 import akka.actor.typed.javadsl.AskPattern;
 import nl.saxion.concurrency.actors.RentARoom;
+import nl.saxion.concurrency.http.HttpFrontEnd;
 import nl.saxion.concurrency.messages.RentARoomMessage;
+import nl.saxion.concurrency.tracing.SpanRecorder;
 
+import java.io.IOException;
 import java.time.Duration;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Scanner;
@@ -13,6 +18,9 @@ import java.util.concurrent.CompletionStage;
 
 public class StartAkka {
 
+    //amount of hotels that are listed at once
+    private static final int PAGE_SIZE = 20;
+
     private ActorSystem<RentARoomMessage> system;
 
     public static void main(String[] args) {
@@ -23,7 +31,21 @@ public class StartAkka {
     private void run(String[] args) {
         system = ActorSystem.create(RentARoom.create(), "RentARoomSystem");
 
+        HttpFrontEnd http = null;
+        if(system.settings().config().getBoolean("rentaroom.http.enabled")){
+            try {
+                http = HttpFrontEnd.start(system);
+                System.out.println("HTTP API listening on port " + http.port());
+            } catch (IOException e) {
+                System.err.println("Could not start the HTTP API: " + e.getMessage());
+            }
+        }
+
         commandLoop();
+
+        if(http != null){
+            http.stop();
+        }
     }
 
 
@@ -37,6 +59,7 @@ public class StartAkka {
                 "R: Request reservation\n" +
                 "X: Cancel reservation\n" +
                 "C: Confirm reservation\n" +
+                "T: Write the traced requests to a file\n" +
                 "?: This menu\n" +
                 "Q: Quit\n";
         System.out.println(help);
@@ -68,6 +91,9 @@ public class StartAkka {
                 case "d":
                     deleteHotel();
                     break;
+                case "t":
+                    dumpTraces();
+                    break;
             }
             c = s.nextLine().toLowerCase();
         }
@@ -117,10 +143,14 @@ public class StartAkka {
         //print final reservation
         printReservationDetails(reservation);
 
+        //get the dates of the stay
+        LocalDate checkIn = askCheckIn();
+        LocalDate checkOut = checkIn.plusDays(askAmountOfNights());
+
         //Send reservation and wait for a response
         CompletionStage<RentARoomMessage> result =
             AskPattern.ask(system,
-                replyTo -> new RentARoomMessage.Reservation(reservation, replyTo),
+                replyTo -> new RentARoomMessage.Reservation(reservation, checkIn, checkOut, replyTo),
                 Duration.ofSeconds(6),
                 system.scheduler());
         //wait on the result
@@ -166,6 +196,16 @@ public class StartAkka {
         }
     }
 
+    private void dumpTraces() {
+        String file = system.settings().config().getString("rentaroom.tracing.dump-file");
+        try {
+            int traces = SpanRecorder.get(system).dumpToFile(file);
+            System.out.println("Wrote " + traces + " traces to " + file);
+        } catch (IOException e) {
+            System.err.println("Could not write the traces to " + file + ": " + e.getMessage());
+        }
+    }
+
     private void deleteHotel() {
         System.out.println("Give the id of the hotel to delete:");
         Scanner s = new Scanner(System.in);
@@ -211,18 +251,63 @@ public class StartAkka {
     }
 
     private void listHotels() {
-        CompletionStage<RentARoomMessage> result =
-                AskPattern.ask(system,
-                        replyTo -> new RentARoomMessage.ListHotels(replyTo),
-                        Duration.ofSeconds(6),
-                        system.scheduler());
-        //wait on the result
-        RentARoomMessage message = result.toCompletableFuture().join();
-        //display the information on the hotels
-        if(message instanceof RentARoomMessage.Response){
-            String status = ((RentARoomMessage.Response)message).status;
-            System.out.println(status);
+        Scanner s = new Scanner(System.in);
+        System.out.println("Show the status of every room? (y/n)");
+        boolean summaryOnly = !s.nextLine().equals("y");
+        int minimumFreeRooms = askMinimumFreeRooms();
+
+        //request the hotels page by page, so a large amount of hotels never ends up in one message
+        String fromId = null;
+        boolean first = true;
+        do {
+            String pageFrom = fromId;
+            CompletionStage<RentARoomMessage> result =
+                    AskPattern.ask(system,
+                            replyTo -> new RentARoomMessage.ListHotelsPage(replyTo, pageFrom, null, minimumFreeRooms, summaryOnly, PAGE_SIZE),
+                            Duration.ofSeconds(6),
+                            system.scheduler());
+            //wait on the result
+            RentARoomMessage message = result.toCompletableFuture().join();
+            if(!(message instanceof RentARoomMessage.HotelsPage)){
+                if(message instanceof RentARoomMessage.Response){
+                    System.out.println(((RentARoomMessage.Response) message).status);
+                }
+                return;
+            }
+            RentARoomMessage.HotelsPage page = (RentARoomMessage.HotelsPage) message;
+            if(first && page.hotels.isEmpty()){
+                System.out.println("There are currently no hotels! Press 'H' to create a hotel!");
+            }
+            //display the information on the hotels
+            for (RentARoomMessage.HotelSummary hotel : page.hotels) {
+                System.out.println(hotel.details != null ? hotel.details + "\n" :
+                    "Hotel: " + hotel.name + " (ID: " + hotel.hotelId + ") - Rooms available tonight: " +
+                        hotel.availableRooms + "/" + hotel.amountOfRooms);
+            }
+            first = false;
+            fromId = page.nextFromId;
+            if(fromId != null){
+                System.out.println("Press enter for the next page, or 'q' to stop.");
+                if(s.nextLine().equals("q")){
+                    return;
+                }
+            }
+        } while (fromId != null);
+    }
+
+    private int askMinimumFreeRooms() {
+        Scanner s = new Scanner(System.in);
+        System.out.println("Only list hotels with at least this amount of free rooms tonight (empty for all hotels):");
+        String input = s.nextLine();
+        while (!input.isEmpty()) {
+            try {
+                return Integer.parseInt(input);
+            } catch (NumberFormatException e) {
+                System.err.println("Invalid input!");
+                input = s.nextLine();
+            }
         }
+        return 0;
     }
 
 
@@ -267,4 +352,40 @@ public class StartAkka {
         }
         return rooms;
     }
+    private LocalDate askCheckIn(){
+        Scanner s = new Scanner(System.in);
+        LocalDate checkIn = null;
+        while(checkIn == null){
+            System.out.println("Give the check in date (yyyy-mm-dd, leave empty for today):");
+            String dateString = s.nextLine();
+            if(dateString.isEmpty()){
+                checkIn = LocalDate.now();
+            }
+            else{
+                try {
+                    checkIn = LocalDate.parse(dateString);
+                } catch (DateTimeParseException e) {
+                    System.err.println("Invalid input");
+                }
+            }
+        }
+        return checkIn;
+    }
+    private int askAmountOfNights(){
+        Scanner s = new Scanner(System.in);
+        int nights = 0;
+        while(nights <= 0){
+            System.out.println("Give the number of nights:");
+            String nightsString = s.nextLine();
+            try {
+                nights = Integer.parseInt(nightsString);
+            } catch (Exception e) {
+                System.err.println("Invalid input");
+            }
+            if(nights <= 0){
+                System.err.println("Amount of nights should be more than 0");
+            }
+        }
+        return nights;
+    }
 }
@@ -1,46 +1,141 @@
 package nl.saxion.concurrency.actors;
 import akka.actor.typed.ActorRef;
 import akka.actor.typed.Behavior;
+import akka.actor.typed.Props;
+import akka.actor.typed.Terminated;
 import akka.actor.typed.javadsl.*;
+import akka.actor.typed.pubsub.Topic;
 import akka.actor.typed.receptionist.Receptionist;
 import akka.actor.typed.receptionist.ServiceKey;
+import akka.cluster.sharding.typed.javadsl.ClusterSharding;
 import nl.saxion.concurrency.messages.RentARoomMessage;
+import nl.saxion.concurrency.metrics.ActorMetrics;
+import nl.saxion.concurrency.tracing.SpanRecorder;
+import nl.saxion.concurrency.util.ActorRoles;
+import nl.saxion.concurrency.util.AdmissionControl;
+import nl.saxion.concurrency.util.AvailabilityIndex;
 
 import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
 
 
 public class Agent extends AbstractBehavior<RentARoomMessage> {
-    private final HashMap<String, ActorRef<RentARoomMessage>> hotels = new HashMap<>();
-    private static final HashMap<String, ActorRef<RentARoomMessage>> reservationAggregators = new HashMap<>();
+    //sorted by id, so a range of hotels can be listed in order
+    private final TreeMap<String, ActorRef<RentARoomMessage>> hotels = new TreeMap<>();
+    //shards of the reservation registry, they know which aggregator or coordinator handles a reservation
+    private final List<ActorRef<RentARoomMessage>> reservationRegistry;
 
+    //when reservations are handled by coordinators (instead of an aggregator per reservation), these are the
+    //coordinators of this agent. Null when an aggregator is spawned for every reservation.
+    private final List<ActorRef<RentARoomMessage>> coordinators;
+    //in aggregator mode the batches are still handled by a coordinator, which is spawned for the first batch
+    private ActorRef<RentARoomMessage> batchCoordinator;
 
-    public Agent(ActorContext<RentARoomMessage> context) {
+    //in clustered mode the hotel managers are reached through their entity ref, so a message still arrives when
+    //the hotel is moved to another node. Null when the hotel managers are local actors.
+    private final ClusterSharding sharding;
+
+    //last known availability of every hotel, kept up to date by the hotel managers through the availability topic.
+    //A summary listing is answered from this view instead of asking every hotel.
+    //The view is also ordered by free rooms, so the hotels with the most free rooms are found straight away.
+    private final AvailabilityIndex availability = new AvailabilityIndex();
+    //a PlaceReservation picks from this many hotels of the view, and tries at most this many reservations
+    private final int placementCandidates, placementAttempts;
+
+    //new reservations and listings are rejected when too many messages are waiting in the mailbox of this agent
+    private final AdmissionControl admission;
+
+    //dispatchers of the children, so the short-lived aggregators do not compete with the hotels for threads
+    private final Props aggregatorProps;
+    private final Props coordinatorProps;
+
+    private final SpanRecorder spans;
+
+    //RentARoom routes the requests by the load of the agents. The agent reports the amount of requests it handled
+    //every interval, when that changed.
+    private final ActorRef<RentARoomMessage> loadReportTo;
+    private long requestsHandled, requestsReported;
+    //RentARoom removed this agent from the pool, it stops when all its children are done
+    private boolean draining;
+    //the receptionist told this agent about the hotels, and RentARoom knows it can send requests to this agent
+    private boolean started;
+
+    public Agent(ActorContext<RentARoomMessage> context, TimerScheduler<RentARoomMessage> timers,
+                 List<ActorRef<RentARoomMessage>> reservationRegistry, ActorRef<Topic.Command<RentARoomMessage>> availabilityTopic,
+                 ActorRef<RentARoomMessage> loadReportTo) {
         super(context);
+        this.reservationRegistry = reservationRegistry;
+        this.loadReportTo = loadReportTo;
+        this.admission = new AdmissionControl(context);
+        this.aggregatorProps = ActorRoles.props(context.getSystem(), ActorRoles.AGGREGATOR);
+        this.coordinatorProps = ActorRoles.props(context.getSystem(), ActorRoles.COORDINATOR);
+        this.spans = SpanRecorder.get(context.getSystem());
+        this.placementCandidates = context.getSystem().settings().config().getInt("rentaroom.placement.candidates");
+        this.placementAttempts = context.getSystem().settings().config().getInt("rentaroom.placement.max-attempts");
+        this.sharding = context.getSystem().settings().config().getBoolean("rentaroom.cluster-sharding") ?
+            ClusterSharding.get(context.getSystem()) : null;
+
+        String reservationMode = context.getSystem().settings().config().getString("rentaroom.reservation-mode");
+        if(reservationMode.equals("coordinator")){
+            int amountOfCoordinators = context.getSystem().settings().config().getInt("rentaroom.coordinators-per-agent");
+            coordinators = new ArrayList<>(amountOfCoordinators);
+            for (int i = 0; i < amountOfCoordinators; i++) {
+                coordinators.add(context.spawn(ReservationCoordinator.create(reservationRegistry), "ReservationCoordinator_" + i, coordinatorProps));
+            }
+        }
+        else{
+            coordinators = null;
+        }
 
         // Subscribe to the receptionist to listen which hotel managers are available.
         ActorRef<Receptionist.Listing> hotelAdapter = context.messageAdapter(Receptionist.Listing.class, RentARoomMessage.ReceiveHotelsList::new);
         context.getSystem().receptionist().tell(Receptionist.subscribe(HotelManager.CREATE_HOTEL_KEY, hotelAdapter));
 
-        // Register with the receptionist so we can use it with the group router
+        // Subscribe to the availability updates of the hotels, and ask all hotels again every interval in case an
+        // update got lost, so the view is never more stale than that interval.
+        availabilityTopic.tell(Topic.subscribe(context.getSelf()));
+        timers.startTimerWithFixedDelay(RentARoomMessage.RefreshAvailability.INSTANCE,
+            context.getSystem().settings().config().getDuration("rentaroom.availability-refresh"));
+        timers.startTimerWithFixedDelay(RentARoomMessage.ReportLoad.INSTANCE,
+            context.getSystem().settings().config().getDuration("rentaroom.routing.load-report-interval"));
+
+        // Register with the receptionist, so the agents of the system can be found
         context.getSystem().receptionist().tell(Receptionist.register(CREATE_AGENT_KEY, context.getSelf()));
     }
 
     public static final ServiceKey<RentARoomMessage> CREATE_AGENT_KEY = ServiceKey.create(RentARoomMessage.class, "RegisterHotelAgent");
 
-    public static Behavior<RentARoomMessage> create() {
-        return Behaviors.setup(Agent::new);
+    /**
+     * @param loadReportTo where to report the amount of handled requests to.
+     */
+    public static Behavior<RentARoomMessage> create(List<ActorRef<RentARoomMessage>> reservationRegistry,
+                                                    ActorRef<Topic.Command<RentARoomMessage>> availabilityTopic,
+                                                    ActorRef<RentARoomMessage> loadReportTo) {
+        return ActorMetrics.instrument("Agent",
+            Behaviors.setup(context -> Behaviors.withTimers(timers ->
+                new Agent(context, timers, reservationRegistry, availabilityTopic, loadReportTo))));
     }
 
     @Override
     public Receive<RentARoomMessage> createReceive() {
         return newReceiveBuilder()
             .onMessage(RentARoomMessage.ReceiveHotelsList.class, this::updateHotelList)
+            .onMessage(RentARoomMessage.AvailabilityChanged.class, this::updateAvailability)
+            .onMessage(RentARoomMessage.RefreshAvailability.class, this::refreshAvailability)
             .onMessage(RentARoomMessage.ListHotels.class, this::handleHotelDataRequest)
+            .onMessage(RentARoomMessage.ListHotelsPage.class, this::handleListHotelsPage)
+            .onMessage(RentARoomMessage.StreamHotels.class, this::handleStreamHotels)
+            .onMessage(RentARoomMessage.FindAvailableHotels.class, this::handleFindAvailableHotels)
             .onMessage(RentARoomMessage.DeleteHotel.class, this::handleDeleteHotel)
             .onMessage(RentARoomMessage.Reservation.class, this::handleReservation)
-            .onMessage(RentARoomMessage.AggregatorStopped.class, message -> {reservationAggregators.remove(message.aggregator.path().name()); return Behaviors.same();})
+            .onMessage(RentARoomMessage.PlaceReservation.class, this::handlePlaceReservation)
+            .onMessage(RentARoomMessage.TryPlacement.class, this::handleTryPlacement)
+            .onMessage(RentARoomMessage.ReservationBatch.class, this::handleReservationBatch)
             .onMessage(RentARoomMessage.CancelReservation.class, this::handleReservationCancellation)
             .onMessage(RentARoomMessage.ConfirmReservation.class, this::handleReservationConfirmation)
+            .onMessage(RentARoomMessage.ReportLoad.class, this::reportLoad)
+            .onMessage(RentARoomMessage.DrainAgent.class, this::handleDrain)
+            .onSignal(Terminated.class, this::handleChildStopped)
             .build();
     }
 
@@ -58,10 +153,11 @@ public class Agent extends AbstractBehavior<RentARoomMessage> {
         Set<ActorRef<RentARoomMessage>> liveHotels = message.hotels.getServiceInstances(HotelManager.CREATE_HOTEL_KEY);
         for (ActorRef<RentARoomMessage> actor : liveHotels) {
             // The name of the actor is the hotel id...
-            // See if it is a new hotel, if so - add it
-            if (!hotels.containsKey(actor.path().name())) {
+            // See if it is a new hotel (or a hotel that moved to a new actor), if so - add it and ask its availability
+            if (!actor.equals(hotels.get(actor.path().name()))) {
                 getContext().getLog().info("[{}] Discovered new actor for hotel {}", getContext().getSelf().path().name(), actor.path().name());
                 hotels.put(actor.path().name(), actor);
+                actor.tell(new RentARoomMessage.RequestAvailability(getContext().getSelf()));
             }
         }
         // See if any hotels have seized to exist
@@ -73,6 +169,38 @@ public class Agent extends AbstractBehavior<RentARoomMessage> {
         }
         for (String key : deleteList) {
             hotels.remove(key);
+            availability.remove(key);
+        }
+        //a request that arrives before the first listing would not find its hotels
+        if(!started){
+            started = true;
+            loadReportTo.tell(new RentARoomMessage.AgentStarted(getContext().getSelf()));
+        }
+        return Behaviors.same();
+    }
+
+    /**
+     * Update the view with the availability of a hotel. An update that is older than the one we know is ignored,
+     * as well as an update of a hotel that the receptionist did not tell us about (yet).
+     * @param message message containing the availability of the hotel and its version.
+     * @return
+     */
+    private Behavior<RentARoomMessage> updateAvailability(RentARoomMessage.AvailabilityChanged message){
+        RentARoomMessage.AvailabilityChanged known = availability.get(message.hotelId);
+        if(hotels.containsKey(message.hotelId) && (known == null || message.version >= known.version)){
+            availability.put(message);
+        }
+        return Behaviors.same();
+    }
+
+    /**
+     * Ask every hotel for its current availability.
+     * @param message
+     * @return
+     */
+    private Behavior<RentARoomMessage> refreshAvailability(RentARoomMessage.RefreshAvailability message){
+        for (String hotelID : hotels.keySet()) {
+            tellHotel(hotelID, new RentARoomMessage.RequestAvailability(getContext().getSelf()));
         }
         return Behaviors.same();
     }
@@ -85,9 +213,9 @@ public class Agent extends AbstractBehavior<RentARoomMessage> {
      * @return
      */
     private Behavior<RentARoomMessage> handleDeleteHotel(RentARoomMessage.DeleteHotel message){
+        requestReceived();
         if(hotels.containsKey(message.id)){
-            ActorRef hotelToDelete = hotels.get(message.id);
-            hotelToDelete.tell(new RentARoomMessage.StopBehaviors(message.sender));
+            tellHotel(message.id, new RentARoomMessage.StopBehaviors(message.sender));
         }
         else{
             message.sender.tell(new RentARoomMessage.Response("No hotel exists with id: " + message.id));
@@ -103,11 +231,16 @@ public class Agent extends AbstractBehavior<RentARoomMessage> {
      * @return
      */
     private Behavior<RentARoomMessage> handleHotelDataRequest(RentARoomMessage.ListHotels message){
+        requestReceived();
+        if(shed(message.sender)){
+            return Behaviors.same();
+        }
         if(hotels.size() > 0){
-            ActorRef dataAggregator = getContext().spawn(HotelDataAggregator.create(), "hotelDataAggregator" + (int)(Math.random()*1000));
+            //the list shows the status of every room, which the availability view does not have, so the hotels are asked
+            ActorRef dataAggregator = getContext().spawnAnonymous(HotelDataAggregator.create(), aggregatorProps);
             dataAggregator.tell(new RentARoomMessage.hotelMessagesToExpect(message.sender, hotels.size()));
-            for (ActorRef<RentARoomMessage> hotelManager: hotels.values()) {
-                hotelManager.tell(new RentARoomMessage.RequestHotelInformation(dataAggregator));
+            for (String hotelID: hotels.keySet()) {
+                tellHotel(hotelID, new RentARoomMessage.RequestHotelInformation(dataAggregator));
             }
         }
         else{
@@ -116,73 +249,426 @@ public class Agent extends AbstractBehavior<RentARoomMessage> {
         return Behaviors.same();
     }
 
+    /**
+     * Request one page of hotels. A page of summaries is answered from the availability view, unless the client asks
+     * for fresh data or the view does not know every hotel on the page yet. Otherwise a HotelListAggregator asks the
+     * hotels in the range for their summary until the page is full.
+     * @param message message containing the filter, the size of the page and where to send the page to.
+     * @return
+     */
+    private Behavior<RentARoomMessage> handleListHotelsPage(RentARoomMessage.ListHotelsPage message){
+        requestReceived();
+        if(shed(message.replyTo)){
+            return Behaviors.same();
+        }
+        NavigableMap<String, ActorRef<RentARoomMessage>> range = hotelsInRange(message.fromId, message.toId);
+        if(range.isEmpty()){
+            message.replyTo.tell(new RentARoomMessage.HotelsPage(new ArrayList<>(), null));
+        }
+        else if(!message.summaryOnly || message.fresh || !answerPageFromView(range, message)){
+            getContext().spawnAnonymous(HotelListAggregator.createPage(new ArrayList<>(range.values()), message), aggregatorProps);
+        }
+        return Behaviors.same();
+    }
+
+    /**
+     * Fill a page with the summaries from the availability view.
+     * @return false if a hotel on the page is missing from the view, in that case nothing has been sent.
+     */
+    private boolean answerPageFromView(NavigableMap<String, ActorRef<RentARoomMessage>> range, RentARoomMessage.ListHotelsPage message){
+        int pageSize = Math.max(1, Math.min(message.pageSize, HotelListAggregator.MAX_PAGE_SIZE));
+        List<RentARoomMessage.HotelSummary> page = new ArrayList<>();
+        String nextFromId = null;
+        for (String hotelID : range.keySet()) {
+            if(page.size() == pageSize){
+                nextFromId = hotelID;
+                break;
+            }
+            RentARoomMessage.AvailabilityChanged known = availability.get(hotelID);
+            if(known == null){
+                return false;
+            }
+            if(known.availableRooms >= message.minimumFreeRooms){
+                page.add(summarize(known));
+            }
+        }
+        message.replyTo.tell(new RentARoomMessage.HotelsPage(page, nextFromId));
+        return true;
+    }
+
+    /**
+     * Stream the summaries of the hotels in a range. When only summaries are asked and the view knows every hotel in
+     * the range, they are sent from the availability view. Otherwise a HotelListAggregator sends every summary as
+     * soon as it arrives.
+     * @param message message containing the filter and where to send the summaries to.
+     * @return
+     */
+    private Behavior<RentARoomMessage> handleStreamHotels(RentARoomMessage.StreamHotels message){
+        requestReceived();
+        if(shed(message.replyTo)){
+            return Behaviors.same();
+        }
+        NavigableMap<String, ActorRef<RentARoomMessage>> range = hotelsInRange(message.fromId, message.toId);
+        if(range.isEmpty()){
+            message.replyTo.tell(new RentARoomMessage.HotelStreamCompleted(0));
+        }
+        else if(message.summaryOnly && !message.fresh && availability.containsAll(range.keySet())){
+            int streamed = 0;
+            for (String hotelID : range.keySet()) {
+                RentARoomMessage.AvailabilityChanged known = availability.get(hotelID);
+                if(known.availableRooms >= message.minimumFreeRooms){
+                    message.replyTo.tell(summarize(known));
+                    streamed++;
+                }
+            }
+            message.replyTo.tell(new RentARoomMessage.HotelStreamCompleted(streamed));
+        }
+        else{
+            getContext().spawnAnonymous(HotelListAggregator.createStream(new ArrayList<>(range.values()), message), aggregatorProps);
+        }
+        return Behaviors.same();
+    }
+
+    /**
+     * Find the hotels with the most free rooms in the availability view. A hotel the view does not know yet is left
+     * out, like a hotel that does not reply in time when listing.
+     * @param message message containing the filter, the maximum amount of hotels and where to send them to.
+     * @return
+     */
+    private Behavior<RentARoomMessage> handleFindAvailableHotels(RentARoomMessage.FindAvailableHotels message){
+        requestReceived();
+        if(shed(message.replyTo)){
+            return Behaviors.same();
+        }
+        int limit = Math.min(message.limit, HotelListAggregator.MAX_PAGE_SIZE);
+        List<RentARoomMessage.HotelSummary> hotels = new ArrayList<>();
+        for (RentARoomMessage.AvailabilityChanged known : availability.withFreeRooms(message.minimumFreeRooms, limit, message.namePrefix)) {
+            hotels.add(summarize(known));
+        }
+        message.replyTo.tell(new RentARoomMessage.HotelsPage(hotels, null));
+        return Behaviors.same();
+    }
+
+    private static RentARoomMessage.HotelSummary summarize(RentARoomMessage.AvailabilityChanged known){
+        return new RentARoomMessage.HotelSummary(known.hotelId, known.name, known.amountOfRooms, known.availableRooms, null);
+    }
+
+    /**
+     * @return the hotel managers with an id from fromId (inclusive) to toId (exclusive), ordered by id.
+     * A null id means the range has no bound on that side.
+     */
+    private NavigableMap<String, ActorRef<RentARoomMessage>> hotelsInRange(String fromId, String toId){
+        if(fromId != null && toId != null && fromId.compareTo(toId) >= 0){
+            return Collections.emptyNavigableMap();
+        }
+        NavigableMap<String, ActorRef<RentARoomMessage>> range = hotels;
+        if(fromId != null){
+            range = range.tailMap(fromId, true);
+        }
+        if(toId != null){
+            range = range.headMap(toId, false);
+        }
+        return range;
+    }
+
     /**
      * Handle new reservations. New reservations will be checked for validation (if all the hotels exist)
      * If they do exist, it will create an aggregator that will handle all the communication with the hotel managers.
      * If one of the hotels isn't available, the aggregator will reverse all already made hotel reservations, and tell the
      * user that the reservation failed.
+     * In coordinator mode no aggregator is created, but the reservation is handed to one of the coordinators of this agent.
      * @param message Message containing the hotels and the amount of rooms per hotel to reserve.
      * @return
      */
     private Behavior<RentARoomMessage> handleReservation(RentARoomMessage.Reservation message){
+        spans.record(message.traceId, SpanRecorder.Hop.AGENT);
+        requestReceived();
+        if(shed(message.replyTo)){
+            return Behaviors.same();
+        }
+        startReservation(message);
+        return Behaviors.same();
+    }
+
+    /**
+     * Try a reservation for a ReservationPlacer. The PlaceReservation was counted and admitted already, so this is
+     * not counted as a new request and never rejected because of overload.
+     * @param message Message containing the reservation the placer picked the hotels for.
+     * @return
+     */
+    private Behavior<RentARoomMessage> handleTryPlacement(RentARoomMessage.TryPlacement message){
+        startReservation(message.reservation);
+        return Behaviors.same();
+    }
+
+    /**
+     * Check that all the hotels of the reservation exist, and let an aggregator or coordinator make it.
+     * @param message Message containing the hotels and the amount of rooms per hotel to reserve.
+     */
+    private void startReservation(RentARoomMessage.Reservation message){
         //first make sure all the hotels actually exist.
         for(String hotelID : message.reservation.keySet()){
             if(!hotels.containsKey(hotelID)){
                 message.replyTo.tell(new RentARoomMessage.Response("No hotel with id " + hotelID + " exists. " +
                     "Your Reservation has been cancelled"));
-                return Behaviors.same();
+                return;
             }
         }
-        //create a reservation id and make sure it does not exist yet
-        String reservationID = UUID.randomUUID().toString();
-        while(Agent.reservationAggregators.containsKey(reservationID)){
-            reservationID = UUID.randomUUID().toString();
+        //create a reservation id, unless RentARoom picked it already. The shard of the registry that owns this id keeps
+        //track of the reservation.
+        String reservationID = message.reservationNumber != null ? message.reservationNumber : UUID.randomUUID().toString();
+        ActorRef<RentARoomMessage> registryShard = ReservationRegistry.shardFor(reservationID, reservationRegistry);
+        ActorRef<RentARoomMessage> reservationAggregator;
+        if(coordinators != null){
+            //let a coordinator keep track of the reservation. It has to know about the reservation before the hotels reply.
+            reservationAggregator = coordinators.get(Math.floorMod(reservationID.hashCode(), coordinators.size()));
+            reservationAggregator.tell(new RentARoomMessage.CoordinateReservation(reservationID, message.replyTo, message.reservation.size()));
         }
-        //create an aggregator to merge all the reservation replies and reverse them if something went wrong.
-        ActorRef<RentARoomMessage> reservationAggregator = getContext().spawn(HotelReservationAggregator.create(getContext().getSelf()), reservationID);
-        Agent.reservationAggregators.put(reservationID, reservationAggregator);
-        reservationAggregator.tell(new RentARoomMessage.hotelMessagesToExpect(message.replyTo, message.reservation.size()));
+        else{
+            //create an aggregator to merge all the reservation replies and reverse them if something went wrong.
+            reservationAggregator = getContext().spawn(HotelReservationAggregator.create(registryShard), reservationID, aggregatorProps);
+            reservationAggregator.tell(new RentARoomMessage.hotelMessagesToExpect(message.replyTo, message.reservation.size()));
+        }
+        spans.record(message.traceId, SpanRecorder.Hop.AGGREGATOR_STARTED);
+        //register before the hotels are asked, so the reservation is known before the client gets the reservation number
+        registryShard.tell(new RentARoomMessage.RegisterReservation(reservationID, reservationAggregator));
 
         //send the reservation request to every hotel from the reservation
         for(Map.Entry<String, Integer> hotelReservation: message.reservation.entrySet()){
-            ActorRef<RentARoomMessage> hotelManager = hotels.get(hotelReservation.getKey());
-            hotelManager.tell(new RentARoomMessage.HotelReservation(hotelReservation.getValue(), reservationAggregator));
+            tellHotel(hotelReservation.getKey(), new RentARoomMessage.HotelReservation(reservationID, hotelReservation.getValue(),
+                message.checkIn, message.checkOut, reservationAggregator, message.traceId));
         }
+        spans.record(message.traceId, SpanRecorder.Hop.DISPATCHED);
+    }
+
+    /**
+     * Handle a reservation of rooms in any hotel. The candidates are taken from the availability view: with sameHotel
+     * the hotels that fit best, otherwise also the hotels with the most free rooms, so the rooms can be spread over
+     * them. A ReservationPlacer tries them until one attempt succeeds, so a full hotel costs the client no extra
+     * round trip. The view only knows the rooms that are free tonight, so a candidate can still be full for the stay.
+     * @param message Message containing the amount of rooms, the stay and where to send the result to.
+     * @return
+     */
+    private Behavior<RentARoomMessage> handlePlaceReservation(RentARoomMessage.PlaceReservation message){
+        spans.record(message.traceId, SpanRecorder.Hop.AGENT);
+        requestReceived();
+        if(shed(message.replyTo)){
+            return Behaviors.same();
+        }
+        if(message.amountOfRooms <= 0 || !message.checkIn.isBefore(message.checkOut)){
+            message.replyTo.tell(new RentARoomMessage.Response("A reservation needs at least one room and one night. " +
+                "Your Reservation has been cancelled"));
+            return Behaviors.same();
+        }
+        LinkedHashMap<String, RentARoomMessage.AvailabilityChanged> candidates = new LinkedHashMap<>();
+        for (RentARoomMessage.AvailabilityChanged hotel : availability.bestFit(message.amountOfRooms, placementCandidates, message.namePrefix)) {
+            candidates.put(hotel.hotelId, hotel);
+        }
+        if(!message.sameHotel){
+            for (RentARoomMessage.AvailabilityChanged hotel : availability.withFreeRooms(1, placementCandidates, message.namePrefix)) {
+                candidates.put(hotel.hotelId, hotel);
+            }
+        }
+        if(candidates.isEmpty()){
+            message.replyTo.tell(new RentARoomMessage.Response("No hotel has " + message.amountOfRooms + " free rooms. " +
+                "Your Reservation has been cancelled"));
+            return Behaviors.same();
+        }
+        getContext().spawnAnonymous(ReservationPlacer.create(getContext().getSelf(), message,
+            new ArrayList<>(candidates.values()), placementAttempts), aggregatorProps);
         return Behaviors.same();
     }
 
     /**
-     * Handle the cancellation of a reservation. First it will check if there is a reservation by this id.
-     * If there is, it will tell the aggregator that is responsible for this reservation to cancel it.
-     * @param message Message containing the reservation id and reference to the user.
+     * Handle a batch of reservations. Every reservation gets its own reservation number, but instead of an aggregator
+     * per reservation one coordinator keeps track of the whole batch. The reservations are grouped per hotel, so every
+     * hotel gets one message for the batch, and per shard of the registry, so every shard gets one registration.
+     * @param message Message containing the reservations and where to send the results to.
      * @return
      */
-    private Behavior<RentARoomMessage> handleReservationCancellation(RentARoomMessage.CancelReservation message){
-        //check if the reservation number exists, if so, tell all the involved hotels to cancel the reservation.
-        if(Agent.reservationAggregators.containsKey(message.reservationNumber)){
-            ActorRef<RentARoomMessage> aggregator = Agent.reservationAggregators.get(message.reservationNumber);
-            aggregator.tell(message);
+    private Behavior<RentARoomMessage> handleReservationBatch(RentARoomMessage.ReservationBatch message){
+        requestReceived();
+        if(shed(message.replyTo)){
+            return Behaviors.same();
+        }
+        int size = message.reservations.size();
+        String[] reservationNumbers = new String[size];
+        int[] amountOfHotels = new int[size];
+        String[] errors = new String[size];
+        ActorRef<RentARoomMessage> coordinator = batchCoordinator();
+
+        HashMap<String, List<RentARoomMessage.HotelReservation>> perHotel = new HashMap<>();
+        HashMap<ActorRef<RentARoomMessage>, List<String>> perShard = new HashMap<>();
+        for (int i = 0; i < size; i++) {
+            RentARoomMessage.Reservation reservation = message.reservations.get(i);
+            errors[i] = validate(reservation);
+            if(errors[i] != null){
+                continue;
+            }
+            String reservationID = UUID.randomUUID().toString();
+            reservationNumbers[i] = reservationID;
+            amountOfHotels[i] = reservation.reservation.size();
+            perShard.computeIfAbsent(ReservationRegistry.shardFor(reservationID, reservationRegistry), shard -> new ArrayList<>())
+                .add(reservationID);
+            for (Map.Entry<String, Integer> hotelReservation : reservation.reservation.entrySet()) {
+                perHotel.computeIfAbsent(hotelReservation.getKey(), hotel -> new ArrayList<>())
+                    .add(new RentARoomMessage.HotelReservation(reservationID, hotelReservation.getValue(),
+                        reservation.checkIn, reservation.checkOut, coordinator, reservation.traceId));
+            }
+        }
+        //same order as a single reservation: the coordinator and the registry know the reservations before the hotels are asked
+        coordinator.tell(new RentARoomMessage.CoordinateBatch(reservationNumbers, amountOfHotels, errors, message.replyTo));
+        for (Map.Entry<ActorRef<RentARoomMessage>, List<String>> shard : perShard.entrySet()) {
+            shard.getKey().tell(new RentARoomMessage.RegisterReservations(shard.getValue(), coordinator));
+        }
+        for (Map.Entry<String, List<RentARoomMessage.HotelReservation>> hotelReservations : perHotel.entrySet()) {
+            tellHotel(hotelReservations.getKey(), new RentARoomMessage.HotelReservationBatch(hotelReservations.getValue(), coordinator));
+        }
+        return Behaviors.same();
+    }
+
+    /**
+     * @return the reason a reservation of a batch is rejected before any hotel is asked, or null if it is valid.
+     */
+    private String validate(RentARoomMessage.Reservation reservation){
+        if(reservation.reservation.isEmpty()){
+            return "The reservation does not contain any hotel.";
+        }
+        for (String hotelID : reservation.reservation.keySet()) {
+            if(!hotels.containsKey(hotelID)){
+                return "No hotel with id " + hotelID + " exists.";
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return the coordinator for a batch: one of the coordinators of this agent, or in aggregator mode the
+     * coordinator that is only used for batches.
+     */
+    private ActorRef<RentARoomMessage> batchCoordinator(){
+        if(coordinators != null){
+            return coordinators.get(ThreadLocalRandom.current().nextInt(coordinators.size()));
+        }
+        if(batchCoordinator == null){
+            batchCoordinator = getContext().spawn(ReservationCoordinator.create(reservationRegistry), "BatchReservationCoordinator", coordinatorProps);
+        }
+        return batchCoordinator;
+    }
+
+    /**
+     * Reject new work when this agent is overloaded. Cancellations and confirmations are never rejected, because
+     * they release the rooms that are held.
+     * @param replyTo the client of the request.
+     * @return true if the request is rejected, the client is told so with an Overloaded reply.
+     */
+    private boolean shed(ActorRef replyTo){
+        String overloaded = admission.reject(0, 0);
+        if(overloaded == null){
+            return false;
+        }
+        replyTo.tell(new RentARoomMessage.Overloaded("The system is too busy (" + overloaded + " at " +
+            getContext().getSelf().path().name() + "), please try again later."));
+        return true;
+    }
+
+    /**
+     * Send a message to the hotel manager of the given hotel. In clustered mode the message goes through the
+     * entity ref of the hotel, otherwise directly to the actor the receptionist told us about.
+     * @param hotelID id of the hotel.
+     * @param message the message for the hotel manager.
+     */
+    private void tellHotel(String hotelID, RentARoomMessage message){
+        if(sharding != null){
+            sharding.entityRefFor(HotelManager.HOTEL_ENTITY_KEY, hotelID).tell(message);
         }
         else{
-            message.replyTo.tell(new RentARoomMessage.Response("No reservation exists by number " + message.reservationNumber));
+            hotels.get(hotelID).tell(message);
         }
+    }
+
+    /**
+     * Handle the cancellation of a reservation. If this agent made the reservation and its aggregator is still
+     * running, the cancellation goes straight to the aggregator. Otherwise it is forwarded to the shard of the
+     * registry that owns the reservation number. That shard knows the aggregator or coordinator that handles the reservation.
+     * @param message Message containing the reservation id and reference to the user.
+     * @return
+     */
+    private Behavior<RentARoomMessage> handleReservationCancellation(RentARoomMessage.CancelReservation message){
+        requestReceived();
+        forwardToOwner(message.reservationNumber, message);
         return Behaviors.same();
     }
 
     /**
-     * Handle the confirmation of a reservation. First it will check if there is a reservation by this id. If there is
-     * one, it will tell the corresponding aggregator to confirm the reservation.
+     * Handle the confirmation of a reservation. If this agent made the reservation and its aggregator is still
+     * running, the confirmation goes straight to the aggregator. Otherwise it is forwarded to the shard of the
+     * registry that owns the reservation number. That shard knows the aggregator or coordinator that handles the reservation.
      * @param message Message containing the reservation id and a reference to the user.
      * @return
      */
     private Behavior<RentARoomMessage> handleReservationConfirmation(RentARoomMessage.ConfirmReservation message){
-        //check if the reservation number exists, if so, tell all the involved hotels to cancel the reservation.
-        if(Agent.reservationAggregators.containsKey(message.reservationNumber)){
-            ActorRef<RentARoomMessage> aggregator = Agent.reservationAggregators.get(message.reservationNumber);
-            aggregator.tell(message);
+        requestReceived();
+        forwardToOwner(message.reservationNumber, message);
+        return Behaviors.same();
+    }
+
+    private void forwardToOwner(String reservationNumber, RentARoomMessage message){
+        //the aggregator of a reservation is a child of the agent that made it, named after the reservation number.
+        //A coordinator only knows the reservations of its own agent, so those always go through the registry.
+        Optional<ActorRef<Void>> aggregator = coordinators == null ? getContext().getChild(reservationNumber) : Optional.empty();
+        if(aggregator.isPresent()){
+            ((ActorRef) aggregator.get()).tell(message);
         }
         else{
-            message.replyTo.tell(new RentARoomMessage.Response("No reservation exists by number " + message.reservationNumber));
+            ReservationRegistry.shardFor(reservationNumber, reservationRegistry).tell(message);
+        }
+    }
+
+    /**
+     * RentARoom removed this agent from the pool, so it gets no new requests. The reservations that are still open
+     * are finished by the aggregators and coordinators, until they are confirmed, cancelled or expired. The agent
+     * stops when all its children have stopped.
+     * @param message
+     * @return
+     */
+    private Behavior<RentARoomMessage> handleDrain(RentARoomMessage.DrainAgent message){
+        draining = true;
+        getContext().getLog().info("Draining {}, {} children still running", getContext().getSelf().path().name(),
+            getContext().getChildren().size());
+        for (ActorRef<Void> child : getContext().getChildren()) {
+            getContext().watch(child);
+        }
+        //the coordinators stop themselves when they have no open reservations left
+        if(coordinators != null){
+            coordinators.forEach(coordinator -> coordinator.tell(message));
+        }
+        if(batchCoordinator != null){
+            batchCoordinator.tell(message);
+        }
+        return getContext().getChildren().isEmpty() ? Behaviors.stopped() : Behaviors.same();
+    }
+
+    private Behavior<RentARoomMessage> handleChildStopped(Terminated signal){
+        return draining && getContext().getChildren().isEmpty() ? Behaviors.stopped() : Behaviors.same();
+    }
+
+    /**
+     * Count a request that RentARoom routed to this agent.
+     */
+    private void requestReceived(){
+        requestsHandled++;
+    }
+
+    /**
+     * Tell RentARoom how many requests this agent handled, if that changed since the last report.
+     * @param message
+     * @return
+     */
+    private Behavior<RentARoomMessage> reportLoad(RentARoomMessage.ReportLoad message){
+        if(requestsHandled != requestsReported){
+            loadReportTo.tell(new RentARoomMessage.LoadReport(getContext().getSelf(), requestsHandled));
+            requestsReported = requestsHandled;
         }
         return Behaviors.same();
     }
@@ -7,6 +7,7 @@ import akka.actor.typed.receptionist.ServiceKey;
 import jnr.ffi.Struct;
 import nl.saxion.concurrency.domain.Hotel;
 import nl.saxion.concurrency.messages.RentARoomMessage;
+import nl.saxion.concurrency.metrics.ActorMetrics;
 import scala.util.hashing.ByteswapHashing;
 
 //todo: Finsh the implementation of the class
@@ -20,7 +21,7 @@ public class HotelDataAggregator extends AbstractBehavior<RentARoomMessage> {
     }
 
     public static Behavior<RentARoomMessage> create() {
-        return Behaviors.setup(HotelDataAggregator::new);
+        return ActorMetrics.instrument("HotelDataAggregator", Behaviors.setup(HotelDataAggregator::new));
     }
 
     @Override
@@ -0,0 +1,192 @@
+package nl.saxion.concurrency.actors;
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.javadsl.ActorContext;
+import akka.actor.typed.javadsl.TimerScheduler;
+import akka.actor.typed.pubsub.Topic;
+import akka.actor.typed.receptionist.Receptionist;
+import com.typesafe.config.Config;
+import nl.saxion.concurrency.domain.Hotel;
+import nl.saxion.concurrency.messages.RentARoomMessage;
+import nl.saxion.concurrency.tracing.SpanRecorder;
+import nl.saxion.concurrency.util.AdmissionControl;
+import nl.saxion.concurrency.util.TimerWheel;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * The part of a hotel manager that does not depend on how the hotel is stored, shared by the HotelManager and the
+ * PersistentHotelManager: the admission of new reservations, the hold of pending reservations, publishing the
+ * availability to the agents and the replies to the aggregators. The managers only decide how a change is applied
+ * to the hotel, straight away or after it is stored in the journal.
+ */
+class HotelDesk {
+    private final ActorContext<RentARoomMessage> context;
+    private final TimerScheduler<RentARoomMessage> timers;
+    private final String hotelId;
+
+    //pending reservations ordered by the moment they expire. One timer drives the wheel, instead of a timer per reservation.
+    private final TimerWheel<HotelManager.PendingReservation> holds;
+    private final Duration holdTick;
+    private final long holdTicks;
+
+    //the agents keep a view of the availability of every hotel, which is updated through this topic.
+    //Only a change of the amount of free rooms tonight is published.
+    private final ActorRef<Topic.Command<RentARoomMessage>> availabilityTopic;
+    private long availabilityVersion;
+    private int publishedAvailability = -1;
+
+    //new reservations are rejected when too many messages are waiting or too many reservations are pending
+    private final AdmissionControl admission;
+    private final int maxPendingReservations;
+
+    private final SpanRecorder spans;
+
+    /**
+     * @param availabilityTopic topic to publish the availability of the hotel to, or null to not publish it.
+     */
+    HotelDesk(ActorContext<RentARoomMessage> context, TimerScheduler<RentARoomMessage> timers, String hotelId,
+              ActorRef<Topic.Command<RentARoomMessage>> availabilityTopic) {
+        this.context = context;
+        this.timers = timers;
+        this.hotelId = hotelId;
+        this.availabilityTopic = availabilityTopic;
+        //the version starts at the clock, so the updates of a restarted (or moved) hotel manager are newer than the old ones
+        this.availabilityVersion = System.currentTimeMillis() * 1000;
+        this.admission = new AdmissionControl(context);
+        this.spans = SpanRecorder.get(context.getSystem());
+
+        Config config = context.getSystem().settings().config();
+        this.maxPendingReservations = config.getInt("rentaroom.admission.max-pending-reservations");
+        Duration holdTtl = config.getDuration("rentaroom.hold-ttl");
+        holdTick = config.getDuration("rentaroom.hold-tick");
+        holdTicks = Math.max(1, (holdTtl.toMillis() + holdTick.toMillis() - 1) / holdTick.toMillis());
+        holds = new TimerWheel<>((int) Math.min(holdTicks + 1, 4096));
+    }
+
+    /**
+     * Start serving the hotel once it exists: register it with the receptionist, publish its availability and start
+     * the timer that expires the pending reservations.
+     * @param hotel the hotel.
+     */
+    void open(Hotel hotel) {
+        context.getSystem().receptionist().tell(Receptionist.register(HotelManager.CREATE_HOTEL_KEY, context.getSelf()));
+        timers.startTimerAtFixedRate(RentARoomMessage.ExpirePendingReservations.INSTANCE, holdTick);
+        publishAvailability(hotel);
+    }
+
+    /**
+     * @param pendingReservations the amount of reservations that are not confirmed or cancelled yet.
+     * @return why a new reservation is rejected, or null if it is admitted.
+     */
+    String admit(int pendingReservations) {
+        String overloaded = admission.reject(pendingReservations, maxPendingReservations);
+        return overloaded == null ? null : "Hotel " + hotelId + " is overloaded, " + overloaded + ".";
+    }
+
+    /**
+     * Hold the rooms of a pending reservation until the hold time is up.
+     */
+    void hold(HotelManager.PendingReservation reservation) {
+        holds.schedule(reservation, holdTicks);
+    }
+
+    /**
+     * Turn the timer wheel one tick.
+     * @param pending the reservations that are still pending, by reservation number.
+     * @param expire called for every reservation of which the hold is up and that is still pending.
+     */
+    void tick(Map<String, HotelManager.PendingReservation> pending, Consumer<HotelManager.PendingReservation> expire) {
+        holds.tick(reservation -> {
+            //the wheel is not updated on confirm or cancel, so check if this reservation is still pending
+            if(pending.get(reservation.reservationID) == reservation){
+                expire.accept(reservation);
+            }
+        });
+    }
+
+    /**
+     * Tell the aggregator of a reservation that it expired, so it can release the rooms at the other hotels and stop.
+     */
+    void expired(HotelManager.PendingReservation reservation) {
+        context.getLog().info("Reservation {} at hotel {} expired", reservation.reservationID, hotelId);
+        if(reservation.aggregator != null){
+            reservation.aggregator.tell(new RentARoomMessage.ReservationExpired(reservation.reservationID, context.getSelf()));
+        }
+    }
+
+    /**
+     * Publish the amount of free rooms tonight if it changed since it was published last time.
+     */
+    void publishAvailability(Hotel hotel) {
+        int availableRooms = hotel.getAvailableRoomCount();
+        if(availabilityTopic != null && availableRooms != publishedAvailability){
+            publishedAvailability = availableRooms;
+            availabilityTopic.tell(Topic.publish(new RentARoomMessage.AvailabilityChanged(hotelId, hotel.name,
+                hotel.getAmountOfRooms(), availableRooms, ++availabilityVersion)));
+        }
+    }
+
+    /**
+     * @return the current availability, for an agent that just found out about this hotel.
+     */
+    RentARoomMessage.AvailabilityChanged availability(Hotel hotel) {
+        return new RentARoomMessage.AvailabilityChanged(hotelId, hotel.name, hotel.getAmountOfRooms(),
+            hotel.getAvailableRoomCount(), availabilityVersion);
+    }
+
+    void arrived(long traceId) {
+        spans.record(traceId, SpanRecorder.Hop.HOTEL);
+    }
+
+    void done(long traceId) {
+        spans.record(traceId, SpanRecorder.Hop.HOTEL_DONE);
+    }
+
+    RentARoomMessage.HotelReservationReply reserved(RentARoomMessage.HotelReservation message, int[] rooms) {
+        return new RentARoomMessage.HotelReservationReply(message.reservationNumber, true, context.getSelf(), rooms, null,
+            false, message.traceId);
+    }
+
+    RentARoomMessage.HotelReservationReply rejected(RentARoomMessage.HotelReservation message, String reason, boolean overloaded) {
+        return new RentARoomMessage.HotelReservationReply(message.reservationNumber, false, context.getSelf(), null, reason,
+            overloaded, message.traceId);
+    }
+
+    RentARoomMessage.CancelReservationReply cancelled(String reservationNumber, boolean status, String reason) {
+        return new RentARoomMessage.CancelReservationReply(reservationNumber, status, context.getSelf(), reason);
+    }
+
+    RentARoomMessage.ConfirmReservationReply confirmed(String reservationNumber, boolean status, String reason) {
+        return new RentARoomMessage.ConfirmReservationReply(reservationNumber, status, context.getSelf(), reason);
+    }
+
+    String noSuchReservation() {
+        return "Hotel " + hotelId + " does not have a reservation by this number.";
+    }
+
+    static RentARoomMessage.HotelSummary summarize(Hotel hotel, RentARoomMessage.RequestHotelSummary message) {
+        int availableRooms = hotel.getAvailableRoomCount();
+        boolean includeRooms = message.includeRooms && availableRooms >= message.minimumFreeRooms;
+        return new RentARoomMessage.HotelSummary(hotel.id, hotel.name, hotel.getAmountOfRooms(), availableRooms,
+            includeRooms ? hotel.toString() : null);
+    }
+
+    /**
+     * Reply to a batch that none of its reservations could be made at this hotel.
+     * @param message the batch.
+     * @param reason why the reservations failed.
+     * @param overloaded the reservations failed because the hotel is overloaded.
+     */
+    static void rejectBatch(RentARoomMessage.HotelReservationBatch message, String reason, boolean overloaded) {
+        List<RentARoomMessage.HotelReservationReply> replies = new ArrayList<>(message.reservations.size());
+        for (RentARoomMessage.HotelReservation reservation : message.reservations) {
+            replies.add(new RentARoomMessage.HotelReservationReply(reservation.reservationNumber, false, null, null, reason, overloaded,
+                reservation.traceId));
+        }
+        message.replyTo.tell(new RentARoomMessage.HotelReservationBatchReply(replies));
+    }
+}
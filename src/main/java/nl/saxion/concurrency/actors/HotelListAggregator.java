@@ -0,0 +1,152 @@
+package nl.saxion.concurrency.actors;
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.javadsl.*;
+import nl.saxion.concurrency.messages.RentARoomMessage;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Collects the summaries of a range of hotels for a ListHotelsPage or StreamHotels request. The hotels are asked in
+ * windows, so only a window of summaries is kept in memory at the same time, no matter how many hotels there are.
+ * For a page the hotels are asked until the page is full; for a stream every summary is sent on as soon as it arrives
+ * and the next window is asked when the current window is complete.
+ *
+ * A hotel that does not reply before the timeout (for example because it was deleted) is skipped.
+ */
+public class HotelListAggregator extends AbstractBehavior<RentARoomMessage> {
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    private final TimerScheduler<RentARoomMessage> timers;
+    //the hotels in the requested range, ordered by id
+    private final List<ActorRef<RentARoomMessage>> hotels;
+    private final ActorRef replyTo;
+    private final int minimumFreeRooms;
+    private final boolean summaryOnly;
+    //amount of hotels on a page, 0 when the hotels are streamed
+    private final int pageSize;
+    private final int windowSize;
+    private final Duration timeout;
+
+    //index of the first hotel that has not been asked yet
+    private int next;
+    //replies of the current window, by position in the window
+    private final HashMap<String, Integer> windowPositions = new HashMap<>();
+    private RentARoomMessage.HotelSummary[] window;
+    private int received;
+
+    private final List<RentARoomMessage.HotelSummary> page = new ArrayList<>();
+    private int streamed;
+
+    public HotelListAggregator(ActorContext<RentARoomMessage> context, TimerScheduler<RentARoomMessage> timers,
+                               List<ActorRef<RentARoomMessage>> hotels, ActorRef replyTo, int minimumFreeRooms,
+                               boolean summaryOnly, int pageSize) {
+        super(context);
+        this.timers = timers;
+        this.hotels = hotels;
+        this.replyTo = replyTo;
+        this.minimumFreeRooms = minimumFreeRooms;
+        this.summaryOnly = summaryOnly;
+        this.pageSize = pageSize;
+        this.windowSize = context.getSystem().settings().config().getInt("rentaroom.list-window");
+        this.timeout = context.getSystem().settings().config().getDuration("rentaroom.list-timeout");
+        requestWindow();
+    }
+
+    /**
+     * Create an aggregator for one page of hotels.
+     * @param hotels the hotels in the requested range ordered by id, at least one.
+     */
+    public static Behavior<RentARoomMessage> createPage(List<ActorRef<RentARoomMessage>> hotels, RentARoomMessage.ListHotelsPage message) {
+        int pageSize = Math.max(1, Math.min(message.pageSize, MAX_PAGE_SIZE));
+        return Behaviors.setup(context -> Behaviors.withTimers(timers -> new HotelListAggregator(context, timers, hotels,
+            message.replyTo, message.minimumFreeRooms, message.summaryOnly, pageSize)));
+    }
+
+    /**
+     * Create an aggregator that streams the summaries of the hotels.
+     * @param hotels the hotels in the requested range ordered by id, at least one.
+     */
+    public static Behavior<RentARoomMessage> createStream(List<ActorRef<RentARoomMessage>> hotels, RentARoomMessage.StreamHotels message) {
+        return Behaviors.setup(context -> Behaviors.withTimers(timers -> new HotelListAggregator(context, timers, hotels,
+            message.replyTo, message.minimumFreeRooms, message.summaryOnly, 0)));
+    }
+
+    @Override
+    public Receive<RentARoomMessage> createReceive() {
+        return newReceiveBuilder()
+            .onMessage(RentARoomMessage.HotelSummary.class, this::receiveSummary)
+            .onMessage(RentARoomMessage.HotelListTimeout.class, message -> finishWindow())
+            .build();
+    }
+
+    /**
+     * Ask the next window of hotels for their summary. For a page only the amount of hotels that is still missing
+     * is asked, so we never ask more hotels than needed.
+     */
+    private void requestWindow(){
+        int size = Math.min(hotels.size() - next, pageSize > 0 ? Math.min(windowSize, pageSize - page.size()) : windowSize);
+        window = new RentARoomMessage.HotelSummary[size];
+        windowPositions.clear();
+        received = 0;
+        for (int i = 0; i < size; i++) {
+            ActorRef<RentARoomMessage> hotel = hotels.get(next++);
+            windowPositions.put(hotel.path().name(), i);
+            hotel.tell(new RentARoomMessage.RequestHotelSummary(getContext().getSelf(), !summaryOnly, minimumFreeRooms));
+        }
+        timers.startSingleTimer(RentARoomMessage.HotelListTimeout.INSTANCE, timeout);
+    }
+
+    private Behavior<RentARoomMessage> receiveSummary(RentARoomMessage.HotelSummary message){
+        Integer position = windowPositions.get(message.hotelId);
+        if(position == null || window[position] != null){
+            //a late reply of a previous window
+            return Behaviors.same();
+        }
+        window[position] = message;
+        received++;
+        if(pageSize == 0 && matches(message)){
+            replyTo.tell(message);
+            streamed++;
+        }
+        return received == window.length ? finishWindow() : Behaviors.same();
+    }
+
+    /**
+     * The current window is complete (or timed out). Add the hotels to the page and ask the next window,
+     * or report the result if we are done.
+     */
+    private Behavior<RentARoomMessage> finishWindow(){
+        timers.cancel(RentARoomMessage.HotelListTimeout.INSTANCE);
+        if(received < window.length){
+            getContext().getLog().warn("{} hotels did not send their summary in time", window.length - received);
+        }
+        if(pageSize > 0){
+            for (RentARoomMessage.HotelSummary summary : window) {
+                if(summary != null && matches(summary)){
+                    page.add(summary);
+                }
+            }
+            if(page.size() == pageSize || next == hotels.size()){
+                replyTo.tell(new RentARoomMessage.HotelsPage(page, next < hotels.size() ? hotels.get(next).path().name() : null));
+                return Behaviors.stopped();
+            }
+        }
+        else if(next == hotels.size()){
+            replyTo.tell(new RentARoomMessage.HotelStreamCompleted(streamed));
+            return Behaviors.stopped();
+        }
+        requestWindow();
+        return Behaviors.same();
+    }
+
+    /**
+     * @return true if the hotel belongs in the list. A hotel that does not exist replies with a summary without a name.
+     */
+    private boolean matches(RentARoomMessage.HotelSummary summary){
+        return summary.name != null && summary.availableRooms >= minimumFreeRooms;
+    }
+}
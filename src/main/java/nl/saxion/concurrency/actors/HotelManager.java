@@ -1,42 +1,62 @@
 package nl.saxion.concurrency.actors;
+import akka.actor.typed.ActorRef;
 import akka.actor.typed.Behavior;
 import akka.actor.typed.javadsl.*;
-import akka.actor.typed.receptionist.Receptionist;
+import akka.actor.typed.pubsub.Topic;
 import akka.actor.typed.receptionist.ServiceKey;
+import akka.cluster.sharding.typed.javadsl.EntityTypeKey;
 import nl.saxion.concurrency.domain.Hotel;
 import nl.saxion.concurrency.domain.ReservationException;
 import nl.saxion.concurrency.messages.RentARoomMessage;
+import nl.saxion.concurrency.metrics.ActorMetrics;
 
+import java.io.Serializable;
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 
 public class HotelManager extends AbstractBehavior<RentARoomMessage> {
     Hotel hotel;
-    HashMap<String, ArrayList<String>> notYetConfirmedReservations = new HashMap<>();
+    HashMap<String, PendingReservation> notYetConfirmedReservations = new HashMap<>();
 
-    public HotelManager(ActorContext<RentARoomMessage> context, Hotel hotel) {
+    //admission, holds, availability and replies, the same as for a persistent hotel
+    private final HotelDesk desk;
+
+    public HotelManager(ActorContext<RentARoomMessage> context, TimerScheduler<RentARoomMessage> timers, Hotel hotel,
+                        ActorRef<Topic.Command<RentARoomMessage>> availabilityTopic) {
         super(context);
         this.hotel = hotel;
-        // Register with the receptionist
-        context.getSystem().receptionist().tell(Receptionist.register(CREATE_HOTEL_KEY, context.getSelf()));
+        this.desk = new HotelDesk(context, timers, hotel.id, availabilityTopic);
+        context.setLoggerName(HotelManager.class);
+        desk.open(hotel);
     }
 
     public static final ServiceKey<RentARoomMessage> CREATE_HOTEL_KEY = ServiceKey.create(RentARoomMessage.class, "RegisterHotelService");
 
-    public static Behavior<RentARoomMessage> create(Hotel hotel) {
-        return Behaviors.setup(context -> {
-            return new HotelManager(context, hotel);
-        });
+    //key of the hotel managers when they run as sharded entities in a cluster. The entity id is the hotel id.
+    public static final EntityTypeKey<RentARoomMessage> HOTEL_ENTITY_KEY = EntityTypeKey.create(RentARoomMessage.class, "Hotel");
+
+    /**
+     * @param availabilityTopic topic to publish the availability of the hotel to.
+     */
+    public static Behavior<RentARoomMessage> create(Hotel hotel, ActorRef<Topic.Command<RentARoomMessage>> availabilityTopic) {
+        return ActorMetrics.instrument("HotelManager",
+            Behaviors.setup(context -> Behaviors.withTimers(timers -> new HotelManager(context, timers, hotel, availabilityTopic))));
     }
 
     @Override
     public Receive<RentARoomMessage> createReceive() {
         return newReceiveBuilder()
             .onMessage(RentARoomMessage.RequestHotelInformation.class, this::handleDataRequest)
+            .onMessage(RentARoomMessage.RequestHotelSummary.class, this::handleSummaryRequest)
+            .onMessage(RentARoomMessage.RequestAvailability.class, this::handleAvailabilityRequest)
             .onMessage(RentARoomMessage.StopBehaviors.class, this::handleStop)
             .onMessage(RentARoomMessage.HotelReservation.class, this::handleReservation)
+            .onMessage(RentARoomMessage.HotelReservationBatch.class, this::handleReservationBatch)
             .onMessage(RentARoomMessage.CancelReservation.class, this::handleReservationCancellation)
             .onMessage(RentARoomMessage.ConfirmReservation.class, this::handleReservationConfirmation)
+            .onMessage(RentARoomMessage.ExpirePendingReservations.class, this::handleExpiration)
             .build();
     }
 
@@ -50,6 +70,26 @@ public class HotelManager extends AbstractBehavior<RentARoomMessage> {
         return Behaviors.same();
     }
 
+    /**
+     * Send the summary of the hotel, the status of every room is only added when it is asked for.
+     * @param message message containing the actor to send the summary to.
+     * @return
+     */
+    private Behavior<RentARoomMessage> handleSummaryRequest(RentARoomMessage.RequestHotelSummary message) {
+        message.replyTo.tell(HotelDesk.summarize(hotel, message));
+        return Behaviors.same();
+    }
+
+    /**
+     * Send the current availability to an agent that just found out about this hotel.
+     * @param message message containing the agent.
+     * @return
+     */
+    private Behavior<RentARoomMessage> handleAvailabilityRequest(RentARoomMessage.RequestAvailability message) {
+        message.replyTo.tell(desk.availability(hotel));
+        return Behaviors.same();
+    }
+
     /**
      * Handles the message to stop this hotel manager. It will tell the sender a message that the attempt was
      * successful.
@@ -57,7 +97,7 @@ public class HotelManager extends AbstractBehavior<RentARoomMessage> {
      * @return
      */
     private Behavior<RentARoomMessage> handleStop(RentARoomMessage.StopBehaviors message){
-        message.sender.tell(new RentARoomMessage.Response("Successfully deleted hotel " + hotel.name + " (ID: " + hotel.id + ")"));
+        message.sender.tell(new RentARoomMessage.Succeeded("Successfully deleted hotel " + hotel.name + " (ID: " + hotel.id + ")"));
         return Behaviors.stopped();
     }
 
@@ -69,20 +109,55 @@ public class HotelManager extends AbstractBehavior<RentARoomMessage> {
      * @return
      */
     private Behavior<RentARoomMessage> handleReservation(RentARoomMessage.HotelReservation message){
-        try{
-            ArrayList<String> reservedRoomIds = hotel.reserveRooms(message.amountOfRooms);
-            String reservationID = message.aggregator.path().name();
-            this.notYetConfirmedReservations.put(reservationID, reservedRoomIds);
+        desk.arrived(message.traceId);
+        String overloaded = desk.admit(notYetConfirmedReservations.size());
+        if(overloaded != null){
+            message.aggregator.tell(desk.rejected(message, overloaded, true));
+        }
+        else{
+            message.aggregator.tell(reserve(message));
+            desk.publishAvailability(hotel);
+        }
+        desk.done(message.traceId);
+        return Behaviors.same();
+    }
 
-            //send the aggregator a list of the reserved room id's
-            message.aggregator.tell(new RentARoomMessage.HotelReservationReply(true, getContext().getSelf(), reservedRoomIds));
-        } catch (ReservationException e) {
-            //if the reservation failed, send the aggregator a message with failed status and message what failed.
-            message.aggregator.tell(new RentARoomMessage.HotelReservationReply(false, getContext().getSelf(), e.getMessage()));
+    /**
+     * Handle all the reservations of a batch at this hotel. Every reservation succeeds or fails on its own, and all
+     * the replies are sent back in one message.
+     * @param message Message containing the reservations and where to send the replies to.
+     * @return
+     */
+    private Behavior<RentARoomMessage> handleReservationBatch(RentARoomMessage.HotelReservationBatch message){
+        List<RentARoomMessage.HotelReservationReply> replies = new ArrayList<>(message.reservations.size());
+        for (RentARoomMessage.HotelReservation reservation : message.reservations) {
+            //every reservation of the batch counts for the limit, so a batch can not go beyond it
+            String overloaded = desk.admit(notYetConfirmedReservations.size());
+            replies.add(overloaded == null ? reserve(reservation) : desk.rejected(reservation, overloaded, true));
         }
+        message.replyTo.tell(new RentARoomMessage.HotelReservationBatchReply(replies));
+        desk.publishAvailability(hotel);
         return Behaviors.same();
     }
 
+    /**
+     * Reserve the rooms and keep them pending until the reservation is confirmed or cancelled.
+     * @return the reply for the aggregator: the numbers of the reserved rooms, or what failed.
+     */
+    private RentARoomMessage.HotelReservationReply reserve(RentARoomMessage.HotelReservation message){
+        try{
+            int[] reservedRooms = hotel.reserveRooms(message.amountOfRooms, message.checkIn, message.checkOut);
+            String reservationID = message.reservationNumber;
+            PendingReservation reservation = new PendingReservation(reservationID, reservedRooms,
+                message.checkIn, message.checkOut, message.aggregator);
+            this.notYetConfirmedReservations.put(reservationID, reservation);
+            desk.hold(reservation);
+            return desk.reserved(message, reservedRooms);
+        } catch (ReservationException e) {
+            return desk.rejected(message, e.getMessage(), false);
+        }
+    }
+
     /**
      * Handle the cancellation of a reservation. This method will check if the hotel contains a reservation by this id.
      * If it does, it will try to cancel the reservation for each given hotelroom. If something goes wrong, it will tell
@@ -91,26 +166,23 @@ public class HotelManager extends AbstractBehavior<RentARoomMessage> {
      * @return
      */
     private Behavior<RentARoomMessage> handleReservationCancellation(RentARoomMessage.CancelReservation message){
+        desk.arrived(message.traceId);
         //check if there is a reservation by this number
-        if(notYetConfirmedReservations.containsKey(message.reservationNumber)){
-            ArrayList<String> roomNumbers = notYetConfirmedReservations.get(message.reservationNumber);
+        PendingReservation reservation = notYetConfirmedReservations.remove(message.reservationNumber);
+        if(reservation != null){
             try {
-                for(String roomNumber: roomNumbers) {
-                    hotel.cancelReservation(roomNumber);
-                }
-                message.replyTo.tell(new RentARoomMessage.CancelReservationReply(
-                    true, getContext().getSelf(),"Success"));
+                hotel.cancelReservation(reservation.rooms, reservation.checkIn, reservation.checkOut);
+                message.replyTo.tell(desk.cancelled(message.reservationNumber, true, "Success"));
+                desk.publishAvailability(hotel);
             } catch (ReservationException e) {
-                message.replyTo.tell(new RentARoomMessage.CancelReservationReply(false, getContext().getSelf(),
-                    e.getMessage()));
+                message.replyTo.tell(desk.cancelled(message.reservationNumber, false, e.getMessage()));
             }
-            notYetConfirmedReservations.remove(message.reservationNumber);
         }
         //else reply that this reservation does not exist
         else{
-            message.replyTo.tell(new RentARoomMessage.CancelReservationReply(false, getContext().getSelf(),
-                "Hotel " + hotel.id + " does not have a reservation by this number."));
+            message.replyTo.tell(desk.cancelled(message.reservationNumber, false, desk.noSuchReservation()));
         }
+        desk.done(message.traceId);
         return Behaviors.same();
     }
 
@@ -122,28 +194,64 @@ public class HotelManager extends AbstractBehavior<RentARoomMessage> {
      * @return
      */
     private Behavior<RentARoomMessage> handleReservationConfirmation(RentARoomMessage.ConfirmReservation message){
+        desk.arrived(message.traceId);
         //check if there is a reservation by this number
-        if(notYetConfirmedReservations.containsKey(message.reservationNumber)){
-            ArrayList<String> roomNumbers = notYetConfirmedReservations.get(message.reservationNumber);
+        PendingReservation reservation = notYetConfirmedReservations.remove(message.reservationNumber);
+        if(reservation != null){
             try {
-                for(String roomNumber: roomNumbers) {
-                    hotel.confirmReservation(roomNumber);
-                }
-                message.replyTo.tell(new RentARoomMessage.ConfirmReservationReply(true, getContext().getSelf(),
-                    "Success"));
+                hotel.confirmReservation(reservation.rooms, reservation.checkIn, reservation.checkOut);
+                message.replyTo.tell(desk.confirmed(message.reservationNumber, true, "Success"));
             } catch (ReservationException e) {
-                message.replyTo.tell(new RentARoomMessage.ConfirmReservationReply(false, getContext().getSelf(),
-                e.getMessage()));
+                message.replyTo.tell(desk.confirmed(message.reservationNumber, false, e.getMessage()));
             }
-            notYetConfirmedReservations.remove(message.reservationNumber);
         }
         //else reply that this reservation does not exist
         else{
-            message.replyTo.tell(new RentARoomMessage.ConfirmReservationReply(false, getContext().getSelf(),
-                "Hotel " + hotel.id + " does not have a reservation by this number."));
+            message.replyTo.tell(desk.confirmed(message.reservationNumber, false, desk.noSuchReservation()));
         }
+        desk.done(message.traceId);
         return Behaviors.same();
     }
 
+    /**
+     * Turn the timer wheel one tick. Every reservation that is still not confirmed or cancelled when its time is up
+     * is cancelled, so the rooms become available again. The aggregator of the reservation is told that the
+     * reservation expired, so it can release the rooms at the other hotels and stop.
+     * @param message the timer tick
+     * @return
+     */
+    private Behavior<RentARoomMessage> handleExpiration(RentARoomMessage.ExpirePendingReservations message){
+        desk.tick(notYetConfirmedReservations, this::expireReservation);
+        //also publishes the availability of the next night when the date changes
+        desk.publishAvailability(hotel);
+        return Behaviors.same();
+    }
+
+    private void expireReservation(PendingReservation reservation){
+        notYetConfirmedReservations.remove(reservation.reservationID);
+        try {
+            hotel.cancelReservation(reservation.rooms, reservation.checkIn, reservation.checkOut);
+        } catch (ReservationException e) {
+            getContext().getLog().warn("Failed to release the rooms of expired reservation {}: {}", reservation.reservationID, e.getMessage());
+        }
+        desk.expired(reservation);
+    }
 
+    /**
+     * The rooms and dates of a reservation that has not been confirmed or cancelled yet.
+     */
+    public static class PendingReservation implements Serializable {
+        public final String reservationID;
+        public final int[] rooms;
+        public final LocalDate checkIn, checkOut;
+        public final ActorRef aggregator;
+
+        public PendingReservation(String reservationID, int[] rooms, LocalDate checkIn, LocalDate checkOut, ActorRef aggregator){
+            this.reservationID = reservationID;
+            this.rooms = rooms;
+            this.checkIn = checkIn;
+            this.checkOut = checkOut;
+            this.aggregator = aggregator;
+        }
+    }
 }
@@ -7,29 +7,38 @@ import akka.actor.typed.receptionist.Receptionist;
 import akka.actor.typed.receptionist.ServiceKey;
 import jnr.ffi.provider.jffi.AnnotationTypeMapper;
 import nl.saxion.concurrency.messages.RentARoomMessage;
+import nl.saxion.concurrency.metrics.ActorMetrics;
+import nl.saxion.concurrency.tracing.SpanRecorder;
 
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 
 public class HotelReservationAggregator extends AbstractBehavior<RentARoomMessage> {
     private ActorRef reservationReportTo, cancellationReportTo, confirmationReportTo;
-    private ActorRef parentAgent;
+    //the shard of the reservation registry that knows this reservation
+    private ActorRef registry;
     private long dataToExpect, reservationDataReceived, cancellationDataReceived, confirmationDataReceived = 0;
-    private HashMap<ActorRef, ArrayList<String>> successfulReservations = new HashMap<>();
+    private HashMap<ActorRef, int[]> successfulReservations = new HashMap<>();
     private String reservationErrorMessage = "Failed to make the reservation: \n";
+    //one of the hotels rejected the reservation because it is overloaded
+    private boolean overloaded;
     private String cancellationErrorMessage = "Failed to cancel the reservation: \n";
     private int failedCancellations = 0;
     private String confirmationErrorMessage = "Failed to confirm the reservation: \n";
     private int failedConfirmations = 0;
+    //trace id of the reservation, or of the confirmation or cancellation once the client asked for it
+    private long traceId;
+    private final SpanRecorder spans;
 
-    public HotelReservationAggregator(ActorContext<RentARoomMessage> context, ActorRef parentAgent) {
+    public HotelReservationAggregator(ActorContext<RentARoomMessage> context, ActorRef registry) {
         super(context);
-        this.parentAgent = parentAgent;
+        this.registry = registry;
+        this.spans = SpanRecorder.get(context.getSystem());
     }
 
-    public static Behavior<RentARoomMessage> create(ActorRef agent) {
-        return Behaviors.setup((context) -> new HotelReservationAggregator(context, agent));
+    public static Behavior<RentARoomMessage> create(ActorRef registry) {
+        return ActorMetrics.instrument("HotelReservationAggregator",
+            Behaviors.setup((context) -> new HotelReservationAggregator(context, registry)));
     }
 
     @Override
@@ -37,10 +46,23 @@ public class HotelReservationAggregator extends AbstractBehavior<RentARoomMessag
         return newReceiveBuilder()
             .onMessage(RentARoomMessage.hotelMessagesToExpect.class, this::ReservationDataToExpect)
             .onMessage(RentARoomMessage.HotelReservationReply.class, this::receiveReservationData)
-            .onMessage(RentARoomMessage.CancelReservation.class, message -> {cancellationReportTo = message.replyTo; reverseReservations(); return this;})
+            .onMessage(RentARoomMessage.CancelReservation.class, message -> {
+                cancellationReportTo = message.replyTo;
+                traceId = message.traceId;
+                spans.record(traceId, SpanRecorder.Hop.AGGREGATOR);
+                reverseReservations();
+                return this;
+            })
             .onMessage(RentARoomMessage.CancelReservationReply.class, this::receiveCancellationData)
-            .onMessage(RentARoomMessage.ConfirmReservation.class, message -> {confirmationReportTo = message.replyTo; confirmReservation(); return this;})
+            .onMessage(RentARoomMessage.ConfirmReservation.class, message -> {
+                confirmationReportTo = message.replyTo;
+                traceId = message.traceId;
+                spans.record(traceId, SpanRecorder.Hop.AGGREGATOR);
+                confirmReservation();
+                return this;
+            })
             .onMessage(RentARoomMessage.ConfirmReservationReply.class, this::receiveConfirmationData)
+            .onMessage(RentARoomMessage.ReservationExpired.class, this::handleExpiration)
             .onSignal(PostStop.class, signal -> cleanUpWhenStopping())
             .build();
     }
@@ -59,22 +81,25 @@ public class HotelReservationAggregator extends AbstractBehavior<RentARoomMessag
 
     /**
      * Receive data from the hotels. This data contains the list status of the reservation
-     * and if success, it will contain an object with all the room id's. If failed,
+     * and if success, it will contain the numbers of all reserved rooms. If failed,
      * the message will contain of the error.
      * @param message message containing the hotel information.
      * @return
      */
     private Behavior<RentARoomMessage> receiveReservationData(RentARoomMessage.HotelReservationReply message){
         reservationDataReceived++;
+        traceId = message.traceId;
+        spans.record(traceId, SpanRecorder.Hop.HOTEL_REPLY);
         //if the reservation is success, add it to the success hashmap in case we need to reverse the reservation
         if(message.status){
-            successfulReservations.put(message.sender, (ArrayList<String>)message.message);
+            successfulReservations.put(message.sender, message.rooms);
         }
         else{
             //lets save the error message so we can send it to the client when we have all the data
             //We don't reverse the successful reservations yet, since we might receive more later.
             //instead we just report.
             reservationErrorMessage += "  - " + message.message + "\n";
+            overloaded |= message.overloaded;
         }
         return reportReservation();
     }
@@ -89,13 +114,16 @@ public class HotelReservationAggregator extends AbstractBehavior<RentARoomMessag
         if(reservationReportTo != null && dataToExpect == reservationDataReceived) {
             //all reservations were successful, reply with a reservation number
             if (reservationDataReceived == successfulReservations.size()) {
-                reservationReportTo.tell(new RentARoomMessage.Response("Your reservation number is: " + getContext().getSelf().path().name()));
+                reservationReportTo.tell(new RentARoomMessage.ReservationMade(getContext().getSelf().path().name()));
+                spans.record(traceId, SpanRecorder.Hop.REPLIED);
                 return Behaviors.same();
             }
             //one or more of the reservations failed. We have to reverse all successful reservations and we stop this aggregator.
             else {
                 reverseReservations();
-                reservationReportTo.tell(new RentARoomMessage.Response(reservationErrorMessage));
+                reservationReportTo.tell(overloaded ? new RentARoomMessage.Overloaded(reservationErrorMessage) :
+                    new RentARoomMessage.Response(reservationErrorMessage));
+                spans.record(traceId, SpanRecorder.Hop.REPLIED);
                 return Behaviors.stopped();
             }
         }
@@ -110,6 +138,7 @@ public class HotelReservationAggregator extends AbstractBehavior<RentARoomMessag
      */
     private Behavior<RentARoomMessage> receiveCancellationData(RentARoomMessage.CancelReservationReply message){
         cancellationDataReceived++;
+        spans.record(traceId, SpanRecorder.Hop.HOTEL_REPLY);
         //if the cancellation failed for a hotel, we add it to the cancellation error
         if(!message.status){
             //lets save the error message so we can send it to the client when we have all the data
@@ -129,13 +158,14 @@ public class HotelReservationAggregator extends AbstractBehavior<RentARoomMessag
         if(cancellationReportTo != null && dataToExpect == cancellationDataReceived) {
             //all cancellations were successful, reply with a success message
             if (failedCancellations == 0) {
-                cancellationReportTo.tell(new RentARoomMessage.Response("Your reservation with number " + getContext().getSelf().path().name() +
+                cancellationReportTo.tell(new RentARoomMessage.Succeeded("Your reservation with number " + getContext().getSelf().path().name() +
                     " is successfully cancelled."));
             }
             //one or more of the cancellations failed. We send the error to the client
             else {
                 cancellationReportTo.tell(new RentARoomMessage.Response(cancellationErrorMessage));
             }
+            spans.record(traceId, SpanRecorder.Hop.REPLIED);
             return Behaviors.stopped();
         }
         return Behaviors.same();
@@ -149,6 +179,7 @@ public class HotelReservationAggregator extends AbstractBehavior<RentARoomMessag
      */
     private Behavior<RentARoomMessage> receiveConfirmationData(RentARoomMessage.ConfirmReservationReply message){
         confirmationDataReceived++;
+        spans.record(traceId, SpanRecorder.Hop.HOTEL_REPLY);
         //if the cancellation failed for a hotel, we add it to the cancellation error
         if(!message.status){
             //lets save the error message so we can send it to the client when we have all the data
@@ -168,37 +199,55 @@ public class HotelReservationAggregator extends AbstractBehavior<RentARoomMessag
         if(confirmationReportTo != null && dataToExpect == confirmationDataReceived) {
             //all confirmations were successful, reply with a success message
             if (failedCancellations == 0) {
-                confirmationReportTo.tell(new RentARoomMessage.Response("Your reservation with number " + getContext().getSelf().path().name() +
+                confirmationReportTo.tell(new RentARoomMessage.Succeeded("Your reservation with number " + getContext().getSelf().path().name() +
                     " is successfully confirmed."));
             }
             //one or more of the confirmations failed. We send the error to the client
             else {
                 confirmationReportTo.tell(new RentARoomMessage.Response(confirmationErrorMessage));
             }
+            spans.record(traceId, SpanRecorder.Hop.REPLIED);
             return Behaviors.stopped();
         }
         return Behaviors.same();
     }
 
+    /**
+     * Handle a hotel telling that it released the rooms because the reservation was not confirmed in time.
+     * If the client is not confirming or cancelling the reservation at this moment, the reservation is reversed at
+     * the other hotels and the aggregator stops. Otherwise the failed reply of the hotel will be reported to the client.
+     * @param message message containing the hotel where the reservation expired.
+     * @return Returns Behaviours.stopped() if the reservation is reversed. Else it will return Behaviours.same().
+     */
+    private Behavior<RentARoomMessage> handleExpiration(RentARoomMessage.ReservationExpired message){
+        if(confirmationReportTo != null || cancellationReportTo != null){
+            return Behaviors.same();
+        }
+        getContext().getLog().info("Reservation {} expired, releasing the rooms at the other hotels", message.reservationNumber);
+        successfulReservations.remove(message.sender);
+        reverseReservations();
+        return Behaviors.stopped();
+    }
+
     private void reverseReservations() {
-        for(Map.Entry<ActorRef, ArrayList<String>> reservation : successfulReservations.entrySet()){
-            reservation.getKey().tell(new RentARoomMessage.CancelReservation(getContext().getSelf().path().name(), getContext().getSelf()));
+        for(Map.Entry<ActorRef, int[]> reservation : successfulReservations.entrySet()){
+            reservation.getKey().tell(new RentARoomMessage.CancelReservation(getContext().getSelf().path().name(), getContext().getSelf(), traceId));
         }
     }
     private void confirmReservation(){
-        for(Map.Entry<ActorRef, ArrayList<String>> reservation : successfulReservations.entrySet()){
-            reservation.getKey().tell(new RentARoomMessage.ConfirmReservation(getContext().getSelf().path().name(), getContext().getSelf()));
+        for(Map.Entry<ActorRef, int[]> reservation : successfulReservations.entrySet()){
+            reservation.getKey().tell(new RentARoomMessage.ConfirmReservation(getContext().getSelf().path().name(), getContext().getSelf(), traceId));
         }
     }
 
     /**
-     * send the Agent that created this aggregator that it has stopped working so the agent can remove
+     * tell the registry that this aggregator has stopped working so the registry can remove
      * the reservation from its list.
      * @return
      */
     private Behavior<RentARoomMessage> cleanUpWhenStopping(){
-        if(parentAgent != null){
-            parentAgent.tell(new RentARoomMessage.AggregatorStopped(getContext().getSelf()));
+        if(registry != null){
+            registry.tell(new RentARoomMessage.AggregatorStopped(getContext().getSelf()));
         }
         return this;
     }
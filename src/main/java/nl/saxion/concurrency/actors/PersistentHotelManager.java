@@ -0,0 +1,413 @@
+package nl.saxion.concurrency.actors;
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.javadsl.ActorContext;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.actor.typed.javadsl.TimerScheduler;
+import akka.actor.typed.pubsub.Topic;
+import akka.persistence.typed.PersistenceId;
+import akka.persistence.typed.RecoveryCompleted;
+import akka.persistence.typed.SnapshotAdapter;
+import akka.persistence.typed.javadsl.*;
+import nl.saxion.concurrency.domain.Hotel;
+import nl.saxion.concurrency.domain.ReservationException;
+import nl.saxion.concurrency.messages.HotelEvent;
+import nl.saxion.concurrency.messages.RentARoomMessage;
+import nl.saxion.concurrency.metrics.ActorMetrics;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Persistent version of the HotelManager. Every change to the hotel is stored as an event in the journal, and every
+ * so many events a snapshot of the whole hotel is stored. After a restart only the events after the last snapshot
+ * are replayed. The hotel handles the same messages as the HotelManager and replies in the same way.
+ *
+ * The hotel is created by the first CreateHotel message it receives, so it can be started by cluster sharding or
+ * after a restart with only its id.
+ */
+public class PersistentHotelManager extends EventSourcedBehavior<RentARoomMessage, HotelEvent, PersistentHotelManager.HotelState> {
+    private final ActorContext<RentARoomMessage> context;
+    private final String hotelId;
+    private final int snapshotEvery;
+
+    //same as the HotelManager: admission, holds, availability and replies. The holds are not part of the persistent
+    //state, they are filled again when the recovery is completed. A traced request is done at this hotel when its
+    //reply is sent, which is after the event is stored.
+    private final HotelDesk desk;
+
+    public PersistentHotelManager(ActorContext<RentARoomMessage> context, TimerScheduler<RentARoomMessage> timers, String hotelId,
+                                  ActorRef<Topic.Command<RentARoomMessage>> availabilityTopic) {
+        super(PersistenceId.of("Hotel", hotelId));
+        this.context = context;
+        this.hotelId = hotelId;
+        this.desk = new HotelDesk(context, timers, hotelId, availabilityTopic);
+        context.setLoggerName(PersistentHotelManager.class);
+        this.snapshotEvery = context.getSystem().settings().config().getInt("rentaroom.snapshot-every");
+    }
+
+    /**
+     * @param availabilityTopic topic to publish the availability of the hotel to, or null to not publish it.
+     */
+    public static Behavior<RentARoomMessage> create(String hotelId, ActorRef<Topic.Command<RentARoomMessage>> availabilityTopic) {
+        return ActorMetrics.instrument("HotelManager",
+            Behaviors.setup(context -> Behaviors.withTimers(timers -> new PersistentHotelManager(context, timers, hotelId, availabilityTopic))));
+    }
+
+    @Override
+    public HotelState emptyState() {
+        return new HotelState(null, new HashMap<>(), false);
+    }
+
+    @Override
+    public RetentionCriteria retentionCriteria() {
+        return snapshotEvery > 0 ? RetentionCriteria.snapshotEvery(snapshotEvery, 2) : RetentionCriteria.disabled();
+    }
+
+    /**
+     * The snapshot is serialized after the actor continues, so we give the snapshot store a copy of the hotel.
+     */
+    @Override
+    public SnapshotAdapter<HotelState> snapshotAdapter() {
+        return new SnapshotAdapter<HotelState>() {
+            @Override
+            public Object toJournal(HotelState state) {
+                return new HotelState(state.hotel == null ? null : new Hotel(state.hotel), new HashMap<>(state.pending), state.deleted);
+            }
+
+            @Override
+            public HotelState fromJournal(Object from) {
+                return (HotelState) from;
+            }
+        };
+    }
+
+    @Override
+    public SignalHandler<HotelState> signalHandler() {
+        return newSignalHandlerBuilder()
+            .onSignal(RecoveryCompleted.instance(), this::recoveryCompleted)
+            .build();
+    }
+
+    @Override
+    public CommandHandler<RentARoomMessage, HotelEvent, HotelState> commandHandler() {
+        CommandHandlerBuilder<RentARoomMessage, HotelEvent, HotelState> builder = newCommandHandlerBuilder();
+
+        //the hotel does not exist yet, every request is answered with an error
+        String doesNotExist = "Hotel " + hotelId + " does not exist.";
+        builder.forState(state -> state.hotel == null)
+            .onCommand(RentARoomMessage.CreateHotel.class, this::handleCreateHotel)
+            .onCommand(RentARoomMessage.HotelReservation.class, (state, message) -> {
+                message.aggregator.tell(new RentARoomMessage.HotelReservationReply(message.reservationNumber, false, null, null,
+                    doesNotExist));
+                return Effect().none();
+            })
+            .onCommand(RentARoomMessage.HotelReservationBatch.class, (state, message) -> {
+                HotelDesk.rejectBatch(message, doesNotExist, false);
+                return Effect().none();
+            })
+            .onCommand(RentARoomMessage.CancelReservation.class, (state, message) -> {
+                message.replyTo.tell(new RentARoomMessage.CancelReservationReply(message.reservationNumber, false,
+                    context.getSelf(), doesNotExist));
+                return Effect().none();
+            })
+            .onCommand(RentARoomMessage.ConfirmReservation.class, (state, message) -> {
+                message.replyTo.tell(new RentARoomMessage.ConfirmReservationReply(message.reservationNumber, false,
+                    context.getSelf(), doesNotExist));
+                return Effect().none();
+            })
+            .onCommand(RentARoomMessage.RequestHotelInformation.class, (state, message) -> {
+                message.sendTo.tell(new RentARoomMessage.RequestHotelInformationReply(doesNotExist));
+                return Effect().none();
+            })
+            .onCommand(RentARoomMessage.RequestHotelSummary.class, (state, message) -> {
+                //a summary without a name, which the list aggregator leaves out
+                message.replyTo.tell(new RentARoomMessage.HotelSummary(hotelId, null, 0, 0, null));
+                return Effect().none();
+            })
+            .onCommand(RentARoomMessage.StopBehaviors.class, (state, message) -> {
+                if(message.sender != null){
+                    message.sender.tell(new RentARoomMessage.Response(doesNotExist));
+                }
+                return Effect().none();
+            })
+            //the agents only ask the hotels they know for their availability, and an answer would add this hotel to
+            //their view, so it is not answered. The holds only start to expire when the hotel is created.
+            .onCommand(RentARoomMessage.RequestAvailability.class, (state, message) -> Effect().none())
+            .onAnyCommand(message -> Effect().unhandled());
+
+        //the hotel has been deleted, the reservations are answered so the aggregators do not wait for it
+        builder.forState(state -> state.deleted)
+            .onCommand(RentARoomMessage.HotelReservation.class, (state, message) -> {
+                message.aggregator.tell(new RentARoomMessage.HotelReservationReply(message.reservationNumber, false, null, null,
+                    doesNotExist));
+                return Effect().stop();
+            })
+            .onCommand(RentARoomMessage.HotelReservationBatch.class, (state, message) -> {
+                HotelDesk.rejectBatch(message, doesNotExist, false);
+                return Effect().stop();
+            })
+            .onCommand(RentARoomMessage.CancelReservation.class, (state, message) -> {
+                message.replyTo.tell(new RentARoomMessage.CancelReservationReply(message.reservationNumber, false,
+                    context.getSelf(), doesNotExist));
+                return Effect().stop();
+            })
+            .onCommand(RentARoomMessage.ConfirmReservation.class, (state, message) -> {
+                message.replyTo.tell(new RentARoomMessage.ConfirmReservationReply(message.reservationNumber, false,
+                    context.getSelf(), doesNotExist));
+                return Effect().stop();
+            })
+            .onAnyCommand(message -> Effect().stop());
+
+        builder.forAnyState()
+            .onCommand(RentARoomMessage.RequestHotelInformation.class, this::handleDataRequest)
+            .onCommand(RentARoomMessage.RequestHotelSummary.class, (state, message) -> {
+                message.replyTo.tell(HotelDesk.summarize(state.hotel, message));
+                return Effect().none();
+            })
+            .onCommand(RentARoomMessage.RequestAvailability.class, (state, message) -> {
+                message.replyTo.tell(desk.availability(state.hotel));
+                return Effect().none();
+            })
+            .onCommand(RentARoomMessage.StopBehaviors.class, this::handleStop)
+            .onCommand(RentARoomMessage.HotelReservation.class, this::handleReservation)
+            .onCommand(RentARoomMessage.HotelReservationBatch.class, this::handleReservationBatch)
+            .onCommand(RentARoomMessage.CancelReservation.class, this::handleReservationCancellation)
+            .onCommand(RentARoomMessage.ConfirmReservation.class, this::handleReservationConfirmation)
+            .onCommand(RentARoomMessage.ExpirePendingReservations.class, this::handleExpiration);
+        return builder.build();
+    }
+
+    @Override
+    public EventHandler<HotelState, HotelEvent> eventHandler() {
+        return newEventHandlerBuilder().forAnyState()
+            .onEvent(HotelEvent.HotelCreated.class, (state, event) -> {
+                state.hotel = new Hotel(event.hotelId, event.name, event.amountOfRooms, event.firstNight);
+                return state;
+            })
+            .onEvent(HotelEvent.RoomsReserved.class, (state, event) -> {
+                try {
+                    state.hotel.reserveRooms(event.rooms, event.checkIn, event.checkOut);
+                } catch (ReservationException e) {
+                    throw new IllegalStateException("Journal of hotel " + hotelId + " is inconsistent", e);
+                }
+                state.pending.put(event.reservationNumber, new HotelManager.PendingReservation(event.reservationNumber,
+                    event.rooms, event.checkIn, event.checkOut, event.aggregator));
+                return state;
+            })
+            .onEvent(HotelEvent.ReservationCancelled.class, (state, event) -> {
+                HotelManager.PendingReservation reservation = state.pending.remove(event.reservationNumber);
+                try {
+                    state.hotel.cancelReservation(reservation.rooms, reservation.checkIn, reservation.checkOut);
+                } catch (ReservationException e) {
+                    throw new IllegalStateException("Journal of hotel " + hotelId + " is inconsistent", e);
+                }
+                return state;
+            })
+            .onEvent(HotelEvent.ReservationConfirmed.class, (state, event) -> {
+                HotelManager.PendingReservation reservation = state.pending.remove(event.reservationNumber);
+                try {
+                    state.hotel.confirmReservation(reservation.rooms, reservation.checkIn, reservation.checkOut);
+                } catch (ReservationException e) {
+                    throw new IllegalStateException("Journal of hotel " + hotelId + " is inconsistent", e);
+                }
+                return state;
+            })
+            .onEvent(HotelEvent.HotelDeleted.class, (state, event) -> {
+                state.deleted = true;
+                return state;
+            })
+            .build();
+    }
+
+    /**
+     * When the recovery is done, the pending reservations get a new hold and the hotel is opened. A hotel that was
+     * deleted stops.
+     */
+    private void recoveryCompleted(HotelState state){
+        if(state.deleted){
+            //a command in the deleted state stops the behavior
+            context.getSelf().tell(new RentARoomMessage.StopBehaviors(null));
+            return;
+        }
+        if(state.hotel != null){
+            for (HotelManager.PendingReservation reservation : state.pending.values()) {
+                desk.hold(reservation);
+            }
+            context.getLog().info("Recovered hotel {} with {} pending reservations", hotelId, state.pending.size());
+            desk.open(state.hotel);
+        }
+    }
+
+    private Effect<HotelEvent, HotelState> handleCreateHotel(HotelState state, RentARoomMessage.CreateHotel message){
+        return Effect().persist(new HotelEvent.HotelCreated(hotelId, message.name, message.amountOfRooms, LocalDate.now()))
+            .thenRun(newState -> {
+                desk.open(newState.hotel);
+                message.sender.tell(new RentARoomMessage.HotelCreated("Hotel \"" + newState.hotel.name + "\" successfully created with ID: " + hotelId, hotelId));
+            });
+    }
+
+    private Effect<HotelEvent, HotelState> handleDataRequest(HotelState state, RentARoomMessage.RequestHotelInformation message){
+        message.sendTo.tell(new RentARoomMessage.RequestHotelInformationReply(state.hotel.toString()));
+        return Effect().none();
+    }
+
+    private Effect<HotelEvent, HotelState> handleStop(HotelState state, RentARoomMessage.StopBehaviors message){
+        return Effect().persist(HotelEvent.HotelDeleted.INSTANCE)
+            .thenRun(newState -> message.sender.tell(new RentARoomMessage.Succeeded("Successfully deleted hotel " +
+                newState.hotel.name + " (ID: " + hotelId + ")")))
+            .thenStop();
+    }
+
+    /**
+     * Pick the rooms for the reservation and store them in a RoomsReserved event. Only when the event is stored the
+     * aggregator is told the reservation succeeded.
+     */
+    private Effect<HotelEvent, HotelState> handleReservation(HotelState state, RentARoomMessage.HotelReservation message){
+        desk.arrived(message.traceId);
+        String overloaded = desk.admit(state.pending.size());
+        if(overloaded != null){
+            message.aggregator.tell(desk.rejected(message, overloaded, true));
+            desk.done(message.traceId);
+            return Effect().none();
+        }
+        try {
+            int[] rooms = state.hotel.findAvailableRooms(message.amountOfRooms, message.checkIn, message.checkOut);
+            return Effect().persist(new HotelEvent.RoomsReserved(message.reservationNumber, rooms, message.checkIn,
+                message.checkOut, message.aggregator))
+                .thenRun(newState -> {
+                    desk.hold(newState.pending.get(message.reservationNumber));
+                    message.aggregator.tell(desk.reserved(message, rooms));
+                    desk.done(message.traceId);
+                    desk.publishAvailability(newState.hotel);
+                });
+        } catch (ReservationException e) {
+            message.aggregator.tell(desk.rejected(message, e.getMessage(), false));
+            desk.done(message.traceId);
+            return Effect().none();
+        }
+    }
+
+    /**
+     * Pick the rooms for every reservation of the batch and store them in one write. The rooms are picked on a copy
+     * of the hotel, so a reservation does not get the rooms of an earlier reservation of the same batch. All the
+     * replies are sent in one message when the events are stored.
+     */
+    private Effect<HotelEvent, HotelState> handleReservationBatch(HotelState state, RentARoomMessage.HotelReservationBatch message){
+        //the rooms are only reserved in the hotel when the events are applied, so the rooms that are picked earlier in
+        //this batch for an overlapping stay are skipped
+        List<HotelEvent.RoomsReserved> events = new ArrayList<>();
+        List<RentARoomMessage.HotelReservationReply> replies = new ArrayList<>(message.reservations.size());
+        for (RentARoomMessage.HotelReservation reservation : message.reservations) {
+            //every reservation of the batch counts for the limit, so a batch can not go beyond it
+            String overloaded = desk.admit(state.pending.size() + events.size());
+            if(overloaded != null){
+                replies.add(desk.rejected(reservation, overloaded, true));
+                continue;
+            }
+            try {
+                long[] picked = null;
+                for (HotelEvent.RoomsReserved event : events) {
+                    if(event.checkIn.isBefore(reservation.checkOut) && reservation.checkIn.isBefore(event.checkOut)){
+                        if(picked == null){
+                            picked = state.hotel.newRoomMask();
+                        }
+                        Hotel.addRooms(picked, event.rooms);
+                    }
+                }
+                int[] rooms = state.hotel.findAvailableRooms(reservation.amountOfRooms, reservation.checkIn,
+                    reservation.checkOut, picked);
+                events.add(new HotelEvent.RoomsReserved(reservation.reservationNumber, rooms, reservation.checkIn,
+                    reservation.checkOut, reservation.aggregator));
+                replies.add(desk.reserved(reservation, rooms));
+            } catch (ReservationException e) {
+                replies.add(desk.rejected(reservation, e.getMessage(), false));
+            }
+        }
+        if(events.isEmpty()){
+            message.replyTo.tell(new RentARoomMessage.HotelReservationBatchReply(replies));
+            return Effect().none();
+        }
+        return Effect().persist(new ArrayList<HotelEvent>(events))
+            .thenRun(newState -> {
+                for (RentARoomMessage.HotelReservationReply reply : replies) {
+                    if(reply.status){
+                        desk.hold(newState.pending.get(reply.reservationNumber));
+                    }
+                }
+                message.replyTo.tell(new RentARoomMessage.HotelReservationBatchReply(replies));
+                desk.publishAvailability(newState.hotel);
+            });
+    }
+
+    private Effect<HotelEvent, HotelState> handleReservationCancellation(HotelState state, RentARoomMessage.CancelReservation message){
+        desk.arrived(message.traceId);
+        if(!state.pending.containsKey(message.reservationNumber)){
+            message.replyTo.tell(desk.cancelled(message.reservationNumber, false, desk.noSuchReservation()));
+            desk.done(message.traceId);
+            return Effect().none();
+        }
+        return Effect().persist(new HotelEvent.ReservationCancelled(message.reservationNumber))
+            .thenRun(newState -> {
+                message.replyTo.tell(desk.cancelled(message.reservationNumber, true, "Success"));
+                desk.done(message.traceId);
+                desk.publishAvailability(newState.hotel);
+            });
+    }
+
+    private Effect<HotelEvent, HotelState> handleReservationConfirmation(HotelState state, RentARoomMessage.ConfirmReservation message){
+        desk.arrived(message.traceId);
+        if(!state.pending.containsKey(message.reservationNumber)){
+            message.replyTo.tell(desk.confirmed(message.reservationNumber, false, desk.noSuchReservation()));
+            desk.done(message.traceId);
+            return Effect().none();
+        }
+        return Effect().persist(new HotelEvent.ReservationConfirmed(message.reservationNumber))
+            .thenRun(newState -> {
+                message.replyTo.tell(desk.confirmed(message.reservationNumber, true, "Success"));
+                desk.done(message.traceId);
+            });
+    }
+
+    /**
+     * Turn the timer wheel one tick and store a cancellation for every reservation that expired. The aggregators are
+     * told after the events are stored.
+     */
+    private Effect<HotelEvent, HotelState> handleExpiration(HotelState state, RentARoomMessage.ExpirePendingReservations message){
+        List<HotelManager.PendingReservation> expired = new ArrayList<>();
+        desk.tick(state.pending, expired::add);
+        if(expired.isEmpty()){
+            //also publishes the availability of the next night when the date changes
+            return Effect().none().thenRun(newState -> desk.publishAvailability(newState.hotel));
+        }
+        List<HotelEvent> events = new ArrayList<>(expired.size());
+        for (HotelManager.PendingReservation reservation : expired) {
+            events.add(new HotelEvent.ReservationCancelled(reservation.reservationID));
+        }
+        return Effect().persist(events).thenRun(newState -> {
+            for (HotelManager.PendingReservation reservation : expired) {
+                desk.expired(reservation);
+            }
+            desk.publishAvailability(newState.hotel);
+        });
+    }
+
+    /**
+     * State of a persistent hotel: the hotel (null until it is created), the reservations that are not confirmed
+     * or cancelled yet and whether the hotel is deleted.
+     */
+    public static class HotelState implements Serializable {
+        public Hotel hotel;
+        public final HashMap<String, HotelManager.PendingReservation> pending;
+        public boolean deleted;
+
+        public HotelState(Hotel hotel, HashMap<String, HotelManager.PendingReservation> pending, boolean deleted){
+            this.hotel = hotel;
+            this.pending = pending;
+            this.deleted = deleted;
+        }
+    }
+}
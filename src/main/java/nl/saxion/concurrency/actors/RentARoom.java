@@ -1,39 +1,164 @@
 package nl.saxion.concurrency.actors;
 import akka.actor.typed.ActorRef;
 import akka.actor.typed.Behavior;
+import akka.actor.typed.MailboxSelector;
+import akka.actor.typed.Props;
 import akka.actor.typed.javadsl.*;
+import akka.actor.typed.pubsub.Topic;
+import akka.cluster.sharding.typed.javadsl.ClusterSharding;
+import akka.cluster.sharding.typed.javadsl.Entity;
+import akka.persistence.query.PersistenceQuery;
+import akka.persistence.query.journal.leveldb.javadsl.LeveldbReadJournal;
+import akka.persistence.typed.PersistenceId;
+import akka.stream.javadsl.Sink;
+import com.typesafe.config.Config;
 import nl.saxion.concurrency.domain.Hotel;
 import nl.saxion.concurrency.messages.RentARoomMessage;
+import nl.saxion.concurrency.routing.AgentLoad;
+import nl.saxion.concurrency.routing.RoutingStrategy;
+import nl.saxion.concurrency.tracing.SpanRecorder;
+import nl.saxion.concurrency.util.ActorRoles;
+import nl.saxion.concurrency.util.AdmissionControl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.UnaryOperator;
 
 public class RentARoom extends AbstractBehavior<RentARoomMessage> {
-    ActorRef<RentARoomMessage> router;
+    //the agents and hotel managers run with a mailbox of which they can read the depth, so they can shed new work when
+    //too much is waiting
+    static final Props ADMISSION_MAILBOX = MailboxSelector.fromConfig("rentaroom.admission-mailbox");
+    //the mailbox and dispatcher of the hotel managers and of the agents
+    private final Props hotelProps;
+    private final Props agentProps;
+    //the agents of this node with their load. The routing strategy picks one of them for every request. When all of
+    //them are overloaded, new work is rejected here already, because forwarding it would only fill up their mailboxes.
+    private final List<AgentLoad> agents = new ArrayList<>();
+    private final RoutingStrategy routing;
+    //new agents that do not know the hotels yet. They only get requests when there are no other agents.
+    private final List<AgentLoad> startingAgents = new ArrayList<>();
+
+    //bounds and thresholds of the elastic agent pool (rentaroom.agent-pool)
+    private final int minAgents, maxAgents;
+    private final long growOutstanding, growLatency;
+    private final double idleRequestsPerCheck;
+    private final int idleChecks;
+    //the amount of checks in a row that all the agents were idle
+    private int idleCount;
     private static int agentCounter = 0;
 
-    public RentARoom(ActorContext<RentARoomMessage> context) {
+    //fixed set of registry shards, every reservation number belongs to one of them
+    private final List<ActorRef<RentARoomMessage>> reservationRegistry;
+
+    //cluster sharding of the hotel managers, null if the hotels run as local children of this actor
+    private final ClusterSharding sharding;
+
+    //when persistence is on, the hotel managers store their state in the journal
+    private final boolean persistence;
+
+    //the hotel managers publish their availability on this topic, the agents subscribe to it.
+    //In clustered mode the topic actors of all the nodes find each other through the receptionist.
+    private final ActorRef<Topic.Command<RentARoomMessage>> availabilityTopic;
+
+    //records the arrival of the sampled reservations, confirmations and cancellations
+    private final SpanRecorder spans;
+
+    //applied to the behavior of every new agent
+    private final UnaryOperator<Behavior<RentARoomMessage>> wrapAgent;
+
+    public RentARoom(ActorContext<RentARoomMessage> context, TimerScheduler<RentARoomMessage> timers,
+                     UnaryOperator<Behavior<RentARoomMessage>> wrapAgent) {
         super(context);
+        this.wrapAgent = wrapAgent;
 
-        GroupRouter<RentARoomMessage> group = Routers.group(Agent.CREATE_AGENT_KEY);
-        router = context.spawn(group, "Agent-group");
+        persistence = context.getSystem().settings().config().getBoolean("rentaroom.persistence");
+        spans = SpanRecorder.get(context.getSystem());
+        routing = RoutingStrategy.fromConfig(context.getSystem().settings().config());
+        Config pool = context.getSystem().settings().config().getConfig("rentaroom.agent-pool");
+        minAgents = Math.max(1, pool.getInt("min-agents"));
+        maxAgents = pool.getInt("max-agents");
+        growOutstanding = pool.getLong("grow-outstanding");
+        growLatency = pool.getDuration("grow-latency").toNanos();
+        idleRequestsPerCheck = pool.getDouble("idle-requests-per-second") * pool.getDuration("check-interval").toNanos() / 1e9;
+        idleChecks = pool.getInt("idle-checks");
+        hotelProps = ActorRoles.props(context.getSystem(), ActorRoles.HOTEL, ADMISSION_MAILBOX);
+        agentProps = ActorRoles.props(context.getSystem(), ActorRoles.AGENT, ADMISSION_MAILBOX);
+        Props registryProps = ActorRoles.props(context.getSystem(), ActorRoles.REGISTRY);
+        availabilityTopic = context.spawn(Topic.create(RentARoomMessage.class, "hotel-availability"), "HotelAvailabilityTopic");
 
-        context.spawn(Agent.create(), "Agent_"+ ++agentCounter);
+        //in clustered mode the hotel managers are sharded entities, spread over all the nodes in the cluster.
+        //Every node has to initialize the sharding to take part in hosting the hotels. A hotel that moves to another
+        //node is started again there, so it has to recover its state from the journal.
+        if(context.getSystem().settings().config().getBoolean("rentaroom.cluster-sharding")){
+            if(!persistence){
+                throw new IllegalStateException("rentaroom.cluster-sharding needs rentaroom.persistence, " +
+                    "otherwise a hotel loses its rooms when it moves to another node");
+            }
+            sharding = ClusterSharding.get(context.getSystem());
+            sharding.init(Entity.of(HotelManager.HOTEL_ENTITY_KEY, entityContext ->
+                PersistentHotelManager.create(entityContext.getEntityId(), availabilityTopic))
+                .withEntityProps(hotelProps));
+        }
+        else{
+            sharding = null;
+            if(persistence){
+                recoverHotels();
+            }
+        }
+
+        int amountOfShards = context.getSystem().settings().config().getInt("rentaroom.reservation-shards");
+        List<ActorRef<RentARoomMessage>> shards = new ArrayList<>(amountOfShards);
+        for (int i = 0; i < amountOfShards; i++) {
+            shards.add(context.spawn(ReservationRegistry.create(), "ReservationRegistry_" + i, registryProps));
+        }
+        reservationRegistry = Collections.unmodifiableList(shards);
+
+        //the requests go to the agents of this node only, they use the registry shards of this node and report their
+        //load to this actor
+        for (int i = 0; i < minAgents; i++) {
+            spawnAgent();
+        }
+        if(pool.getBoolean("enabled")){
+            timers.startTimerWithFixedDelay(RentARoomMessage.AdjustAgentPool.INSTANCE, pool.getDuration("check-interval"));
+        }
     }
 
     public static Behavior<RentARoomMessage> create() {
-        return Behaviors.setup(context -> {
-            return new RentARoom(context);
-        });
+        return create(UnaryOperator.identity());
+    }
+
+    /**
+     * @param wrapAgent changes the behavior of every new agent, for example to make an agent slower in a benchmark.
+     */
+    public static Behavior<RentARoomMessage> create(UnaryOperator<Behavior<RentARoomMessage>> wrapAgent) {
+        return Behaviors.setup(context -> Behaviors.withTimers(timers -> new RentARoom(context, timers, wrapAgent)));
     }
 
     @Override
     public Receive<RentARoomMessage> createReceive() {
         return newReceiveBuilder()
             .onMessage(RentARoomMessage.ListHotels.class, this::handleListRequest)
+            .onMessage(RentARoomMessage.ListHotelsPage.class, message -> admit(message, message.replyTo, null))
+            .onMessage(RentARoomMessage.StreamHotels.class, message -> admit(message, message.replyTo, null))
+            .onMessage(RentARoomMessage.FindAvailableHotels.class, message -> admit(message, message.replyTo, null))
             .onMessage(RentARoomMessage.CreateHotel.class, this::handleCreateHotel)
+            .onMessage(RentARoomMessage.HotelsRecovered.class, this::handleHotelsRecovered)
             .onMessage(RentARoomMessage.DeleteHotel.class, this::handleDeleteHotel)
             .onMessage(RentARoomMessage.Reservation.class, this::handleReservation)
+            .onMessage(RentARoomMessage.PlaceReservation.class, message -> {
+                spans.record(message.traceId, SpanRecorder.Hop.RESERVATION);
+                return admit(message, message.replyTo, null);
+            })
+            .onMessage(RentARoomMessage.ReservationBatch.class, message -> admit(message, message.replyTo, null))
             .onMessage(RentARoomMessage.CancelReservation.class, this::handleReservationCancellation)
             .onMessage(RentARoomMessage.ConfirmReservation.class, this::handleReservationConfirmation)
             .onMessage(RentARoomMessage.SpawnAgent.class, this::handleSpawnAgent)
+            .onMessage(RentARoomMessage.LoadReport.class, this::handleLoadReport)
+            .onMessage(RentARoomMessage.AdjustAgentPool.class, this::adjustAgentPool)
+            .onMessage(RentARoomMessage.AgentStarted.class, this::handleAgentStarted)
+            .onMessage(RentARoomMessage.AgentStopped.class, this::handleAgentStopped)
             .build();
     }
 
@@ -43,73 +168,268 @@ public class RentARoom extends AbstractBehavior<RentARoomMessage> {
      * @return
      */
     private Behavior<RentARoomMessage> handleListRequest(RentARoomMessage.ListHotels message){
-        router.tell(message);
+        return admit(message, message.sender, null);
+    }
+
+    /**
+     * Send new work to the agent the routing strategy picks. If too many messages wait for that agent, another agent
+     * with room is used. When all the agents of this node are overloaded, the client gets an Overloaded reply
+     * straight away.
+     * @param message the request.
+     * @param replyTo the client of the request.
+     * @param key the reservation number the request is about, or null.
+     * @return
+     */
+    private Behavior<RentARoomMessage> admit(RentARoomMessage message, ActorRef replyTo, String key){
+        AgentLoad agent = select(key);
+        if(agent.admission.queueFull()){
+            agent = null;
+            for (AgentLoad other : agents.isEmpty() ? startingAgents : agents) {
+                if(!other.admission.queueFull()){
+                    agent = other;
+                    break;
+                }
+            }
+        }
+        if(agent != null){
+            send(agent, message);
+        }
+        else{
+            replyTo.tell(new RentARoomMessage.Overloaded("The system is too busy, please try again later."));
+        }
         return Behaviors.same();
     }
 
+    private AgentLoad select(String key){
+        return routing.select(agents.isEmpty() ? startingAgents : agents, key);
+    }
+
+    private void send(AgentLoad agent, RentARoomMessage message){
+        agent.sent();
+        agent.agent.tell(message);
+    }
+
     /**
      * Create a new Hotel and spawn an hotel Manager.
      * We don't have to forward this to the agent because the receptionist will tell the agents
      * when a hotel manager has been created. We don't save the hotel in this class because
      * it is already stored in the hotel manager. We don't want to store data in multiple places.
+     * In clustered mode the create message is sent to the sharded entity of a new hotel id, which creates
+     * the hotel on whatever node the entity is allocated and replies to the sender.
      * @param message
      * @return
      */
     private Behavior<RentARoomMessage> handleCreateHotel(RentARoomMessage.CreateHotel message){
+        if(sharding != null){
+            sharding.entityRefFor(HotelManager.HOTEL_ENTITY_KEY, UUID.randomUUID().toString()).tell(message);
+            return Behaviors.same();
+        }
+        if(persistence){
+            //the persistent hotel manager creates the hotel and replies to the sender
+            String hotelId = UUID.randomUUID().toString();
+            getContext().spawn(PersistentHotelManager.create(hotelId, availabilityTopic), hotelId, hotelProps).tell(message);
+            return Behaviors.same();
+        }
         Hotel hotel = new Hotel(message.name, message.amountOfRooms);
-        getContext().spawn(HotelManager.create(hotel), hotel.id);
-        message.sender.tell(new RentARoomMessage.Response("Hotel \"" + hotel.name + "\" successfully created with ID: " + hotel.id));
+        getContext().spawn(HotelManager.create(hotel, availabilityTopic), hotel.id, hotelProps);
+        message.sender.tell(new RentARoomMessage.HotelCreated("Hotel \"" + hotel.name + "\" successfully created with ID: " + hotel.id, hotel.id));
+        return Behaviors.same();
+    }
+
+    /**
+     * Ask the journal which hotels exist. The hotel managers are started again when the answer comes in
+     * (see handleHotelsRecovered), and each of them recovers its own state from the journal.
+     */
+    private void recoverHotels(){
+        LeveldbReadJournal journal = PersistenceQuery.get(getContext().getSystem())
+            .getReadJournalFor(LeveldbReadJournal.class, LeveldbReadJournal.Identifier());
+        getContext().pipeToSelf(journal.currentPersistenceIds().runWith(Sink.seq(), getContext().getSystem()),
+            (ids, error) -> {
+                if(error != null){
+                    getContext().getLog().error("Failed to read the hotels from the journal", error);
+                    return new RentARoomMessage.HotelsRecovered(new ArrayList<>());
+                }
+                return new RentARoomMessage.HotelsRecovered(ids);
+            });
+    }
+
+    /**
+     * Start a persistent hotel manager for every hotel that was found in the journal.
+     * @param message message containing the persistence ids from the journal
+     * @return
+     */
+    private Behavior<RentARoomMessage> handleHotelsRecovered(RentARoomMessage.HotelsRecovered message){
+        String prefix = "Hotel" + PersistenceId.DefaultSeparator();
+        for (String persistenceId : message.hotelIds) {
+            if(persistenceId.startsWith(prefix)){
+                String hotelId = persistenceId.substring(prefix.length());
+                getContext().spawn(PersistentHotelManager.create(hotelId, availabilityTopic), hotelId, hotelProps);
+            }
+        }
         return Behaviors.same();
     }
 
     /**
-     * forward the delete message to an agent
+     * forward the delete message to an agent. A delete is never rejected.
      * @param message
      * @return
      */
     private Behavior<RentARoomMessage> handleDeleteHotel(RentARoomMessage.DeleteHotel message){
-        router.tell(message);
+        send(select(null), message);
         return Behaviors.same();
     }
 
     /**
-     * forward the reservation to an agent
+     * forward the reservation to an agent. If the routing strategy routes by reservation number, the number is
+     * picked here, so the confirmation and cancellation can be routed to the same agent later.
      * @param message message containing the reservation and the actor to reply to
      * @return
      */
     private Behavior<RentARoomMessage> handleReservation(RentARoomMessage.Reservation message){
-        router.tell(message);
-        return Behaviors.same();
+        spans.record(message.traceId, SpanRecorder.Hop.RESERVATION);
+        if(routing.routesByReservation() && message.reservationNumber == null){
+            message = new RentARoomMessage.Reservation(message.reservation, message.checkIn, message.checkOut,
+                message.replyTo, message.traceId, UUID.randomUUID().toString());
+        }
+        return admit(message, message.replyTo, message.reservationNumber);
     }
 
     /**
-     * forward the cancellation to an agent
+     * forward the cancellation to the agent of the reservation, or to the registry shard that owns the reservation
      * @param message message containing the reservationNumber and the actor to reply to
      * @return
      */
     private Behavior<RentARoomMessage> handleReservationCancellation(RentARoomMessage.CancelReservation message){
-        router.tell(message);
+        spans.record(message.traceId, SpanRecorder.Hop.CANCELLATION);
+        forwardToOwner(message.reservationNumber, message);
         return Behaviors.same();
     }
 
     /**
-     * forward the confirmation to an agent
+     * forward the confirmation to the agent of the reservation, or to the registry shard that owns the reservation
      * @param message message containing the reservationNumber and the actor to reply to
      * @return
      */
     private Behavior<RentARoomMessage> handleReservationConfirmation(RentARoomMessage.ConfirmReservation message){
-        router.tell(message);
+        spans.record(message.traceId, SpanRecorder.Hop.CONFIRMATION);
+        forwardToOwner(message.reservationNumber, message);
+        return Behaviors.same();
+    }
+
+    private void forwardToOwner(String reservationNumber, RentARoomMessage message){
+        //a confirmation or cancellation finishes work that was admitted already, so it is never rejected
+        if(routing.routesByReservation()){
+            send(select(reservationNumber), message);
+        }
+        else{
+            ReservationRegistry.shardFor(reservationNumber, reservationRegistry).tell(message);
+        }
+    }
+
+    /**
+     * Update the load of an agent.
+     * @param message message containing the agent and the amount of requests it handled
+     * @return
+     */
+    private Behavior<RentARoomMessage> handleLoadReport(RentARoomMessage.LoadReport message){
+        for (AgentLoad agent : agents) {
+            if(agent.agent.equals(message.agent)){
+                agent.reported(message.requestsHandled);
+            }
+        }
+        for (AgentLoad agent : startingAgents) {
+            if(agent.agent.equals(message.agent)){
+                agent.reported(message.requestsHandled);
+            }
+        }
+        return Behaviors.same();
+    }
+
+    /**
+     * A new agent knows the hotels, from now on the routing strategy can pick it.
+     * @param message message containing the agent
+     * @return
+     */
+    private Behavior<RentARoomMessage> handleAgentStarted(RentARoomMessage.AgentStarted message){
+        for (AgentLoad agent : startingAgents) {
+            if(agent.agent.equals(message.agent)){
+                startingAgents.remove(agent);
+                agents.add(agent);
+                routing.agentsChanged(agents);
+                break;
+            }
+        }
         return Behaviors.same();
     }
 
+    /**
+     * Add an agent when the agents can not keep up: they have too many outstanding requests on average, or a request
+     * waited too long for its agent. Remove an agent when all of them were idle for a while: they handled few requests
+     * and have hardly any outstanding. A busy agent that reports late looks like it handles nothing, but its
+     * outstanding requests keep it from being removed.
+     * @param message
+     * @return
+     */
+    private Behavior<RentARoomMessage> adjustAgentPool(RentARoomMessage.AdjustAgentPool message){
+        long now = System.nanoTime();
+        long outstanding = 0, latency = 0, busiest = 0;
+        for (AgentLoad agent : agents) {
+            outstanding += agent.outstanding();
+            latency = Math.max(latency, Math.max(agent.waitingNanos(now), agent.takeMaxLatencyNanos()));
+            busiest = Math.max(busiest, agent.takeHandled());
+        }
+        //an agent that is still starting is added already
+        if((outstanding > growOutstanding * agents.size() || latency > growLatency) && startingAgents.isEmpty() &&
+            agents.size() < maxAgents){
+            idleCount = 0;
+            spawnAgent();
+            getContext().getLog().info("Added Agent_{}, {} outstanding requests, {} ms latency", agentCounter,
+                outstanding, latency / 1_000_000);
+        }
+        else if(busiest < idleRequestsPerCheck && outstanding < agents.size() && agents.size() > minAgents){
+            if(++idleCount >= idleChecks){
+                idleCount = 0;
+                drainAgent(agents.get(agents.size() - 1));
+            }
+        }
+        else{
+            idleCount = 0;
+        }
+        return Behaviors.same();
+    }
+
+    /**
+     * Remove the agent from the pool. It finishes the requests it already got and its open reservations, and stops.
+     */
+    private void drainAgent(AgentLoad agent){
+        agents.remove(agent);
+        routing.agentsChanged(agents);
+        getContext().watchWith(agent.agent, new RentARoomMessage.AgentStopped(agent.agent));
+        //sent after all the requests this agent got, so it handles those first
+        agent.agent.tell(RentARoomMessage.DrainAgent.INSTANCE);
+        getContext().getLog().info("Removing {}, {} agents left", agent.agent.path().name(), agents.size());
+    }
+
+    private Behavior<RentARoomMessage> handleAgentStopped(RentARoomMessage.AgentStopped message){
+        getContext().getLog().info("{} stopped", message.agent.path().name());
+        return Behaviors.same();
+    }
+
+    private void spawnAgent(){
+        ActorRef<RentARoomMessage> agent = getContext().spawn(
+            wrapAgent.apply(Agent.create(reservationRegistry, availabilityTopic, getContext().getSelf())),
+            "Agent_"+ ++RentARoom.agentCounter, agentProps);
+        startingAgents.add(new AgentLoad(agent, new AdmissionControl(getContext(), agent)));
+    }
+
     /**
      * Spawn a new agent
      * @param message
      * @return
      */
     private Behavior<RentARoomMessage> handleSpawnAgent(RentARoomMessage.SpawnAgent message){
-        getContext().spawn(Agent.create(), "Agent_"+ ++RentARoom.agentCounter);
-        message.replyTo.tell(new RentARoomMessage.Response("Successfully created an agent with the name Agent_" + agentCounter));
+        spawnAgent();
+        message.replyTo.tell(new RentARoomMessage.Succeeded("Successfully created an agent with the name Agent_" + agentCounter));
         return Behaviors.same();
     }
 
@@ -0,0 +1,400 @@
+package nl.saxion.concurrency.actors;
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.javadsl.*;
+import nl.saxion.concurrency.messages.RentARoomMessage;
+import nl.saxion.concurrency.tracing.SpanRecorder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Alternative for the HotelReservationAggregator. Instead of spawning an actor for every reservation, a coordinator
+ * keeps a small record for every open reservation in a table, keyed by the reservation number. It follows the same
+ * steps as the aggregator: collect the replies of the hotels, reverse the reservation if one of the hotels failed,
+ * and confirm or cancel the reservation at all hotels when the client asks for it.
+ *
+ * A coordinator also keeps track of the reservations of a ReservationBatch. The hotels reply with one message per
+ * batch, and the client gets one reply when every reservation of the batch succeeded or failed. After that the
+ * reservations of a batch are confirmed, cancelled and expired one by one like any other reservation.
+ *
+ * When the agent is drained, the coordinator stops as soon as it has no open reservations anymore.
+ */
+public class ReservationCoordinator extends AbstractBehavior<RentARoomMessage> {
+    private final List<ActorRef<RentARoomMessage>> reservationRegistry;
+    private final HashMap<String, ReservationRecord> reservations = new HashMap<>();
+    private final SpanRecorder spans;
+    //the agent is being drained, stop when the last reservation is closed
+    private boolean draining;
+
+    public ReservationCoordinator(ActorContext<RentARoomMessage> context, List<ActorRef<RentARoomMessage>> reservationRegistry) {
+        super(context);
+        this.reservationRegistry = reservationRegistry;
+        this.spans = SpanRecorder.get(context.getSystem());
+    }
+
+    public static Behavior<RentARoomMessage> create(List<ActorRef<RentARoomMessage>> reservationRegistry) {
+        return Behaviors.setup(context -> new ReservationCoordinator(context, reservationRegistry));
+    }
+
+    @Override
+    public Receive<RentARoomMessage> createReceive() {
+        return newReceiveBuilder()
+            .onMessage(RentARoomMessage.CoordinateReservation.class, this::startReservation)
+            .onMessage(RentARoomMessage.CoordinateBatch.class, this::startBatch)
+            .onMessage(RentARoomMessage.HotelReservationReply.class, this::receiveReservationData)
+            .onMessage(RentARoomMessage.HotelReservationBatchReply.class, this::receiveBatchData)
+            .onMessage(RentARoomMessage.CancelReservation.class, this::handleCancellation)
+            .onMessage(RentARoomMessage.CancelReservationReply.class, this::receiveCancellationData)
+            .onMessage(RentARoomMessage.ConfirmReservation.class, this::handleConfirmation)
+            .onMessage(RentARoomMessage.ConfirmReservationReply.class, this::receiveConfirmationData)
+            .onMessage(RentARoomMessage.ReservationExpired.class, this::handleExpiration)
+            .onMessage(RentARoomMessage.DrainAgent.class, this::handleDrain)
+            .build();
+    }
+
+    /**
+     * Start keeping track of a new reservation. The agent sends this message before it sends the reservation
+     * to the hotels, so the record always exists when the replies of the hotels come in.
+     * @param message message containing the reservation number, the amount of hotels and where to report to.
+     * @return
+     */
+    private Behavior<RentARoomMessage> startReservation(RentARoomMessage.CoordinateReservation message){
+        ReservationRecord record = new ReservationRecord(message.reservationNumber, message.reportTo, message.amountOfHotels);
+        reservations.put(message.reservationNumber, record);
+        reportReservation(record);
+        return Behaviors.same();
+    }
+
+    /**
+     * Start keeping track of the reservations of a batch. The reservations that the agent already rejected are
+     * part of the result straight away.
+     * @param message message containing the reservation numbers, the amount of hotels and where to report to.
+     * @return
+     */
+    private Behavior<RentARoomMessage> startBatch(RentARoomMessage.CoordinateBatch message){
+        Batch batch = new Batch(message.replyTo, message.reservationNumbers.length);
+        for (int i = 0; i < message.reservationNumbers.length; i++) {
+            if(message.reservationNumbers[i] == null){
+                batch.results[i] = new RentARoomMessage.ReservationResult(false, null, message.errors[i]);
+                continue;
+            }
+            ReservationRecord record = new ReservationRecord(message.reservationNumbers[i], null, message.amountOfHotels[i]);
+            record.batch = batch;
+            record.batchIndex = i;
+            reservations.put(record.reservationNumber, record);
+            batch.open++;
+        }
+        reportBatch(batch);
+        return Behaviors.same();
+    }
+
+    /**
+     * Receive the replies of a hotel on all the reservations of a batch at that hotel.
+     * @param message message containing the status of every reservation at the hotel.
+     * @return
+     */
+    private Behavior<RentARoomMessage> receiveBatchData(RentARoomMessage.HotelReservationBatchReply message){
+        for (RentARoomMessage.HotelReservationReply reply : message.replies) {
+            receiveReservationData(reply);
+        }
+        return Behaviors.same();
+    }
+
+    /**
+     * Receive the reply of a hotel on the reservation. If the hotel succeeded it is stored in the record, so we can
+     * confirm, cancel or reverse the reservation later on.
+     * @param message message containing the status of the reservation at the hotel.
+     * @return
+     */
+    private Behavior<RentARoomMessage> receiveReservationData(RentARoomMessage.HotelReservationReply message){
+        ReservationRecord record = reservations.get(message.reservationNumber);
+        if(record == null || record.phase != ReservationRecord.RESERVING){
+            //the reservation is already closed, release the rooms if the hotel reserved them anyway
+            if(message.status){
+                message.sender.tell(new RentARoomMessage.CancelReservation(message.reservationNumber, getContext().getSelf(), message.traceId));
+            }
+            return Behaviors.same();
+        }
+        record.traceId = message.traceId;
+        spans.record(record.traceId, SpanRecorder.Hop.HOTEL_REPLY);
+        record.received++;
+        if(message.status){
+            record.hotels[record.hotelCount++] = message.sender;
+        }
+        else{
+            record.addError(message.message);
+            record.overloaded |= message.overloaded;
+        }
+        reportReservation(record);
+        return Behaviors.same();
+    }
+
+    /**
+     * Report the result of the reservation when all hotels replied. If one of the hotels failed, the reservation
+     * is reversed at the other hotels and the record is removed.
+     */
+    private void reportReservation(ReservationRecord record){
+        if(record.received < record.hotels.length){
+            return;
+        }
+        if(record.batch != null){
+            Batch batch = record.batch;
+            batch.results[record.batchIndex] = record.failed == 0 ?
+                new RentARoomMessage.ReservationResult(true, record.reservationNumber, null) :
+                new RentARoomMessage.ReservationResult(false, null, "Failed to make the reservation: \n" + record.errors);
+            //the record does not need the batch anymore
+            record.batch = null;
+            batch.open--;
+            reportBatch(batch);
+            if(record.failed == 0){
+                record.startPhase(ReservationRecord.RESERVED, null);
+            }
+            else{
+                tellHotels(record, false);
+                close(record);
+            }
+        }
+        else if(record.failed == 0){
+            record.reportTo.tell(new RentARoomMessage.ReservationMade(record.reservationNumber));
+            spans.record(record.traceId, SpanRecorder.Hop.REPLIED);
+            record.startPhase(ReservationRecord.RESERVED, null);
+        }
+        else{
+            tellHotels(record, false);
+            String error = "Failed to make the reservation: \n" + record.errors;
+            record.reportTo.tell(record.overloaded ? new RentARoomMessage.Overloaded(error) : new RentARoomMessage.Response(error));
+            spans.record(record.traceId, SpanRecorder.Hop.REPLIED);
+            close(record);
+        }
+    }
+
+    /**
+     * Report the results of the batch when every reservation of the batch succeeded or failed.
+     */
+    private void reportBatch(Batch batch){
+        if(batch.open == 0){
+            batch.replyTo.tell(new RentARoomMessage.ReservationBatchReply(new ArrayList<>(Arrays.asList(batch.results))));
+        }
+    }
+
+    /**
+     * Handle the cancellation of a reservation by telling every hotel of the reservation to cancel it.
+     * @param message Message containing the reservation number and a reference to the client.
+     * @return
+     */
+    private Behavior<RentARoomMessage> handleCancellation(RentARoomMessage.CancelReservation message){
+        ReservationRecord record = reservations.get(message.reservationNumber);
+        if(record == null || record.phase != ReservationRecord.RESERVED){
+            message.replyTo.tell(new RentARoomMessage.Response(record == null ?
+                "No reservation exists by number " + message.reservationNumber :
+                "Reservation " + message.reservationNumber + " is still being processed."));
+            return Behaviors.same();
+        }
+        record.startPhase(ReservationRecord.CANCELLING, message.replyTo);
+        record.traceId = message.traceId;
+        spans.record(record.traceId, SpanRecorder.Hop.AGGREGATOR);
+        tellHotels(record, false);
+        reportCancellation(record);
+        return Behaviors.same();
+    }
+
+    private Behavior<RentARoomMessage> receiveCancellationData(RentARoomMessage.CancelReservationReply message){
+        ReservationRecord record = reservations.get(message.reservationNumber);
+        //replies on the reversal of a failed or expired reservation don't have a record anymore
+        if(record == null || record.phase != ReservationRecord.CANCELLING){
+            return Behaviors.same();
+        }
+        record.received++;
+        spans.record(record.traceId, SpanRecorder.Hop.HOTEL_REPLY);
+        if(!message.status){
+            record.addError(message.message);
+        }
+        reportCancellation(record);
+        return Behaviors.same();
+    }
+
+    private void reportCancellation(ReservationRecord record){
+        if(record.received < record.hotelCount){
+            return;
+        }
+        if(record.failed == 0){
+            record.reportTo.tell(new RentARoomMessage.Succeeded("Your reservation with number " + record.reservationNumber +
+                " is successfully cancelled."));
+        }
+        else{
+            record.reportTo.tell(new RentARoomMessage.Response("Failed to cancel the reservation: \n" + record.errors));
+        }
+        spans.record(record.traceId, SpanRecorder.Hop.REPLIED);
+        close(record);
+    }
+
+    /**
+     * Handle the confirmation of a reservation by telling every hotel of the reservation to confirm it.
+     * @param message Message containing the reservation number and a reference to the client.
+     * @return
+     */
+    private Behavior<RentARoomMessage> handleConfirmation(RentARoomMessage.ConfirmReservation message){
+        ReservationRecord record = reservations.get(message.reservationNumber);
+        if(record == null || record.phase != ReservationRecord.RESERVED){
+            message.replyTo.tell(new RentARoomMessage.Response(record == null ?
+                "No reservation exists by number " + message.reservationNumber :
+                "Reservation " + message.reservationNumber + " is still being processed."));
+            return Behaviors.same();
+        }
+        record.startPhase(ReservationRecord.CONFIRMING, message.replyTo);
+        record.traceId = message.traceId;
+        spans.record(record.traceId, SpanRecorder.Hop.AGGREGATOR);
+        tellHotels(record, true);
+        reportConfirmation(record);
+        return Behaviors.same();
+    }
+
+    private Behavior<RentARoomMessage> receiveConfirmationData(RentARoomMessage.ConfirmReservationReply message){
+        ReservationRecord record = reservations.get(message.reservationNumber);
+        if(record == null || record.phase != ReservationRecord.CONFIRMING){
+            return Behaviors.same();
+        }
+        record.received++;
+        spans.record(record.traceId, SpanRecorder.Hop.HOTEL_REPLY);
+        if(!message.status){
+            record.addError(message.message);
+        }
+        reportConfirmation(record);
+        return Behaviors.same();
+    }
+
+    private void reportConfirmation(ReservationRecord record){
+        if(record.received < record.hotelCount){
+            return;
+        }
+        if(record.failed == 0){
+            record.reportTo.tell(new RentARoomMessage.Succeeded("Your reservation with number " + record.reservationNumber +
+                " is successfully confirmed."));
+        }
+        else{
+            record.reportTo.tell(new RentARoomMessage.Response("Failed to confirm the reservation: \n" + record.errors));
+        }
+        spans.record(record.traceId, SpanRecorder.Hop.REPLIED);
+        close(record);
+    }
+
+    /**
+     * Handle a hotel telling that it released the rooms because the reservation was not confirmed in time.
+     * Same as the aggregator: if the client is not confirming or cancelling at this moment, the reservation is
+     * reversed at the other hotels and the record is removed.
+     * @param message message containing the reservation number and the hotel where it expired.
+     * @return
+     */
+    private Behavior<RentARoomMessage> handleExpiration(RentARoomMessage.ReservationExpired message){
+        ReservationRecord record = reservations.get(message.reservationNumber);
+        if(record == null || record.phase != ReservationRecord.RESERVED){
+            return Behaviors.same();
+        }
+        getContext().getLog().info("Reservation {} expired, releasing the rooms at the other hotels", message.reservationNumber);
+        for (int i = 0; i < record.hotelCount; i++) {
+            if(!record.hotels[i].equals(message.sender)){
+                record.hotels[i].tell(new RentARoomMessage.CancelReservation(record.reservationNumber, getContext().getSelf(), record.traceId));
+            }
+        }
+        close(record);
+        return Behaviors.same();
+    }
+
+    private void tellHotels(ReservationRecord record, boolean confirm){
+        for (int i = 0; i < record.hotelCount; i++) {
+            if(confirm){
+                record.hotels[i].tell(new RentARoomMessage.ConfirmReservation(record.reservationNumber, getContext().getSelf(), record.traceId));
+            }
+            else{
+                record.hotels[i].tell(new RentARoomMessage.CancelReservation(record.reservationNumber, getContext().getSelf(), record.traceId));
+            }
+        }
+    }
+
+    /**
+     * Remove the record and tell the shard of the registry that owns the reservation, so it can forget the reservation number.
+     */
+    private void close(ReservationRecord record){
+        reservations.remove(record.reservationNumber);
+        ReservationRegistry.shardFor(record.reservationNumber, reservationRegistry)
+            .tell(new RentARoomMessage.ReservationClosed(record.reservationNumber));
+        if(draining && reservations.isEmpty()){
+            getContext().getSelf().tell(RentARoomMessage.DrainAgent.INSTANCE);
+        }
+    }
+
+    /**
+     * Stop when there are no open reservations, otherwise when the last one is closed.
+     * @param message
+     * @return
+     */
+    private Behavior<RentARoomMessage> handleDrain(RentARoomMessage.DrainAgent message){
+        draining = true;
+        return reservations.isEmpty() ? Behaviors.stopped() : Behaviors.same();
+    }
+
+    /**
+     * The state of one open reservation. This replaces a whole aggregator actor with its mailbox.
+     */
+    static class ReservationRecord {
+        static final byte RESERVING = 0, RESERVED = 1, CANCELLING = 2, CONFIRMING = 3;
+
+        final String reservationNumber;
+        //the hotels that successfully reserved the rooms, only the first hotelCount are filled in
+        final ActorRef[] hotels;
+        int hotelCount;
+        ActorRef reportTo;
+        byte phase = RESERVING;
+        //replies received and failures in the current phase
+        int received, failed;
+        //only created when something goes wrong
+        StringBuilder errors;
+        //one of the hotels rejected the reservation because it is overloaded
+        boolean overloaded;
+        //trace id of the reservation, or of the confirmation or cancellation in progress
+        long traceId;
+        //the batch this reservation belongs to until its result is known, else null
+        Batch batch;
+        int batchIndex;
+
+        ReservationRecord(String reservationNumber, ActorRef reportTo, int amountOfHotels){
+            this.reservationNumber = reservationNumber;
+            this.reportTo = reportTo;
+            this.hotels = new ActorRef[amountOfHotels];
+        }
+
+        void addError(String error){
+            if(errors == null){
+                errors = new StringBuilder();
+            }
+            errors.append("  - ").append(error).append("\n");
+            failed++;
+        }
+
+        void startPhase(byte phase, ActorRef reportTo){
+            this.phase = phase;
+            this.reportTo = reportTo;
+            this.received = 0;
+            this.failed = 0;
+            this.errors = null;
+        }
+    }
+
+    /**
+     * The results of a batch, in the order of the reservations in the batch.
+     */
+    static class Batch {
+        final ActorRef replyTo;
+        final RentARoomMessage.ReservationResult[] results;
+        //amount of reservations without a result yet
+        int open;
+
+        Batch(ActorRef replyTo, int amountOfReservations){
+            this.replyTo = replyTo;
+            this.results = new RentARoomMessage.ReservationResult[amountOfReservations];
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package nl.saxion.concurrency.actors;
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.javadsl.*;
+import nl.saxion.concurrency.messages.RentARoomMessage;
+import nl.saxion.concurrency.metrics.ActorMetrics;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Places a reservation of a number of rooms in any hotel, for a PlaceReservation. The agent gives it the candidate
+ * hotels from its availability view. The placer picks the hotels that fit best and asks its agent to try the
+ * reservation there, like a normal reservation with hotel ids. When a hotel turns out to be full, the hotels of that
+ * attempt are left out and the next candidates are tried, without going back to the client.
+ *
+ * With sameHotel the rooms are placed in the hotel with the fewest free rooms that still has enough. Otherwise the
+ * same is tried first, and when no hotel has enough the rooms are spread: the hotels with the most free rooms are
+ * filled, and the rest goes to the hotel with the fewest free rooms that still fits it.
+ *
+ * The view is a hint, so the free rooms of a candidate can be wrong. The amount of attempts is bounded, so a client
+ * never waits for every candidate.
+ */
+public class ReservationPlacer extends AbstractBehavior<RentARoomMessage> {
+    private final ActorRef<RentARoomMessage> agent;
+    private final RentARoomMessage.PlaceReservation request;
+    //the candidates, fewest free rooms first
+    private final List<RentARoomMessage.AvailabilityChanged> candidates;
+    private final int maxAttempts;
+
+    //hotels that failed in an earlier attempt
+    private final Set<String> excluded = new HashSet<>();
+    private HashMap<String, Integer> plan;
+    private int attempts;
+    private RentARoomMessage.Response lastFailure;
+    //every failed attempt was rejected because of overload
+    private boolean onlyOverloaded = true;
+
+    public ReservationPlacer(ActorContext<RentARoomMessage> context, ActorRef<RentARoomMessage> agent,
+                             RentARoomMessage.PlaceReservation request,
+                             List<RentARoomMessage.AvailabilityChanged> candidates, int maxAttempts) {
+        super(context);
+        this.agent = agent;
+        this.request = request;
+        this.candidates = new ArrayList<>(candidates);
+        this.candidates.sort(Comparator.comparingInt(hotel -> hotel.availableRooms));
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * Create a placer that starts with the first attempt.
+     * @param agent the agent that makes the reservations, the parent of the placer.
+     * @param candidates the hotels to choose from, with their last known availability.
+     * @param maxAttempts the maximum amount of reservations that is tried.
+     */
+    public static Behavior<RentARoomMessage> create(ActorRef<RentARoomMessage> agent, RentARoomMessage.PlaceReservation request,
+                                                    List<RentARoomMessage.AvailabilityChanged> candidates, int maxAttempts) {
+        return ActorMetrics.instrument("ReservationPlacer", Behaviors.setup(context -> {
+            ReservationPlacer placer = new ReservationPlacer(context, agent, request, candidates, maxAttempts);
+            return placer.tryNext();
+        }));
+    }
+
+    @Override
+    public Receive<RentARoomMessage> createReceive() {
+        return newReceiveBuilder()
+            .onMessage(RentARoomMessage.ReservationMade.class, this::handleReservationMade)
+            .onMessage(RentARoomMessage.Response.class, this::handleFailure)
+            .build();
+    }
+
+    /**
+     * The attempt succeeded, tell the client where the rooms are.
+     * @param message the reservation number of the attempt.
+     * @return
+     */
+    private Behavior<RentARoomMessage> handleReservationMade(RentARoomMessage.ReservationMade message){
+        request.replyTo.tell(new RentARoomMessage.ReservationPlaced(message.reservationNumber, plan));
+        return Behaviors.stopped();
+    }
+
+    /**
+     * The attempt failed. The aggregator cancelled the rooms it did get, so try the next hotels.
+     * @param message the reason the attempt failed.
+     * @return
+     */
+    private Behavior<RentARoomMessage> handleFailure(RentARoomMessage.Response message){
+        excluded.addAll(plan.keySet());
+        lastFailure = message;
+        onlyOverloaded &= message instanceof RentARoomMessage.Overloaded;
+        return tryNext();
+    }
+
+    /**
+     * Ask the agent to reserve the rooms at the next hotels, or tell the client the reservation failed when there are
+     * no hotels left to try.
+     * @return
+     */
+    private Behavior<RentARoomMessage> tryNext(){
+        plan = attempts < maxAttempts ? nextPlan() : null;
+        if(plan == null){
+            if(lastFailure == null){
+                request.replyTo.tell(new RentARoomMessage.Response("There are not enough free rooms for " +
+                    request.amountOfRooms + " rooms. Your Reservation has been cancelled"));
+            }
+            else if(onlyOverloaded){
+                request.replyTo.tell(lastFailure);
+            }
+            else{
+                request.replyTo.tell(new RentARoomMessage.Response("Could not place " + request.amountOfRooms +
+                    " rooms after " + attempts + " attempts, the last one failed with: " + lastFailure.status));
+            }
+            return Behaviors.stopped();
+        }
+        attempts++;
+        agent.tell(new RentARoomMessage.TryPlacement(new RentARoomMessage.Reservation(plan, request.checkIn,
+            request.checkOut, getContext().getSelf(), request.traceId)));
+        return this;
+    }
+
+    /**
+     * @return the rooms per hotel for the next attempt, from the candidates that did not fail yet. Null if the rooms
+     * do not fit in those candidates.
+     */
+    private HashMap<String, Integer> nextPlan(){
+        List<RentARoomMessage.AvailabilityChanged> left = new ArrayList<>();
+        for (RentARoomMessage.AvailabilityChanged hotel : candidates) {
+            if(hotel.availableRooms > 0 && !excluded.contains(hotel.hotelId)){
+                left.add(hotel);
+            }
+        }
+        HashMap<String, Integer> next = new HashMap<>();
+        RentARoomMessage.AvailabilityChanged bestFit = smallestFitting(left, request.amountOfRooms);
+        if(bestFit != null){
+            next.put(bestFit.hotelId, request.amountOfRooms);
+            return next;
+        }
+        if(request.sameHotel){
+            return null;
+        }
+        //fill the largest hotels until the rest fits in one hotel
+        int remaining = request.amountOfRooms;
+        for (int i = left.size() - 1; i >= 0 && remaining > 0; i--) {
+            RentARoomMessage.AvailabilityChanged rest = smallestFitting(left.subList(0, i + 1), remaining);
+            if(rest != null){
+                next.put(rest.hotelId, remaining);
+                return next;
+            }
+            next.put(left.get(i).hotelId, left.get(i).availableRooms);
+            remaining -= left.get(i).availableRooms;
+        }
+        return remaining == 0 ? next : null;
+    }
+
+    /**
+     * @param hotels hotels ordered by free rooms, fewest first.
+     * @return the first hotel with at least the given amount of free rooms, null if there is none.
+     */
+    private static RentARoomMessage.AvailabilityChanged smallestFitting(List<RentARoomMessage.AvailabilityChanged> hotels, int rooms){
+        for (RentARoomMessage.AvailabilityChanged hotel : hotels) {
+            if(hotel.availableRooms >= rooms){
+                return hotel;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,73 @@
+package nl.saxion.concurrency.actors;
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.javadsl.*;
+import nl.saxion.concurrency.messages.RentARoomMessage;
+import nl.saxion.concurrency.tracing.SpanRecorder;
+
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * One shard of the reservation registry. Every reservation number belongs to exactly one shard (based on the hash of
+ * the number), and that shard knows which aggregator or coordinator handles the reservation. Cancellations and
+ * confirmations are sent to the owning shard, which forwards them. Because every shard is an actor with its own
+ * map, agents never share mutable state.
+ */
+public class ReservationRegistry extends AbstractBehavior<RentARoomMessage> {
+    private final HashMap<String, ActorRef<RentARoomMessage>> reservations = new HashMap<>();
+    private final SpanRecorder spans;
+
+    public ReservationRegistry(ActorContext<RentARoomMessage> context) {
+        super(context);
+        this.spans = SpanRecorder.get(context.getSystem());
+    }
+
+    public static Behavior<RentARoomMessage> create() {
+        return Behaviors.setup(ReservationRegistry::new);
+    }
+
+    /**
+     * Get the shard that owns the given reservation number.
+     * @param reservationNumber the reservation number.
+     * @param shards all the shards of the registry, the order should be the same everywhere.
+     * @return the owning shard.
+     */
+    public static ActorRef<RentARoomMessage> shardFor(String reservationNumber, List<ActorRef<RentARoomMessage>> shards) {
+        return shards.get(Math.floorMod(reservationNumber.hashCode(), shards.size()));
+    }
+
+    @Override
+    public Receive<RentARoomMessage> createReceive() {
+        return newReceiveBuilder()
+            .onMessage(RentARoomMessage.RegisterReservation.class, message -> {reservations.put(message.reservationNumber, message.owner); return Behaviors.same();})
+            .onMessage(RentARoomMessage.RegisterReservations.class, message -> {
+                for (String reservationNumber : message.reservationNumbers) {
+                    reservations.put(reservationNumber, message.owner);
+                }
+                return Behaviors.same();
+            })
+            .onMessage(RentARoomMessage.AggregatorStopped.class, message -> {reservations.remove(message.aggregator.path().name()); return Behaviors.same();})
+            .onMessage(RentARoomMessage.ReservationClosed.class, message -> {reservations.remove(message.reservationNumber); return Behaviors.same();})
+            .onMessage(RentARoomMessage.CancelReservation.class, message -> forward(message.reservationNumber, message, message.replyTo, message.traceId))
+            .onMessage(RentARoomMessage.ConfirmReservation.class, message -> forward(message.reservationNumber, message, message.replyTo, message.traceId))
+            .build();
+    }
+
+    /**
+     * Forward a cancellation or confirmation to the aggregator or coordinator of the reservation.
+     * If there is no reservation by this number, the client is told so.
+     * @return
+     */
+    private Behavior<RentARoomMessage> forward(String reservationNumber, RentARoomMessage message, ActorRef replyTo, long traceId){
+        ActorRef<RentARoomMessage> owner = reservations.get(reservationNumber);
+        if(owner != null){
+            spans.record(traceId, SpanRecorder.Hop.REGISTRY);
+            owner.tell(message);
+        }
+        else{
+            replyTo.tell(new RentARoomMessage.Response("No reservation exists by number " + reservationNumber));
+        }
+        return Behaviors.same();
+    }
+}
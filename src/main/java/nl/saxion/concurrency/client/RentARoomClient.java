@@ -0,0 +1,272 @@
+package nl.saxion.concurrency.client;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Scheduler;
+import akka.actor.typed.javadsl.AskPattern;
+import akka.japi.function.Function;
+import com.typesafe.config.Config;
+import nl.saxion.concurrency.messages.RentARoomMessage;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Asynchronous client of the RentARoom system, for code that embeds the system. Every method sends a request and
+ * returns straight away, so a caller can have thousands of requests in flight (pipelined) without waiting for any
+ * of them.
+ *
+ * At most maxOutstanding requests are sent to the system at the same time. A request above that waits in the
+ * client until an earlier one completes, and when maxQueued requests are waiting already the request fails
+ * straight away with a RejectedExecutionException. A request without a reply within the timeout fails with a
+ * TimeoutException.
+ *
+ * A request that the system answers with an error fails with a RequestFailedException, which tells whether the
+ * system was overloaded (so the request can be tried again later).
+ */
+public class RentARoomClient {
+    private final ActorRef<RentARoomMessage> rentARoom;
+    private final Scheduler scheduler;
+    private final Duration timeout;
+    private final int maxOutstanding;
+    private final int maxQueued;
+
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final ConcurrentLinkedQueue<Runnable> waiting = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Client with the settings in rentaroom.client.
+     * @param system the actor system with RentARoom as guardian.
+     */
+    public RentARoomClient(ActorSystem<RentARoomMessage> system) {
+        this(system, system.scheduler(), system.settings().config().getConfig("rentaroom.client"));
+    }
+
+    private RentARoomClient(ActorRef<RentARoomMessage> rentARoom, Scheduler scheduler, Config config) {
+        this(rentARoom, scheduler, config.getDuration("timeout"), config.getInt("max-outstanding"), config.getInt("max-queued"));
+    }
+
+    /**
+     * @param rentARoom the RentARoom actor.
+     * @param scheduler scheduler for the timeouts.
+     * @param timeout time after which a request without a reply fails.
+     * @param maxOutstanding maximum amount of requests that are sent and not answered yet.
+     * @param maxQueued maximum amount of requests that wait in the client until they can be sent.
+     */
+    public RentARoomClient(ActorRef<RentARoomMessage> rentARoom, Scheduler scheduler, Duration timeout,
+                           int maxOutstanding, int maxQueued) {
+        if(maxOutstanding <= 0 || maxQueued < 0){
+            throw new IllegalArgumentException("maxOutstanding should be more than 0 and maxQueued at least 0");
+        }
+        this.rentARoom = rentARoom;
+        this.scheduler = scheduler;
+        this.timeout = timeout;
+        this.maxOutstanding = maxOutstanding;
+        this.maxQueued = maxQueued;
+    }
+
+    /**
+     * Reserve rooms for one night, starting tonight.
+     * @param rooms the amount of rooms per hotel id.
+     * @return the reservation number.
+     */
+    public CompletionStage<String> reserve(Map<String, Integer> rooms) {
+        return reserve(rooms, LocalDate.now(), LocalDate.now().plusDays(1));
+    }
+
+    /**
+     * Reserve rooms in one or more hotels. The reservation has to be confirmed before the hold expires.
+     * @param rooms the amount of rooms per hotel id.
+     * @param checkIn the first night of the stay.
+     * @param checkOut the day of departure.
+     * @return the reservation number.
+     */
+    public CompletionStage<String> reserve(Map<String, Integer> rooms, LocalDate checkIn, LocalDate checkOut) {
+        HashMap<String, Integer> reservation = new HashMap<>(rooms);
+        return request(replyTo -> new RentARoomMessage.Reservation(reservation, checkIn, checkOut, replyTo))
+            .thenApply(reply -> expect(reply, RentARoomMessage.ReservationMade.class).reservationNumber);
+    }
+
+    /**
+     * Reserve rooms in any hotel, the agent picks the hotels with the fewest free rooms that still fit.
+     * @param rooms the amount of rooms.
+     * @param checkIn the first night of the stay.
+     * @param checkOut the day of departure.
+     * @param sameHotel true if all the rooms have to be in one hotel, else they can be spread over several hotels.
+     * @param namePrefix only hotels with a name that starts with this, null for every hotel.
+     * @return the reservation number and the rooms per hotel id.
+     */
+    public CompletionStage<RentARoomMessage.ReservationPlaced> place(int rooms, LocalDate checkIn, LocalDate checkOut,
+                                                                     boolean sameHotel, String namePrefix) {
+        return request(replyTo -> new RentARoomMessage.PlaceReservation(rooms, checkIn, checkOut, sameHotel, namePrefix, replyTo))
+            .thenApply(reply -> expect(reply, RentARoomMessage.ReservationPlaced.class));
+    }
+
+    /**
+     * @param reservationNumber the number of the reservation to confirm.
+     * @return the status message of the system. A reservation that does not exist (anymore) is an error.
+     */
+    public CompletionStage<String> confirm(String reservationNumber) {
+        return request(replyTo -> new RentARoomMessage.ConfirmReservation(reservationNumber, replyTo))
+            .thenApply(reply -> expect(reply, RentARoomMessage.Succeeded.class).status);
+    }
+
+    /**
+     * @param reservationNumber the number of the reservation to cancel.
+     * @return the status message of the system. A reservation that does not exist (anymore) is an error.
+     */
+    public CompletionStage<String> cancel(String reservationNumber) {
+        return request(replyTo -> new RentARoomMessage.CancelReservation(reservationNumber, replyTo))
+            .thenApply(reply -> expect(reply, RentARoomMessage.Succeeded.class).status);
+    }
+
+    /**
+     * List a page of hotels, ordered by id.
+     * @param fromId the first hotel id to list, null to start at the first hotel.
+     * @param minimumFreeRooms only hotels with at least this amount of free rooms tonight.
+     * @param pageSize maximum amount of hotels in the page.
+     * @return the page, with the id to start the next page from.
+     */
+    public CompletionStage<RentARoomMessage.HotelsPage> list(String fromId, int minimumFreeRooms, int pageSize) {
+        return request(replyTo -> new RentARoomMessage.ListHotelsPage(replyTo, fromId, null, minimumFreeRooms, true, pageSize))
+            .thenApply(reply -> expect(reply, RentARoomMessage.HotelsPage.class));
+    }
+
+    /**
+     * Find the hotels with the most free rooms tonight.
+     * @param minimumFreeRooms only hotels with at least this amount of free rooms tonight.
+     * @param limit maximum amount of hotels.
+     * @param namePrefix only hotels with a name that starts with this, null for every hotel.
+     * @return the hotels, most free rooms first.
+     */
+    public CompletionStage<List<RentARoomMessage.HotelSummary>> findAvailable(int minimumFreeRooms, int limit, String namePrefix) {
+        return request(replyTo -> new RentARoomMessage.FindAvailableHotels(replyTo, minimumFreeRooms, limit, namePrefix))
+            .thenApply(reply -> expect(reply, RentARoomMessage.HotelsPage.class).hotels);
+    }
+
+    /**
+     * @param name the name of the hotel.
+     * @param amountOfRooms the amount of rooms of the hotel.
+     * @return the id of the new hotel.
+     */
+    public CompletionStage<String> createHotel(String name, int amountOfRooms) {
+        return request(replyTo -> new RentARoomMessage.CreateHotel(replyTo, name, amountOfRooms))
+            .thenApply(reply -> expect(reply, RentARoomMessage.HotelCreated.class).hotelId);
+    }
+
+    /**
+     * @return the amount of requests that are sent and not answered yet.
+     */
+    public int outstanding() {
+        return outstanding.get();
+    }
+
+    /**
+     * @return the amount of requests that wait in the client until they can be sent.
+     */
+    public int queued() {
+        return queued.get();
+    }
+
+    /**
+     * Send the request when less than maxOutstanding requests are in flight, otherwise queue it.
+     */
+    private CompletionStage<RentARoomMessage> request(Function<ActorRef<RentARoomMessage>, RentARoomMessage> message) {
+        CompletableFuture<RentARoomMessage> result = new CompletableFuture<>();
+        Runnable send = () -> AskPattern.ask(rentARoom, message, timeout, scheduler).whenComplete((reply, failure) -> {
+            outstanding.decrementAndGet();
+            sendWaiting();
+            if(failure != null){
+                result.completeExceptionally(failure);
+            }
+            else{
+                result.complete(reply);
+            }
+        });
+        //a request only waits when all the slots are taken, and it does not pass the requests that wait already
+        if(waiting.isEmpty() && claimSlot()){
+            send.run();
+            return result;
+        }
+        if(queued.incrementAndGet() > maxQueued){
+            queued.decrementAndGet();
+            result.completeExceptionally(new RejectedExecutionException(
+                "Too many requests are waiting in the client (" + maxQueued + ")"));
+            return result;
+        }
+        waiting.add(send);
+        //a slot may have been freed after the claim failed
+        sendWaiting();
+        return result;
+    }
+
+    /**
+     * Send waiting requests as long as there is room for them. Requests are only taken from the queue after a slot is
+     * claimed, so the amount of outstanding requests never goes over the maximum, whichever thread sends them.
+     */
+    private void sendWaiting() {
+        while (claimSlot()) {
+            Runnable request = waiting.poll();
+            if(request == null){
+                outstanding.decrementAndGet();
+                //a request may have been queued after the poll, while this thread still had the slot
+                if(waiting.isEmpty()){
+                    return;
+                }
+                continue;
+            }
+            queued.decrementAndGet();
+            request.run();
+        }
+    }
+
+    /**
+     * @return true if a slot for an outstanding request was claimed, false if all the slots are taken.
+     */
+    private boolean claimSlot() {
+        while (true) {
+            int current = outstanding.get();
+            if(current >= maxOutstanding){
+                return false;
+            }
+            if(outstanding.compareAndSet(current, current + 1)){
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return the reply as the expected type, or throws a RequestFailedException when the system replied otherwise.
+     */
+    private static <T> T expect(RentARoomMessage reply, Class<T> expected) {
+        if(expected.isInstance(reply)){
+            return expected.cast(reply);
+        }
+        if(reply instanceof RentARoomMessage.Response){
+            throw new RequestFailedException(((RentARoomMessage.Response) reply).status,
+                reply instanceof RentARoomMessage.Overloaded);
+        }
+        throw new RequestFailedException("Unexpected reply " + reply.getClass().getSimpleName(), false);
+    }
+
+    /**
+     * The system answered a request with an error.
+     */
+    public static class RequestFailedException extends RuntimeException {
+        public final boolean overloaded;
+
+        public RequestFailedException(String status, boolean overloaded) {
+            super(status);
+            this.overloaded = overloaded;
+        }
+    }
+}
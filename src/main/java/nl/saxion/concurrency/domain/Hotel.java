@@ -1,133 +1,479 @@
 package nl.saxion.concurrency.domain;
 
 import java.io.Serializable;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
+import java.time.LocalDate;
 import java.util.UUID;
-import java.util.stream.Collectors;
 
 public class Hotel implements Serializable {
+    //amount of nights (starting tonight) that can be booked
+    public static final int HORIZON_NIGHTS = 365;
 
-    //Generate a unique random id
+    //Unique id, a random one is generated if no id is given
     //because id is final we can make it public
-    public final String id = UUID.randomUUID().toString();
+    public final String id;
     public final String name;
 
-    //hashmap of roomID and Room
-    HashMap<String, Room> rooms = new HashMap<>();
-    int occupiedRooms = 0;
+    //Rooms are addressed by their index (room number). The calendar is stored per night as two bitmaps
+    //over all the rooms: bit r of night n in free tells if room r can still be booked that night, and in
+    //pending if it is held by a reservation that waits for its confirmation. A room that is in neither is
+    //reserved. Because the bitmaps are stored night by night we can find the rooms that are free for a
+    //whole stay by AND-ing the words of only the nights of that stay.
+    //The nights form a ring: a night is stored at its epoch day modulo HORIZON_NIGHTS. firstNight is the oldest
+    //night in the ring. When the date changes the nights that passed are cleared, and used again for the nights
+    //that come within the horizon.
+    private LocalDate firstNight;
+    private final int amountOfRooms;
+    private final int wordsPerNight;
+    private final long[] free;
+    private final long[] pending;
+
+    //amount of free rooms per night, so we can reject a reservation without looking at any room
+    private final int[] freeCount;
+
+    //the hotel is listed far more often than the rooms of tonight change, so the rendering of tonight is kept until
+    //a room changes on that night. Not part of the state of the hotel.
+    private transient String rendering;
+    private transient long renderedNight;
 
     public Hotel(String name, int amountOfRooms){
+        this(UUID.randomUUID().toString(), name, amountOfRooms);
+    }
+
+    public Hotel(String id, String name, int amountOfRooms){
+        this(id, name, amountOfRooms, LocalDate.now());
+    }
+
+    public Hotel(String id, String name, int amountOfRooms, LocalDate firstNight){
+        this.id = id;
         this.name = name;
-        for (int i = 0; i < amountOfRooms; i++) {
-            Room room = new Room();
-            rooms.put(room.roomID, room);
+        this.amountOfRooms = amountOfRooms;
+        this.firstNight = firstNight;
+        this.wordsPerNight = (amountOfRooms + 63) >>> 6;
+        this.free = new long[HORIZON_NIGHTS * wordsPerNight];
+        this.pending = new long[HORIZON_NIGHTS * wordsPerNight];
+        this.freeCount = new int[HORIZON_NIGHTS];
+
+        //mark every room free on every night. The last word of a night is only partially used.
+        for (int slot = 0; slot < HORIZON_NIGHTS; slot++) {
+            clearNight(slot);
         }
     }
 
-    public ArrayList<String> reserveRooms(int amount) throws ReservationException {
-        ArrayList<String> reservedRoomIds = new ArrayList<>();
+    /**
+     * Restore a hotel from a stored calendar (see getTakenCalendar and getPendingCalendar).
+     * @param firstNight the first night of the stored calendar.
+     * @param taken per night the bitmap of the rooms that are reserved or pending, starting at firstNight.
+     * @param pending per night the bitmap of the rooms that are pending, starting at firstNight.
+     */
+    public Hotel(String id, String name, int amountOfRooms, LocalDate firstNight, long[] taken, long[] pending){
+        this(id, name, amountOfRooms, firstNight);
+        if(taken.length != free.length || pending.length != this.pending.length){
+            throw new IllegalArgumentException("Calendar of hotel " + id + " does not match " + amountOfRooms + " rooms");
+        }
+        for (int night = 0; night < HORIZON_NIGHTS; night++) {
+            int slot = slot(firstNight.toEpochDay() + night);
+            int count = 0;
+            for (int word = 0; word < wordsPerNight; word++) {
+                int index = slot * wordsPerNight + word;
+                int stored = night * wordsPerNight + word;
+                free[index] = allRooms(word) & ~taken[stored];
+                this.pending[index] = pending[stored];
+                count += Long.bitCount(free[index]);
+            }
+            freeCount[slot] = count;
+        }
+    }
 
-        List<Room> availableRooms = getAvailableRooms();
-        if(availableRooms.size() < amount){
-            throw new ReservationException("Trying to reserve " + amount + " rooms at hotel " +
-                this.id + " while only " + availableRooms.size() + " rooms are available.");
+    /**
+     * Copy constructor, the calendar of the copy is independent of the original.
+     */
+    public Hotel(Hotel other){
+        this.id = other.id;
+        this.name = other.name;
+        this.firstNight = other.firstNight;
+        this.amountOfRooms = other.amountOfRooms;
+        this.wordsPerNight = other.wordsPerNight;
+        this.free = other.free.clone();
+        this.pending = other.pending.clone();
+        this.freeCount = other.freeCount.clone();
+    }
+
+    public int getAmountOfRooms(){
+        return amountOfRooms;
+    }
+
+    /**
+     * @return the first night of the calendar. It moves forward with the date, as soon as the hotel is used.
+     */
+    public LocalDate getFirstNight(){
+        return firstNight;
+    }
+
+    /**
+     * @return per night the bitmap of the rooms that are reserved or pending, starting at the first night. Most bits
+     * are 0, which keeps the stored calendar small.
+     */
+    public long[] getTakenCalendar(){
+        long[] taken = new long[free.length];
+        for (int night = 0; night < HORIZON_NIGHTS; night++) {
+            int slot = slot(firstNight.toEpochDay() + night);
+            for (int word = 0; word < wordsPerNight; word++) {
+                taken[night * wordsPerNight + word] = allRooms(word) & ~free[slot * wordsPerNight + word];
+            }
         }
-        for (int i = 0; i < amount; i++) {
-            Room room = availableRooms.get(i);
-            room.reserve();
-            occupiedRooms++;
-            reservedRoomIds.add(room.roomID);
+        return taken;
+    }
+
+    /**
+     * @return per night the bitmap of the rooms that are pending, starting at the first night.
+     */
+    public long[] getPendingCalendar(){
+        long[] stored = new long[pending.length];
+        for (int night = 0; night < HORIZON_NIGHTS; night++) {
+            int slot = slot(firstNight.toEpochDay() + night);
+            System.arraycopy(pending, slot * wordsPerNight, stored, night * wordsPerNight, wordsPerNight);
         }
-        return reservedRoomIds;
+        return stored;
     }
 
-    private List<Room> getAvailableRooms(){
-        List<Room> availableRooms = rooms.values().stream().filter(x -> x.isAvailable()).collect(Collectors.toList());
-        return availableRooms;
+    /**
+     * @return a bitmap over the rooms without any room in it, to collect rooms that findAvailableRooms should skip.
+     */
+    public long[] newRoomMask(){
+        return new long[wordsPerNight];
     }
 
-    public void cancelReservation(String roomUUID) throws ReservationException {
-        if(!rooms.containsKey(roomUUID)){
-            throw new ReservationException("Hotel " + id + " does not contain a room with id " + roomUUID);
+    /**
+     * Add rooms to a bitmap from newRoomMask.
+     */
+    public static void addRooms(long[] mask, int[] rooms){
+        for (int room : rooms) {
+            mask[room >>> 6] |= 1L << room;
         }
-        else{
-            rooms.get(roomUUID).cancelReservation();
-            occupiedRooms--;
+    }
+
+    /**
+     * @return the amount of rooms that are free tonight.
+     */
+    public int getAvailableRoomCount(){
+        advance();
+        long tonight = LocalDate.now().toEpochDay();
+        return inCalendar(tonight) ? freeCount[slot(tonight)] : amountOfRooms;
+    }
+
+    /**
+     * Get the lowest amount of free rooms over all the nights of the given stay. This is an upper bound for
+     * the amount of rooms that can be reserved for the whole stay.
+     * @param checkIn the date of the first night.
+     * @param checkOut the date of departure (this night is not included).
+     * @return the amount of free rooms on the busiest night of the stay.
+     * @throws ReservationException if the stay starts in the past or is not within the booking horizon of this hotel.
+     */
+    public int getAvailableRoomCount(LocalDate checkIn, LocalDate checkOut) throws ReservationException {
+        advance();
+        checkNewStay(checkIn, checkOut);
+        int available = amountOfRooms;
+        for (long night = checkIn.toEpochDay(); night < checkOut.toEpochDay(); night++) {
+            available = Math.min(available, freeCount[slot(night)]);
         }
+        return available;
     }
 
-    public void confirmReservation(String roomUUID) throws ReservationException {
-        if(!rooms.containsKey(roomUUID)){
-            throw new ReservationException("Hotel " + id + " does not contain a room with id " + roomUUID);
+    /**
+     * Reserve rooms that are free for every night from checkIn until checkOut. Either all the rooms are
+     * reserved or none of them.
+     * @param amount the amount of rooms to reserve.
+     * @param checkIn the date of the first night.
+     * @param checkOut the date of departure (this night is not included).
+     * @return the numbers of the reserved rooms.
+     * @throws ReservationException if the dates are invalid or there are not enough rooms free for the whole stay.
+     */
+    public int[] reserveRooms(int amount, LocalDate checkIn, LocalDate checkOut) throws ReservationException {
+        int[] reservedRooms = findAvailableRooms(amount, checkIn, checkOut);
+        reserveRooms(reservedRooms, checkIn, checkOut);
+        return reservedRooms;
+    }
+
+    /**
+     * Find rooms that are free for every night from checkIn until checkOut, without reserving them.
+     * @param amount the amount of rooms to find.
+     * @param checkIn the date of the first night.
+     * @param checkOut the date of departure (this night is not included).
+     * @return the numbers of the rooms that are free.
+     * @throws ReservationException if the dates are invalid or there are not enough rooms free for the whole stay.
+     */
+    public int[] findAvailableRooms(int amount, LocalDate checkIn, LocalDate checkOut) throws ReservationException {
+        return findAvailableRooms(amount, checkIn, checkOut, null);
+    }
+
+    /**
+     * Find rooms that are free for every night from checkIn until checkOut, without reserving them and without
+     * the given rooms. This way several reservations can be picked before any of them is reserved.
+     * @param amount the amount of rooms to find.
+     * @param checkIn the date of the first night.
+     * @param checkOut the date of departure (this night is not included).
+     * @param excluded rooms that may not be picked (see newRoomMask), or null.
+     * @return the numbers of the rooms that are free.
+     * @throws ReservationException if the dates are invalid or there are not enough rooms free for the whole stay.
+     */
+    public int[] findAvailableRooms(int amount, LocalDate checkIn, LocalDate checkOut, long[] excluded) throws ReservationException {
+        if(amount <= 0){
+            throw new ReservationException("Trying to reserve " + amount + " rooms at hotel " + this.id +
+                ", the amount of rooms should be more than 0.");
+        }
+        int available = getAvailableRoomCount(checkIn, checkOut);
+        if(available < amount){
+            throw new ReservationException("Trying to reserve " + amount + " rooms at hotel " +
+                this.id + " while only " + available + " rooms are available from " + checkIn + " to " + checkOut + ".");
+        }
+        long from = checkIn.toEpochDay();
+        long to = checkOut.toEpochDay();
+
+        //find the rooms that are free on every night of the stay, one word (64 rooms) at a time
+        int[] rooms = new int[amount];
+        int found = 0;
+        for (int word = 0; word < wordsPerNight && found < amount; word++) {
+            long candidates = excluded == null ? -1L : ~excluded[word];
+            for (long night = from; night < to && candidates != 0; night++) {
+                candidates &= free[slot(night) * wordsPerNight + word];
+            }
+            while (candidates != 0 && found < amount) {
+                int bit = Long.numberOfTrailingZeros(candidates);
+                rooms[found++] = (word << 6) + bit;
+                candidates &= candidates - 1;
+            }
         }
-        else{
-            rooms.get(roomUUID).confirmReservation();
+        if(found < amount){
+            throw new ReservationException("Trying to reserve " + amount + " rooms at hotel " + this.id +
+                " while only " + found + " rooms are free for every night from " + checkIn + " to " + checkOut + ".");
         }
+        return rooms;
     }
 
-    @Override
-    public String toString() {
-        String returnString= "";
+    /**
+     * Reserve the given rooms for every night from checkIn until checkOut. All rooms are checked first, so either
+     * all rooms are reserved or none of them are. Nights that already passed are skipped, so a stored reservation
+     * can be applied again after its first night.
+     * @param rooms the numbers of the rooms to reserve, every room once.
+     * @param checkIn the date of the first night.
+     * @param checkOut the date of departure (this night is not included).
+     * @throws ReservationException if the dates are invalid or one of the rooms is not free for the whole stay.
+     */
+    public void reserveRooms(int[] rooms, LocalDate checkIn, LocalDate checkOut) throws ReservationException {
+        advance();
+        long from = firstNightOf(checkIn, checkOut);
+        long to = checkOut.toEpochDay();
+        checkRooms(rooms, from, to, Status.Available, "reserve");
+        for (int room : rooms) {
+            int word = room >>> 6;
+            long mask = 1L << room;
+            for (long night = from; night < to; night++) {
+                int slot = slot(night);
+                free[slot * wordsPerNight + word] &= ~mask;
+                pending[slot * wordsPerNight + word] |= mask;
+                freeCount[slot]--;
+            }
+        }
+        invalidateRendering(from, to);
+    }
 
-        returnString += "Hotel: " + name + " (ID: " + id + ")";
-        returnString += "\n - Rooms available: " + (rooms.size()-occupiedRooms) +"/"+ rooms.size();
-        for (Room room : rooms.values()) {
-            returnString += "\n    - " + room.toString();
+    /**
+     * Cancel the pending reservation of the given rooms for the given stay. All rooms are checked first, so either
+     * all rooms are made available again or none of them are. Nights that already passed are skipped.
+     * @param rooms the numbers of the rooms to cancel, every room once.
+     * @param checkIn the date of the first night of the reservation.
+     * @param checkOut the date of departure of the reservation.
+     * @throws ReservationException if one of the rooms does not exist or does not have a pending reservation.
+     */
+    public void cancelReservation(int[] rooms, LocalDate checkIn, LocalDate checkOut) throws ReservationException {
+        advance();
+        long from = firstNightOf(checkIn, checkOut);
+        long to = checkOut.toEpochDay();
+        checkRooms(rooms, from, to, Status.PendingReservation, "remove a reservation from");
+        for (int room : rooms) {
+            int word = room >>> 6;
+            long mask = 1L << room;
+            for (long night = from; night < to; night++) {
+                int slot = slot(night);
+                //the room is available again, so set it free in the calendar
+                free[slot * wordsPerNight + word] |= mask;
+                pending[slot * wordsPerNight + word] &= ~mask;
+                freeCount[slot]++;
+            }
         }
+        invalidateRendering(from, to);
+    }
 
-        return returnString;
+    /**
+     * Confirm the pending reservation of the given rooms for the given stay. All rooms are checked first, so either
+     * all rooms are confirmed or none of them are. Nights that already passed are skipped.
+     * @param rooms the numbers of the rooms to confirm, every room once.
+     * @param checkIn the date of the first night of the reservation.
+     * @param checkOut the date of departure of the reservation.
+     * @throws ReservationException if one of the rooms does not exist or does not have a pending reservation.
+     */
+    public void confirmReservation(int[] rooms, LocalDate checkIn, LocalDate checkOut) throws ReservationException {
+        advance();
+        long from = firstNightOf(checkIn, checkOut);
+        long to = checkOut.toEpochDay();
+        checkRooms(rooms, from, to, Status.PendingReservation, "confirm a reservation on");
+        for (int room : rooms) {
+            int word = room >>> 6;
+            long mask = 1L << room;
+            for (long night = from; night < to; night++) {
+                pending[slot(night) * wordsPerNight + word] &= ~mask;
+            }
+        }
+        invalidateRendering(from, to);
     }
-}
 
-class Room {
-    private Status status;
-    public final String roomID;
-    public Room(){
-        status = Status.Available;
-        roomID = UUID.randomUUID().toString();
+    /**
+     * Move the calendar forward to tonight. The nights that passed are cleared, they are used for the nights at the
+     * end of the horizon.
+     */
+    private void advance(){
+        long tonight = LocalDate.now().toEpochDay();
+        long first = firstNight.toEpochDay();
+        if(tonight <= first){
+            return;
+        }
+        for (long night = first; night < Math.min(tonight, first + HORIZON_NIGHTS); night++) {
+            clearNight(slot(night));
+        }
+        firstNight = LocalDate.ofEpochDay(tonight);
+        rendering = null;
     }
 
-    public boolean isAvailable(){
-        return status == Status.Available;
+    /**
+     * Mark every room free on a night of the calendar.
+     */
+    private void clearNight(int slot){
+        int offset = slot * wordsPerNight;
+        for (int word = 0; word < wordsPerNight; word++) {
+            free[offset + word] = allRooms(word);
+            pending[offset + word] = 0;
+        }
+        freeCount[slot] = amountOfRooms;
     }
 
-    public boolean reserve() throws ReservationException {
-        if(status == Status.Available){
-            status = Status.PendingReservation;
-            return true;
+    /**
+     * Validate a stay that is booked now: it has to start tonight or later and end within the horizon.
+     */
+    private void checkNewStay(LocalDate checkIn, LocalDate checkOut) throws ReservationException {
+        firstNightOf(checkIn, checkOut);
+        if(checkIn.isBefore(latest(firstNight, LocalDate.now()))){
+            throw new ReservationException("Hotel " + id + " can only be booked from " + latest(firstNight, LocalDate.now()) +
+                " to " + firstNight.plusDays(HORIZON_NIGHTS) + ", not from " + checkIn + ".");
+        }
+    }
+
+    /**
+     * Validate the stay and get the first night of it that is still in the calendar.
+     * @return the epoch day of that night, which is the check out date or later if the whole stay has passed.
+     */
+    private long firstNightOf(LocalDate checkIn, LocalDate checkOut) throws ReservationException {
+        if(checkIn == null || checkOut == null || !checkOut.isAfter(checkIn)){
+            throw new ReservationException("Invalid stay from " + checkIn + " to " + checkOut +
+                ", the check out date should be after the check in date.");
+        }
+        if(checkOut.toEpochDay() > firstNight.toEpochDay() + HORIZON_NIGHTS){
+            throw new ReservationException("Hotel " + id + " can only be booked from " + latest(firstNight, LocalDate.now()) +
+                " to " + firstNight.plusDays(HORIZON_NIGHTS) + ".");
         }
-        else{
-            throw new ReservationException("Room with id " + roomID + " is not available.");
+        return Math.max(checkIn.toEpochDay(), firstNight.toEpochDay());
+    }
+
+    private static LocalDate latest(LocalDate a, LocalDate b){
+        return a.isAfter(b) ? a : b;
+    }
+
+    private boolean inCalendar(long night){
+        long first = firstNight.toEpochDay();
+        return night >= first && night < first + HORIZON_NIGHTS;
+    }
+
+    /**
+     * @return the place of a night in the calendar.
+     */
+    private static int slot(long night){
+        return (int) Math.floorMod(night, (long) HORIZON_NIGHTS);
+    }
+
+    /**
+     * @return the bits of all the rooms in the given word of a night, the last word is only partially used.
+     */
+    private long allRooms(int word){
+        return word < wordsPerNight - 1 || (amountOfRooms & 63) == 0 ? -1L : (1L << (amountOfRooms & 63)) - 1;
+    }
+
+    /**
+     * Check that every room exists, is given once and has the expected status on every night from from until to.
+     */
+    private void checkRooms(int[] rooms, long from, long to, Status expected, String action) throws ReservationException {
+        long[] seen = rooms.length > 1 ? new long[wordsPerNight] : null;
+        for (int room : rooms) {
+            checkStatus(room, from, to, expected, action);
+            if(seen != null){
+                long mask = 1L << room;
+                if((seen[room >>> 6] & mask) != 0){
+                    throw new ReservationException("Trying to " + action + " room " + room + " of hotel " + id + " more than once");
+                }
+                seen[room >>> 6] |= mask;
+            }
         }
     }
 
-    public boolean cancelReservation() throws ReservationException {
-        if(status == Status.PendingReservation){
-            status = Status.Available;
-            return true;
+    private void checkStatus(int room, long from, long to, Status expected, String action) throws ReservationException {
+        if(room < 0 || room >= amountOfRooms){
+            throw new ReservationException("Hotel " + id + " does not contain a room with number " + room);
         }
-        else{
-            throw new ReservationException("Trying to remove a reservation from room " + roomID + " while it's status is " + status.toString() +
-                " instead of Available");
+        for (long night = from; night < to; night++) {
+            Status status = statusOf(room, night);
+            if(status != expected){
+                throw new ReservationException("Trying to " + action + " room " + room + " on " + LocalDate.ofEpochDay(night) +
+                    " while it's status is " + status + " instead of " + expected);
+            }
         }
     }
 
-    public boolean confirmReservation() throws ReservationException {
-        if(status == Status.PendingReservation){
-            status = Status.Reserved;
-            return true;
+    private Status statusOf(int room, long night){
+        int index = slot(night) * wordsPerNight + (room >>> 6);
+        long mask = 1L << room;
+        if((free[index] & mask) != 0){
+            return Status.Available;
         }
-        else{
-            throw new ReservationException("Trying to confirm a reservation on room " + roomID + " while it's status is " + status.toString() +
-                " instead of PendingReservation");
+        return (pending[index] & mask) != 0 ? Status.PendingReservation : Status.Reserved;
+    }
+
+    /**
+     * Forget the rendering if it shows one of the nights that changed.
+     */
+    private void invalidateRendering(long from, long to){
+        if(rendering != null && renderedNight >= from && renderedNight < to){
+            rendering = null;
         }
     }
 
     @Override
     public String toString() {
-        return "RoomID: " + roomID + " (" + (status.toString()) + ")";
+        advance();
+        long tonight = LocalDate.now().toEpochDay();
+        if(rendering != null && renderedNight == tonight){
+            return rendering;
+        }
+        //about 30 characters for every room. Only the string is kept, the builder is garbage straight away.
+        StringBuilder builder = new StringBuilder(128 + amountOfRooms * 32);
+        builder.append("Hotel: ").append(name).append(" (ID: ").append(id).append(")")
+            .append("\n - Rooms available tonight: ").append(getAvailableRoomCount()).append("/").append(amountOfRooms);
+        boolean bookable = inCalendar(tonight);
+        for (int room = 0; room < amountOfRooms; room++) {
+            Status status = bookable ? statusOf(room, tonight) : Status.Available;
+            builder.append("\n    - Room: ").append(room).append(" (").append(status).append(")");
+        }
+
+        rendering = builder.toString();
+        renderedNight = tonight;
+        return rendering;
     }
 
     private enum Status{
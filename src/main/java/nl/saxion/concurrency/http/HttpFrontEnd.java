@@ -0,0 +1,405 @@
+package nl.saxion.concurrency.http;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.javadsl.AskPattern;
+import akka.japi.function.Function;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.typesafe.config.Config;
+import nl.saxion.concurrency.messages.RentARoomMessage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * HTTP/JSON API of the system, with the same commands as the command loop of StartAkka. The parameters are passed in
+ * the query string, the replies are JSON.
+ *
+ *   GET    /hotels?from=&amp;to=&amp;minFree=&amp;details=&amp;limit=     list a page of hotels
+ *   GET    /hotels/available?minFree=&amp;prefix=&amp;limit=         the hotels with the most free rooms
+ *   POST   /hotels?name=&amp;rooms=                                create a hotel
+ *   POST   /agents                                             spawn an agent
+ *   POST   /reservations?hotel=id:rooms&amp;checkIn=&amp;nights=     request a reservation, hotel can be repeated
+ *   POST   /reservations/any?rooms=&amp;checkIn=&amp;nights=&amp;sameHotel=&amp;prefix=
+ *                                                              reserve rooms in the hotels that fit best
+ *   POST   /reservations/{number}/confirm                      confirm a reservation
+ *   DELETE /reservations/{number}                              cancel a reservation
+ *
+ * A reply that creates something (a hotel or a reservation) is 201, another success is 200. When the system refuses a
+ * request, for example because there are not enough rooms or the reservation does not exist, the reply is 409 with
+ * the reason, and 503 when it is overloaded. A request with invalid parameters is 400.
+ *
+ * A request is never waited for. The handler sends the message with an ask and returns, the reply is written when the
+ * ask completes, so the amount of requests in flight is not limited by the threads of the server. A reply is written
+ * on the threads of the server instead of the threads of the actors, because writing to a slow client can block.
+ */
+public class HttpFrontEnd {
+    private final ActorSystem<RentARoomMessage> system;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Duration askTimeout;
+    private final int maxPageSize;
+
+    private HttpFrontEnd(ActorSystem<RentARoomMessage> system, HttpServer server, ExecutorService executor, Config config) {
+        this.system = system;
+        this.server = server;
+        this.executor = executor;
+        this.askTimeout = config.getDuration("ask-timeout");
+        this.maxPageSize = config.getInt("max-page-size");
+    }
+
+    /**
+     * Start the HTTP server with the settings in rentaroom.http.
+     * @param system the actor system with RentARoom as guardian.
+     * @return the running front end, stop it with stop().
+     */
+    public static HttpFrontEnd start(ActorSystem<RentARoomMessage> system) throws IOException {
+        Config config = system.settings().config().getConfig("rentaroom.http");
+        HttpServer server = HttpServer.create(
+            new InetSocketAddress(config.getString("host"), config.getInt("port")), config.getInt("backlog"));
+        ExecutorService executor = Executors.newFixedThreadPool(config.getInt("threads"));
+        HttpFrontEnd frontEnd = new HttpFrontEnd(system, server, executor, config);
+        server.createContext("/hotels", frontEnd::handleHotels);
+        server.createContext("/agents", frontEnd::handleAgents);
+        server.createContext("/reservations", frontEnd::handleReservations);
+        server.setExecutor(executor);
+        server.start();
+        return frontEnd;
+    }
+
+    /**
+     * @return the port the server listens on, also when it was started on port 0.
+     */
+    public int port() {
+        return server.getAddress().getPort();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    private void handleHotels(HttpExchange exchange) {
+        HashMap<String, List<String>> query = parseQuery(exchange);
+        if(query == null){
+            return;
+        }
+        if(exchange.getRequestURI().getPath().equals("/hotels/available") && exchange.getRequestMethod().equals("GET")){
+            int limit = Math.min(maxPageSize, intParameter(query, "limit", 20));
+            int minimumFreeRooms = intParameter(query, "minFree", 0);
+            String namePrefix = parameter(query, "prefix");
+            if(limit <= 0 || minimumFreeRooms < 0){
+                respond(exchange, 400, error("limit should be more than 0 and minFree at least 0"));
+                return;
+            }
+            ask(exchange, replyTo -> new RentARoomMessage.FindAvailableHotels(replyTo, minimumFreeRooms, limit, namePrefix));
+        }
+        else if(exchange.getRequestMethod().equals("GET")){
+            int limit = Math.min(maxPageSize, intParameter(query, "limit", 20));
+            int minimumFreeRooms = intParameter(query, "minFree", 0);
+            boolean summaryOnly = !"true".equals(parameter(query, "details"));
+            String fromId = parameter(query, "from");
+            String toId = parameter(query, "to");
+            if(limit <= 0 || minimumFreeRooms < 0){
+                respond(exchange, 400, error("limit should be more than 0 and minFree at least 0"));
+                return;
+            }
+            ask(exchange, replyTo -> new RentARoomMessage.ListHotelsPage(replyTo, fromId, toId, minimumFreeRooms, summaryOnly, limit));
+        }
+        else if(exchange.getRequestMethod().equals("POST")){
+            String name = parameter(query, "name");
+            int rooms = intParameter(query, "rooms", 0);
+            if(name == null || name.isEmpty() || rooms <= 0){
+                respond(exchange, 400, error("name is required and rooms should be more than 0"));
+                return;
+            }
+            ask(exchange, replyTo -> new RentARoomMessage.CreateHotel(replyTo, name, rooms));
+        }
+        else{
+            respond(exchange, 405, error("Use GET or POST"));
+        }
+    }
+
+    private void handleAgents(HttpExchange exchange) {
+        if(!exchange.getRequestMethod().equals("POST")){
+            respond(exchange, 405, error("Use POST"));
+            return;
+        }
+        ask(exchange, RentARoomMessage.SpawnAgent::new);
+    }
+
+    private void handleReservations(HttpExchange exchange) {
+        String[] path = exchange.getRequestURI().getPath().split("/");
+        String method = exchange.getRequestMethod();
+        //path[0] is empty, path[1] is "reservations"
+        if(path.length == 2 && method.equals("POST")){
+            requestReservation(exchange);
+        }
+        else if(path.length == 3 && path[2].equals("any") && method.equals("POST")){
+            placeReservation(exchange);
+        }
+        else if(path.length == 4 && path[3].equals("confirm") && method.equals("POST")){
+            String reservationNumber = path[2];
+            ask(exchange, replyTo -> new RentARoomMessage.ConfirmReservation(reservationNumber, replyTo));
+        }
+        else if(path.length == 3 && method.equals("DELETE")){
+            String reservationNumber = path[2];
+            ask(exchange, replyTo -> new RentARoomMessage.CancelReservation(reservationNumber, replyTo));
+        }
+        else{
+            respond(exchange, 404, error("Unknown reservation request"));
+        }
+    }
+
+    private void requestReservation(HttpExchange exchange) {
+        HashMap<String, List<String>> query = parseQuery(exchange);
+        if(query == null){
+            return;
+        }
+        HashMap<String, Integer> reservation = new HashMap<>();
+        LocalDate checkIn;
+        int nights;
+        try {
+            for (String hotel : query.getOrDefault("hotel", new ArrayList<>())) {
+                int separator = hotel.lastIndexOf(':');
+                int rooms = separator < 0 ? 1 : Integer.parseInt(hotel.substring(separator + 1));
+                if(rooms <= 0 || reservation.put(separator < 0 ? hotel : hotel.substring(0, separator), rooms) != null){
+                    respond(exchange, 400, error("Every hotel should be given once, with more than 0 rooms"));
+                    return;
+                }
+            }
+            String checkInString = parameter(query, "checkIn");
+            checkIn = checkInString == null ? LocalDate.now() : LocalDate.parse(checkInString);
+            nights = intParameter(query, "nights", 1);
+        } catch (NumberFormatException | DateTimeParseException e) {
+            respond(exchange, 400, error("Invalid parameter: " + e.getMessage()));
+            return;
+        }
+        if(reservation.isEmpty() || nights <= 0){
+            respond(exchange, 400, error("At least one hotel is required and nights should be more than 0"));
+            return;
+        }
+        LocalDate checkOut = checkIn.plusDays(nights);
+        ask(exchange, replyTo -> new RentARoomMessage.Reservation(reservation, checkIn, checkOut, replyTo));
+    }
+
+    private void placeReservation(HttpExchange exchange) {
+        HashMap<String, List<String>> query = parseQuery(exchange);
+        if(query == null){
+            return;
+        }
+        int rooms = intParameter(query, "rooms", 1);
+        int nights = intParameter(query, "nights", 1);
+        boolean sameHotel = "true".equals(parameter(query, "sameHotel"));
+        String namePrefix = parameter(query, "prefix");
+        LocalDate checkIn;
+        try {
+            String checkInString = parameter(query, "checkIn");
+            checkIn = checkInString == null ? LocalDate.now() : LocalDate.parse(checkInString);
+        } catch (DateTimeParseException e) {
+            respond(exchange, 400, error("Invalid parameter: " + e.getMessage()));
+            return;
+        }
+        if(rooms <= 0 || nights <= 0){
+            respond(exchange, 400, error("rooms and nights should be more than 0"));
+            return;
+        }
+        LocalDate checkOut = checkIn.plusDays(nights);
+        ask(exchange, replyTo -> new RentARoomMessage.PlaceReservation(rooms, checkIn, checkOut, sameHotel, namePrefix, replyTo));
+    }
+
+    /**
+     * Send a message to the system and write the reply when it comes in, without waiting for it.
+     * @param exchange the request.
+     * @param message creates the message from the actor to reply to.
+     */
+    private void ask(HttpExchange exchange, Function<ActorRef<RentARoomMessage>, RentARoomMessage> message) {
+        CompletionStage<RentARoomMessage> result = AskPattern.ask(system, message, askTimeout, system.scheduler());
+        result.whenCompleteAsync((reply, failure) -> {
+            if(failure != null){
+                Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+                if(cause instanceof TimeoutException){
+                    respond(exchange, 504, error("No reply within " + askTimeout.toMillis() + " ms"));
+                }
+                else{
+                    respond(exchange, 500, error(String.valueOf(cause.getMessage())));
+                }
+            }
+            else if(reply instanceof RentARoomMessage.Overloaded){
+                respond(exchange, 503, status(((RentARoomMessage.Overloaded) reply).status));
+            }
+            else if(reply instanceof RentARoomMessage.HotelsPage){
+                respond(exchange, 200, hotelsPage((RentARoomMessage.HotelsPage) reply));
+            }
+            else if(reply instanceof RentARoomMessage.ReservationPlaced){
+                respond(exchange, 201, reservationPlaced((RentARoomMessage.ReservationPlaced) reply));
+            }
+            else if(reply instanceof RentARoomMessage.ReservationMade){
+                RentARoomMessage.ReservationMade made = (RentARoomMessage.ReservationMade) reply;
+                respond(exchange, 201, "{\"status\":" + quote(made.status) + ",\"reservationNumber\":" + quote(made.reservationNumber) + "}");
+            }
+            else if(reply instanceof RentARoomMessage.HotelCreated){
+                RentARoomMessage.HotelCreated created = (RentARoomMessage.HotelCreated) reply;
+                respond(exchange, 201, "{\"status\":" + quote(created.status) + ",\"id\":" + quote(created.hotelId) + "}");
+            }
+            else if(reply instanceof RentARoomMessage.Succeeded){
+                respond(exchange, 200, status(((RentARoomMessage.Succeeded) reply).status));
+            }
+            else if(reply instanceof RentARoomMessage.Response){
+                //the other replies are successes, a plain response tells why the system refused the request
+                respond(exchange, 409, error(((RentARoomMessage.Response) reply).status));
+            }
+            else{
+                respond(exchange, 500, error("Unexpected reply " + reply.getClass().getSimpleName()));
+            }
+        }, executor);
+    }
+
+    private static void respond(HttpExchange exchange, int code, String json) {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        try {
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(code, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } catch (IOException e) {
+            //the client closed the connection, there is nobody left to tell
+            exchange.close();
+        }
+    }
+
+    private static String hotelsPage(RentARoomMessage.HotelsPage page) {
+        StringBuilder json = new StringBuilder("{\"hotels\":[");
+        for (int i = 0; i < page.hotels.size(); i++) {
+            RentARoomMessage.HotelSummary hotel = page.hotels.get(i);
+            if(i > 0){
+                json.append(',');
+            }
+            json.append("{\"id\":").append(quote(hotel.hotelId))
+                .append(",\"name\":").append(quote(hotel.name))
+                .append(",\"amountOfRooms\":").append(hotel.amountOfRooms)
+                .append(",\"availableRooms\":").append(hotel.availableRooms);
+            if(hotel.details != null){
+                json.append(",\"details\":").append(quote(hotel.details));
+            }
+            json.append('}');
+        }
+        json.append("],\"next\":").append(page.nextFromId == null ? "null" : quote(page.nextFromId)).append('}');
+        return json.toString();
+    }
+
+    private static String reservationPlaced(RentARoomMessage.ReservationPlaced placed) {
+        StringBuilder json = new StringBuilder("{\"reservationNumber\":").append(quote(placed.reservationNumber))
+            .append(",\"rooms\":{");
+        boolean first = true;
+        for (Map.Entry<String, Integer> hotel : placed.rooms.entrySet()) {
+            if(!first){
+                json.append(',');
+            }
+            first = false;
+            json.append(quote(hotel.getKey())).append(':').append(hotel.getValue());
+        }
+        return json.append("}}").toString();
+    }
+
+    private static String status(String status) {
+        return "{\"status\":" + quote(status) + "}";
+    }
+
+    private static String error(String error) {
+        return "{\"error\":" + quote(error) + "}";
+    }
+
+    private static String quote(String value) {
+        StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': quoted.append("\\\""); break;
+                case '\\': quoted.append("\\\\"); break;
+                case '\n': quoted.append("\\n"); break;
+                case '\r': quoted.append("\\r"); break;
+                case '\t': quoted.append("\\t"); break;
+                default:
+                    if(c < 0x20){
+                        quoted.append(String.format("\\u%04x", (int) c));
+                    }
+                    else{
+                        quoted.append(c);
+                    }
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    /**
+     * @return the values of every parameter in the query string, or null when the query string is malformed. The
+     * request has been answered with 400 then.
+     */
+    private static HashMap<String, List<String>> parseQuery(HttpExchange exchange) {
+        HashMap<String, List<String>> query = new HashMap<>();
+        String raw = exchange.getRequestURI().getRawQuery();
+        if(raw == null){
+            return query;
+        }
+        try {
+            for (String pair : raw.split("&")) {
+                if(pair.isEmpty()){
+                    continue;
+                }
+                int separator = pair.indexOf('=');
+                String key = decode(separator < 0 ? pair : pair.substring(0, separator));
+                String value = separator < 0 ? "" : decode(pair.substring(separator + 1));
+                query.computeIfAbsent(key, k -> new ArrayList<>()).add(value);
+            }
+        } catch (IllegalArgumentException e) {
+            //an escape that is not followed by two hex digits
+            respond(exchange, 400, error("Malformed query string: " + e.getMessage()));
+            return null;
+        }
+        return query;
+    }
+
+    private static String decode(String value) {
+        try {
+            return URLDecoder.decode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String parameter(HashMap<String, List<String>> query, String name) {
+        List<String> values = query.get(name);
+        return values == null || values.get(0).isEmpty() ? null : values.get(0);
+    }
+
+    private static int intParameter(HashMap<String, List<String>> query, String name, int defaultValue) {
+        String value = parameter(query, name);
+        if(value == null){
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package nl.saxion.concurrency.messages;
+
+import akka.actor.typed.ActorRef;
+
+import java.io.Serializable;
+import java.time.LocalDate;
+
+/**
+ * Events that are stored in the journal by a persistent hotel manager. Replaying these events (after the last
+ * snapshot) rebuilds the state of the hotel.
+ */
+public interface HotelEvent extends Serializable {
+
+    class HotelCreated implements HotelEvent {
+        public final String hotelId;
+        public final String name;
+        public final int amountOfRooms;
+        public final LocalDate firstNight;
+
+        public HotelCreated(String hotelId, String name, int amountOfRooms, LocalDate firstNight){
+            this.hotelId = hotelId;
+            this.name = name;
+            this.amountOfRooms = amountOfRooms;
+            this.firstNight = firstNight;
+        }
+    }
+
+    //the rooms that were picked are stored in the event, so replaying it always reserves the same rooms
+    class RoomsReserved implements HotelEvent {
+        public final String reservationNumber;
+        public final int[] rooms;
+        public final LocalDate checkIn, checkOut;
+        public final ActorRef aggregator;
+
+        public RoomsReserved(String reservationNumber, int[] rooms, LocalDate checkIn, LocalDate checkOut, ActorRef aggregator){
+            this.reservationNumber = reservationNumber;
+            this.rooms = rooms;
+            this.checkIn = checkIn;
+            this.checkOut = checkOut;
+            this.aggregator = aggregator;
+        }
+    }
+
+    //cancelled by the client, reversed by the aggregator or expired
+    class ReservationCancelled implements HotelEvent {
+        public final String reservationNumber;
+
+        public ReservationCancelled(String reservationNumber){
+            this.reservationNumber = reservationNumber;
+        }
+    }
+
+    class ReservationConfirmed implements HotelEvent {
+        public final String reservationNumber;
+
+        public ReservationConfirmed(String reservationNumber){
+            this.reservationNumber = reservationNumber;
+        }
+    }
+
+    class HotelDeleted implements HotelEvent {
+        public static final HotelDeleted INSTANCE = new HotelDeleted();
+        private HotelDeleted(){
+        }
+
+        //keep a single instance after java deserialization
+        private Object readResolve(){
+            return INSTANCE;
+        }
+    }
+}
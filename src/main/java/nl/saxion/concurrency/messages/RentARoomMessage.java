@@ -5,11 +5,14 @@ import akka.actor.typed.ActorRef;
 import akka.actor.typed.receptionist.Receptionist;
 import nl.saxion.concurrency.actors.HotelManager;
 import nl.saxion.concurrency.actors.HotelReservationAggregator;
+import nl.saxion.concurrency.tracing.SpanRecorder;
 
 import java.io.Serializable;
 import java.lang.reflect.Array;
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 
 public interface RentARoomMessage extends Serializable {
 
@@ -24,6 +27,51 @@ public interface RentARoomMessage extends Serializable {
         }
     }
 
+    //an agent or hotel manager has too much work waiting and rejects the request straight away, instead of
+    //handling it after the client stopped waiting. Try again later.
+    class Overloaded extends Response {
+        public Overloaded(String status) {
+            super(status);
+        }
+    }
+
+    //reply to a request that succeeded and has nothing to return but the status, like a confirmation
+    class Succeeded extends Response {
+        public Succeeded(String status) {
+            super(status);
+        }
+    }
+
+    //reply to a successful reservation, with the reservation number that is needed to confirm or cancel it
+    class ReservationMade extends Response {
+        public final String reservationNumber;
+
+        public ReservationMade(String reservationNumber) {
+            super("Your reservation number is: " + reservationNumber);
+            this.reservationNumber = reservationNumber;
+        }
+    }
+
+    //reply to a PlaceReservation, with the rooms the agent reserved per hotel id
+    class ReservationPlaced extends ReservationMade {
+        public final HashMap<String, Integer> rooms;
+
+        public ReservationPlaced(String reservationNumber, HashMap<String, Integer> rooms) {
+            super(reservationNumber);
+            this.rooms = rooms;
+        }
+    }
+
+    //reply to a new hotel, with the id of the hotel
+    class HotelCreated extends Response {
+        public final String hotelId;
+
+        public HotelCreated(String status, String hotelId) {
+            super(status);
+            this.hotelId = hotelId;
+        }
+    }
+
     //Request a list of all hotels
     class ListHotels implements RentARoomMessage {
         public final ActorRef<RentARoomMessage> sender;
@@ -50,6 +98,165 @@ public interface RentARoomMessage extends Serializable {
         }
     }
 
+    //request one page of hotels, ordered by id. Only hotels with an id from fromId (inclusive) to toId (exclusive)
+    //and at least minimumFreeRooms free rooms tonight are listed. Null ids mean no bound.
+    class ListHotelsPage implements RentARoomMessage {
+        public final ActorRef replyTo;
+        public final String fromId, toId;
+        public final int minimumFreeRooms;
+        //only send the summary of every hotel, without the status of every room
+        public final boolean summaryOnly;
+        public final int pageSize;
+        //ask the hotels themselves instead of answering a summary from the availability view of the agent
+        public final boolean fresh;
+
+        public ListHotelsPage(ActorRef replyTo, String fromId, String toId, int minimumFreeRooms, boolean summaryOnly, int pageSize){
+            this(replyTo, fromId, toId, minimumFreeRooms, summaryOnly, pageSize, false);
+        }
+
+        public ListHotelsPage(ActorRef replyTo, String fromId, String toId, int minimumFreeRooms, boolean summaryOnly, int pageSize, boolean fresh){
+            this.replyTo = replyTo;
+            this.fromId = fromId;
+            this.toId = toId;
+            this.minimumFreeRooms = minimumFreeRooms;
+            this.summaryOnly = summaryOnly;
+            this.pageSize = pageSize;
+            this.fresh = fresh;
+        }
+    }
+
+    //one page of hotels, request the next page with nextFromId as fromId. nextFromId is null on the last page
+    class HotelsPage implements RentARoomMessage {
+        public final List<HotelSummary> hotels;
+        public final String nextFromId;
+
+        public HotelsPage(List<HotelSummary> hotels, String nextFromId){
+            this.hotels = hotels;
+            this.nextFromId = nextFromId;
+        }
+    }
+
+    //ask for the hotels with the most free rooms tonight, answered from the availability view of an agent with a
+    //HotelsPage, most free rooms first
+    class FindAvailableHotels implements RentARoomMessage {
+        public final ActorRef replyTo;
+        public final int minimumFreeRooms;
+        public final int limit;
+        //only hotels with a name that starts with this, null for every hotel
+        public final String namePrefix;
+
+        public FindAvailableHotels(ActorRef replyTo, int minimumFreeRooms, int limit, String namePrefix){
+            this.replyTo = replyTo;
+            this.minimumFreeRooms = minimumFreeRooms;
+            this.limit = limit;
+            this.namePrefix = namePrefix;
+        }
+    }
+
+    //same filter as ListHotelsPage, but every hotel is sent as a separate HotelSummary as soon as it is known,
+    //followed by HotelStreamCompleted
+    class StreamHotels implements RentARoomMessage {
+        public final ActorRef replyTo;
+        public final String fromId, toId;
+        public final int minimumFreeRooms;
+        public final boolean summaryOnly;
+        public final boolean fresh;
+
+        public StreamHotels(ActorRef replyTo, String fromId, String toId, int minimumFreeRooms, boolean summaryOnly){
+            this(replyTo, fromId, toId, minimumFreeRooms, summaryOnly, false);
+        }
+
+        public StreamHotels(ActorRef replyTo, String fromId, String toId, int minimumFreeRooms, boolean summaryOnly, boolean fresh){
+            this.replyTo = replyTo;
+            this.fromId = fromId;
+            this.toId = toId;
+            this.minimumFreeRooms = minimumFreeRooms;
+            this.summaryOnly = summaryOnly;
+            this.fresh = fresh;
+        }
+    }
+
+    class HotelStreamCompleted implements RentARoomMessage {
+        public final int amountOfHotels;
+
+        public HotelStreamCompleted(int amountOfHotels){
+            this.amountOfHotels = amountOfHotels;
+        }
+    }
+
+    //request the summary of a hotel from its hotel manager. The status of the rooms is only included if asked for
+    //and the hotel has at least minimumFreeRooms free rooms.
+    class RequestHotelSummary implements RentARoomMessage {
+        public final ActorRef replyTo;
+        public final boolean includeRooms;
+        public final int minimumFreeRooms;
+
+        public RequestHotelSummary(ActorRef replyTo, boolean includeRooms, int minimumFreeRooms){
+            this.replyTo = replyTo;
+            this.includeRooms = includeRooms;
+            this.minimumFreeRooms = minimumFreeRooms;
+        }
+    }
+
+    class HotelSummary implements RentARoomMessage {
+        public final String hotelId;
+        public final String name;
+        public final int amountOfRooms;
+        //rooms that are free tonight
+        public final int availableRooms;
+        //description of the hotel with the status of every room, null if only the summary was requested
+        public final String details;
+
+        public HotelSummary(String hotelId, String name, int amountOfRooms, int availableRooms, String details){
+            this.hotelId = hotelId;
+            this.name = name;
+            this.amountOfRooms = amountOfRooms;
+            this.availableRooms = availableRooms;
+            this.details = details;
+        }
+    }
+
+    //published by a hotel manager when the amount of free rooms tonight changes. The version increases with
+    //every change, so an agent can ignore an update that is older than what it already knows.
+    class AvailabilityChanged implements RentARoomMessage {
+        public final String hotelId;
+        public final String name;
+        public final int amountOfRooms;
+        public final int availableRooms;
+        public final long version;
+
+        public AvailabilityChanged(String hotelId, String name, int amountOfRooms, int availableRooms, long version){
+            this.hotelId = hotelId;
+            this.name = name;
+            this.amountOfRooms = amountOfRooms;
+            this.availableRooms = availableRooms;
+            this.version = version;
+        }
+    }
+
+    //ask a hotel manager for its current availability, it replies with AvailabilityChanged
+    class RequestAvailability implements RentARoomMessage {
+        public final ActorRef replyTo;
+
+        public RequestAvailability(ActorRef replyTo){
+            this.replyTo = replyTo;
+        }
+    }
+
+    //timer of an agent to ask every hotel for its availability again, which limits how stale its view can get
+    class RefreshAvailability implements RentARoomMessage {
+        public static final RefreshAvailability INSTANCE = new RefreshAvailability();
+        private RefreshAvailability(){
+        }
+    }
+
+    //timer of a HotelListAggregator, the hotels that did not reply in time are skipped
+    class HotelListTimeout implements RentARoomMessage {
+        public static final HotelListTimeout INSTANCE = new HotelListTimeout();
+        private HotelListTimeout(){
+        }
+    }
+
     //tell the hotelDataAggregator how many message to expect and where to send the result
     class hotelMessagesToExpect implements RentARoomMessage{
         public final ActorRef reportTo;
@@ -74,6 +281,15 @@ public interface RentARoomMessage extends Serializable {
         }
     }
 
+    //the ids of the hotels found in the journal when the system starts with persistence on
+    class HotelsRecovered implements RentARoomMessage{
+        public final List<String> hotelIds;
+
+        public HotelsRecovered(List<String> hotelIds){
+            this.hotelIds = hotelIds;
+        }
+    }
+
     //delete a hotel message
     class DeleteHotel implements RentARoomMessage{
         public final ActorRef sender;
@@ -93,7 +309,27 @@ public interface RentARoomMessage extends Serializable {
         }
     }
 
-    //signal agent that the reservation aggregator has stopped
+    //tell the registry shard which aggregator or coordinator handles a reservation
+    class RegisterReservation implements RentARoomMessage{
+        public final String reservationNumber;
+        public final ActorRef owner;
+        public RegisterReservation(String reservationNumber, ActorRef owner){
+            this.reservationNumber = reservationNumber;
+            this.owner = owner;
+        }
+    }
+
+    //tell the registry shard that one coordinator handles all these reservations of a batch
+    class RegisterReservations implements RentARoomMessage{
+        public final List<String> reservationNumbers;
+        public final ActorRef owner;
+        public RegisterReservations(List<String> reservationNumbers, ActorRef owner){
+            this.reservationNumbers = reservationNumbers;
+            this.owner = owner;
+        }
+    }
+
+    //signal the registry that the reservation aggregator has stopped
     class AggregatorStopped implements RentARoomMessage{
         public final ActorRef aggregator;
         public AggregatorStopped(ActorRef aggregator){
@@ -101,6 +337,44 @@ public interface RentARoomMessage extends Serializable {
         }
     }
 
+    //signal the registry that the reservation coordinator is done with a reservation
+    class ReservationClosed implements RentARoomMessage{
+        public final String reservationNumber;
+        public ReservationClosed(String reservationNumber){
+            this.reservationNumber = reservationNumber;
+        }
+    }
+
+    //tell a reservation coordinator to start keeping track of a new reservation
+    class CoordinateReservation implements RentARoomMessage{
+        public final String reservationNumber;
+        public final ActorRef reportTo;
+        public final int amountOfHotels;
+
+        public CoordinateReservation(String reservationNumber, ActorRef reportTo, int amountOfHotels){
+            this.reservationNumber = reservationNumber;
+            this.reportTo = reportTo;
+            this.amountOfHotels = amountOfHotels;
+        }
+    }
+
+    //tell a reservation coordinator to keep track of the reservations of a batch. For every reservation of the batch
+    //(in order) the reservation number and the amount of hotels, or a null number and the error if the agent
+    //already rejected it.
+    class CoordinateBatch implements RentARoomMessage{
+        public final String[] reservationNumbers;
+        public final int[] amountOfHotels;
+        public final String[] errors;
+        public final ActorRef replyTo;
+
+        public CoordinateBatch(String[] reservationNumbers, int[] amountOfHotels, String[] errors, ActorRef replyTo){
+            this.reservationNumbers = reservationNumbers;
+            this.amountOfHotels = amountOfHotels;
+            this.errors = errors;
+            this.replyTo = replyTo;
+        }
+    }
+
     //receptionist adapter
     class ReceiveHotelsList implements  RentARoomMessage{
         public final Receptionist.Listing hotels;
@@ -112,52 +386,211 @@ public interface RentARoomMessage extends Serializable {
 
     class Reservation implements RentARoomMessage {
         public final HashMap<String, Integer> reservation;
+        //first night of the stay and the day of departure (this night is not included)
+        public final LocalDate checkIn, checkOut;
         public final ActorRef replyTo;
+        //correlation id of the reservation, every message that is sent for it carries the same id. See SpanRecorder.
+        public final long traceId;
+        //the reservation number, when RentARoom picked it to route the reservation by its number. Else null, and the
+        //agent picks a number.
+        public final String reservationNumber;
 
+        //reservation for one night, starting tonight
         public Reservation(HashMap<String,Integer> reservation, ActorRef replyTo){
+            this(reservation, LocalDate.now(), LocalDate.now().plusDays(1), replyTo);
+        }
+
+        public Reservation(HashMap<String,Integer> reservation, LocalDate checkIn, LocalDate checkOut, ActorRef replyTo){
+            this(reservation, checkIn, checkOut, replyTo, SpanRecorder.newTraceId());
+        }
+
+        public Reservation(HashMap<String,Integer> reservation, LocalDate checkIn, LocalDate checkOut, ActorRef replyTo, long traceId){
+            this(reservation, checkIn, checkOut, replyTo, traceId, null);
+        }
+
+        public Reservation(HashMap<String,Integer> reservation, LocalDate checkIn, LocalDate checkOut, ActorRef replyTo, long traceId,
+                           String reservationNumber){
             this.reservation = reservation;
+            this.checkIn = checkIn;
+            this.checkOut = checkOut;
             this.replyTo = replyTo;
+            this.traceId = traceId;
+            this.reservationNumber = reservationNumber;
         }
     }
 
     class HotelReservation implements RentARoomMessage{
+        public final String reservationNumber;
         public final int amountOfRooms;
+        public final LocalDate checkIn, checkOut;
         public final ActorRef aggregator;
+        //trace id of the reservation
+        public final long traceId;
+
+        public HotelReservation(String reservationNumber, int amountOfRooms, LocalDate checkIn, LocalDate checkOut, ActorRef aggregator){
+            this(reservationNumber, amountOfRooms, checkIn, checkOut, aggregator, 0);
+        }
 
-        public HotelReservation(int amountOfRooms, ActorRef aggregator){
+        public HotelReservation(String reservationNumber, int amountOfRooms, LocalDate checkIn, LocalDate checkOut, ActorRef aggregator,
+                                long traceId){
+            this.reservationNumber = reservationNumber;
             this.amountOfRooms = amountOfRooms;
+            this.checkIn = checkIn;
+            this.checkOut = checkOut;
             this.aggregator = aggregator;
+            this.traceId = traceId;
         }
     }
 
     class HotelReservationReply implements RentARoomMessage{
+        public final String reservationNumber;
         public final boolean status;
         public final ActorRef sender;
-        public final Object message;
+        //numbers of the reserved rooms if the reservation succeeded, else null
+        public final int[] rooms;
+        //error message if the reservation failed, else null
+        public final String message;
+        //the reservation failed because the hotel is overloaded
+        public final boolean overloaded;
+        //trace id of the reservation
+        public final long traceId;
 
-        public HotelReservationReply(boolean status, ActorRef sender, Object message){
+        public HotelReservationReply(String reservationNumber, boolean status, ActorRef sender, int[] rooms, String message){
+            this(reservationNumber, status, sender, rooms, message, false);
+        }
+
+        public HotelReservationReply(String reservationNumber, boolean status, ActorRef sender, int[] rooms, String message, boolean overloaded){
+            this(reservationNumber, status, sender, rooms, message, overloaded, 0);
+        }
+
+        public HotelReservationReply(String reservationNumber, boolean status, ActorRef sender, int[] rooms, String message,
+                                     boolean overloaded, long traceId){
+            this.reservationNumber = reservationNumber;
             this.status = status;
             this.sender = sender;
+            this.rooms = rooms;
+            this.message = message;
+            this.overloaded = overloaded;
+            this.traceId = traceId;
+        }
+    }
+
+    //reservation of rooms in any hotel, the agent picks the hotels from its availability view. With sameHotel all the
+    //rooms are in one hotel, otherwise they can be spread over several hotels. The client gets a ReservationPlaced.
+    class PlaceReservation implements RentARoomMessage {
+        public final int amountOfRooms;
+        public final LocalDate checkIn, checkOut;
+        public final boolean sameHotel;
+        //only hotels with a name that starts with this, null for every hotel
+        public final String namePrefix;
+        public final ActorRef replyTo;
+        public final long traceId;
+
+        public PlaceReservation(int amountOfRooms, LocalDate checkIn, LocalDate checkOut, boolean sameHotel,
+                                String namePrefix, ActorRef replyTo){
+            this(amountOfRooms, checkIn, checkOut, sameHotel, namePrefix, replyTo, SpanRecorder.newTraceId());
+        }
+
+        public PlaceReservation(int amountOfRooms, LocalDate checkIn, LocalDate checkOut, boolean sameHotel,
+                                String namePrefix, ActorRef replyTo, long traceId){
+            this.amountOfRooms = amountOfRooms;
+            this.checkIn = checkIn;
+            this.checkOut = checkOut;
+            this.sameHotel = sameHotel;
+            this.namePrefix = namePrefix;
+            this.replyTo = replyTo;
+            this.traceId = traceId;
+        }
+    }
+
+    //a ReservationPlacer asks its agent to try the reservation at the hotels it picked. The work was admitted
+    //already with the PlaceReservation, so the agent does not count or shed it.
+    class TryPlacement implements RentARoomMessage {
+        public final Reservation reservation;
+
+        public TryPlacement(Reservation reservation){
+            this.reservation = reservation;
+        }
+    }
+
+    //many independent reservations at once. Every reservation succeeds or fails on its own, the client gets one
+    //ReservationBatchReply with the result of every reservation in the same order. The replyTo of the reservations
+    //in the batch is not used.
+    class ReservationBatch implements RentARoomMessage {
+        public final List<Reservation> reservations;
+        public final ActorRef replyTo;
+
+        public ReservationBatch(List<Reservation> reservations, ActorRef replyTo){
+            this.reservations = reservations;
+            this.replyTo = replyTo;
+        }
+    }
+
+    class ReservationBatchReply implements RentARoomMessage {
+        public final List<ReservationResult> results;
+
+        public ReservationBatchReply(List<ReservationResult> results){
+            this.results = results;
+        }
+    }
+
+    //result of one reservation of a batch: the reservation number if it succeeded, else the reason it failed
+    class ReservationResult implements Serializable {
+        public final boolean status;
+        public final String reservationNumber;
+        public final String message;
+
+        public ReservationResult(boolean status, String reservationNumber, String message){
+            this.status = status;
+            this.reservationNumber = reservationNumber;
             this.message = message;
         }
     }
 
+    //all the reservations of a batch at one hotel, the hotel manager sends one HotelReservationBatchReply to replyTo
+    class HotelReservationBatch implements RentARoomMessage{
+        public final List<HotelReservation> reservations;
+        public final ActorRef replyTo;
+
+        public HotelReservationBatch(List<HotelReservation> reservations, ActorRef replyTo){
+            this.reservations = reservations;
+            this.replyTo = replyTo;
+        }
+    }
+
+    class HotelReservationBatchReply implements RentARoomMessage{
+        public final List<HotelReservationReply> replies;
+
+        public HotelReservationBatchReply(List<HotelReservationReply> replies){
+            this.replies = replies;
+        }
+    }
+
     class CancelReservation implements RentARoomMessage{
         public final String reservationNumber;
         public final ActorRef replyTo;
+        //correlation id of the cancellation, the aggregator sends it on to the hotels
+        public final long traceId;
 
         public CancelReservation(String reservationNumber, ActorRef replyTo){
+            this(reservationNumber, replyTo, SpanRecorder.newTraceId());
+        }
+
+        public CancelReservation(String reservationNumber, ActorRef replyTo, long traceId){
             this.reservationNumber = reservationNumber;
             this.replyTo = replyTo;
+            this.traceId = traceId;
         }
     }
 
     class CancelReservationReply implements RentARoomMessage{
+        public final String reservationNumber;
         public final boolean status;
         public final ActorRef sender;
         public final String message;
 
-        public CancelReservationReply(boolean status, ActorRef sender, String message){
+        public CancelReservationReply(String reservationNumber, boolean status, ActorRef sender, String message){
+            this.reservationNumber = reservationNumber;
             this.status = status;
             this.sender = sender;
             this.message = message;
@@ -167,25 +600,52 @@ public interface RentARoomMessage extends Serializable {
     class ConfirmReservation implements RentARoomMessage{
         public final String reservationNumber;
         public final ActorRef replyTo;
+        //correlation id of the confirmation, the aggregator sends it on to the hotels
+        public final long traceId;
 
         public ConfirmReservation(String reservationNumber, ActorRef replyTo){
+            this(reservationNumber, replyTo, SpanRecorder.newTraceId());
+        }
+
+        public ConfirmReservation(String reservationNumber, ActorRef replyTo, long traceId){
             this.reservationNumber = reservationNumber;
             this.replyTo = replyTo;
+            this.traceId = traceId;
         }
     }
 
     class ConfirmReservationReply implements RentARoomMessage{
+        public final String reservationNumber;
         public final boolean status;
         public final ActorRef sender;
         public final String message;
 
-        public ConfirmReservationReply(boolean status, ActorRef sender, String message){
+        public ConfirmReservationReply(String reservationNumber, boolean status, ActorRef sender, String message){
+            this.reservationNumber = reservationNumber;
             this.status = status;
             this.sender = sender;
             this.message = message;
         }
     }
 
+    //timer tick for the hotel manager to expire the reservations that have not been confirmed in time
+    class ExpirePendingReservations implements RentARoomMessage{
+        public static final ExpirePendingReservations INSTANCE = new ExpirePendingReservations();
+        private ExpirePendingReservations(){
+        }
+    }
+
+    //signal the aggregator that a hotel released the rooms of a reservation because it was not confirmed in time
+    class ReservationExpired implements RentARoomMessage{
+        public final String reservationNumber;
+        public final ActorRef sender;
+
+        public ReservationExpired(String reservationNumber, ActorRef sender){
+            this.reservationNumber = reservationNumber;
+            this.sender = sender;
+        }
+    }
+
     class SpawnAgent implements RentARoomMessage{
         public final ActorRef replyTo;
         public SpawnAgent(ActorRef replyTo){
@@ -193,4 +653,52 @@ public interface RentARoomMessage extends Serializable {
         }
     }
 
+    //timer of an agent to report its load to RentARoom
+    class ReportLoad implements RentARoomMessage {
+        public static final ReportLoad INSTANCE = new ReportLoad();
+        private ReportLoad(){
+        }
+    }
+
+    //the amount of requests an agent handled since it started. RentARoom routes the requests by the load of the agents.
+    class LoadReport implements RentARoomMessage {
+        public final ActorRef agent;
+        public final long requestsHandled;
+
+        public LoadReport(ActorRef agent, long requestsHandled){
+            this.agent = agent;
+            this.requestsHandled = requestsHandled;
+        }
+    }
+
+    //timer of RentARoom to grow or shrink the pool of agents
+    class AdjustAgentPool implements RentARoomMessage {
+        public static final AdjustAgentPool INSTANCE = new AdjustAgentPool();
+        private AdjustAgentPool(){
+        }
+    }
+
+    //tells an agent, or a coordinator of the agent, to finish its open reservations and stop
+    class DrainAgent implements RentARoomMessage {
+        public static final DrainAgent INSTANCE = new DrainAgent();
+        private DrainAgent(){
+        }
+    }
+
+    //signal RentARoom that a new agent knows the hotels, so it can be sent requests
+    class AgentStarted implements RentARoomMessage {
+        public final ActorRef agent;
+        public AgentStarted(ActorRef agent){
+            this.agent = agent;
+        }
+    }
+
+    //signal RentARoom that an agent it drained has stopped
+    class AgentStopped implements RentARoomMessage {
+        public final ActorRef agent;
+        public AgentStopped(ActorRef agent){
+            this.agent = agent;
+        }
+    }
+
 }
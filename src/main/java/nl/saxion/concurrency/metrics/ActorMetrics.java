@@ -0,0 +1,152 @@
+package nl.saxion.concurrency.metrics;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.dispatch.MessageQueue;
+import nl.saxion.concurrency.util.LatencyHistogram;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Metrics of all the actors of one role, shared by the actors of that role in this JVM and exported as an MXBean.
+ * An actor takes part by wrapping its behavior with instrument(role, behavior). Every message it handles is then
+ * counted and timed per message type. Recording a message takes no locks and allocates nothing once the message
+ * type has been seen.
+ *
+ * The metrics are only recorded when rentaroom.metrics.enabled is on, otherwise the behavior is not wrapped at all.
+ */
+public class ActorMetrics implements ActorMetricsMXBean {
+    private static final ConcurrentHashMap<String, ActorMetrics> ROLES = new ConcurrentHashMap<>();
+
+    private final String role;
+    private final AtomicLong liveActors = new AtomicLong();
+    private final AtomicLong startedActors = new AtomicLong();
+    //the handling times per message type. A ClassValue finds the histogram of a class without hashing or allocating.
+    private final ConcurrentHashMap<Class<?>, LatencyHistogram> messageTypes = new ConcurrentHashMap<>();
+    private final ClassValue<LatencyHistogram> histograms = new ClassValue<LatencyHistogram>() {
+        @Override
+        protected LatencyHistogram computeValue(Class<?> type) {
+            return messageTypes.computeIfAbsent(type, t -> new LatencyHistogram());
+        }
+    };
+    //the mailboxes of the running actors of this role that have an admission mailbox
+    private final ConcurrentHashMap<ActorRef<?>, MessageQueue> mailboxes = new ConcurrentHashMap<>();
+
+    private ActorMetrics(String role) {
+        this.role = role;
+    }
+
+    /**
+     * Get the metrics of a role, the first time they are registered with the platform MBean server.
+     * @param role the name of the role, for example the simple name of the actor class.
+     * @return the metrics of the role.
+     */
+    public static ActorMetrics of(String role) {
+        return ROLES.computeIfAbsent(role, name -> {
+            ActorMetrics metrics = new ActorMetrics(name);
+            try {
+                ObjectName objectName = new ObjectName("nl.saxion.concurrency:type=ActorMetrics,role=" + name);
+                if(!ManagementFactory.getPlatformMBeanServer().isRegistered(objectName)){
+                    ManagementFactory.getPlatformMBeanServer().registerMBean(metrics, objectName);
+                }
+            } catch (JMException e) {
+                throw new IllegalStateException("Could not register the metrics of " + name, e);
+            }
+            return metrics;
+        });
+    }
+
+    /**
+     * Record the metrics of the actor, if metrics are enabled in the config of its actor system.
+     * @param role the role of the actor.
+     * @param behavior the behavior of the actor.
+     * @return the behavior, wrapped in an interceptor that records the metrics.
+     */
+    public static <T> Behavior<T> instrument(String role, Behavior<T> behavior) {
+        return Behaviors.setup(context -> context.getSystem().settings().config().getBoolean("rentaroom.metrics.enabled") ?
+            Behaviors.intercept(() -> new MetricsInterceptor<>(of(role)), behavior) : behavior);
+    }
+
+    public String getRole() {
+        return role;
+    }
+
+    void started(ActorRef<?> actor, MessageQueue mailbox) {
+        liveActors.incrementAndGet();
+        startedActors.incrementAndGet();
+        if(mailbox != null){
+            mailboxes.put(actor, mailbox);
+        }
+    }
+
+    void stopped(ActorRef<?> actor) {
+        liveActors.decrementAndGet();
+        mailboxes.remove(actor);
+    }
+
+    void handled(Class<?> messageType, long nanos) {
+        histograms.get(messageType).record(nanos);
+    }
+
+    @Override
+    public long getLiveActors() {
+        return liveActors.get();
+    }
+
+    @Override
+    public long getStartedActors() {
+        return startedActors.get();
+    }
+
+    @Override
+    public long getMessagesHandled() {
+        long handled = 0;
+        for (LatencyHistogram histogram : messageTypes.values()) {
+            handled += histogram.count();
+        }
+        return handled;
+    }
+
+    @Override
+    public long getMailboxDepth() {
+        long depth = 0;
+        for (MessageQueue mailbox : mailboxes.values()) {
+            depth += mailbox.numberOfMessages();
+        }
+        return depth;
+    }
+
+    @Override
+    public long getMaxMailboxDepth() {
+        long depth = 0;
+        for (MessageQueue mailbox : mailboxes.values()) {
+            depth = Math.max(depth, mailbox.numberOfMessages());
+        }
+        return depth;
+    }
+
+    @Override
+    public Map<String, MessageStats> getMessageTypes() {
+        Map<String, MessageStats> stats = new TreeMap<>();
+        for (Map.Entry<Class<?>, LatencyHistogram> entry : messageTypes.entrySet()) {
+            LatencyHistogram histogram = entry.getValue();
+            stats.put(entry.getKey().getSimpleName(), new MessageStats(histogram.count(), histogram.mean(),
+                histogram.percentile(50), histogram.percentile(99), histogram.percentile(99.9), histogram.max()));
+        }
+        return stats;
+    }
+
+    @Override
+    public void reset() {
+        for (LatencyHistogram histogram : messageTypes.values()) {
+            histogram.reset();
+        }
+    }
+}
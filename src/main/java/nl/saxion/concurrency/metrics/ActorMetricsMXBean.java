@@ -0,0 +1,39 @@
+package nl.saxion.concurrency.metrics;
+
+import java.util.Map;
+
+/**
+ * Metrics of all the actors of one role (for example Agent), registered as
+ * nl.saxion.concurrency:type=ActorMetrics,role=&lt;role&gt;. The handling times are in nanoseconds.
+ */
+public interface ActorMetricsMXBean {
+    /**
+     * @return the amount of actors of this role that are running.
+     */
+    long getLiveActors();
+
+    /**
+     * @return the amount of actors of this role that have been started.
+     */
+    long getStartedActors();
+
+    long getMessagesHandled();
+
+    /**
+     * @return the amount of messages waiting in the mailboxes of all the running actors of this role. Only the actors
+     * with an admission mailbox are counted, for the others the depth is not known.
+     */
+    long getMailboxDepth();
+
+    /**
+     * @return the amount of messages waiting in the fullest mailbox of an actor of this role.
+     */
+    long getMaxMailboxDepth();
+
+    /**
+     * @return the metrics per message type, by the simple name of the message class.
+     */
+    Map<String, MessageStats> getMessageTypes();
+
+    void reset();
+}
@@ -0,0 +1,54 @@
+package nl.saxion.concurrency.metrics;
+
+import akka.actor.typed.Behavior;
+import akka.actor.typed.BehaviorInterceptor;
+import akka.actor.typed.PostStop;
+import akka.actor.typed.Signal;
+import akka.actor.typed.TypedActorContext;
+import akka.actor.typed.javadsl.Adapter;
+import nl.saxion.concurrency.util.AdmissionMailbox;
+
+/**
+ * Times every message of an actor and records it in the metrics of its role. Nested interceptors for the same role
+ * are the same, so an actor that changes into another instrumented behavior of its role is only counted once.
+ */
+class MetricsInterceptor<T> extends BehaviorInterceptor<T, T> {
+    private final ActorMetrics metrics;
+
+    @SuppressWarnings("unchecked")
+    MetricsInterceptor(ActorMetrics metrics) {
+        super((Class<T>) Object.class);
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Behavior<T> aroundStart(TypedActorContext<T> context, PreStartTarget<T> target) {
+        metrics.started(context.asJava().getSelf(),
+            AdmissionMailbox.queueOf(context.asJava().getSystem(), Adapter.toClassic(context.asJava().getSelf())));
+        return target.start(context);
+    }
+
+    @Override
+    public Behavior<T> aroundReceive(TypedActorContext<T> context, T message, ReceiveTarget<T> target) {
+        long start = System.nanoTime();
+        try {
+            return target.apply(context, message);
+        } finally {
+            metrics.handled(message.getClass(), System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public Behavior<T> aroundSignal(TypedActorContext<T> context, Signal signal, SignalTarget<T> target) {
+        if(signal instanceof PostStop){
+            metrics.stopped(context.asJava().getSelf());
+        }
+        return target.apply(context, signal);
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public boolean isSame(BehaviorInterceptor<Object, Object> other) {
+        return other instanceof MetricsInterceptor && ((MetricsInterceptor) other).metrics == metrics;
+    }
+}
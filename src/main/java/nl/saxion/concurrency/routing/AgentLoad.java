@@ -0,0 +1,88 @@
+package nl.saxion.concurrency.routing;
+
+import akka.actor.typed.ActorRef;
+import nl.saxion.concurrency.messages.RentARoomMessage;
+import nl.saxion.concurrency.util.AdmissionControl;
+
+/**
+ * An agent as RentARoom sees it: the agent, the admission control of its mailbox and the amount of requests it was
+ * sent and has handled. The agent reports how many requests it handled (LoadReport), so the difference is the amount
+ * of requests that wait in its mailbox or are being handled, as far as RentARoom knows. The time every request was sent
+ * is kept too, so RentARoom also knows how long the requests wait for the agent (see waitingNanos and maxLatencyNanos).
+ *
+ * Only used by the RentARoom actor, so it is not thread safe.
+ */
+public class AgentLoad {
+    //the send times of the last SENT_TIMES requests, by the sequence number of the request
+    private static final int SENT_TIMES = 1024;
+
+    public final ActorRef<RentARoomMessage> agent;
+    public final AdmissionControl admission;
+    private long sent;
+    private long handled;
+    private final long[] sentAt = new long[SENT_TIMES];
+    //the longest time from sending a request until the agent reported it handled, since the last takeMaxLatencyNanos
+    private long maxLatency;
+    private long handledAtTake;
+
+    public AgentLoad(ActorRef<RentARoomMessage> agent, AdmissionControl admission) {
+        this.agent = agent;
+        this.admission = admission;
+    }
+
+    /**
+     * @return the amount of requests that were sent to the agent and that it did not report as handled yet.
+     */
+    public long outstanding() {
+        return sent - handled;
+    }
+
+    /**
+     * Count a request that is sent to the agent.
+     */
+    public void sent() {
+        sentAt[(int) (sent & (SENT_TIMES - 1))] = System.nanoTime();
+        sent++;
+    }
+
+    /**
+     * @param handled the amount of requests the agent handled since it started, according to its last report.
+     */
+    public void reported(long handled) {
+        //a report can not be newer than the requests that were sent, and reports do not overtake each other
+        handled = Math.min(sent, Math.max(this.handled, handled));
+        if(handled > this.handled){
+            //the last request of the report waited the longest of the ones that were not reported before
+            maxLatency = Math.max(maxLatency, System.nanoTime() - sentAt[(int) ((handled - 1) & (SENT_TIMES - 1))]);
+        }
+        this.handled = handled;
+    }
+
+    /**
+     * @param now the current System.nanoTime().
+     * @return how long the oldest outstanding request is waiting for the agent, 0 if there is none. With more than
+     * 1024 outstanding requests this is the time of a newer request, so it is too low.
+     */
+    public long waitingNanos(long now) {
+        return outstanding() == 0 ? 0 : now - sentAt[(int) (handled & (SENT_TIMES - 1))];
+    }
+
+    /**
+     * @return the longest time from sending a request until the agent reported it handled, since the previous call.
+     * It includes the time until the report, at most rentaroom.routing.load-report-interval.
+     */
+    public long takeMaxLatencyNanos() {
+        long latency = maxLatency;
+        maxLatency = 0;
+        return latency;
+    }
+
+    /**
+     * @return the amount of requests the agent reported handled since the previous call.
+     */
+    public long takeHandled() {
+        long since = handled - handledAtTake;
+        handledAtTake = handled;
+        return since;
+    }
+}
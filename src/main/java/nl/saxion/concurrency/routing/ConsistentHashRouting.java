@@ -0,0 +1,96 @@
+package nl.saxion.concurrency.routing;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Routes a request about a reservation by its reservation number on a hash ring of the agents, so the confirmation
+ * and the cancellation of a reservation go to the agent that made it. Every agent has a number of points on the ring;
+ * a reservation number belongs to the first point after its hash. When an agent is added or removed, only the
+ * reservation numbers next to its points move to another agent.
+ *
+ * The load of the agents is bounded: an agent with more outstanding requests than load-factor times the average is
+ * skipped, and the request goes to the next agent on the ring. A slow agent then still gets its share of the
+ * reservations as long as it keeps up. A confirmation or cancellation that ends up at an agent that did not make the
+ * reservation is forwarded through the registry, like with the other strategies.
+ *
+ * Requests that are not about one reservation, like listings, go to the agent with the least outstanding requests.
+ */
+public class ConsistentHashRouting implements RoutingStrategy {
+    private final int virtualNodes;
+    private final double loadFactor;
+    private final LeastOutstandingRouting leastOutstanding = new LeastOutstandingRouting();
+
+    //the points on the ring, sorted, and the agent of every point
+    private int[] points = new int[0];
+    private AgentLoad[] owners = new AgentLoad[0];
+
+    /**
+     * @param virtualNodes amount of points of every agent on the ring.
+     * @param loadFactor an agent is skipped when it has more than this factor times the average outstanding requests.
+     */
+    public ConsistentHashRouting(int virtualNodes, double loadFactor) {
+        this.virtualNodes = Math.max(1, virtualNodes);
+        this.loadFactor = loadFactor;
+    }
+
+    @Override
+    public void agentsChanged(List<AgentLoad> agents) {
+        long[] ring = new long[agents.size() * virtualNodes];
+        for (int agent = 0; agent < agents.size(); agent++) {
+            String name = agents.get(agent).agent.path().toString();
+            for (int point = 0; point < virtualNodes; point++) {
+                //the point in the high bits and the agent in the low bits, so sorting keeps them together
+                ring[agent * virtualNodes + point] = ((long) hash(name + "#" + point) << 32) | agent;
+            }
+        }
+        Arrays.sort(ring);
+        points = new int[ring.length];
+        owners = new AgentLoad[ring.length];
+        for (int i = 0; i < ring.length; i++) {
+            points[i] = (int) (ring[i] >> 32);
+            owners[i] = agents.get((int) ring[i]);
+        }
+    }
+
+    @Override
+    public AgentLoad select(List<AgentLoad> agents, String key) {
+        if(key == null || points.length == 0){
+            return leastOutstanding.select(agents, key);
+        }
+        long total = 0;
+        for (AgentLoad agent : agents) {
+            total += agent.outstanding();
+        }
+        //the bound counts the new request and is rounded up, so an idle system never skips the owner
+        double bound = Math.ceil(loadFactor * (total + 1) / agents.size());
+
+        int index = Arrays.binarySearch(points, hash(key));
+        if(index < 0){
+            index = -index - 1;
+        }
+        for (int i = 0; i < points.length; i++) {
+            AgentLoad agent = owners[(index + i) % points.length];
+            if(agent.outstanding() + 1 <= bound){
+                return agent;
+            }
+        }
+        return owners[index % points.length];
+    }
+
+    @Override
+    public boolean routesByReservation() {
+        return true;
+    }
+
+    /**
+     * The hash code of the string, mixed so similar strings end up far apart on the ring.
+     */
+    private static int hash(String value) {
+        int hash = value.hashCode() * 0x9E3779B9;
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        hash ^= hash >>> 13;
+        return hash;
+    }
+}
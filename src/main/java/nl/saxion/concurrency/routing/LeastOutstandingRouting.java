@@ -0,0 +1,25 @@
+package nl.saxion.concurrency.routing;
+
+import java.util.List;
+
+/**
+ * Every request goes to the agent with the least outstanding requests. A slow agent handles its requests later, so
+ * its outstanding requests go up and it gets fewer new ones. The agents are checked from a different agent every
+ * time, so agents with the same load take turns.
+ */
+public class LeastOutstandingRouting implements RoutingStrategy {
+    private int next;
+
+    @Override
+    public AgentLoad select(List<AgentLoad> agents, String key) {
+        int start = Math.floorMod(next++, agents.size());
+        AgentLoad least = agents.get(start);
+        for (int i = 1; i < agents.size(); i++) {
+            AgentLoad agent = agents.get((start + i) % agents.size());
+            if(agent.outstanding() < least.outstanding()){
+                least = agent;
+            }
+        }
+        return least;
+    }
+}
@@ -0,0 +1,14 @@
+package nl.saxion.concurrency.routing;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Every agent gets an equal share of the requests, whatever its load. Same as the group router with random routing.
+ */
+public class RandomRouting implements RoutingStrategy {
+    @Override
+    public AgentLoad select(List<AgentLoad> agents, String key) {
+        return agents.get(ThreadLocalRandom.current().nextInt(agents.size()));
+    }
+}
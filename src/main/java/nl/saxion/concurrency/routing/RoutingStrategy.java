@@ -0,0 +1,52 @@
+package nl.saxion.concurrency.routing;
+
+import com.typesafe.config.Config;
+
+import java.util.List;
+
+/**
+ * How RentARoom picks the agent for a request. The strategy is set in rentaroom.routing.strategy.
+ */
+public interface RoutingStrategy {
+    /**
+     * @param agents the agents of this node, never empty.
+     * @param key the reservation number the request is about, or null if it is not about one reservation.
+     * @return the agent for the request.
+     */
+    AgentLoad select(List<AgentLoad> agents, String key);
+
+    /**
+     * Called when an agent is added or removed.
+     * @param agents the agents of this node.
+     */
+    default void agentsChanged(List<AgentLoad> agents) {
+    }
+
+    /**
+     * @return true if the reservations, confirmations and cancellations are routed by their reservation number. Then
+     * RentARoom picks the reservation number of a new reservation, and sends the confirmations and cancellations to an
+     * agent instead of to the registry.
+     */
+    default boolean routesByReservation() {
+        return false;
+    }
+
+    /**
+     * @param config the config of the actor system.
+     * @return the strategy of rentaroom.routing.
+     */
+    static RoutingStrategy fromConfig(Config config) {
+        Config routing = config.getConfig("rentaroom.routing");
+        String strategy = routing.getString("strategy");
+        switch (strategy) {
+            case "random":
+                return new RandomRouting();
+            case "least-outstanding":
+                return new LeastOutstandingRouting();
+            case "consistent-hashing":
+                return new ConsistentHashRouting(routing.getInt("virtual-nodes"), routing.getDouble("load-factor"));
+            default:
+                throw new IllegalArgumentException("Unknown routing strategy " + strategy);
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package nl.saxion.concurrency.serialization;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Reads the fields written by a BinaryWriter. Use nextField to get the number of the next field and then read its
+ * value with the matching method, or skipField if the field is unknown:
+ * <pre>
+ * for (int field = reader.nextField(); field != 0; field = reader.nextField()) {
+ *     switch (field) {
+ *         case 1: name = reader.readString(); break;
+ *         default: reader.skipField();
+ *     }
+ * }
+ * </pre>
+ */
+public class BinaryReader {
+    private final byte[] buffer;
+    private int position;
+    private final int end;
+    private int wireType;
+
+    public BinaryReader(byte[] buffer) {
+        this(buffer, 0, buffer.length);
+    }
+
+    private BinaryReader(byte[] buffer, int offset, int end) {
+        this.buffer = buffer;
+        this.position = offset;
+        this.end = end;
+    }
+
+    /**
+     * @return the number of the next field, or 0 if there are no more fields.
+     */
+    public int nextField() {
+        if(position >= end){
+            return 0;
+        }
+        long tag = readVarint();
+        wireType = (int) (tag & 7);
+        return (int) (tag >>> 3);
+    }
+
+    public int readInt() {
+        return (int) readLong();
+    }
+
+    public long readLong() {
+        long value = readVarint();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public boolean readBoolean() {
+        return readVarint() != 0;
+    }
+
+    public String readString() {
+        int length = readLength();
+        String value = new String(buffer, position, length, StandardCharsets.UTF_8);
+        position += length;
+        return value;
+    }
+
+    public LocalDate readDate() {
+        return LocalDate.ofEpochDay(readLong());
+    }
+
+    public byte[] readBytes() {
+        int length = readLength();
+        byte[] value = Arrays.copyOfRange(buffer, position, position + length);
+        position += length;
+        return value;
+    }
+
+    /**
+     * @return a reader for the nested message in this field.
+     */
+    public BinaryReader readMessage() {
+        int length = readLength();
+        BinaryReader message = new BinaryReader(buffer, position, position + length);
+        position += length;
+        return message;
+    }
+
+    public int[] readInts() {
+        int fieldEnd = readLength() + position;
+        int[] values = new int[count(fieldEnd)];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = readInt();
+        }
+        return values;
+    }
+
+    public long[] readWords() {
+        int fieldEnd = readLength() + position;
+        long[] values = new long[count(fieldEnd)];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = readVarint();
+        }
+        return values;
+    }
+
+    /**
+     * Skip the value of a field this reader does not know, for example a field added by a newer version.
+     */
+    public void skipField() {
+        if(wireType == BinaryWriter.VARINT){
+            readVarint();
+        }
+        else if(wireType == BinaryWriter.LENGTH_DELIMITED){
+            int length = readLength();
+            position += length;
+        }
+        else{
+            throw new IllegalArgumentException("Unsupported wire type " + wireType);
+        }
+    }
+
+    /**
+     * @return the amount of varints from the current position until the end of the field.
+     */
+    private int count(int fieldEnd) {
+        int count = 0;
+        for (int i = position; i < fieldEnd; i++) {
+            if(buffer[i] >= 0){
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private int readLength() {
+        int length = (int) readVarint();
+        if(length < 0 || position + length > end){
+            throw new IllegalArgumentException("Field of " + length + " bytes does not fit in the message");
+        }
+        return length;
+    }
+
+    private long readVarint() {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if(position >= end){
+                throw new IllegalArgumentException("Message ends in the middle of a number");
+            }
+            byte b = buffer[position++];
+            value |= (long) (b & 0x7F) << shift;
+            if(b >= 0){
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed number");
+    }
+}
@@ -0,0 +1,148 @@
+package nl.saxion.concurrency.serialization;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Writes a message as a list of tagged fields, in the same wire format as protocol buffers. Every field starts with
+ * its field number and wire type, so a reader can skip the fields it does not know. Numbers are written as zigzag
+ * varints, which makes small (also negative) numbers a single byte. Fields that are null are not written at all.
+ *
+ * Field numbers of a message should never be reused for another meaning: remove a field by no longer writing it and
+ * add a field with a new number. Old readers skip the new field and new readers use a default for the missing one.
+ */
+public class BinaryWriter {
+    static final int VARINT = 0;
+    static final int LENGTH_DELIMITED = 2;
+
+    private byte[] buffer;
+    private int position;
+
+    public BinaryWriter() {
+        this(64);
+    }
+
+    public BinaryWriter(int initialSize) {
+        buffer = new byte[initialSize];
+    }
+
+    public BinaryWriter writeInt(int field, int value) {
+        return writeLong(field, value);
+    }
+
+    public BinaryWriter writeLong(int field, long value) {
+        writeTag(field, VARINT);
+        writeVarint(zigzag(value));
+        return this;
+    }
+
+    public BinaryWriter writeBoolean(int field, boolean value) {
+        writeTag(field, VARINT);
+        writeVarint(value ? 1 : 0);
+        return this;
+    }
+
+    public BinaryWriter writeString(int field, String value) {
+        if(value != null){
+            writeBytes(field, value.getBytes(StandardCharsets.UTF_8));
+        }
+        return this;
+    }
+
+    public BinaryWriter writeDate(int field, LocalDate value) {
+        if(value != null){
+            writeLong(field, value.toEpochDay());
+        }
+        return this;
+    }
+
+    public BinaryWriter writeBytes(int field, byte[] value) {
+        writeTag(field, LENGTH_DELIMITED);
+        writeVarint(value.length);
+        ensureCapacity(value.length);
+        System.arraycopy(value, 0, buffer, position, value.length);
+        position += value.length;
+        return this;
+    }
+
+    /**
+     * Write a nested message, for example an element of a list.
+     */
+    public BinaryWriter writeMessage(int field, BinaryWriter message) {
+        writeTag(field, LENGTH_DELIMITED);
+        writeVarint(message.position);
+        ensureCapacity(message.position);
+        System.arraycopy(message.buffer, 0, buffer, position, message.position);
+        position += message.position;
+        return this;
+    }
+
+    /**
+     * Write an array of numbers as one field (packed).
+     */
+    public BinaryWriter writeInts(int field, int[] values) {
+        if(values != null){
+            int size = 0;
+            for (int value : values) {
+                size += varintSize(zigzag(value));
+            }
+            writeTag(field, LENGTH_DELIMITED);
+            writeVarint(size);
+            for (int value : values) {
+                writeVarint(zigzag(value));
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Write an array of bitmaps as one field (packed). The words are not zigzag encoded, so a word with only the
+     * low bits set is small.
+     */
+    public BinaryWriter writeWords(int field, long[] values) {
+        if(values != null){
+            int size = 0;
+            for (long value : values) {
+                size += varintSize(value);
+            }
+            writeTag(field, LENGTH_DELIMITED);
+            writeVarint(size);
+            for (long value : values) {
+                writeVarint(value);
+            }
+        }
+        return this;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, position);
+    }
+
+    private void writeTag(int field, int wireType) {
+        writeVarint(((long) field << 3) | wireType);
+    }
+
+    private void writeVarint(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[position++] = (byte) value;
+    }
+
+    private void ensureCapacity(int extra) {
+        if(position + extra > buffer.length){
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, position + extra));
+        }
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static int varintSize(long value) {
+        return value == 0 ? 1 : (63 - Long.numberOfLeadingZeros(value)) / 7 + 1;
+    }
+}
@@ -0,0 +1,220 @@
+package nl.saxion.concurrency.serialization;
+
+import akka.actor.ExtendedActorSystem;
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorRefResolver;
+import akka.actor.typed.javadsl.Adapter;
+import akka.serialization.SerializerWithStringManifest;
+import nl.saxion.concurrency.actors.HotelManager;
+import nl.saxion.concurrency.actors.PersistentHotelManager;
+import nl.saxion.concurrency.domain.Hotel;
+import nl.saxion.concurrency.messages.HotelEvent;
+
+import java.io.NotSerializableException;
+import java.time.LocalDate;
+import java.util.HashMap;
+
+/**
+ * Binary serializer for the events and snapshots of a persistent hotel manager. Events stay in the journal for as
+ * long as the hotel exists, so every field is tagged (see BinaryWriter) and a newer version can still read the
+ * events written by an older one.
+ *
+ * The calendar of a snapshot is stored as the rooms that are taken and pending per night. These are mostly 0,
+ * which takes a single byte per word.
+ */
+public class HotelEventSerializer extends SerializerWithStringManifest {
+    private static final String HOTEL_CREATED = "HC";
+    private static final String ROOMS_RESERVED = "RR";
+    private static final String RESERVATION_CANCELLED = "RC";
+    private static final String RESERVATION_CONFIRMED = "RF";
+    private static final String HOTEL_DELETED = "HD";
+    private static final String HOTEL_STATE = "HS";
+
+    private final ActorRefResolver actorRefResolver;
+
+    public HotelEventSerializer(ExtendedActorSystem system) {
+        actorRefResolver = ActorRefResolver.get(Adapter.toTyped(system));
+    }
+
+    @Override
+    public int identifier() {
+        return 7302;
+    }
+
+    @Override
+    public String manifest(Object o) {
+        if(o instanceof HotelEvent.RoomsReserved) return ROOMS_RESERVED;
+        if(o instanceof HotelEvent.ReservationCancelled) return RESERVATION_CANCELLED;
+        if(o instanceof HotelEvent.ReservationConfirmed) return RESERVATION_CONFIRMED;
+        if(o instanceof HotelEvent.HotelCreated) return HOTEL_CREATED;
+        if(o instanceof HotelEvent.HotelDeleted) return HOTEL_DELETED;
+        if(o instanceof PersistentHotelManager.HotelState) return HOTEL_STATE;
+        throw new IllegalArgumentException("Can't serialize object of type " + o.getClass().getName());
+    }
+
+    @Override
+    public byte[] toBinary(Object o) {
+        BinaryWriter writer = new BinaryWriter();
+        switch (manifest(o)) {
+            case ROOMS_RESERVED: {
+                HotelEvent.RoomsReserved event = (HotelEvent.RoomsReserved) o;
+                writer.writeString(1, event.reservationNumber)
+                    .writeInts(2, event.rooms)
+                    .writeDate(3, event.checkIn)
+                    .writeDate(4, event.checkOut);
+                writeRef(writer, 5, event.aggregator);
+                break;
+            }
+            case RESERVATION_CANCELLED:
+                writer.writeString(1, ((HotelEvent.ReservationCancelled) o).reservationNumber);
+                break;
+            case RESERVATION_CONFIRMED:
+                writer.writeString(1, ((HotelEvent.ReservationConfirmed) o).reservationNumber);
+                break;
+            case HOTEL_CREATED: {
+                HotelEvent.HotelCreated event = (HotelEvent.HotelCreated) o;
+                writer.writeString(1, event.hotelId)
+                    .writeString(2, event.name)
+                    .writeInt(3, event.amountOfRooms)
+                    .writeDate(4, event.firstNight);
+                break;
+            }
+            case HOTEL_DELETED:
+                break;
+            case HOTEL_STATE: {
+                PersistentHotelManager.HotelState state = (PersistentHotelManager.HotelState) o;
+                if(state.hotel != null){
+                    Hotel hotel = state.hotel;
+                    writer.writeMessage(1, new BinaryWriter(1024)
+                        .writeString(1, hotel.id)
+                        .writeString(2, hotel.name)
+                        .writeInt(3, hotel.getAmountOfRooms())
+                        .writeDate(4, hotel.getFirstNight())
+                        .writeWords(5, hotel.getTakenCalendar())
+                        .writeWords(6, hotel.getPendingCalendar()));
+                }
+                for (HotelManager.PendingReservation reservation : state.pending.values()) {
+                    BinaryWriter pending = new BinaryWriter()
+                        .writeString(1, reservation.reservationID)
+                        .writeInts(2, reservation.rooms)
+                        .writeDate(3, reservation.checkIn)
+                        .writeDate(4, reservation.checkOut);
+                    writeRef(pending, 5, reservation.aggregator);
+                    writer.writeMessage(2, pending);
+                }
+                writer.writeBoolean(3, state.deleted);
+                break;
+            }
+        }
+        return writer.toByteArray();
+    }
+
+    @Override
+    public Object fromBinary(byte[] bytes, String manifest) throws NotSerializableException {
+        BinaryReader reader = new BinaryReader(bytes);
+        switch (manifest) {
+            case ROOMS_RESERVED: {
+                HotelManager.PendingReservation reservation = readReservation(reader);
+                return new HotelEvent.RoomsReserved(reservation.reservationID, reservation.rooms, reservation.checkIn,
+                    reservation.checkOut, reservation.aggregator);
+            }
+            case RESERVATION_CANCELLED:
+                return new HotelEvent.ReservationCancelled(readReservationNumber(reader));
+            case RESERVATION_CONFIRMED:
+                return new HotelEvent.ReservationConfirmed(readReservationNumber(reader));
+            case HOTEL_CREATED: {
+                String hotelId = null, name = null;
+                int amountOfRooms = 0;
+                LocalDate firstNight = null;
+                for (int field = reader.nextField(); field != 0; field = reader.nextField()) {
+                    switch (field) {
+                        case 1: hotelId = reader.readString(); break;
+                        case 2: name = reader.readString(); break;
+                        case 3: amountOfRooms = reader.readInt(); break;
+                        case 4: firstNight = reader.readDate(); break;
+                        default: reader.skipField();
+                    }
+                }
+                return new HotelEvent.HotelCreated(hotelId, name, amountOfRooms, firstNight);
+            }
+            case HOTEL_DELETED:
+                return HotelEvent.HotelDeleted.INSTANCE;
+            case HOTEL_STATE: {
+                Hotel hotel = null;
+                HashMap<String, HotelManager.PendingReservation> pending = new HashMap<>();
+                boolean deleted = false;
+                for (int field = reader.nextField(); field != 0; field = reader.nextField()) {
+                    switch (field) {
+                        case 1: hotel = readHotel(reader.readMessage()); break;
+                        case 2: {
+                            HotelManager.PendingReservation reservation = readReservation(reader.readMessage());
+                            pending.put(reservation.reservationID, reservation);
+                            break;
+                        }
+                        case 3: deleted = reader.readBoolean(); break;
+                        default: reader.skipField();
+                    }
+                }
+                return new PersistentHotelManager.HotelState(hotel, pending, deleted);
+            }
+            default:
+                throw new NotSerializableException("Unknown manifest " + manifest);
+        }
+    }
+
+    private Hotel readHotel(BinaryReader reader) {
+        String id = null, name = null;
+        int amountOfRooms = 0;
+        LocalDate firstNight = null;
+        long[] taken = null, pending = null;
+        for (int field = reader.nextField(); field != 0; field = reader.nextField()) {
+            switch (field) {
+                case 1: id = reader.readString(); break;
+                case 2: name = reader.readString(); break;
+                case 3: amountOfRooms = reader.readInt(); break;
+                case 4: firstNight = reader.readDate(); break;
+                case 5: taken = reader.readWords(); break;
+                case 6: pending = reader.readWords(); break;
+                default: reader.skipField();
+            }
+        }
+        return new Hotel(id, name, amountOfRooms, firstNight, taken, pending);
+    }
+
+    private HotelManager.PendingReservation readReservation(BinaryReader reader) {
+        String reservationNumber = null;
+        int[] rooms = null;
+        LocalDate checkIn = null, checkOut = null;
+        ActorRef aggregator = null;
+        for (int field = reader.nextField(); field != 0; field = reader.nextField()) {
+            switch (field) {
+                case 1: reservationNumber = reader.readString(); break;
+                case 2: rooms = reader.readInts(); break;
+                case 3: checkIn = reader.readDate(); break;
+                case 4: checkOut = reader.readDate(); break;
+                case 5: aggregator = actorRefResolver.resolveActorRef(reader.readString()); break;
+                default: reader.skipField();
+            }
+        }
+        return new HotelManager.PendingReservation(reservationNumber, rooms, checkIn, checkOut, aggregator);
+    }
+
+    private static String readReservationNumber(BinaryReader reader) {
+        String reservationNumber = null;
+        for (int field = reader.nextField(); field != 0; field = reader.nextField()) {
+            if(field == 1){
+                reservationNumber = reader.readString();
+            }
+            else{
+                reader.skipField();
+            }
+        }
+        return reservationNumber;
+    }
+
+    private void writeRef(BinaryWriter writer, int field, ActorRef<?> ref) {
+        if(ref != null){
+            writer.writeString(field, actorRefResolver.toSerializationFormat(ref));
+        }
+    }
+}
@@ -0,0 +1,1058 @@
+package nl.saxion.concurrency.serialization;
+
+import akka.actor.ExtendedActorSystem;
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorRefResolver;
+import akka.actor.typed.javadsl.Adapter;
+import akka.serialization.SerializerWithStringManifest;
+import nl.saxion.concurrency.messages.RentARoomMessage;
+
+import java.io.NotSerializableException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Binary serializer for the messages that are sent between the actors. The manifest tells which message it is, the
+ * fields are written with a BinaryWriter so a field can be added or removed without breaking older nodes.
+ * Actor references are written as their path.
+ *
+ * ReceiveHotelsList is not supported, the receptionist only sends it to actors on the same node.
+ */
+public class RentARoomSerializer extends SerializerWithStringManifest {
+    private static final String RESPONSE = "R";
+    private static final String LIST_HOTELS = "LH";
+    private static final String REQUEST_HOTEL_INFORMATION = "RHI";
+    private static final String REQUEST_HOTEL_INFORMATION_REPLY = "RHIR";
+    private static final String HOTEL_MESSAGES_TO_EXPECT = "HME";
+    private static final String CREATE_HOTEL = "CH";
+    private static final String HOTELS_RECOVERED = "HRE";
+    private static final String DELETE_HOTEL = "DH";
+    private static final String STOP_BEHAVIORS = "SB";
+    private static final String REGISTER_RESERVATION = "RR";
+    private static final String AGGREGATOR_STOPPED = "AS";
+    private static final String RESERVATION_CLOSED = "RCL";
+    private static final String COORDINATE_RESERVATION = "CO";
+    private static final String RESERVATION = "RES";
+    private static final String HOTEL_RESERVATION = "HR";
+    private static final String HOTEL_RESERVATION_REPLY = "HRR";
+    private static final String CANCEL_RESERVATION = "CR";
+    private static final String CANCEL_RESERVATION_REPLY = "CRR";
+    private static final String CONFIRM_RESERVATION = "FR";
+    private static final String CONFIRM_RESERVATION_REPLY = "FRR";
+    private static final String EXPIRE_PENDING_RESERVATIONS = "EPR";
+    private static final String RESERVATION_EXPIRED = "RX";
+    private static final String SPAWN_AGENT = "SA";
+    private static final String LIST_HOTELS_PAGE = "LHP";
+    private static final String HOTELS_PAGE = "HP";
+    private static final String STREAM_HOTELS = "SH";
+    private static final String HOTEL_STREAM_COMPLETED = "HSC";
+    private static final String REQUEST_HOTEL_SUMMARY = "RHS";
+    private static final String HOTEL_SUMMARY = "HS";
+    private static final String HOTEL_LIST_TIMEOUT = "HLT";
+    private static final String AVAILABILITY_CHANGED = "AC";
+    private static final String REQUEST_AVAILABILITY = "RA";
+    private static final String REFRESH_AVAILABILITY = "RFA";
+    private static final String RESERVATION_BATCH = "RB";
+    private static final String OVERLOADED = "OL";
+    private static final String RESERVATION_BATCH_REPLY = "RBR";
+    private static final String HOTEL_RESERVATION_BATCH = "HRB";
+    private static final String HOTEL_RESERVATION_BATCH_REPLY = "HRBR";
+    private static final String COORDINATE_BATCH = "CB";
+    private static final String REGISTER_RESERVATIONS = "RRS";
+    private static final String RESERVATION_MADE = "RM";
+    private static final String HOTEL_CREATED = "HC";
+    private static final String SUCCEEDED = "SC";
+    private static final String REPORT_LOAD = "RPL";
+    private static final String LOAD_REPORT = "LR";
+    private static final String ADJUST_AGENT_POOL = "AAP";
+    private static final String DRAIN_AGENT = "DA";
+    private static final String AGENT_STARTED = "ASR";
+    private static final String FIND_AVAILABLE_HOTELS = "FAH";
+    private static final String PLACE_RESERVATION = "PR";
+    private static final String TRY_PLACEMENT = "TP";
+    private static final String RESERVATION_PLACED = "RPD";
+    private static final String AGENT_STOPPED = "AST";
+
+    private final ActorRefResolver actorRefResolver;
+
+    public RentARoomSerializer(ExtendedActorSystem system) {
+        actorRefResolver = ActorRefResolver.get(Adapter.toTyped(system));
+    }
+
+    @Override
+    public int identifier() {
+        return 7301;
+    }
+
+    @Override
+    public String manifest(Object o) {
+        //the messages that are sent most often are checked first
+        if(o instanceof RentARoomMessage.HotelReservation) return HOTEL_RESERVATION;
+        if(o instanceof RentARoomMessage.HotelReservationReply) return HOTEL_RESERVATION_REPLY;
+        if(o instanceof RentARoomMessage.ConfirmReservation) return CONFIRM_RESERVATION;
+        if(o instanceof RentARoomMessage.ConfirmReservationReply) return CONFIRM_RESERVATION_REPLY;
+        if(o instanceof RentARoomMessage.CancelReservation) return CANCEL_RESERVATION;
+        if(o instanceof RentARoomMessage.CancelReservationReply) return CANCEL_RESERVATION_REPLY;
+        if(o instanceof RentARoomMessage.Reservation) return RESERVATION;
+        if(o instanceof RentARoomMessage.HotelReservationBatch) return HOTEL_RESERVATION_BATCH;
+        if(o instanceof RentARoomMessage.HotelReservationBatchReply) return HOTEL_RESERVATION_BATCH_REPLY;
+        if(o instanceof RentARoomMessage.ReservationBatch) return RESERVATION_BATCH;
+        if(o instanceof RentARoomMessage.ReservationBatchReply) return RESERVATION_BATCH_REPLY;
+        if(o instanceof RentARoomMessage.CoordinateBatch) return COORDINATE_BATCH;
+        if(o instanceof RentARoomMessage.RegisterReservations) return REGISTER_RESERVATIONS;
+        if(o instanceof RentARoomMessage.Overloaded) return OVERLOADED;
+        if(o instanceof RentARoomMessage.ReservationPlaced) return RESERVATION_PLACED;
+        if(o instanceof RentARoomMessage.ReservationMade) return RESERVATION_MADE;
+        if(o instanceof RentARoomMessage.HotelCreated) return HOTEL_CREATED;
+        if(o instanceof RentARoomMessage.Succeeded) return SUCCEEDED;
+        if(o instanceof RentARoomMessage.Response) return RESPONSE;
+        if(o instanceof RentARoomMessage.RegisterReservation) return REGISTER_RESERVATION;
+        if(o instanceof RentARoomMessage.ReservationClosed) return RESERVATION_CLOSED;
+        if(o instanceof RentARoomMessage.CoordinateReservation) return COORDINATE_RESERVATION;
+        if(o instanceof RentARoomMessage.AggregatorStopped) return AGGREGATOR_STOPPED;
+        if(o instanceof RentARoomMessage.ReservationExpired) return RESERVATION_EXPIRED;
+        if(o instanceof RentARoomMessage.ExpirePendingReservations) return EXPIRE_PENDING_RESERVATIONS;
+        if(o instanceof RentARoomMessage.AvailabilityChanged) return AVAILABILITY_CHANGED;
+        if(o instanceof RentARoomMessage.RequestAvailability) return REQUEST_AVAILABILITY;
+        if(o instanceof RentARoomMessage.RefreshAvailability) return REFRESH_AVAILABILITY;
+        if(o instanceof RentARoomMessage.RequestHotelSummary) return REQUEST_HOTEL_SUMMARY;
+        if(o instanceof RentARoomMessage.HotelSummary) return HOTEL_SUMMARY;
+        if(o instanceof RentARoomMessage.ListHotelsPage) return LIST_HOTELS_PAGE;
+        if(o instanceof RentARoomMessage.HotelsPage) return HOTELS_PAGE;
+        if(o instanceof RentARoomMessage.StreamHotels) return STREAM_HOTELS;
+        if(o instanceof RentARoomMessage.HotelStreamCompleted) return HOTEL_STREAM_COMPLETED;
+        if(o instanceof RentARoomMessage.HotelListTimeout) return HOTEL_LIST_TIMEOUT;
+        if(o instanceof RentARoomMessage.ListHotels) return LIST_HOTELS;
+        if(o instanceof RentARoomMessage.RequestHotelInformation) return REQUEST_HOTEL_INFORMATION;
+        if(o instanceof RentARoomMessage.RequestHotelInformationReply) return REQUEST_HOTEL_INFORMATION_REPLY;
+        if(o instanceof RentARoomMessage.hotelMessagesToExpect) return HOTEL_MESSAGES_TO_EXPECT;
+        if(o instanceof RentARoomMessage.CreateHotel) return CREATE_HOTEL;
+        if(o instanceof RentARoomMessage.HotelsRecovered) return HOTELS_RECOVERED;
+        if(o instanceof RentARoomMessage.DeleteHotel) return DELETE_HOTEL;
+        if(o instanceof RentARoomMessage.StopBehaviors) return STOP_BEHAVIORS;
+        if(o instanceof RentARoomMessage.SpawnAgent) return SPAWN_AGENT;
+        if(o instanceof RentARoomMessage.ReportLoad) return REPORT_LOAD;
+        if(o instanceof RentARoomMessage.LoadReport) return LOAD_REPORT;
+        if(o instanceof RentARoomMessage.AdjustAgentPool) return ADJUST_AGENT_POOL;
+        if(o instanceof RentARoomMessage.DrainAgent) return DRAIN_AGENT;
+        if(o instanceof RentARoomMessage.AgentStarted) return AGENT_STARTED;
+        if(o instanceof RentARoomMessage.FindAvailableHotels) return FIND_AVAILABLE_HOTELS;
+        if(o instanceof RentARoomMessage.PlaceReservation) return PLACE_RESERVATION;
+        if(o instanceof RentARoomMessage.TryPlacement) return TRY_PLACEMENT;
+        if(o instanceof RentARoomMessage.AgentStopped) return AGENT_STOPPED;
+        throw new IllegalArgumentException("Can't serialize message of type " + o.getClass().getName());
+    }
+
+    @Override
+    public byte[] toBinary(Object o) {
+        BinaryWriter writer = new BinaryWriter();
+        switch (manifest(o)) {
+            case HOTEL_RESERVATION:
+                writeHotelReservation(writer, (RentARoomMessage.HotelReservation) o);
+                break;
+            case HOTEL_RESERVATION_REPLY:
+                writeHotelReservationReply(writer, (RentARoomMessage.HotelReservationReply) o);
+                break;
+            case HOTEL_RESERVATION_BATCH: {
+                RentARoomMessage.HotelReservationBatch message = (RentARoomMessage.HotelReservationBatch) o;
+                for (RentARoomMessage.HotelReservation reservation : message.reservations) {
+                    BinaryWriter nested = new BinaryWriter();
+                    writeHotelReservation(nested, reservation);
+                    writer.writeMessage(1, nested);
+                }
+                writeRef(writer, 2, message.replyTo);
+                break;
+            }
+            case HOTEL_RESERVATION_BATCH_REPLY:
+                for (RentARoomMessage.HotelReservationReply reply : ((RentARoomMessage.HotelReservationBatchReply) o).replies) {
+                    BinaryWriter nested = new BinaryWriter();
+                    writeHotelReservationReply(nested, reply);
+                    writer.writeMessage(1, nested);
+                }
+                break;
+            case RESERVATION_BATCH: {
+                RentARoomMessage.ReservationBatch message = (RentARoomMessage.ReservationBatch) o;
+                for (RentARoomMessage.Reservation reservation : message.reservations) {
+                    BinaryWriter nested = new BinaryWriter();
+                    writeReservation(nested, reservation);
+                    writer.writeMessage(1, nested);
+                }
+                writeRef(writer, 2, message.replyTo);
+                break;
+            }
+            case RESERVATION_BATCH_REPLY:
+                for (RentARoomMessage.ReservationResult result : ((RentARoomMessage.ReservationBatchReply) o).results) {
+                    writer.writeMessage(1, new BinaryWriter()
+                        .writeBoolean(1, result.status)
+                        .writeString(2, result.reservationNumber)
+                        .writeString(3, result.message));
+                }
+                break;
+            case COORDINATE_BATCH: {
+                RentARoomMessage.CoordinateBatch message = (RentARoomMessage.CoordinateBatch) o;
+                for (int i = 0; i < message.reservationNumbers.length; i++) {
+                    writer.writeMessage(1, new BinaryWriter()
+                        .writeString(1, message.reservationNumbers[i])
+                        .writeInt(2, message.amountOfHotels[i])
+                        .writeString(3, message.errors[i]));
+                }
+                writeRef(writer, 2, message.replyTo);
+                break;
+            }
+            case REGISTER_RESERVATIONS: {
+                RentARoomMessage.RegisterReservations message = (RentARoomMessage.RegisterReservations) o;
+                for (String reservationNumber : message.reservationNumbers) {
+                    writer.writeString(1, reservationNumber);
+                }
+                writeRef(writer, 2, message.owner);
+                break;
+            }
+            case CONFIRM_RESERVATION: {
+                RentARoomMessage.ConfirmReservation message = (RentARoomMessage.ConfirmReservation) o;
+                writer.writeString(1, message.reservationNumber);
+                writeRef(writer, 2, message.replyTo);
+                writeTraceId(writer, 3, message.traceId);
+                break;
+            }
+            case CONFIRM_RESERVATION_REPLY: {
+                RentARoomMessage.ConfirmReservationReply message = (RentARoomMessage.ConfirmReservationReply) o;
+                writer.writeString(1, message.reservationNumber)
+                    .writeBoolean(2, message.status);
+                writeRef(writer, 3, message.sender);
+                writer.writeString(4, message.message);
+                break;
+            }
+            case CANCEL_RESERVATION: {
+                RentARoomMessage.CancelReservation message = (RentARoomMessage.CancelReservation) o;
+                writer.writeString(1, message.reservationNumber);
+                writeRef(writer, 2, message.replyTo);
+                writeTraceId(writer, 3, message.traceId);
+                break;
+            }
+            case CANCEL_RESERVATION_REPLY: {
+                RentARoomMessage.CancelReservationReply message = (RentARoomMessage.CancelReservationReply) o;
+                writer.writeString(1, message.reservationNumber)
+                    .writeBoolean(2, message.status);
+                writeRef(writer, 3, message.sender);
+                writer.writeString(4, message.message);
+                break;
+            }
+            case RESERVATION:
+                writeReservation(writer, (RentARoomMessage.Reservation) o);
+                break;
+            case RESPONSE:
+            case OVERLOADED:
+            case SUCCEEDED:
+                writer.writeString(1, ((RentARoomMessage.Response) o).status);
+                break;
+            case RESERVATION_MADE:
+                writer.writeString(1, ((RentARoomMessage.ReservationMade) o).reservationNumber);
+                break;
+            case RESERVATION_PLACED: {
+                RentARoomMessage.ReservationPlaced message = (RentARoomMessage.ReservationPlaced) o;
+                writer.writeString(1, message.reservationNumber);
+                for (Map.Entry<String, Integer> hotel : message.rooms.entrySet()) {
+                    writer.writeMessage(2, new BinaryWriter(hotel.getKey().length() + 8)
+                        .writeString(1, hotel.getKey())
+                        .writeInt(2, hotel.getValue()));
+                }
+                break;
+            }
+            case PLACE_RESERVATION: {
+                RentARoomMessage.PlaceReservation message = (RentARoomMessage.PlaceReservation) o;
+                writer.writeInt(1, message.amountOfRooms)
+                    .writeDate(2, message.checkIn)
+                    .writeDate(3, message.checkOut)
+                    .writeBoolean(4, message.sameHotel)
+                    .writeString(5, message.namePrefix);
+                writeRef(writer, 6, message.replyTo);
+                writeTraceId(writer, 7, message.traceId);
+                break;
+            }
+            case TRY_PLACEMENT: {
+                BinaryWriter nested = new BinaryWriter();
+                writeReservation(nested, ((RentARoomMessage.TryPlacement) o).reservation);
+                writer.writeMessage(1, nested);
+                break;
+            }
+            case HOTEL_CREATED: {
+                RentARoomMessage.HotelCreated message = (RentARoomMessage.HotelCreated) o;
+                writer.writeString(1, message.status)
+                    .writeString(2, message.hotelId);
+                break;
+            }
+            case REGISTER_RESERVATION: {
+                RentARoomMessage.RegisterReservation message = (RentARoomMessage.RegisterReservation) o;
+                writer.writeString(1, message.reservationNumber);
+                writeRef(writer, 2, message.owner);
+                break;
+            }
+            case RESERVATION_CLOSED:
+                writer.writeString(1, ((RentARoomMessage.ReservationClosed) o).reservationNumber);
+                break;
+            case COORDINATE_RESERVATION: {
+                RentARoomMessage.CoordinateReservation message = (RentARoomMessage.CoordinateReservation) o;
+                writer.writeString(1, message.reservationNumber);
+                writeRef(writer, 2, message.reportTo);
+                writer.writeInt(3, message.amountOfHotels);
+                break;
+            }
+            case AGGREGATOR_STOPPED:
+                writeRef(writer, 1, ((RentARoomMessage.AggregatorStopped) o).aggregator);
+                break;
+            case RESERVATION_EXPIRED: {
+                RentARoomMessage.ReservationExpired message = (RentARoomMessage.ReservationExpired) o;
+                writer.writeString(1, message.reservationNumber);
+                writeRef(writer, 2, message.sender);
+                break;
+            }
+            case EXPIRE_PENDING_RESERVATIONS:
+                break;
+            case REQUEST_HOTEL_SUMMARY: {
+                RentARoomMessage.RequestHotelSummary message = (RentARoomMessage.RequestHotelSummary) o;
+                writeRef(writer, 1, message.replyTo);
+                writer.writeBoolean(2, message.includeRooms)
+                    .writeInt(3, message.minimumFreeRooms);
+                break;
+            }
+            case HOTEL_SUMMARY:
+                writeSummary(writer, (RentARoomMessage.HotelSummary) o);
+                break;
+            case LIST_HOTELS_PAGE: {
+                RentARoomMessage.ListHotelsPage message = (RentARoomMessage.ListHotelsPage) o;
+                writeRef(writer, 1, message.replyTo);
+                writer.writeString(2, message.fromId)
+                    .writeString(3, message.toId)
+                    .writeInt(4, message.minimumFreeRooms)
+                    .writeBoolean(5, message.summaryOnly)
+                    .writeInt(6, message.pageSize)
+                    .writeBoolean(7, message.fresh);
+                break;
+            }
+            case HOTELS_PAGE: {
+                RentARoomMessage.HotelsPage message = (RentARoomMessage.HotelsPage) o;
+                for (RentARoomMessage.HotelSummary summary : message.hotels) {
+                    BinaryWriter nested = new BinaryWriter();
+                    writeSummary(nested, summary);
+                    writer.writeMessage(1, nested);
+                }
+                writer.writeString(2, message.nextFromId);
+                break;
+            }
+            case STREAM_HOTELS: {
+                RentARoomMessage.StreamHotels message = (RentARoomMessage.StreamHotels) o;
+                writeRef(writer, 1, message.replyTo);
+                writer.writeString(2, message.fromId)
+                    .writeString(3, message.toId)
+                    .writeInt(4, message.minimumFreeRooms)
+                    .writeBoolean(5, message.summaryOnly)
+                    .writeBoolean(7, message.fresh);
+                break;
+            }
+            case HOTEL_STREAM_COMPLETED:
+                writer.writeInt(1, ((RentARoomMessage.HotelStreamCompleted) o).amountOfHotels);
+                break;
+            case HOTEL_LIST_TIMEOUT:
+                break;
+            case AVAILABILITY_CHANGED: {
+                RentARoomMessage.AvailabilityChanged message = (RentARoomMessage.AvailabilityChanged) o;
+                writer.writeString(1, message.hotelId)
+                    .writeString(2, message.name)
+                    .writeInt(3, message.amountOfRooms)
+                    .writeInt(4, message.availableRooms)
+                    .writeLong(5, message.version);
+                break;
+            }
+            case REQUEST_AVAILABILITY:
+                writeRef(writer, 1, ((RentARoomMessage.RequestAvailability) o).replyTo);
+                break;
+            case REFRESH_AVAILABILITY:
+                break;
+            case LIST_HOTELS:
+                writeRef(writer, 1, ((RentARoomMessage.ListHotels) o).sender);
+                break;
+            case REQUEST_HOTEL_INFORMATION:
+                writeRef(writer, 1, ((RentARoomMessage.RequestHotelInformation) o).sendTo);
+                break;
+            case REQUEST_HOTEL_INFORMATION_REPLY:
+                writer.writeString(1, ((RentARoomMessage.RequestHotelInformationReply) o).hotelInformation);
+                break;
+            case HOTEL_MESSAGES_TO_EXPECT: {
+                RentARoomMessage.hotelMessagesToExpect message = (RentARoomMessage.hotelMessagesToExpect) o;
+                writeRef(writer, 1, message.reportTo);
+                writer.writeLong(2, message.amount);
+                break;
+            }
+            case CREATE_HOTEL: {
+                RentARoomMessage.CreateHotel message = (RentARoomMessage.CreateHotel) o;
+                writeRef(writer, 1, message.sender);
+                writer.writeString(2, message.name)
+                    .writeInt(3, message.amountOfRooms);
+                break;
+            }
+            case HOTELS_RECOVERED:
+                for (String hotelId : ((RentARoomMessage.HotelsRecovered) o).hotelIds) {
+                    writer.writeString(1, hotelId);
+                }
+                break;
+            case DELETE_HOTEL: {
+                RentARoomMessage.DeleteHotel message = (RentARoomMessage.DeleteHotel) o;
+                writeRef(writer, 1, message.sender);
+                writer.writeString(2, message.id);
+                break;
+            }
+            case STOP_BEHAVIORS:
+                writeRef(writer, 1, ((RentARoomMessage.StopBehaviors) o).sender);
+                break;
+            case SPAWN_AGENT:
+                writeRef(writer, 1, ((RentARoomMessage.SpawnAgent) o).replyTo);
+                break;
+            case REPORT_LOAD:
+                break;
+            case LOAD_REPORT: {
+                RentARoomMessage.LoadReport message = (RentARoomMessage.LoadReport) o;
+                writeRef(writer, 1, message.agent);
+                writer.writeLong(2, message.requestsHandled);
+                break;
+            }
+            case ADJUST_AGENT_POOL:
+            case DRAIN_AGENT:
+                break;
+            case AGENT_STARTED:
+                writeRef(writer, 1, ((RentARoomMessage.AgentStarted) o).agent);
+                break;
+            case FIND_AVAILABLE_HOTELS: {
+                RentARoomMessage.FindAvailableHotels message = (RentARoomMessage.FindAvailableHotels) o;
+                writeRef(writer, 1, message.replyTo);
+                writer.writeInt(2, message.minimumFreeRooms)
+                    .writeInt(3, message.limit)
+                    .writeString(4, message.namePrefix);
+                break;
+            }
+            case AGENT_STOPPED:
+                writeRef(writer, 1, ((RentARoomMessage.AgentStopped) o).agent);
+                break;
+        }
+        return writer.toByteArray();
+    }
+
+    @Override
+    public Object fromBinary(byte[] bytes, String manifest) throws NotSerializableException {
+        BinaryReader reader = new BinaryReader(bytes);
+        switch (manifest) {
+            case HOTEL_RESERVATION:
+                return readHotelReservation(reader);
+            case HOTEL_RESERVATION_REPLY:
+                return readHotelReservationReply(reader);
+            case HOTEL_RESERVATION_BATCH: {
+                List<RentARoomMessage.HotelReservation> reservations = new ArrayList<>();
+                ActorRef replyTo = null;
+                for (int field = reader.nextField(); field != 0; field = reader.nextField()) {
+                    switch (field) {
+                        case 1: reservations.add(readHotelReservation(reader.readMessage())); break;
+                        case 2: replyTo = readRef(reader); break;
+                        default: reader.skipField();
+                    }
+                }
+                return new RentARoomMessage.HotelReservationBatch(reservations, replyTo);
+            }
+            case HOTEL_RESERVATION_BATCH_REPLY: {
+                List<RentARoomMessage.HotelReservationReply> replies = new ArrayList<>();
+                for (int field = reader.nextField(); field != 0; field = reader.nextField()) {
+                    if(field == 1){
+                        replies.add(readHotelReservationReply(reader.readMessage()));
+                    }
+                    else{
+                        reader.skipField();
+                    }
+                }
+                return new RentARoomMessage.HotelReservationBatchReply(replies);
+            }
+            case RESERVATION_BATCH: {
+                List<RentARoomMessage.Reservation> reservations = new ArrayList<>();
+                ActorRef replyTo = null;
+                for (int field = reader.nextField(); field != 0; field = reader.nextField()) {
+                    switch (field) {
+                        case 1: reservations.add(readReservation(reader.readMessage())); break;
+                        case 2: replyTo = readRef(reader); break;
+                        default: reader.skipField();
+                    }
+                }
+                return new RentARoomMessage.ReservationBatch(reservations, replyTo);
+            }
+            case RESERVATION_BATCH_REPLY: {
+                List<RentARoomMessage.ReservationResult> results = new ArrayList<>();
+                for (int field = reader.nextField(); field != 0; field = reader.nextField()) {
+                    if(field == 1){
+                        results.add(readReservationResult(reader.readMessage()));
+                    }
+                    else{
+                        reader.skipField();
+                    }
+                }
+                return new RentARoomMessage.ReservationBatchReply(results);
+            }
+            case COORDINATE_BATCH: {
+                List<String> reservationNumbers = new ArrayList<>(), errors = new ArrayList<>();
+                List<Integer> amountOfHotels = new ArrayList<>();
+                ActorRef replyTo = null;
+                for (int field = reader.nextField(); field != 0; field = reader.nextField()) {
+                    switch (field) {
+                        case 1: {
+                            BinaryReader nested = reader.readMessage();
+                            String reservationNumber = null, error = null;
+                            int hotels = 0;
+                            for (int nestedField = nested.nextField(); nestedField != 0; nestedField = nested.nextField()) {
+                                switch (nestedField) {
+                                    case 1: reservationNumber = nested.readString(); break;
+                                    case 2: hotels = nested.readInt(); break;
+                                    case 3: error = nested.readString(); break;
+                                    default: nested.skipField();
+                                }
+                            }
+                            reservationNumbers.add(reservationNumber);
+                            amountOfHotels.add(hotels);
+                            errors.add(error);
+                            break;
+                        }
+                        case 2: replyTo = readRef(reader); break;
+                        default: reader.skipField();
+                    }
+                }
+                int[] hotels = new int[amountOfHotels.size()];
+                for (int i = 0; i < hotels.length; i++) {
+                    hotels[i] = amountOfHotels.get(i);
+                }
+                return new RentARoomMessage.CoordinateBatch(reservationNumbers.toArray(new String[0]), hotels,
+                    errors.toArray(new String[0]), replyTo);
+            }
+            case REGISTER_RESERVATIONS: {
+                List<String> reservationNumbers = new ArrayList<>();
+                ActorRef owner = null;
+                for (int field = reader.nextField(); field != 0; field = reader.nextField()) {
+                    switch (field) {
+                        case 1: reservationNumbers.add(reader.readString()); break;
+                        case 2: owner = readRef(reader); break;
+                        default: reader.skipField();
+                    }
+                }
+                return new RentARoomMessage.RegisterReservations(reservationNumbers, owner);
+            }
+            case CONFIRM_RESERVATION:
+            case CANCEL_RESERVATION:
+            case RESERVATION_EXPIRED:
+            case REGISTER_RESERVATION: {
+                //all of these are a reservation number and an actor, a confirmation and cancellation also have a trace id
+                String reservationNumber = null;
+                ActorRef actor = null;
+                long traceId = 0;
+                for (int field = reader.nextField(); field != 0; field = reader.nextField()) {
+                    switch (field) {
+                        case 1: reservationNumber = reader.readString(); break;
+                        case 2: actor = readRef(reader); break;
+                        case 3: traceId = reader.readLong(); break;
+                        default: reader.skipField();
+                    }
+                }
+                switch (manifest) {
+                    case CONFIRM_RESERVATION: return new RentARoomMessage.ConfirmReservation(reservationNumber, actor, traceId);
+                    case CANCEL_RESERVATION: return new RentARoomMessage.CancelReservation(reservationNumber, actor, traceId);
+                    case RESERVATION_EXPIRED: return new RentARoomMessage.ReservationExpired(reservationNumber, actor);
+                    default: return new RentARoomMessage.RegisterReservation(reservationNumber, actor);
+                }
+            }
+            case CONFIRM_RESERVATION_REPLY:
+            case CANCEL_RESERVATION_REPLY: {
+                String reservationNumber = null, message = null;
+                boolean status = false;
+                ActorRef sender = null;
+                for (int field = reader.nextField(); field != 0; field = reader.nextField()) {
+                    switch (field) {
+                        case 1: reservationNumber = reader.readString(); break;
+                        case 2: status = reader.readBoolean(); break;
+                        case 3: sender = readRef(reader); break;
+                        case 4: message = reader.readString(); break;
+                        default: reader.skipField();
+                    }
+                }
+                return manifest.equals(CONFIRM_RESERVATION_REPLY) ?
+                    new RentARoomMessage.ConfirmReservationReply(reservationNumber, status, sender, message) :
+                    new RentARoomMessage.CancelReservationReply(reservationNumber, status, sender, message);
+            }
+            case RESERVATION:
+                return readReservation(reader);
+            case RESPONSE:
+                return new RentARoomMessage.Response(readString(reader));
+            case OVERLOADED:
+                return new RentARoomMessage.Overloaded(readString(reader));
+            case SUCCEEDED:
+                return new RentARoomMessage.Succeeded(readString(reader));
+            case RESERVATION_MADE:
+                return new RentARoomMessage.ReservationMade(readString(reader));
+            case RESERVATION_PLACED: {
+                String reservationNumber = null;
+                HashMap<String, Integer> rooms = new HashMap<>();
+                for (int field = reader.nextField(); field != 0; field = reader.nextField()) {
+                    switch (field) {
+                        case 1: reservationNumber = reader.readString(); break;
+                        case 2: readHotel(reader.readMessage(), rooms); break;
+                        default: reader.skipField();
+                    }
+                }
+                return new RentARoomMessage.ReservationPlaced(reservationNumber, rooms);
+            }
+            case PLACE_RESERVATION: {
+                int amountOfRooms = 0;
+                LocalDate checkIn = null, checkOut = null;
+                boolean sameHotel = false;
+                String namePrefix = null;
+                ActorRef replyTo = null;
+                long traceId = 0;
+                for (int field = reader.nextField(); field != 0; field = reader.nextField()) {
+                    switch (field) {
+                        case 1: amountOfRooms = reader.readInt(); break;
+                        case 2: checkIn = reader.readDate(); break;
+                        case 3: checkOut = reader.readDate(); break;
+                        case 4: sameHotel = reader.readBoolean(); break;
+                        case 5: namePrefix = reader.readString(); break;
+                        case 6: replyTo = readRef(reader); break;
+                        case 7: traceId = reader.readLong(); break;
+                        default: reader.skipField();
+                    }
+                }
+                return new RentARoomMessage.PlaceReservation(amountOfRooms, checkIn, checkOut, sameHotel, namePrefix, replyTo, traceId);
+            }
+            case TRY_PLACEMENT: {
+                RentARoomMessage.Reservation reservation = null;
+                for (int field = reader.nextField(); field != 0; field = reader.nextField()) {
+                    if(field == 1){
+                        reservation = readReservation(reader.readMessage());
+                    }
+                    else{
+                        reader.skipField();
+                    }
+                }
+                return new RentARoomMessage.TryPlacement(reservation);
+            }
+            case HOTEL_CREATED:
+                return readHotelCreated(reader);
+            case RESERVATION_CLOSED:
+                return new RentARoomMessage.ReservationClosed(readString(reader));
+            case REQUEST_HOTEL_INFORMATION_REPLY:
+                return new RentARoomMessage.RequestHotelInformationReply(readString(reader));
+            case COORDINATE_RESERVATION: {
+                String reservationNumber = null;
+                ActorRef reportTo = null;
+                int amountOfHotels = 0;
+                for (int field = reader.nextField(); field != 0; field = reader.nextField()) {
+                    switch (field) {
+                        case 1: reservationNumber = reader.readString(); break;
+                        case 2: reportTo = readRef(reader); break;
+                        case 3: amountOfHotels = reader.readInt(); break;
+                        default: reader.skipField();
+                    }
+                }
+                return new RentARoomMessage.CoordinateReservation(reservationNumber, reportTo, amountOfHotels);
+            }
+            case AGGREGATOR_STOPPED:
+                return new RentARoomMessage.AggregatorStopped(readActor(reader));
+            case EXPIRE_PENDING_RESERVATIONS:
+                return RentARoomMessage.ExpirePendingReservations.INSTANCE;
+            case REQUEST_HOTEL_SUMMARY: {
+                ActorRef replyTo = null;
+                boolean includeRooms = false;
+                int minimumFreeRooms = 0;
+                for (int field = reader.nextField(); field != 0; field = reader.nextField()) {
+                    switch (field) {
+                        case 1: replyTo = readRef(reader); break;
+                        case 2: includeRooms = reader.readBoolean(); break;
+                        case 3: minimumFreeRooms = reader.readInt(); break;
+                        default: reader.skipField();
+                    }
+                }
+                return new RentARoomMessage.RequestHotelSummary(replyTo, includeRooms, minimumFreeRooms);
+            }
+            case HOTEL_SUMMARY:
+                return readSummary(reader);
+            case LIST_HOTELS_PAGE:
+            case STREAM_HOTELS: {
+                ActorRef replyTo = null;
+                String fromId = null, toId = null;
+                int minimumFreeRooms = 0, pageSize = 0;
+                boolean summaryOnly = false, fresh = false;
+                for (int field = reader.nextField(); field != 0; field = reader.nextField()) {
+                    switch (field) {
+                        case 1: replyTo = readRef(reader); break;
+                        case 2: fromId = reader.readString(); break;
+                        case 3: toId = reader.readString(); break;
+                        case 4: minimumFreeRooms = reader.readInt(); break;
+                        case 5: summaryOnly = reader.readBoolean(); break;
+                        case 6: pageSize = reader.readInt(); break;
+                        case 7: fresh = reader.readBoolean(); break;
+                        default: reader.skipField();
+                    }
+                }
+                return manifest.equals(LIST_HOTELS_PAGE) ?
+                    new RentARoomMessage.ListHotelsPage(replyTo, fromId, toId, minimumFreeRooms, summaryOnly, pageSize, fresh) :
+                    new RentARoomMessage.StreamHotels(replyTo, fromId, toId, minimumFreeRooms, summaryOnly, fresh);
+            }
+            case HOTELS_PAGE: {
+                List<RentARoomMessage.HotelSummary> hotels = new ArrayList<>();
+                String nextFromId = null;
+                for (int field = reader.nextField(); field != 0; field = reader.nextField()) {
+                    switch (field) {
+                        case 1: hotels.add(readSummary(reader.readMessage())); break;
+                        case 2: nextFromId = reader.readString(); break;
+                        default: reader.skipField();
+                    }
+                }
+                return new RentARoomMessage.HotelsPage(hotels, nextFromId);
+            }
+            case HOTEL_STREAM_COMPLETED: {
+                int amountOfHotels = 0;
+                for (int field = reader.nextField(); field != 0; field = reader.nextField()) {
+                    if(field == 1){
+                        amountOfHotels = reader.readInt();
+                    }
+                    else{
+                        reader.skipField();
+                    }
+                }
+                return new RentARoomMessage.HotelStreamCompleted(amountOfHotels);
+            }
+            case HOTEL_LIST_TIMEOUT:
+                return RentARoomMessage.HotelListTimeout.INSTANCE;
+            case AVAILABILITY_CHANGED: {
+                String hotelId = null, name = null;
+                int amountOfRooms = 0, availableRooms = 0;
+                long version = 0;
+                for (int field = reader.nextField(); field != 0; field = reader.nextField()) {
+                    switch (field) {
+                        case 1: hotelId = reader.readString(); break;
+                        case 2: name = reader.readString(); break;
+                        case 3: amountOfRooms = reader.readInt(); break;
+                        case 4: availableRooms = reader.readInt(); break;
+                        case 5: version = reader.readLong(); break;
+                        default: reader.skipField();
+                    }
+                }
+                return new RentARoomMessage.AvailabilityChanged(hotelId, name, amountOfRooms, availableRooms, version);
+            }
+            case REQUEST_AVAILABILITY:
+                return new RentARoomMessage.RequestAvailability(readActor(reader));
+            case REFRESH_AVAILABILITY:
+                return RentARoomMessage.RefreshAvailability.INSTANCE;
+            case LIST_HOTELS:
+                return new RentARoomMessage.ListHotels(readActor(reader));
+            case REQUEST_HOTEL_INFORMATION:
+                return new RentARoomMessage.RequestHotelInformation(readActor(reader));
+            case STOP_BEHAVIORS:
+                return new RentARoomMessage.StopBehaviors(readActor(reader));
+            case SPAWN_AGENT:
+                return new RentARoomMessage.SpawnAgent(readActor(reader));
+            case REPORT_LOAD:
+                return RentARoomMessage.ReportLoad.INSTANCE;
+            case LOAD_REPORT: {
+                ActorRef agent = null;
+                long requestsHandled = 0;
+                for (int field = reader.nextField(); field != 0; field = reader.nextField()) {
+                    switch (field) {
+                        case 1: agent = readRef(reader); break;
+                        case 2: requestsHandled = reader.readLong(); break;
+                        default: reader.skipField();
+                    }
+                }
+                return new RentARoomMessage.LoadReport(agent, requestsHandled);
+            }
+            case ADJUST_AGENT_POOL:
+                return RentARoomMessage.AdjustAgentPool.INSTANCE;
+            case DRAIN_AGENT:
+                return RentARoomMessage.DrainAgent.INSTANCE;
+            case AGENT_STARTED:
+                return new RentARoomMessage.AgentStarted(readActor(reader));
+            case FIND_AVAILABLE_HOTELS: {
+                ActorRef replyTo = null;
+                int minimumFreeRooms = 0, limit = 0;
+                String namePrefix = null;
+                for (int field = reader.nextField(); field != 0; field = reader.nextField()) {
+                    switch (field) {
+                        case 1: replyTo = readRef(reader); break;
+                        case 2: minimumFreeRooms = reader.readInt(); break;
+                        case 3: limit = reader.readInt(); break;
+                        case 4: namePrefix = reader.readString(); break;
+                        default: reader.skipField();
+                    }
+                }
+                return new RentARoomMessage.FindAvailableHotels(replyTo, minimumFreeRooms, limit, namePrefix);
+            }
+            case AGENT_STOPPED:
+                return new RentARoomMessage.AgentStopped(readActor(reader));
+            case HOTEL_MESSAGES_TO_EXPECT: {
+                ActorRef reportTo = null;
+                long amount = 0;
+                for (int field = reader.nextField(); field != 0; field = reader.nextField()) {
+                    switch (field) {
+                        case 1: reportTo = readRef(reader); break;
+                        case 2: amount = reader.readLong(); break;
+                        default: reader.skipField();
+                    }
+                }
+                return new RentARoomMessage.hotelMessagesToExpect(reportTo, amount);
+            }
+            case CREATE_HOTEL: {
+                ActorRef sender = null;
+                String name = null;
+                int amountOfRooms = 0;
+                for (int field = reader.nextField(); field != 0; field = reader.nextField()) {
+                    switch (field) {
+                        case 1: sender = readRef(reader); break;
+                        case 2: name = reader.readString(); break;
+                        case 3: amountOfRooms = reader.readInt(); break;
+                        default: reader.skipField();
+                    }
+                }
+                return new RentARoomMessage.CreateHotel(sender, name, amountOfRooms);
+            }
+            case HOTELS_RECOVERED: {
+                List<String> hotelIds = new ArrayList<>();
+                for (int field = reader.nextField(); field != 0; field = reader.nextField()) {
+                    if(field == 1){
+                        hotelIds.add(reader.readString());
+                    }
+                    else{
+                        reader.skipField();
+                    }
+                }
+                return new RentARoomMessage.HotelsRecovered(hotelIds);
+            }
+            case DELETE_HOTEL: {
+                ActorRef sender = null;
+                String id = null;
+                for (int field = reader.nextField(); field != 0; field = reader.nextField()) {
+                    switch (field) {
+                        case 1: sender = readRef(reader); break;
+                        case 2: id = reader.readString(); break;
+                        default: reader.skipField();
+                    }
+                }
+                return new RentARoomMessage.DeleteHotel(sender, id);
+            }
+            default:
+                throw new NotSerializableException("Unknown manifest " + manifest);
+        }
+    }
+
+    private void writeHotelReservation(BinaryWriter writer, RentARoomMessage.HotelReservation message) {
+        writer.writeString(1, message.reservationNumber)
+            .writeInt(2, message.amountOfRooms)
+            .writeDate(3, message.checkIn)
+            .writeDate(4, message.checkOut);
+        writeRef(writer, 5, message.aggregator);
+        writeTraceId(writer, 6, message.traceId);
+    }
+
+    private RentARoomMessage.HotelReservation readHotelReservation(BinaryReader reader) {
+        String reservationNumber = null;
+        int amountOfRooms = 0;
+        LocalDate checkIn = null, checkOut = null;
+        ActorRef aggregator = null;
+        long traceId = 0;
+        for (int field = reader.nextField(); field != 0; field = reader.nextField()) {
+            switch (field) {
+                case 1: reservationNumber = reader.readString(); break;
+                case 2: amountOfRooms = reader.readInt(); break;
+                case 3: checkIn = reader.readDate(); break;
+                case 4: checkOut = reader.readDate(); break;
+                case 5: aggregator = readRef(reader); break;
+                case 6: traceId = reader.readLong(); break;
+                default: reader.skipField();
+            }
+        }
+        return new RentARoomMessage.HotelReservation(reservationNumber, amountOfRooms, checkIn, checkOut, aggregator, traceId);
+    }
+
+    private void writeHotelReservationReply(BinaryWriter writer, RentARoomMessage.HotelReservationReply message) {
+        writer.writeString(1, message.reservationNumber)
+            .writeBoolean(2, message.status);
+        writeRef(writer, 3, message.sender);
+        writer.writeInts(4, message.rooms)
+            .writeString(5, message.message)
+            .writeBoolean(6, message.overloaded);
+        writeTraceId(writer, 7, message.traceId);
+    }
+
+    private RentARoomMessage.HotelReservationReply readHotelReservationReply(BinaryReader reader) {
+        String reservationNumber = null, message = null;
+        boolean status = false;
+        ActorRef sender = null;
+        int[] rooms = null;
+        boolean overloaded = false;
+        long traceId = 0;
+        for (int field = reader.nextField(); field != 0; field = reader.nextField()) {
+            switch (field) {
+                case 1: reservationNumber = reader.readString(); break;
+                case 2: status = reader.readBoolean(); break;
+                case 3: sender = readRef(reader); break;
+                case 4: rooms = reader.readInts(); break;
+                case 5: message = reader.readString(); break;
+                case 6: overloaded = reader.readBoolean(); break;
+                case 7: traceId = reader.readLong(); break;
+                default: reader.skipField();
+            }
+        }
+        return new RentARoomMessage.HotelReservationReply(reservationNumber, status, sender, rooms, message, overloaded, traceId);
+    }
+
+    private void writeReservation(BinaryWriter writer, RentARoomMessage.Reservation message) {
+        for (Map.Entry<String, Integer> hotel : message.reservation.entrySet()) {
+            writer.writeMessage(1, new BinaryWriter(hotel.getKey().length() + 8)
+                .writeString(1, hotel.getKey())
+                .writeInt(2, hotel.getValue()));
+        }
+        writer.writeDate(2, message.checkIn)
+            .writeDate(3, message.checkOut);
+        writeRef(writer, 4, message.replyTo);
+        writeTraceId(writer, 5, message.traceId);
+        writer.writeString(6, message.reservationNumber);
+    }
+
+    private RentARoomMessage.Reservation readReservation(BinaryReader reader) {
+        HashMap<String, Integer> reservation = new HashMap<>();
+        LocalDate checkIn = null, checkOut = null;
+        ActorRef replyTo = null;
+        long traceId = 0;
+        String reservationNumber = null;
+        for (int field = reader.nextField(); field != 0; field = reader.nextField()) {
+            switch (field) {
+                case 1: readHotel(reader.readMessage(), reservation); break;
+                case 2: checkIn = reader.readDate(); break;
+                case 3: checkOut = reader.readDate(); break;
+                case 4: replyTo = readRef(reader); break;
+                case 5: traceId = reader.readLong(); break;
+                case 6: reservationNumber = reader.readString(); break;
+                default: reader.skipField();
+            }
+        }
+        return new RentARoomMessage.Reservation(reservation, checkIn, checkOut, replyTo, traceId, reservationNumber);
+    }
+
+    private static RentARoomMessage.ReservationResult readReservationResult(BinaryReader reader) {
+        boolean status = false;
+        String reservationNumber = null, message = null;
+        for (int field = reader.nextField(); field != 0; field = reader.nextField()) {
+            switch (field) {
+                case 1: status = reader.readBoolean(); break;
+                case 2: reservationNumber = reader.readString(); break;
+                case 3: message = reader.readString(); break;
+                default: reader.skipField();
+            }
+        }
+        return new RentARoomMessage.ReservationResult(status, reservationNumber, message);
+    }
+
+    private static void writeSummary(BinaryWriter writer, RentARoomMessage.HotelSummary summary) {
+        writer.writeString(1, summary.hotelId)
+            .writeString(2, summary.name)
+            .writeInt(3, summary.amountOfRooms)
+            .writeInt(4, summary.availableRooms)
+            .writeString(5, summary.details);
+    }
+
+    private static RentARoomMessage.HotelSummary readSummary(BinaryReader reader) {
+        String hotelId = null, name = null, details = null;
+        int amountOfRooms = 0, availableRooms = 0;
+        for (int field = reader.nextField(); field != 0; field = reader.nextField()) {
+            switch (field) {
+                case 1: hotelId = reader.readString(); break;
+                case 2: name = reader.readString(); break;
+                case 3: amountOfRooms = reader.readInt(); break;
+                case 4: availableRooms = reader.readInt(); break;
+                case 5: details = reader.readString(); break;
+                default: reader.skipField();
+            }
+        }
+        return new RentARoomMessage.HotelSummary(hotelId, name, amountOfRooms, availableRooms, details);
+    }
+
+    private void readHotel(BinaryReader reader, HashMap<String, Integer> reservation) {
+        String hotelId = null;
+        int amountOfRooms = 0;
+        for (int field = reader.nextField(); field != 0; field = reader.nextField()) {
+            switch (field) {
+                case 1: hotelId = reader.readString(); break;
+                case 2: amountOfRooms = reader.readInt(); break;
+                default: reader.skipField();
+            }
+        }
+        reservation.put(hotelId, amountOfRooms);
+    }
+
+    /**
+     * Read a HotelCreated, with the status as field 1 and the id of the new hotel as field 2.
+     */
+    private static RentARoomMessage.HotelCreated readHotelCreated(BinaryReader reader) {
+        String status = null, hotelId = null;
+        for (int field = reader.nextField(); field != 0; field = reader.nextField()) {
+            switch (field) {
+                case 1: status = reader.readString(); break;
+                case 2: hotelId = reader.readString(); break;
+                default: reader.skipField();
+            }
+        }
+        return new RentARoomMessage.HotelCreated(status, hotelId);
+    }
+
+    /**
+     * Read a message that only has a string as field 1.
+     */
+    private static String readString(BinaryReader reader) {
+        String value = null;
+        for (int field = reader.nextField(); field != 0; field = reader.nextField()) {
+            if(field == 1){
+                value = reader.readString();
+            }
+            else{
+                reader.skipField();
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Read a message that only has an actor as field 1.
+     */
+    private ActorRef readActor(BinaryReader reader) {
+        ActorRef value = null;
+        for (int field = reader.nextField(); field != 0; field = reader.nextField()) {
+            if(field == 1){
+                value = readRef(reader);
+            }
+            else{
+                reader.skipField();
+            }
+        }
+        return value;
+    }
+
+    private void writeRef(BinaryWriter writer, int field, ActorRef<?> ref) {
+        if(ref != null){
+            writer.writeString(field, actorRefResolver.toSerializationFormat(ref));
+        }
+    }
+
+    private ActorRef readRef(BinaryReader reader) {
+        return actorRefResolver.resolveActorRef(reader.readString());
+    }
+
+    /**
+     * A message that is not traced has trace id 0, which is left out.
+     */
+    private static void writeTraceId(BinaryWriter writer, int field, long traceId) {
+        if(traceId != 0){
+            writer.writeLong(field, traceId);
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package nl.saxion.concurrency.tracing;
+
+import akka.actor.typed.ActorSystem;
+import com.typesafe.config.Config;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Records the hops of reservations, confirmations and cancellations through the actors, so the time of a slow request
+ * can be split into the time at the router, the agent, the aggregator and the hotel managers. Every request carries a
+ * trace id from the moment it is created, and every message that is sent for it carries the same id. An actor that
+ * handles such a message records the hop with the time it got there.
+ *
+ * Only one in sample-rate trace ids is recorded. Whether an id is sampled follows from the id itself, so every actor
+ * agrees on it without a flag in the messages. For an id that is not sampled recording costs one remainder, a sampled
+ * hop allocates one small object. The hops are kept in a ring buffer, the oldest are overwritten, and can be dumped
+ * through JMX or to a file at any moment.
+ *
+ * There is one recorder per JVM, configured by the first actor system that uses it (rentaroom.tracing). In a cluster
+ * every node records the hops that happened on that node.
+ */
+public class SpanRecorder implements SpanRecorderMXBean {
+    /**
+     * The places where a hop is recorded, in the order a request passes them.
+     */
+    public enum Hop {
+        //a new request arrived at RentARoom, before it is sent to an agent or the registry
+        RESERVATION("router: reservation"),
+        CONFIRMATION("router: confirmation"),
+        CANCELLATION("router: cancellation"),
+        //the agent started handling the reservation
+        AGENT("agent"),
+        //the agent spawned the aggregator, or told the coordinator about the reservation
+        AGGREGATOR_STARTED("aggregator started"),
+        //the agent sent the reservation to all the hotels
+        DISPATCHED("dispatched to hotels"),
+        //the shard of the registry forwarded a confirmation or cancellation to the aggregator or coordinator
+        REGISTRY("registry"),
+        //the aggregator or coordinator got a confirmation or cancellation of the client
+        AGGREGATOR("aggregator"),
+        //a hotel manager started handling the request, and sent its reply
+        HOTEL("hotel received"),
+        HOTEL_DONE("hotel replied"),
+        //the aggregator or coordinator got the reply of a hotel
+        HOTEL_REPLY("hotel reply received"),
+        //the aggregator or coordinator sent the result to the client
+        REPLIED("replied");
+
+        public final String label;
+
+        Hop(String label) {
+            this.label = label;
+        }
+    }
+
+    private static final Object LOCK = new Object();
+    private static volatile SpanRecorder instance;
+
+    private final AtomicReferenceArray<Span> spans;
+    private final int mask;
+    private final AtomicLong recorded = new AtomicLong();
+    private volatile int sampleRate;
+    //added to System.nanoTime() to get the time since the epoch in nanoseconds
+    private final long epochOffset = System.currentTimeMillis() * 1_000_000 - System.nanoTime();
+
+    private SpanRecorder(int capacity, int sampleRate) {
+        //round up to a power of two, so the slot is a mask of the sequence number
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.spans = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * Get the span recorder of this JVM, the first time it is created with the config of the given actor system and
+     * registered with the platform MBean server.
+     * @param system the actor system of the caller.
+     * @return the span recorder.
+     */
+    public static SpanRecorder get(ActorSystem<?> system) {
+        SpanRecorder recorder = instance;
+        if(recorder != null){
+            return recorder;
+        }
+        synchronized (LOCK) {
+            if(instance == null){
+                Config config = system.settings().config().getConfig("rentaroom.tracing");
+                recorder = new SpanRecorder(config.getInt("buffer-size"), config.getInt("sample-rate"));
+                try {
+                    ObjectName objectName = new ObjectName("nl.saxion.concurrency:type=SpanRecorder");
+                    if(!ManagementFactory.getPlatformMBeanServer().isRegistered(objectName)){
+                        ManagementFactory.getPlatformMBeanServer().registerMBean(recorder, objectName);
+                    }
+                } catch (JMException e) {
+                    throw new IllegalStateException("Could not register the span recorder", e);
+                }
+                instance = recorder;
+            }
+            return instance;
+        }
+    }
+
+    /**
+     * @return a new trace id for a request, never 0. A message with trace id 0 is not traced.
+     */
+    public static long newTraceId() {
+        long traceId;
+        do {
+            traceId = ThreadLocalRandom.current().nextLong() & Long.MAX_VALUE;
+        } while (traceId == 0);
+        return traceId;
+    }
+
+    /**
+     * @param traceId the trace id of the request.
+     * @return true if the hops of this request are recorded.
+     */
+    public boolean sampled(long traceId) {
+        int rate = sampleRate;
+        return traceId != 0 && rate > 0 && traceId % rate == 0;
+    }
+
+    /**
+     * Record that the request got to the given hop now, if the request is sampled.
+     * @param traceId the trace id of the request.
+     * @param hop where the request is.
+     */
+    public void record(long traceId, Hop hop) {
+        if(!sampled(traceId)){
+            return;
+        }
+        Span span = new Span(traceId, hop, System.nanoTime());
+        spans.set((int) recorded.getAndIncrement() & mask, span);
+    }
+
+    @Override
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    @Override
+    public void setSampleRate(int sampleRate) {
+        this.sampleRate = Math.max(0, sampleRate);
+    }
+
+    @Override
+    public int getCapacity() {
+        return spans.length();
+    }
+
+    @Override
+    public long getRecordedHops() {
+        return recorded.get();
+    }
+
+    @Override
+    public String dump() {
+        StringBuilder dump = new StringBuilder();
+        try {
+            write(dump, traces());
+        } catch (IOException e) {
+            //a StringBuilder does not throw
+            throw new IllegalStateException(e);
+        }
+        return dump.toString();
+    }
+
+    @Override
+    public int dumpToFile(String file) throws IOException {
+        Map<Long, List<Span>> traces = traces();
+        try (Writer writer = Files.newBufferedWriter(Paths.get(file), StandardCharsets.UTF_8)) {
+            write(writer, traces);
+        }
+        return traces.size();
+    }
+
+    @Override
+    public void reset() {
+        for (int slot = 0; slot < spans.length(); slot++) {
+            spans.set(slot, null);
+        }
+        recorded.set(0);
+    }
+
+    /**
+     * @return the hops in the ring buffer per trace, every trace sorted by time and the traces by their first hop.
+     */
+    private Map<Long, List<Span>> traces() {
+        List<Span> all = new ArrayList<>(spans.length());
+        for (int slot = 0; slot < spans.length(); slot++) {
+            Span span = spans.get(slot);
+            if(span != null){
+                all.add(span);
+            }
+        }
+        all.sort(Comparator.comparingLong(span -> span.nanos));
+        Map<Long, List<Span>> traces = new LinkedHashMap<>();
+        for (Span span : all) {
+            traces.computeIfAbsent(span.traceId, id -> new ArrayList<>()).add(span);
+        }
+        return traces;
+    }
+
+    /**
+     * Write a summary of the time between every two hops that follow each other, followed by every trace with the
+     * time since the previous hop.
+     */
+    private void write(Appendable out, Map<Long, List<Span>> traces) throws IOException {
+        //count, total and max of the time between two hops, by the ordinals of the hops
+        TreeMap<Integer, long[]> steps = new TreeMap<>();
+        for (List<Span> trace : traces.values()) {
+            for (int i = 1; i < trace.size(); i++) {
+                long[] step = steps.computeIfAbsent(trace.get(i - 1).hop.ordinal() * Hop.values().length +
+                    trace.get(i).hop.ordinal(), key -> new long[3]);
+                long nanos = trace.get(i).nanos - trace.get(i - 1).nanos;
+                step[0]++;
+                step[1] += nanos;
+                step[2] = Math.max(step[2], nanos);
+            }
+        }
+        out.append(String.format("%d traces, sampling 1 in %d requests%n%n", traces.size(), sampleRate));
+        out.append(String.format("%-50s %9s %10s %10s%n", "step", "count", "mean ms", "max ms"));
+        for (Map.Entry<Integer, long[]> step : steps.entrySet()) {
+            Hop from = Hop.values()[step.getKey() / Hop.values().length];
+            Hop to = Hop.values()[step.getKey() % Hop.values().length];
+            long[] stats = step.getValue();
+            out.append(String.format("%-50s %9d %10.3f %10.3f%n", from.label + " -> " + to.label, stats[0],
+                stats[1] / (double) stats[0] / 1_000_000, stats[2] / 1_000_000.0));
+        }
+
+        for (Map.Entry<Long, List<Span>> trace : traces.entrySet()) {
+            List<Span> hops = trace.getValue();
+            long first = hops.get(0).nanos;
+            out.append(String.format("%ntrace %016x at %s, %.3f ms%n", trace.getKey(),
+                Instant.ofEpochMilli((first + epochOffset) / 1_000_000),
+                (hops.get(hops.size() - 1).nanos - first) / 1_000_000.0));
+            long previous = first;
+            for (Span span : hops) {
+                out.append(String.format("  %-24s +%9.3f ms%n", span.hop.label, (span.nanos - previous) / 1_000_000.0));
+                previous = span.nanos;
+            }
+        }
+    }
+
+    /**
+     * One recorded hop.
+     */
+    private static final class Span {
+        final long traceId;
+        final Hop hop;
+        final long nanos;
+
+        Span(long traceId, Hop hop, long nanos) {
+            this.traceId = traceId;
+            this.hop = hop;
+            this.nanos = nanos;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package nl.saxion.concurrency.tracing;
+
+import java.io.IOException;
+
+/**
+ * The span recorder of this JVM, registered as nl.saxion.concurrency:type=SpanRecorder.
+ */
+public interface SpanRecorderMXBean {
+    /**
+     * @return one in this many requests is traced, 0 when tracing is off.
+     */
+    int getSampleRate();
+
+    void setSampleRate(int sampleRate);
+
+    /**
+     * @return the amount of hops that fit in the ring buffer.
+     */
+    int getCapacity();
+
+    /**
+     * @return the amount of hops recorded since the start or the last reset, including the ones that are overwritten.
+     */
+    long getRecordedHops();
+
+    /**
+     * @return the breakdown of the traces in the ring buffer.
+     */
+    String dump();
+
+    /**
+     * Write the breakdown of the traces in the ring buffer to a file.
+     * @param file path of the file, it is overwritten.
+     * @return the amount of traces written.
+     */
+    int dumpToFile(String file) throws IOException;
+
+    void reset();
+}
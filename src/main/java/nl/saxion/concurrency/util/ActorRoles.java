@@ -0,0 +1,54 @@
+package nl.saxion.concurrency.util;
+
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Props;
+import com.typesafe.config.Config;
+
+/**
+ * The roles of the actors in the system, each of which can run on its own dispatcher. The dispatcher of a role is set
+ * in rentaroom.dispatchers, as the config path of a dispatcher section. An empty path keeps the actors of that role
+ * on the default dispatcher.
+ *
+ * The props are looked up once by the actor that spawns the children and reused for every spawn.
+ */
+public final class ActorRoles {
+    //the hotel managers, persistent or not
+    public static final String HOTEL = "hotel";
+    public static final String AGENT = "agent";
+    //the short-lived actors of a single request: the reservation, data and list aggregators
+    public static final String AGGREGATOR = "aggregator";
+    //the reservation coordinators of the agents
+    public static final String COORDINATOR = "coordinator";
+    //the shards of the reservation registry
+    public static final String REGISTRY = "registry";
+
+    private ActorRoles() {
+    }
+
+    /**
+     * @param system the actor system, of which the config is used.
+     * @param role one of the roles above.
+     * @return the props that select the dispatcher of the role.
+     */
+    public static Props props(ActorSystem<?> system, String role) {
+        return props(system, role, Props.empty());
+    }
+
+    /**
+     * @param system the actor system, of which the config is used.
+     * @param role one of the roles above.
+     * @param props other props of the actors, like a mailbox selector.
+     * @return the given props, with the dispatcher of the role.
+     */
+    public static Props props(ActorSystem<?> system, String role, Props props) {
+        Config config = system.settings().config();
+        String dispatcher = config.getString("rentaroom.dispatchers." + role);
+        if(dispatcher.isEmpty()){
+            return props;
+        }
+        if(!config.hasPath(dispatcher)){
+            throw new IllegalArgumentException("The dispatcher " + dispatcher + " of the " + role + " actors is not configured");
+        }
+        return props.withDispatcherFromConfig(dispatcher);
+    }
+}
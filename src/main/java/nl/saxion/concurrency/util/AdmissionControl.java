@@ -0,0 +1,59 @@
+package nl.saxion.concurrency.util;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.javadsl.ActorContext;
+import akka.actor.typed.javadsl.Adapter;
+import akka.dispatch.MessageQueue;
+import com.typesafe.config.Config;
+
+/**
+ * Decides if an actor takes on new work. New work is rejected when more messages are waiting in the mailbox of the
+ * actor than the configured maximum (only when the actor runs with an AdmissionMailbox), or when the actor already
+ * has more work in flight than the given maximum.
+ */
+public class AdmissionControl {
+    private final MessageQueue queue;
+    private final int maxQueueDepth;
+
+    public AdmissionControl(ActorContext<?> context) {
+        this(context, context.getSelf());
+    }
+
+    /**
+     * Admission control based on the mailbox of another (local) actor.
+     */
+    public AdmissionControl(ActorContext<?> context, ActorRef<?> actor) {
+        Config config = context.getSystem().settings().config();
+        this.queue = AdmissionMailbox.queueOf(context.getSystem(), Adapter.toClassic(actor));
+        this.maxQueueDepth = config.getInt("rentaroom.admission.max-queue-depth");
+    }
+
+    /**
+     * @return the amount of messages waiting in the mailbox, 0 if the actor does not use an AdmissionMailbox.
+     */
+    public int queueDepth() {
+        return queue == null ? 0 : queue.numberOfMessages();
+    }
+
+    /**
+     * @return true if more messages are waiting in the mailbox than the maximum.
+     */
+    public boolean queueFull() {
+        return queueDepth() > maxQueueDepth;
+    }
+
+    /**
+     * @param inFlight amount of work the actor has in flight.
+     * @param maxInFlight the maximum amount of work in flight, 0 for no maximum.
+     * @return the reason to reject new work, or null if the work can be admitted.
+     */
+    public String reject(int inFlight, int maxInFlight) {
+        if(queueFull()){
+            return queueDepth() + " messages are waiting";
+        }
+        if(maxInFlight > 0 && inFlight >= maxInFlight){
+            return inFlight + " reservations are in progress";
+        }
+        return null;
+    }
+}
@@ -0,0 +1,120 @@
+package nl.saxion.concurrency.util;
+
+import akka.actor.AbstractExtensionId;
+import akka.actor.ActorRef;
+import akka.actor.ActorSystem;
+import akka.actor.ClassicActorSystemProvider;
+import akka.actor.ExtendedActorSystem;
+import akka.actor.Extension;
+import akka.dispatch.Envelope;
+import akka.dispatch.MailboxType;
+import akka.dispatch.MessageQueue;
+import akka.dispatch.ProducesMessageQueue;
+import akka.dispatch.UnboundedMessageQueueSemantics;
+import com.typesafe.config.Config;
+import scala.Option;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Unbounded mailbox of which the owner can read the amount of waiting messages, so it can reject new work when too
+ * much is waiting (see AdmissionControl). The mailbox itself never drops a message: confirmations, cancellations,
+ * replies of the hotels and timer messages always arrive, only new work is rejected by the actor. The amount of
+ * messages is counted on every enqueue and dequeue, so reading it does not walk the queue.
+ *
+ * Use it with MailboxSelector.fromConfig and a config section with mailbox-type set to this class.
+ */
+public class AdmissionMailbox implements MailboxType, ProducesMessageQueue<AdmissionMailbox.CountingQueue> {
+
+    public AdmissionMailbox(ActorSystem.Settings settings, Config config) {
+    }
+
+    @Override
+    public MessageQueue create(Option<ActorRef> owner, Option<ActorSystem> system) {
+        if(owner.isEmpty() || system.isEmpty()){
+            return new CountingQueue(null, null);
+        }
+        Queues queues = QUEUES.get(system.get());
+        CountingQueue queue = new CountingQueue(owner.get(), queues);
+        queues.queues.put(owner.get(), queue);
+        return queue;
+    }
+
+    /**
+     * Get the mailbox of an actor, to check the amount of waiting messages with numberOfMessages().
+     * @param system the actor system of the actor.
+     * @param actor the (classic) actor ref of the owner.
+     * @return the mailbox, or null if the actor does not use an admission mailbox.
+     */
+    public static MessageQueue queueOf(ClassicActorSystemProvider system, ActorRef actor) {
+        return QUEUES.get(system).queues.get(actor);
+    }
+
+    /**
+     * The queues of the actors of one actor system that use this mailbox, so an actor can find its own queue. A queue
+     * is removed when its actor stops, and the whole map goes away with the actor system.
+     */
+    static final class Queues implements Extension {
+        final ConcurrentHashMap<ActorRef, CountingQueue> queues = new ConcurrentHashMap<>();
+    }
+
+    private static final AbstractExtensionId<Queues> QUEUES = new AbstractExtensionId<Queues>() {
+        @Override
+        public Queues createExtension(ExtendedActorSystem system) {
+            return new Queues();
+        }
+    };
+
+    /**
+     * Unbounded queue that keeps count of its messages.
+     */
+    public static final class CountingQueue implements MessageQueue, UnboundedMessageQueueSemantics {
+        private final ConcurrentLinkedQueue<Envelope> queue = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger count = new AtomicInteger();
+        //the owner and the queues it is registered in, null when the queue has no owner
+        private final ActorRef owner;
+        private final Queues queues;
+
+        CountingQueue(ActorRef owner, Queues queues) {
+            this.owner = owner;
+            this.queues = queues;
+        }
+
+        @Override
+        public void enqueue(ActorRef receiver, Envelope handle) {
+            queue.add(handle);
+            count.incrementAndGet();
+        }
+
+        @Override
+        public Envelope dequeue() {
+            Envelope envelope = queue.poll();
+            if(envelope != null){
+                count.decrementAndGet();
+            }
+            return envelope;
+        }
+
+        @Override
+        public int numberOfMessages() {
+            return count.get();
+        }
+
+        @Override
+        public boolean hasMessages() {
+            return !queue.isEmpty();
+        }
+
+        @Override
+        public void cleanUp(ActorRef owner, MessageQueue deadLetters) {
+            if(queues != null){
+                queues.queues.remove(this.owner, this);
+            }
+            for (Envelope envelope = dequeue(); envelope != null; envelope = dequeue()) {
+                deadLetters.enqueue(owner, envelope);
+            }
+        }
+    }
+}
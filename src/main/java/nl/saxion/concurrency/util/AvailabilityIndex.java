@@ -0,0 +1,153 @@
+package nl.saxion.concurrency.util;
+
+import nl.saxion.concurrency.messages.RentARoomMessage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.PriorityQueue;
+import java.util.TreeSet;
+
+/**
+ * The last known availability of every hotel, by id, ordered by the amount of free rooms and ordered by name. The
+ * hotels with the most free rooms are found without looking at the others: the hotels with at least N free rooms,
+ * top K, takes O(log n + K). Every update takes O(log n).
+ *
+ * With a name prefix only the hotels with that prefix are looked at, O(log n + m log K) for m hotels with the prefix.
+ * The prefix is case sensitive.
+ *
+ * The best fit for a group of N rooms is the other way around: the hotels with the fewest free rooms that still have
+ * at least N, so the hotels with many free rooms stay available for larger groups.
+ *
+ * Used by a single actor, so it is not thread safe.
+ */
+public class AvailabilityIndex {
+    private static final Comparator<RentARoomMessage.AvailabilityChanged> BY_FREE_ROOMS =
+        Comparator.<RentARoomMessage.AvailabilityChanged>comparingInt(hotel -> -hotel.availableRooms)
+            .thenComparing(hotel -> hotel.hotelId);
+    private static final Comparator<RentARoomMessage.AvailabilityChanged> BY_NAME =
+        Comparator.<RentARoomMessage.AvailabilityChanged, String>comparing(hotel -> hotel.name == null ? "" : hotel.name)
+            .thenComparing(hotel -> hotel.hotelId);
+
+    private final HashMap<String, RentARoomMessage.AvailabilityChanged> byId = new HashMap<>();
+    private final TreeSet<RentARoomMessage.AvailabilityChanged> byFreeRooms = new TreeSet<>(BY_FREE_ROOMS);
+    private final TreeSet<RentARoomMessage.AvailabilityChanged> byName = new TreeSet<>(BY_NAME);
+
+    /**
+     * @return the availability of the hotel, null if it is not known.
+     */
+    public RentARoomMessage.AvailabilityChanged get(String hotelId) {
+        return byId.get(hotelId);
+    }
+
+    public boolean containsAll(Collection<String> hotelIds) {
+        return byId.keySet().containsAll(hotelIds);
+    }
+
+    /**
+     * Replace the availability of the hotel. The caller decides whether the update is newer than the one it replaces.
+     */
+    public void put(RentARoomMessage.AvailabilityChanged availability) {
+        remove(availability.hotelId);
+        byId.put(availability.hotelId, availability);
+        byFreeRooms.add(availability);
+        byName.add(availability);
+    }
+
+    public void remove(String hotelId) {
+        RentARoomMessage.AvailabilityChanged known = byId.remove(hotelId);
+        if(known != null){
+            byFreeRooms.remove(known);
+            byName.remove(known);
+        }
+    }
+
+    /**
+     * @param minimumFreeRooms only hotels with at least this amount of free rooms.
+     * @param limit the maximum amount of hotels.
+     * @param namePrefix only hotels with a name that starts with this, null or empty for every hotel.
+     * @return the hotels with the most free rooms, most free rooms first.
+     */
+    public List<RentARoomMessage.AvailabilityChanged> withFreeRooms(int minimumFreeRooms, int limit, String namePrefix) {
+        List<RentARoomMessage.AvailabilityChanged> found = new ArrayList<>();
+        if(limit <= 0){
+            return found;
+        }
+        if(namePrefix == null || namePrefix.isEmpty()){
+            for (RentARoomMessage.AvailabilityChanged hotel : byFreeRooms) {
+                if(hotel.availableRooms < minimumFreeRooms || found.size() == limit){
+                    break;
+                }
+                found.add(hotel);
+            }
+            return found;
+        }
+
+        found.addAll(best(withPrefix(namePrefix), minimumFreeRooms, limit, BY_FREE_ROOMS));
+        return found;
+    }
+
+    /**
+     * @param rooms only hotels with at least this amount of free rooms.
+     * @param limit the maximum amount of hotels.
+     * @param namePrefix only hotels with a name that starts with this, null or empty for every hotel.
+     * @return the hotels with the fewest free rooms that still have the given amount, fewest free rooms first.
+     */
+    public List<RentARoomMessage.AvailabilityChanged> bestFit(int rooms, int limit, String namePrefix) {
+        List<RentARoomMessage.AvailabilityChanged> found = new ArrayList<>();
+        if(limit <= 0){
+            return found;
+        }
+        if(namePrefix == null || namePrefix.isEmpty()){
+            //every hotel with at least the amount of rooms comes before this one, the last of them fits best
+            RentARoomMessage.AvailabilityChanged fewest = new RentARoomMessage.AvailabilityChanged(
+                String.valueOf(Character.MAX_VALUE), null, 0, rooms, 0);
+            for (RentARoomMessage.AvailabilityChanged hotel : byFreeRooms.headSet(fewest, false).descendingSet()) {
+                if(found.size() == limit){
+                    break;
+                }
+                found.add(hotel);
+            }
+            return found;
+        }
+        found.addAll(best(withPrefix(namePrefix), rooms, limit, BY_FREE_ROOMS.reversed()));
+        return found;
+    }
+
+    /**
+     * @return the hotels with a name from the prefix up to the prefix followed by the highest character.
+     */
+    private NavigableSet<RentARoomMessage.AvailabilityChanged> withPrefix(String namePrefix) {
+        return byName.subSet(
+            new RentARoomMessage.AvailabilityChanged("", namePrefix, 0, 0, 0), true,
+            new RentARoomMessage.AvailabilityChanged("", namePrefix + Character.MAX_VALUE, 0, 0, 0), false);
+    }
+
+    /**
+     * @return the first limit hotels in the given order with at least the minimum of free rooms, in that order.
+     */
+    private static List<RentARoomMessage.AvailabilityChanged> best(Collection<RentARoomMessage.AvailabilityChanged> hotels,
+                                                                   int minimumFreeRooms, int limit,
+                                                                   Comparator<RentARoomMessage.AvailabilityChanged> order) {
+        //the best limit hotels so far, the worst of them on top
+        PriorityQueue<RentARoomMessage.AvailabilityChanged> best = new PriorityQueue<>(limit, order.reversed());
+        for (RentARoomMessage.AvailabilityChanged hotel : hotels) {
+            if(hotel.availableRooms < minimumFreeRooms){
+                continue;
+            }
+            if(best.size() < limit){
+                best.add(hotel);
+            }
+            else if(order.compare(hotel, best.peek()) < 0){
+                best.poll();
+                best.add(hotel);
+            }
+        }
+        List<RentARoomMessage.AvailabilityChanged> found = new ArrayList<>(best);
+        found.sort(order);
+        return found;
+    }
+}
@@ -0,0 +1,113 @@
+package nl.saxion.concurrency.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histogram of latencies, that can be recorded from many threads at the same time without locks or allocation. The
+ * values are in microseconds, or in any other unit the caller records them in. Values below 128 are counted exactly,
+ * larger values in buckets of 1/64th of their power of two, so a percentile is at most about 1.6% too high. Values
+ * up to about 2^40 (12 days in microseconds, 18 minutes in nanoseconds) are counted, larger ones in the last bucket.
+ */
+public class LatencyHistogram {
+    private static final int SUB_BUCKETS = 64;
+    private static final int LINEAR = 2 * SUB_BUCKETS;
+    private static final int MAX_EXPONENT = 40;
+
+    private final AtomicLongArray counts = new AtomicLongArray(LINEAR + (MAX_EXPONENT - 6) * SUB_BUCKETS);
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+
+    /**
+     * @param nanos the latency in nanoseconds.
+     */
+    public void recordNanos(long nanos) {
+        record(nanos / 1000);
+    }
+
+    /**
+     * @param value the latency in microseconds, or the unit of this histogram.
+     */
+    public void record(long value) {
+        value = Math.max(0, value);
+        counts.incrementAndGet(Math.min(counts.length() - 1, index(value)));
+        total.incrementAndGet();
+        sum.addAndGet(value);
+        long current = max.get();
+        while (value > current && !max.compareAndSet(current, value)) {
+            current = max.get();
+        }
+    }
+
+    public long count() {
+        return total.get();
+    }
+
+    /**
+     * @return the highest recorded value in microseconds.
+     */
+    public long max() {
+        return max.get();
+    }
+
+    /**
+     * @return the average in microseconds, 0 when nothing was recorded.
+     */
+    public double mean() {
+        long count = total.get();
+        return count == 0 ? 0 : (double) sum.get() / count;
+    }
+
+    /**
+     * @param percentile for example 99.9.
+     * @return the value in microseconds below which the given percentage of the values is, 0 when nothing was
+     * recorded.
+     */
+    public long percentile(double percentile) {
+        long count = total.get();
+        if(count == 0){
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+        long seen = 0;
+        for (int index = 0; index < counts.length(); index++) {
+            seen += counts.get(index);
+            if(seen >= rank){
+                return Math.min(highestValue(index), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    public void reset() {
+        for (int index = 0; index < counts.length(); index++) {
+            counts.set(index, 0);
+        }
+        total.set(0);
+        sum.set(0);
+        max.set(0);
+    }
+
+    private static int index(long value) {
+        if(value < LINEAR){
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - 6;
+        return LINEAR + (exponent - 7) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+    }
+
+    /**
+     * @return the highest value that is counted in the bucket.
+     */
+    private static long highestValue(int index) {
+        if(index < LINEAR){
+            return index;
+        }
+        int exponent = (index - LINEAR) / SUB_BUCKETS + 7;
+        int shift = exponent - 6;
+        long mantissa = (index - LINEAR) % SUB_BUCKETS + SUB_BUCKETS;
+        return ((mantissa + 1) << shift) - 1;
+    }
+}
@@ -0,0 +1,83 @@
+package nl.saxion.concurrency.util;
+
+import java.util.ArrayList;
+import java.util.function.Consumer;
+
+/**
+ * Hashed timing wheel. Items are put in the slot of the tick they expire on, so scheduling an item costs O(1)
+ * and every tick only has to look at the items of a single slot. Items that are scheduled further away than the
+ * amount of slots stay in their slot until the wheel has turned enough rounds.
+ *
+ * Items can not be removed from the wheel. The owner should check when an item expires if it is still relevant
+ * (lazy removal), which keeps confirming or cancelling a reservation O(1) as well.
+ * @param <T> type of the scheduled items.
+ */
+public class TimerWheel<T> {
+    private final ArrayList<Entry<T>>[] slots;
+    private long currentTick = 0;
+    private int size = 0;
+
+    @SuppressWarnings("unchecked")
+    public TimerWheel(int amountOfSlots){
+        if(amountOfSlots <= 0){
+            throw new IllegalArgumentException("A timer wheel needs at least one slot");
+        }
+        slots = new ArrayList[amountOfSlots];
+        for (int i = 0; i < amountOfSlots; i++) {
+            slots[i] = new ArrayList<>();
+        }
+    }
+
+    /**
+     * Schedule an item to expire after the given amount of ticks.
+     * @param item the item to schedule.
+     * @param delayInTicks amount of ticks until the item expires, a delay of less than one tick expires on the next tick.
+     */
+    public void schedule(T item, long delayInTicks){
+        long deadline = currentTick + Math.max(1, delayInTicks);
+        slots[(int) (deadline % slots.length)].add(new Entry<>(item, deadline));
+        size++;
+    }
+
+    /**
+     * Turn the wheel one tick and hand every item that expired to the consumer.
+     * @param onExpired called for every expired item.
+     */
+    public void tick(Consumer<T> onExpired){
+        currentTick++;
+        ArrayList<Entry<T>> slot = slots[(int) (currentTick % slots.length)];
+        int i = 0;
+        while (i < slot.size()) {
+            Entry<T> entry = slot.get(i);
+            if(entry.deadline <= currentTick){
+                //swap the last entry into this place so removing is O(1)
+                Entry<T> last = slot.remove(slot.size() - 1);
+                if(i < slot.size()){
+                    slot.set(i, last);
+                }
+                size--;
+                onExpired.accept(entry.item);
+            }
+            else{
+                i++;
+            }
+        }
+    }
+
+    /**
+     * @return the amount of items that are scheduled and did not expire yet.
+     */
+    public int size(){
+        return size;
+    }
+
+    private static class Entry<T> {
+        final T item;
+        final long deadline;
+
+        Entry(T item, long deadline){
+            this.item = item;
+            this.deadline = deadline;
+        }
+    }
+}
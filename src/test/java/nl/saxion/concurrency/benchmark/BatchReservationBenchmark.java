@@ -0,0 +1,113 @@
+package nl.saxion.concurrency.benchmark;
+
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.javadsl.AskPattern;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import nl.saxion.concurrency.actors.RentARoom;
+import nl.saxion.concurrency.messages.RentARoomMessage;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares sending every reservation on its own with sending them in a ReservationBatch. For the single reservations
+ * and for a number of batch sizes it opens the same amount of reservations (without confirming them), with the same
+ * amount of reservations in flight, and reports the reservations per second.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=nl.saxion.concurrency.benchmark.BatchReservationBenchmark -Dexec.args="100000"
+ */
+public class BatchReservationBenchmark {
+    private static final int HOTELS = 50;
+    private static final int MAX_OUTSTANDING = 1000;
+    private static final int[] BATCH_SIZES = {10, 100, 1000};
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    public static void main(String[] args) throws Exception {
+        int reservations = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        List<String> results = new ArrayList<>();
+        for (String mode : new String[]{"aggregator", "coordinator"}) {
+            results.add(run(mode, 1, reservations));
+            for (int batchSize : BATCH_SIZES) {
+                results.add(run(mode, batchSize, reservations));
+            }
+        }
+        System.out.println();
+        System.out.println(String.format("%-12s %10s %15s", "mode", "batch", "reservations/s"));
+        for (String result : results) {
+            System.out.println(result);
+        }
+    }
+
+    /**
+     * @param batchSize amount of reservations per batch, 1 to send every reservation on its own.
+     */
+    private static String run(String mode, int batchSize, int reservations) throws Exception {
+        Config config = ConfigFactory.parseString(
+            "rentaroom.reservation-mode = " + mode + "\n" +
+            "rentaroom.hold-ttl = 1h\n" +
+            "rentaroom.agent-pool.enabled = off\n" +
+            "akka.loglevel = warning").withFallback(ConfigFactory.load());
+        ActorSystem<RentARoomMessage> system = ActorSystem.create(RentARoom.create(), "BatchReservationBenchmark", config);
+        try {
+            List<String> hotelIds = ReservationModeBenchmark.createHotels(system, HOTELS, reservations / HOTELS + 1);
+
+            long start = System.nanoTime();
+            int succeeded = batchSize == 1 ?
+                ReservationModeBenchmark.reserve(system, hotelIds, reservations) :
+                reserveInBatches(system, hotelIds, reservations, batchSize);
+            long elapsed = System.nanoTime() - start;
+
+            if(succeeded != reservations){
+                System.err.println(mode + " (batch " + batchSize + "): only " + succeeded + " of " + reservations + " reservations succeeded");
+            }
+            double perSecond = succeeded / (elapsed / 1_000_000_000.0);
+            return String.format("%-12s %10s %15.0f", mode, batchSize == 1 ? "single" : String.valueOf(batchSize), perSecond);
+        } finally {
+            system.terminate();
+            system.getWhenTerminated().toCompletableFuture().join();
+        }
+    }
+
+    /**
+     * Send the reservations in batches, with at most MAX_OUTSTANDING reservations in flight at the same time.
+     * @return the amount of successful reservations.
+     */
+    private static int reserveInBatches(ActorSystem<RentARoomMessage> system, List<String> hotelIds, int reservations,
+                                        int batchSize) throws InterruptedException {
+        int batches = (reservations + batchSize - 1) / batchSize;
+        Semaphore outstanding = new Semaphore(Math.max(1, MAX_OUTSTANDING / batchSize));
+        CountDownLatch done = new CountDownLatch(batches);
+        AtomicInteger succeeded = new AtomicInteger();
+        for (int batch = 0; batch < batches; batch++) {
+            List<RentARoomMessage.Reservation> batchReservations = new ArrayList<>(batchSize);
+            for (int i = batch * batchSize; i < Math.min(reservations, (batch + 1) * batchSize); i++) {
+                HashMap<String, Integer> reservation = new HashMap<>();
+                reservation.put(hotelIds.get(i % hotelIds.size()), 1);
+                batchReservations.add(new RentARoomMessage.Reservation(reservation, null));
+            }
+            outstanding.acquire();
+            AskPattern.<RentARoomMessage, RentARoomMessage>ask(system,
+                replyTo -> new RentARoomMessage.ReservationBatch(batchReservations, replyTo),
+                TIMEOUT, system.scheduler())
+                .whenComplete((reply, error) -> {
+                    if(reply instanceof RentARoomMessage.ReservationBatchReply){
+                        for (RentARoomMessage.ReservationResult result : ((RentARoomMessage.ReservationBatchReply) reply).results) {
+                            if(result.status){
+                                succeeded.incrementAndGet();
+                            }
+                        }
+                    }
+                    outstanding.release();
+                    done.countDown();
+                });
+        }
+        done.await();
+        return succeeded.get();
+    }
+}
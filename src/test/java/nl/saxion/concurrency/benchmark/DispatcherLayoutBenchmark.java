@@ -0,0 +1,139 @@
+package nl.saxion.concurrency.benchmark;
+
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.javadsl.AskPattern;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import nl.saxion.concurrency.actors.RentARoom;
+import nl.saxion.concurrency.messages.RentARoomMessage;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares the latency of reservations with different dispatcher layouts: every actor on the default dispatcher,
+ * a dispatcher per role (the layout of application.conf), and the same dispatchers with a low and a high throughput.
+ * Every reservation books a room in two hotels, so it goes through an agent, an aggregator and two hotel managers.
+ * For every layout it reports the reservations per second and the percentiles of the time until the reply.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=nl.saxion.concurrency.benchmark.DispatcherLayoutBenchmark -Dexec.args="50000"
+ */
+public class DispatcherLayoutBenchmark {
+    private static final int HOTELS = 50;
+    private static final int AGENTS = 4;
+    private static final int MAX_OUTSTANDING = 200;
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    public static void main(String[] args) throws Exception {
+        int reservations = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+
+        Map<String, String> layouts = new LinkedHashMap<>();
+        layouts.put("shared",
+            "rentaroom.dispatchers { hotel = \"\", agent = \"\", aggregator = \"\", coordinator = \"\", registry = \"\" }");
+        layouts.put("per-role", "");
+        layouts.put("per-role-tp1",
+            "rentaroom.hotel-dispatcher.throughput = 1\n" +
+            "rentaroom.agent-dispatcher.throughput = 1\n" +
+            "rentaroom.aggregator-dispatcher.throughput = 1");
+        layouts.put("per-role-tp100",
+            "rentaroom.hotel-dispatcher.throughput = 100\n" +
+            "rentaroom.agent-dispatcher.throughput = 100\n" +
+            "rentaroom.aggregator-dispatcher.throughput = 100");
+
+        List<String> results = new ArrayList<>();
+        for (Map.Entry<String, String> layout : layouts.entrySet()) {
+            //warm up the JVM with the same layout before measuring
+            run(layout.getKey(), layout.getValue(), reservations / 5);
+            results.add(run(layout.getKey(), layout.getValue(), reservations));
+        }
+        System.out.println();
+        System.out.println(String.format("%-15s %15s %10s %10s %10s %10s %10s", "layout", "reservations/s",
+            "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms"));
+        for (String result : results) {
+            System.out.println(result);
+        }
+    }
+
+    private static String run(String layout, String layoutConfig, int reservations) throws Exception {
+        Config config = ConfigFactory.parseString(layoutConfig + "\n" +
+            "rentaroom.hold-ttl = 1h\n" +
+            "rentaroom.agent-pool.enabled = off\n" +
+            "akka.loglevel = warning").withFallback(ConfigFactory.load());
+        ActorSystem<RentARoomMessage> system = ActorSystem.create(RentARoom.create(), "DispatcherLayoutBenchmark", config);
+        try {
+            for (int i = 1; i < AGENTS; i++) {
+                AskPattern.<RentARoomMessage, RentARoomMessage>ask(system, RentARoomMessage.SpawnAgent::new,
+                    TIMEOUT, system.scheduler()).toCompletableFuture().join();
+            }
+            List<String> hotelIds = ReservationModeBenchmark.createHotels(system, HOTELS, 2 * reservations / HOTELS + 1);
+
+            long[] latencies = new long[reservations];
+            long start = System.nanoTime();
+            int succeeded = reserve(system, hotelIds, latencies);
+            long elapsed = System.nanoTime() - start;
+
+            if(succeeded != reservations){
+                System.err.println(layout + ": only " + succeeded + " of " + reservations + " reservations succeeded");
+            }
+            Arrays.sort(latencies);
+            double perSecond = succeeded / (elapsed / 1_000_000_000.0);
+            return String.format("%-15s %15.0f %10.2f %10.2f %10.2f %10.2f %10.2f", layout, perSecond,
+                percentile(latencies, 0.5), percentile(latencies, 0.9), percentile(latencies, 0.99),
+                percentile(latencies, 0.999), latencies[latencies.length - 1] / 1_000_000.0);
+        } finally {
+            system.terminate();
+            system.getWhenTerminated().toCompletableFuture().join();
+        }
+    }
+
+    /**
+     * Send a reservation of a room in two hotels for every slot of the latencies, with at most MAX_OUTSTANDING
+     * reservations in flight at the same time.
+     * @param latencies filled with the nanoseconds between sending every reservation and its reply.
+     * @return the amount of successful reservations.
+     */
+    private static int reserve(ActorSystem<RentARoomMessage> system, List<String> hotelIds, long[] latencies) throws InterruptedException {
+        Semaphore outstanding = new Semaphore(MAX_OUTSTANDING);
+        CountDownLatch done = new CountDownLatch(latencies.length);
+        AtomicInteger succeeded = new AtomicInteger();
+        for (int i = 0; i < latencies.length; i++) {
+            HashMap<String, Integer> reservation = new HashMap<>();
+            reservation.put(hotelIds.get(i % hotelIds.size()), 1);
+            reservation.put(hotelIds.get((i + 1) % hotelIds.size()), 1);
+            outstanding.acquire();
+            int index = i;
+            long sent = System.nanoTime();
+            AskPattern.<RentARoomMessage, RentARoomMessage>ask(system,
+                replyTo -> new RentARoomMessage.Reservation(reservation, replyTo),
+                TIMEOUT, system.scheduler())
+                .whenComplete((reply, error) -> {
+                    latencies[index] = System.nanoTime() - sent;
+                    if(reply instanceof RentARoomMessage.Response &&
+                        ((RentARoomMessage.Response) reply).status.startsWith("Your reservation number is")){
+                        succeeded.incrementAndGet();
+                    }
+                    outstanding.release();
+                    done.countDown();
+                });
+        }
+        done.await();
+        return succeeded.get();
+    }
+
+    /**
+     * @param sorted the latencies in nanoseconds, sorted.
+     * @return the latency at the given fraction in milliseconds.
+     */
+    private static double percentile(long[] sorted, double fraction) {
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(fraction * sorted.length) - 1);
+        return sorted[Math.max(0, index)] / 1_000_000.0;
+    }
+}
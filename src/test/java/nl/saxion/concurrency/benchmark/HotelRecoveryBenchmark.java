@@ -0,0 +1,119 @@
+package nl.saxion.concurrency.benchmark;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.javadsl.AskPattern;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import nl.saxion.concurrency.actors.PersistentHotelManager;
+import nl.saxion.concurrency.messages.RentARoomMessage;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Measures how long a persistent hotel manager takes to recover. For every snapshot setting it writes the same
+ * amount of events to a new journal (a reservation and a cancellation per step), stops the actor system and times
+ * a new actor system until the hotel answers its first request.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=nl.saxion.concurrency.benchmark.HotelRecoveryBenchmark -Dexec.args="100000"
+ */
+public class HotelRecoveryBenchmark {
+    private static final String HOTEL_ID = "benchmark-hotel";
+    private static final int ROOMS = 100;
+    private static final int MAX_OUTSTANDING = 500;
+    private static final Duration TIMEOUT = Duration.ofSeconds(60);
+
+    public static void main(String[] args) throws Exception {
+        int events = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        List<String> results = new ArrayList<>();
+        for (int snapshotEvery : new int[]{0, 1000}) {
+            results.add(run(snapshotEvery, events));
+        }
+        System.out.println();
+        System.out.println(String.format("%-15s %10s %15s", "snapshot-every", "events", "recovery (ms)"));
+        for (String result : results) {
+            System.out.println(result);
+        }
+    }
+
+    private static String run(int snapshotEvery, int events) throws Exception {
+        File directory = Files.createTempDirectory("hotel-recovery").toFile();
+        Config config = ConfigFactory.parseString(
+            "akka.persistence.journal.leveldb.dir = \"" + new File(directory, "journal").getAbsolutePath() + "\"\n" +
+            "akka.persistence.snapshot-store.local.dir = \"" + new File(directory, "snapshots").getAbsolutePath() + "\"\n" +
+            "rentaroom.snapshot-every = " + snapshotEvery + "\n" +
+            "rentaroom.hold-ttl = 1h\n" +
+            "rentaroom.agent-pool.enabled = off\n" +
+            "akka.loglevel = warning").withFallback(ConfigFactory.load("persistence"));
+        try {
+            ActorSystem<RentARoomMessage> system = ActorSystem.create(PersistentHotelManager.create(HOTEL_ID, null), "HotelRecoveryBenchmark", config);
+            try {
+                ask(system, replyTo -> new RentARoomMessage.CreateHotel(replyTo, "Benchmark hotel", ROOMS)).toCompletableFuture().join();
+                writeEvents(system, events);
+            } finally {
+                stop(system);
+            }
+
+            long start = System.nanoTime();
+            system = ActorSystem.create(PersistentHotelManager.create(HOTEL_ID, null), "HotelRecoveryBenchmark", config);
+            try {
+                ask(system, RentARoomMessage.RequestHotelInformation::new).toCompletableFuture().join();
+                long elapsed = System.nanoTime() - start;
+                return String.format("%-15d %10d %15.1f", snapshotEvery, events, elapsed / 1_000_000.0);
+            } finally {
+                stop(system);
+            }
+        } finally {
+            delete(directory);
+        }
+    }
+
+    /**
+     * Reserve a room and cancel it again until the journal holds the given amount of events. A number of steps
+     * is in flight at the same time, so writing the journal does not take longer than the recovery itself.
+     */
+    private static void writeEvents(ActorSystem<RentARoomMessage> system, int events) {
+        LocalDate checkIn = LocalDate.now();
+        LocalDate checkOut = checkIn.plusDays(1);
+        List<CompletableFuture<RentARoomMessage>> inFlight = new ArrayList<>();
+        for (int i = 0; i < events / 2; i++) {
+            String reservationNumber = "reservation-" + i;
+            inFlight.add(ask(system, replyTo -> new RentARoomMessage.HotelReservation(reservationNumber, 1, checkIn, checkOut, replyTo))
+                .thenCompose(reply -> ask(system, replyTo -> new RentARoomMessage.CancelReservation(reservationNumber, replyTo)))
+                .toCompletableFuture());
+            if(inFlight.size() == Math.min(MAX_OUTSTANDING, ROOMS)){
+                CompletableFuture.allOf(inFlight.toArray(new CompletableFuture[0])).join();
+                inFlight.clear();
+            }
+        }
+        CompletableFuture.allOf(inFlight.toArray(new CompletableFuture[0])).join();
+    }
+
+    private static CompletionStage<RentARoomMessage> ask(ActorSystem<RentARoomMessage> system,
+                                                         akka.japi.function.Function<ActorRef<RentARoomMessage>, RentARoomMessage> message) {
+        return AskPattern.ask(system, message, TIMEOUT, system.scheduler());
+    }
+
+    private static void stop(ActorSystem<RentARoomMessage> system) {
+        system.terminate();
+        system.getWhenTerminated().toCompletableFuture().join();
+    }
+
+    private static void delete(File file) throws IOException {
+        File[] children = file.listFiles();
+        if(children != null){
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        Files.deleteIfExists(file.toPath());
+    }
+}
@@ -0,0 +1,217 @@
+package nl.saxion.concurrency.benchmark;
+
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.javadsl.AskPattern;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import nl.saxion.concurrency.actors.RentARoom;
+import nl.saxion.concurrency.client.RentARoomClient;
+import nl.saxion.concurrency.messages.RentARoomMessage;
+import nl.saxion.concurrency.util.LatencyHistogram;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open loop load generator for the whole pipeline: RentARoom, Agent, aggregator or coordinator and HotelManager.
+ * It creates the hotels and agents in this JVM and sends reservations at a fixed rate, whether earlier ones have been
+ * answered or not. Every reservation that succeeds is confirmed or cancelled straight away. At the end it reports the
+ * throughput and the latency percentiles of every kind of request.
+ *
+ * The latency of a reservation is measured from the moment it should have been sent according to the rate, not from
+ * the moment it was sent. When the generator or the client falls behind, the time a request had to wait before it
+ * was sent counts as latency too, so a stall of the system is not hidden (coordinated omission). The latency from the
+ * moment of sending is reported next to it. Confirmations and cancellations are measured from the reply on the
+ * reservation.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=nl.saxion.concurrency.benchmark.LoadGenerator -Dexec.args="2000 30 50 4"
+ * The arguments are the reservations per second, the seconds to measure, the amount of hotels and of agents. With 0
+ * agents the elastic agent pool of rentaroom.agent-pool decides how many agents there are.
+ */
+public class LoadGenerator {
+    private static final int WARMUP_SECONDS = 5;
+    //part of the successful reservations that is confirmed, the others are cancelled
+    private static final double CONFIRM_FRACTION = 0.7;
+    //part of the reservations that books rooms in two hotels instead of one
+    private static final double TWO_HOTEL_FRACTION = 0.2;
+    //the stays are spread over this amount of nights, so the hotels do not fill up
+    private static final int NIGHTS = 300;
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    private final RentARoomClient client;
+    private final List<String> hotelIds;
+
+    private final LatencyHistogram reserveLatency = new LatencyHistogram();
+    private final LatencyHistogram reserveServiceTime = new LatencyHistogram();
+    private final LatencyHistogram confirmLatency = new LatencyHistogram();
+    private final LatencyHistogram cancelLatency = new LatencyHistogram();
+    private final AtomicLong inFlight = new AtomicLong();
+    private final AtomicLong succeeded = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong overloaded = new AtomicLong();
+    private final AtomicLong timedOut = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    LoadGenerator(RentARoomClient client, List<String> hotelIds) {
+        this.client = client;
+        this.hotelIds = hotelIds;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rate = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+        int hotels = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+        int agents = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+
+        Config config = ConfigFactory.parseString(
+            "rentaroom.hold-ttl = 1h\n" +
+            "rentaroom.agent-pool.enabled = " + (agents == 0) + "\n" +
+            "akka.loglevel = warning").withFallback(ConfigFactory.load());
+        ActorSystem<RentARoomMessage> system = ActorSystem.create(RentARoom.create(), "LoadGenerator", config);
+        try {
+            for (int i = 1; i < agents; i++) {
+                AskPattern.<RentARoomMessage, RentARoomMessage>ask(system, RentARoomMessage.SpawnAgent::new,
+                    TIMEOUT, system.scheduler()).toCompletableFuture().join();
+            }
+            long reservations = (long) rate * (WARMUP_SECONDS + seconds);
+            int rooms = (int) (reservations * (1 + TWO_HOTEL_FRACTION) / ((long) hotels * NIGHTS)) + 10;
+            List<String> hotelIds = ReservationModeBenchmark.createHotels(system, hotels, rooms);
+
+            //the client never holds requests back, the open loop decides when they are sent
+            RentARoomClient client = new RentARoomClient(system, system.scheduler(), TIMEOUT, Integer.MAX_VALUE, 0);
+            LoadGenerator generator = new LoadGenerator(client, hotelIds);
+
+            System.out.println("Warming up for " + WARMUP_SECONDS + "s at " + rate + " reservations/s");
+            generator.run(rate, WARMUP_SECONDS);
+            generator.reset();
+
+            System.out.println("Measuring for " + seconds + "s at " + rate + " reservations/s, " + hotels +
+                " hotels with " + rooms + " rooms, " + (agents == 0 ? "an elastic pool of" : agents) + " agents");
+            long elapsed = generator.run(rate, seconds);
+            generator.report(rate, elapsed);
+        } finally {
+            system.terminate();
+            system.getWhenTerminated().toCompletableFuture().join();
+        }
+    }
+
+    /**
+     * Send the reservations at the given rate and wait until all of them, and their confirmations and cancellations,
+     * are answered.
+     * @return the nanoseconds from the first reservation until the last reply.
+     */
+    long run(int rate, int seconds) throws InterruptedException {
+        long interval = 1_000_000_000L / rate;
+        long amount = (long) rate * seconds;
+        long start = System.nanoTime();
+        for (long i = 0; i < amount; i++) {
+            long intended = start + i * interval;
+            long now = System.nanoTime();
+            while (now < intended) {
+                LockSupport.parkNanos(intended - now);
+                now = System.nanoTime();
+            }
+            reserve(intended);
+        }
+        long deadline = System.nanoTime() + 2 * TIMEOUT.toNanos();
+        while (inFlight.get() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private void reserve(long intended) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        HashMap<String, Integer> reservation = new HashMap<>();
+        int first = random.nextInt(hotelIds.size());
+        reservation.put(hotelIds.get(first), 1);
+        if(hotelIds.size() > 1 && random.nextDouble() < TWO_HOTEL_FRACTION){
+            reservation.put(hotelIds.get((first + 1 + random.nextInt(hotelIds.size() - 1)) % hotelIds.size()), 1);
+        }
+        LocalDate checkIn = LocalDate.now().plusDays(random.nextInt(NIGHTS));
+
+        inFlight.incrementAndGet();
+        long sent = System.nanoTime();
+        client.reserve(reservation, checkIn, checkIn.plusDays(1)).whenComplete((reservationNumber, failure) -> {
+            long done = System.nanoTime();
+            reserveLatency.recordNanos(done - intended);
+            reserveServiceTime.recordNanos(done - sent);
+            if(failure == null){
+                succeeded.incrementAndGet();
+                boolean confirm = ThreadLocalRandom.current().nextDouble() < CONFIRM_FRACTION;
+                LatencyHistogram latency = confirm ? confirmLatency : cancelLatency;
+                inFlight.incrementAndGet();
+                (confirm ? client.confirm(reservationNumber) : client.cancel(reservationNumber)).whenComplete((status, error) -> {
+                    latency.recordNanos(System.nanoTime() - done);
+                    if(error != null){
+                        count(error);
+                    }
+                    inFlight.decrementAndGet();
+                });
+            }
+            else{
+                count(failure);
+            }
+            inFlight.decrementAndGet();
+        });
+    }
+
+    private void count(Throwable failure) {
+        Throwable cause = failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure;
+        if(cause instanceof TimeoutException){
+            timedOut.incrementAndGet();
+        }
+        else if(cause instanceof RentARoomClient.RequestFailedException){
+            if(((RentARoomClient.RequestFailedException) cause).overloaded){
+                overloaded.incrementAndGet();
+            }
+            else{
+                rejected.incrementAndGet();
+            }
+        }
+        else{
+            failed.incrementAndGet();
+        }
+    }
+
+    void reset() {
+        reserveLatency.reset();
+        reserveServiceTime.reset();
+        confirmLatency.reset();
+        cancelLatency.reset();
+        succeeded.set(0);
+        rejected.set(0);
+        overloaded.set(0);
+        timedOut.set(0);
+        failed.set(0);
+    }
+
+    void report(int rate, long elapsed) {
+        double seconds = elapsed / 1_000_000_000.0;
+        System.out.println();
+        System.out.println(String.format("offered %d reservations/s, %d successful reservations in %.1fs = %.0f/s",
+            rate, succeeded.get(), seconds, succeeded.get() / seconds));
+        System.out.println(String.format("failed reservations, confirmations and cancellations: %d rejected, " +
+            "%d overloaded, %d timed out, %d other", rejected.get(), overloaded.get(), timedOut.get(), failed.get()));
+        System.out.println();
+        System.out.println(String.format("%-22s %9s %10s %10s %10s %10s %10s", "request", "count", "mean ms",
+            "p50 ms", "p99 ms", "p99.9 ms", "max ms"));
+        print("reserve", reserveLatency);
+        print("reserve (from send)", reserveServiceTime);
+        print("confirm", confirmLatency);
+        print("cancel", cancelLatency);
+    }
+
+    private static void print(String name, LatencyHistogram histogram) {
+        System.out.println(String.format("%-22s %9d %10.2f %10.2f %10.2f %10.2f %10.2f", name, histogram.count(),
+            histogram.mean() / 1000.0, histogram.percentile(50) / 1000.0, histogram.percentile(99) / 1000.0,
+            histogram.percentile(99.9) / 1000.0, histogram.max() / 1000.0));
+    }
+}
@@ -0,0 +1,132 @@
+package nl.saxion.concurrency.benchmark;
+
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.javadsl.AskPattern;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import nl.saxion.concurrency.actors.RentARoom;
+import nl.saxion.concurrency.messages.RentARoomMessage;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compares the two reservation modes of the agent: an aggregator actor per reservation and a table of records
+ * in a reservation coordinator. For every mode it opens a number of reservations (without confirming them) and
+ * reports the reservations per second and the heap that is used per open reservation.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=nl.saxion.concurrency.benchmark.ReservationModeBenchmark -Dexec.args="50000"
+ */
+public class ReservationModeBenchmark {
+    private static final int HOTELS = 50;
+    private static final int MAX_OUTSTANDING = 1000;
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    public static void main(String[] args) throws Exception {
+        int reservations = args.length > 0 ? Integer.parseInt(args[0]) : 50_000;
+        List<String> results = new ArrayList<>();
+        for (String mode : new String[]{"aggregator", "coordinator"}) {
+            results.add(run(mode, reservations));
+        }
+        System.out.println();
+        System.out.println(String.format("%-12s %15s %20s", "mode", "reservations/s", "bytes/reservation"));
+        for (String result : results) {
+            System.out.println(result);
+        }
+    }
+
+    private static String run(String mode, int reservations) throws Exception {
+        Config config = ConfigFactory.parseString(
+            "rentaroom.reservation-mode = " + mode + "\n" +
+            "rentaroom.hold-ttl = 1h\n" +
+            "rentaroom.agent-pool.enabled = off\n" +
+            "akka.loglevel = warning").withFallback(ConfigFactory.load());
+        ActorSystem<RentARoomMessage> system = ActorSystem.create(RentARoom.create(), "ReservationModeBenchmark", config);
+        try {
+            List<String> hotelIds = createHotels(system, HOTELS, reservations / HOTELS + 1);
+
+            long heapBefore = usedHeap();
+            long start = System.nanoTime();
+            int succeeded = reserve(system, hotelIds, reservations);
+            long elapsed = System.nanoTime() - start;
+            long heapAfter = usedHeap();
+
+            if(succeeded != reservations){
+                System.err.println(mode + ": only " + succeeded + " of " + reservations + " reservations succeeded");
+            }
+            double perSecond = succeeded / (elapsed / 1_000_000_000.0);
+            long bytesPerReservation = (heapAfter - heapBefore) / Math.max(1, succeeded);
+            return String.format("%-12s %15.0f %20d", mode, perSecond, bytesPerReservation);
+        } finally {
+            system.terminate();
+            system.getWhenTerminated().toCompletableFuture().join();
+        }
+    }
+
+    /**
+     * Create the hotels and wait until the agent discovered all of them.
+     */
+    static List<String> createHotels(ActorSystem<RentARoomMessage> system, int amount, int rooms) throws InterruptedException {
+        List<String> hotelIds = new ArrayList<>();
+        for (int i = 0; i < amount; i++) {
+            String name = "Hotel " + i;
+            RentARoomMessage reply = AskPattern.<RentARoomMessage, RentARoomMessage>ask(system,
+                replyTo -> new RentARoomMessage.CreateHotel(replyTo, name, rooms),
+                TIMEOUT, system.scheduler()).toCompletableFuture().join();
+            String status = ((RentARoomMessage.Response) reply).status;
+            hotelIds.add(status.substring(status.lastIndexOf(' ') + 1));
+        }
+        //the agents learn about new hotels through the receptionist, so wait until the last hotel is known
+        String lastHotel = hotelIds.get(hotelIds.size() - 1);
+        while (true) {
+            RentARoomMessage reply = AskPattern.<RentARoomMessage, RentARoomMessage>ask(system,
+                RentARoomMessage.ListHotels::new, TIMEOUT, system.scheduler()).toCompletableFuture().join();
+            if(((RentARoomMessage.Response) reply).status.contains(lastHotel)){
+                return hotelIds;
+            }
+            Thread.sleep(100);
+        }
+    }
+
+    /**
+     * Send the reservations with at most MAX_OUTSTANDING reservations in flight at the same time.
+     * @return the amount of successful reservations.
+     */
+    static int reserve(ActorSystem<RentARoomMessage> system, List<String> hotelIds, int reservations) throws InterruptedException {
+        Semaphore outstanding = new Semaphore(MAX_OUTSTANDING);
+        CountDownLatch done = new CountDownLatch(reservations);
+        AtomicInteger succeeded = new AtomicInteger();
+        for (int i = 0; i < reservations; i++) {
+            HashMap<String, Integer> reservation = new HashMap<>();
+            reservation.put(hotelIds.get(i % hotelIds.size()), 1);
+            outstanding.acquire();
+            AskPattern.<RentARoomMessage, RentARoomMessage>ask(system,
+                replyTo -> new RentARoomMessage.Reservation(reservation, replyTo),
+                TIMEOUT, system.scheduler())
+                .whenComplete((reply, error) -> {
+                    if(reply instanceof RentARoomMessage.Response &&
+                        ((RentARoomMessage.Response) reply).status.startsWith("Your reservation number is")){
+                        succeeded.incrementAndGet();
+                    }
+                    outstanding.release();
+                    done.countDown();
+                });
+        }
+        done.await();
+        return succeeded.get();
+    }
+
+    static long usedHeap() throws InterruptedException {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(200);
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
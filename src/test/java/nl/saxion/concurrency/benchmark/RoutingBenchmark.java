@@ -0,0 +1,139 @@
+package nl.saxion.concurrency.benchmark;
+
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.BehaviorInterceptor;
+import akka.actor.typed.TypedActorContext;
+import akka.actor.typed.javadsl.AskPattern;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.actor.typed.javadsl.TimerScheduler;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import nl.saxion.concurrency.actors.RentARoom;
+import nl.saxion.concurrency.client.RentARoomClient;
+import nl.saxion.concurrency.messages.RentARoomMessage;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.List;
+
+/**
+ * Compares the routing strategies of RentARoom when one of the agents is slow. For every strategy it starts the
+ * hotels and agents, with the first agent wrapped in a SlowAgent that holds every request for a fixed time before the
+ * agent gets it, and runs the open loop load of the LoadGenerator. With random routing the slow agent gets as many requests as the others, so a part of the requests
+ * waits in its mailbox and the tail latency goes up. The load aware strategies send fewer requests to it.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=nl.saxion.concurrency.benchmark.RoutingBenchmark -Dexec.args="400 20 50 4 3"
+ * The arguments are the reservations per second, the seconds to measure, the amount of hotels and of agents, and the
+ * milliseconds the slow agent spends extra on every request.
+ */
+public class RoutingBenchmark {
+    private static final int WARMUP_SECONDS = 5;
+    private static final String[] STRATEGIES = {"random", "least-outstanding", "consistent-hashing"};
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    public static void main(String[] args) throws Exception {
+        int rate = args.length > 0 ? Integer.parseInt(args[0]) : 400;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int hotels = args.length > 2 ? Integer.parseInt(args[2]) : 50;
+        int agents = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+        int delay = args.length > 4 ? Integer.parseInt(args[4]) : 3;
+
+        for (String strategy : STRATEGIES) {
+            run(strategy, rate, seconds, hotels, agents, Duration.ofMillis(delay));
+        }
+    }
+
+    private static void run(String strategy, int rate, int seconds, int hotels, int agents, Duration delay) throws Exception {
+        Config config = ConfigFactory.parseString(
+            "rentaroom.routing.strategy = " + strategy + "\n" +
+            "rentaroom.hold-ttl = 1h\n" +
+            "rentaroom.agent-pool.enabled = off\n" +
+            "akka.loglevel = warning").withFallback(ConfigFactory.load());
+        //only the first agent is slow
+        int[] spawned = {0};
+        ActorSystem<RentARoomMessage> system = ActorSystem.create(RentARoom.create(agent ->
+            spawned[0]++ == 0 ? SlowAgent.create(agent, delay) : agent), "RoutingBenchmark", config);
+        try {
+            for (int i = 1; i < agents; i++) {
+                AskPattern.<RentARoomMessage, RentARoomMessage>ask(system, RentARoomMessage.SpawnAgent::new,
+                    TIMEOUT, system.scheduler()).toCompletableFuture().join();
+            }
+            int rooms = (int) ((long) rate * (WARMUP_SECONDS + seconds) * 2 / ((long) hotels * 300)) + 10;
+            List<String> hotelIds = ReservationModeBenchmark.createHotels(system, hotels, rooms);
+
+            RentARoomClient client = new RentARoomClient(system, system.scheduler(), TIMEOUT, Integer.MAX_VALUE, 0);
+            LoadGenerator generator = new LoadGenerator(client, hotelIds);
+            generator.run(rate, WARMUP_SECONDS);
+            generator.reset();
+
+            System.out.println();
+            System.out.println("=== " + strategy + ": " + rate + " reservations/s for " + seconds + "s, " + agents +
+                " agents, one of them " + delay.toMillis() + " ms slower per request");
+            long elapsed = generator.run(rate, seconds);
+            generator.report(rate, elapsed);
+        } finally {
+            system.terminate();
+            system.getWhenTerminated().toCompletableFuture().join();
+        }
+    }
+
+    /**
+     * Makes an agent slow without blocking its thread. The reservations, confirmations and cancellations wait in a
+     * queue in front of the agent, as if the agent spends the delay on every one of them in turn: a request is due the
+     * delay after the previous one, or after its arrival when the agent is idle. A timer hands the requests that are
+     * due to the agent, several at once when the timer fires later than the delay. The other messages, like the load
+     * reports and the availability updates, go to the agent straight away.
+     */
+    static class SlowAgent extends BehaviorInterceptor<RentARoomMessage, RentARoomMessage> {
+        //timer message that hands the requests that are due to the agent
+        private static final class Release implements RentARoomMessage {
+            static final Release INSTANCE = new Release();
+        }
+
+        private final TimerScheduler<RentARoomMessage> timers;
+        private final long delay;
+        //the waiting requests and the System.nanoTime() they are due
+        private final ArrayDeque<RentARoomMessage> waiting = new ArrayDeque<>();
+        private final ArrayDeque<Long> due = new ArrayDeque<>();
+        private long busyUntil;
+
+        SlowAgent(TimerScheduler<RentARoomMessage> timers, Duration delay) {
+            super(RentARoomMessage.class);
+            this.timers = timers;
+            this.delay = delay.toNanos();
+        }
+
+        static Behavior<RentARoomMessage> create(Behavior<RentARoomMessage> agent, Duration delay) {
+            return Behaviors.withTimers(timers -> Behaviors.intercept(() -> new SlowAgent(timers, delay), agent));
+        }
+
+        @Override
+        public Behavior<RentARoomMessage> aroundReceive(TypedActorContext<RentARoomMessage> context, RentARoomMessage message,
+                                                        ReceiveTarget<RentARoomMessage> target) {
+            long now = System.nanoTime();
+            if(message == Release.INSTANCE){
+                Behavior<RentARoomMessage> next = Behaviors.same();
+                while (!waiting.isEmpty() && due.peek() <= now) {
+                    due.poll();
+                    next = target.apply(context, waiting.poll());
+                }
+                if(!waiting.isEmpty()){
+                    timers.startSingleTimer(Release.INSTANCE, Duration.ofNanos(due.peek() - now));
+                }
+                return next;
+            }
+            if(message instanceof RentARoomMessage.Reservation || message instanceof RentARoomMessage.ConfirmReservation ||
+                message instanceof RentARoomMessage.CancelReservation){
+                busyUntil = Math.max(now, busyUntil) + delay;
+                if(waiting.isEmpty()){
+                    timers.startSingleTimer(Release.INSTANCE, Duration.ofNanos(busyUntil - now));
+                }
+                waiting.add(message);
+                due.add(busyUntil);
+                return Behaviors.same();
+            }
+            return target.apply(context, message);
+        }
+    }
+}
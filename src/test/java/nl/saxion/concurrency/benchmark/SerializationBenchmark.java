@@ -0,0 +1,116 @@
+package nl.saxion.concurrency.benchmark;
+
+import akka.actor.ExtendedActorSystem;
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.javadsl.Adapter;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.serialization.JavaSerializer;
+import akka.serialization.Serialization;
+import akka.serialization.SerializationExtension;
+import akka.serialization.Serializer;
+import akka.serialization.SerializerWithStringManifest;
+import akka.serialization.Serializers;
+import com.typesafe.config.ConfigFactory;
+import nl.saxion.concurrency.actors.HotelManager;
+import nl.saxion.concurrency.actors.PersistentHotelManager;
+import nl.saxion.concurrency.domain.Hotel;
+import nl.saxion.concurrency.messages.HotelEvent;
+import nl.saxion.concurrency.messages.RentARoomMessage;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Compares the binary serializers with java serialization. For a number of typical messages, events and a snapshot
+ * it reports the size in bytes and the time to serialize and deserialize one message.
+ *
+ * Run with: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=nl.saxion.concurrency.benchmark.SerializationBenchmark -Dexec.args="200000"
+ */
+public class SerializationBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        ActorSystem<Void> system = ActorSystem.create(Behaviors.empty(), "SerializationBenchmark",
+            ConfigFactory.parseString(
+                "akka.loglevel = warning\n" +
+                "akka.actor.allow-java-serialization = on\n" +
+                "akka.actor.warn-about-java-serializer-usage = off").withFallback(ConfigFactory.load()));
+        try {
+            ExtendedActorSystem extendedSystem = (ExtendedActorSystem) Adapter.toClassic(system);
+            Serialization serialization = SerializationExtension.get(extendedSystem);
+            Serializer java = new JavaSerializer(extendedSystem);
+
+            System.out.println(String.format("%-24s %12s %12s %12s %12s", "message", "binary (B)", "java (B)", "binary (ns)", "java (ns)"));
+            for (Map.Entry<String, Object> sample : samples(system).entrySet()) {
+                Serializer binary = serialization.findSerializerFor(sample.getValue());
+                String manifest = Serializers.manifestFor(binary, sample.getValue());
+                long[] javaResult = measure(java, "", sample.getValue(), iterations);
+                long[] binaryResult = measure(binary, manifest, sample.getValue(), iterations);
+                System.out.println(String.format("%-24s %12d %12d %12d %12d", sample.getKey(),
+                    binaryResult[0], javaResult[0], binaryResult[1], javaResult[1]));
+            }
+        } finally {
+            system.terminate();
+            system.getWhenTerminated().toCompletableFuture().join();
+        }
+    }
+
+    /**
+     * Serialize and deserialize the message, first to warm up and then to measure.
+     * @return the size of the message in bytes and the nanoseconds per round trip.
+     */
+    private static long[] measure(Serializer serializer, String manifest, Object message, int iterations) throws Exception {
+        int size = 0;
+        for (int i = 0; i < iterations / 4; i++) {
+            size = serializer.toBinary(message).length;
+            fromBinary(serializer, serializer.toBinary(message), manifest);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            fromBinary(serializer, serializer.toBinary(message), manifest);
+        }
+        return new long[]{size, (System.nanoTime() - start) / iterations};
+    }
+
+    private static Object fromBinary(Serializer serializer, byte[] bytes, String manifest) throws Exception {
+        return serializer instanceof SerializerWithStringManifest ?
+            ((SerializerWithStringManifest) serializer).fromBinary(bytes, manifest) : serializer.fromBinary(bytes);
+    }
+
+    private static Map<String, Object> samples(ActorSystem<?> system) throws Exception {
+        ActorRef<RentARoomMessage> aggregator = system.systemActorOf(Behaviors.<RentARoomMessage>empty(), "aggregator",
+            akka.actor.typed.Props.empty());
+        String reservationNumber = UUID.randomUUID().toString();
+        String hotelId = UUID.randomUUID().toString();
+        LocalDate checkIn = LocalDate.now();
+        LocalDate checkOut = checkIn.plusDays(3);
+
+        HashMap<String, Integer> hotels = new HashMap<>();
+        for (int i = 0; i < 3; i++) {
+            hotels.put(UUID.randomUUID().toString(), i + 1);
+        }
+
+        Hotel hotel = new Hotel(hotelId, "Benchmark hotel", 200, checkIn);
+        HashMap<String, HotelManager.PendingReservation> pending = new HashMap<>();
+        for (int i = 0; i < 20; i++) {
+            String number = UUID.randomUUID().toString();
+            int[] rooms = hotel.reserveRooms(2, checkIn.plusDays(i), checkIn.plusDays(i + 2));
+            pending.put(number, new HotelManager.PendingReservation(number, rooms, checkIn.plusDays(i), checkIn.plusDays(i + 2), aggregator));
+        }
+
+        Map<String, Object> samples = new LinkedHashMap<>();
+        samples.put("Reservation", new RentARoomMessage.Reservation(hotels, checkIn, checkOut, aggregator));
+        samples.put("HotelReservation", new RentARoomMessage.HotelReservation(reservationNumber, 2, checkIn, checkOut, aggregator));
+        samples.put("HotelReservationReply", new RentARoomMessage.HotelReservationReply(reservationNumber, true, aggregator, new int[]{4, 5}, null));
+        samples.put("ConfirmReservation", new RentARoomMessage.ConfirmReservation(reservationNumber, aggregator));
+        samples.put("CancelReservationReply", new RentARoomMessage.CancelReservationReply(reservationNumber, true, aggregator, "Success"));
+        samples.put("Response", new RentARoomMessage.Response("Your reservation number is: " + reservationNumber));
+        samples.put("RoomsReserved (event)", new HotelEvent.RoomsReserved(reservationNumber, new int[]{4, 5}, checkIn, checkOut, aggregator));
+        samples.put("HotelState (snapshot)", new PersistentHotelManager.HotelState(hotel, pending, false));
+        return samples;
+    }
+}
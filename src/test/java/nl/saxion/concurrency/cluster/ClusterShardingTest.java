@@ -0,0 +1,236 @@
+package nl.saxion.concurrency.cluster;
+
+import akka.actor.Address;
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.javadsl.AskPattern;
+import akka.cluster.MemberStatus;
+import akka.cluster.sharding.ShardRegion;
+import akka.cluster.sharding.typed.ClusterShardingQuery;
+import akka.cluster.sharding.typed.GetClusterShardingStats;
+import akka.cluster.sharding.typed.javadsl.ClusterSharding;
+import akka.cluster.typed.Cluster;
+import akka.japi.function.Function;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+import nl.saxion.concurrency.actors.HotelManager;
+import nl.saxion.concurrency.actors.RentARoom;
+import nl.saxion.concurrency.messages.RentARoomMessage;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.MethodOrderer;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.StreamSupport;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Clustered mode with several ActorSystems on localhost that form a cluster. The hotels are created through the first
+ * node and the reservations are made through the other nodes. The last test stops a node, so it runs last.
+ */
+@TestMethodOrder(MethodOrderer.OrderAnnotation.class)
+public class ClusterShardingTest {
+    private static final int AMOUNT_OF_NODES = 3;
+    private static final int FIRST_PORT = 25520;
+    private static final int ROOMS_PER_HOTEL = 10;
+    private static final Duration TIMEOUT = Duration.ofSeconds(10);
+
+    private static final List<ActorSystem<RentARoomMessage>> nodes = new ArrayList<>();
+    private static final List<String> hotelIds = new ArrayList<>();
+
+    @BeforeAll
+    static void startCluster() throws Exception {
+        //the first node hosts the journal of all the nodes
+        Path journal = Files.createTempDirectory("rentaroom-cluster");
+        for (int i = 0; i < AMOUNT_OF_NODES; i++) {
+            Config config = ConfigFactory.load(ConfigFactory.parseString(
+                "akka.remote.artery.canonical.port = " + (FIRST_PORT + i) + "\n" +
+                "akka.cluster.jmx.multi-mbeans-in-same-jvm = on\n" +
+                "rentaroom.journal-host = " + (i == 0 ? "on" : "off") + "\n" +
+                "akka.persistence.journal.leveldb.dir = \"" + journal.resolve("journal") + "\"\n" +
+                "akka.persistence.snapshot-store.local.dir = \"" + journal.resolve("snapshots") + "\"")
+                .withFallback(ConfigFactory.parseResources("cluster.conf")));
+            nodes.add(ActorSystem.create(RentARoom.create(), "RentARoomSystem", config));
+        }
+        waitForMembers(nodes.get(0), AMOUNT_OF_NODES);
+
+        for (int i = 0; i < AMOUNT_OF_NODES * 4; i++) {
+            String name = "Hotel " + i;
+            RentARoomMessage reply = ask(nodes.get(0), replyTo -> new RentARoomMessage.CreateHotel(replyTo, name, ROOMS_PER_HOTEL));
+            hotelIds.add(expect(reply, RentARoomMessage.HotelCreated.class).hotelId);
+        }
+    }
+
+    @AfterAll
+    static void stopCluster() {
+        for (ActorSystem<RentARoomMessage> node : nodes) {
+            node.terminate();
+        }
+        for (ActorSystem<RentARoomMessage> node : nodes) {
+            node.getWhenTerminated().toCompletableFuture().join();
+        }
+    }
+
+    @Test
+    @Order(1)
+    void hotelsAreSpreadOverTheNodes() {
+        ShardRegion.ClusterShardingStats stats = AskPattern.<ClusterShardingQuery, ShardRegion.ClusterShardingStats>ask(
+            ClusterSharding.get(nodes.get(0)).shardState(),
+            replyTo -> new GetClusterShardingStats(HotelManager.HOTEL_ENTITY_KEY, TIMEOUT, replyTo),
+            TIMEOUT, nodes.get(0).scheduler()).toCompletableFuture().join();
+        int nodesWithHotels = 0;
+        int hotels = 0;
+        for (Map.Entry<Address, ShardRegion.ShardRegionStats> region : stats.getRegions().entrySet()) {
+            int entities = 0;
+            for (Object count : region.getValue().getStats().values()) {
+                entities += (Integer) count;
+            }
+            hotels += entities;
+            if(entities > 0){
+                nodesWithHotels++;
+            }
+        }
+        assertEquals(hotelIds.size(), hotels);
+        assertThat("nodes that host a hotel", nodesWithHotels, greaterThan(1));
+    }
+
+    @Test
+    @Order(2)
+    void everyNodeKnowsAllTheHotels() throws InterruptedException {
+        String lastHotel = hotelIds.get(hotelIds.size() - 1);
+        for (ActorSystem<RentARoomMessage> node : nodes) {
+            long deadline = System.currentTimeMillis() + TIMEOUT.toMillis();
+            while (!((RentARoomMessage.Response) ask(node, RentARoomMessage.ListHotels::new)).status.contains(lastHotel)) {
+                if(System.currentTimeMillis() > deadline){
+                    fail(node.address() + " does not know about all the hotels");
+                }
+                Thread.sleep(200);
+            }
+        }
+    }
+
+    @Test
+    @Order(3)
+    void reservationsThroughEveryNode() {
+        for (int i = 0; i < nodes.size(); i++) {
+            ActorSystem<RentARoomMessage> node = nodes.get(i);
+            HashMap<String, Integer> rooms = new HashMap<>();
+            rooms.put(hotelIds.get(i), 2);
+            rooms.put(hotelIds.get(hotelIds.size() - 1 - i), 3);
+            String reservationNumber = expect(ask(node, replyTo -> new RentARoomMessage.Reservation(rooms, replyTo)),
+                RentARoomMessage.ReservationMade.class).reservationNumber;
+            //a reservation is owned by the registry of the node it was made on
+            RentARoomMessage reply = i % 2 == 0 ?
+                ask(node, replyTo -> new RentARoomMessage.ConfirmReservation(reservationNumber, replyTo)) :
+                ask(node, replyTo -> new RentARoomMessage.CancelReservation(reservationNumber, replyTo));
+            expect(reply, RentARoomMessage.Succeeded.class);
+        }
+    }
+
+    @Test
+    @Order(4)
+    void failedReservationIsReversedAtTheOtherHotel() throws InterruptedException {
+        HashMap<String, Integer> tooBig = new HashMap<>();
+        tooBig.put(hotelIds.get(0), ROOMS_PER_HOTEL * 10);
+        tooBig.put(hotelIds.get(1), 1);
+        RentARoomMessage reply = ask(nodes.get(nodes.size() - 1), replyTo -> new RentARoomMessage.Reservation(tooBig, replyTo));
+        assertThat(reply, instanceOf(RentARoomMessage.Response.class));
+        assertFalse(reply instanceof RentARoomMessage.ReservationMade);
+        assertEquals(ROOMS_PER_HOTEL, freeRooms().get(hotelIds.get(1)).intValue());
+    }
+
+    @Test
+    @Order(5)
+    void hotelsKeepTheirRoomsWhenTheirNodeLeaves() throws InterruptedException {
+        //one confirmed room in every hotel, so every node hosts a hotel with a reservation
+        ActorSystem<RentARoomMessage> first = nodes.get(0);
+        Map<String, Integer> expected = freeRooms();
+        for (String hotelId : hotelIds) {
+            HashMap<String, Integer> rooms = new HashMap<>();
+            rooms.put(hotelId, 1);
+            String reservationNumber = expect(ask(first, replyTo -> new RentARoomMessage.Reservation(rooms, replyTo)),
+                RentARoomMessage.ReservationMade.class).reservationNumber;
+            expect(ask(first, replyTo -> new RentARoomMessage.ConfirmReservation(reservationNumber, replyTo)),
+                RentARoomMessage.Succeeded.class);
+            expected.merge(hotelId, -1, Integer::sum);
+        }
+
+        //the hotels of the last node move to the other nodes and recover from the journal
+        ActorSystem<RentARoomMessage> last = nodes.remove(nodes.size() - 1);
+        last.terminate();
+        last.getWhenTerminated().toCompletableFuture().join();
+
+        long deadline = System.currentTimeMillis() + 3 * TIMEOUT.toMillis();
+        Map<String, Integer> free = freeRooms();
+        while (!free.equals(expected)) {
+            if(System.currentTimeMillis() > deadline){
+                assertEquals(expected, free);
+            }
+            Thread.sleep(500);
+            free = freeRooms();
+        }
+    }
+
+    /**
+     * @return the free rooms tonight per hotel id, asked from the hotels themselves through the first node. A hotel
+     * that does not answer in time is left out of the list, so it is asked again until every hotel answered.
+     */
+    private static Map<String, Integer> freeRooms() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 3 * TIMEOUT.toMillis();
+        while (true) {
+            RentARoomMessage reply = ask(nodes.get(0), replyTo ->
+                new RentARoomMessage.ListHotelsPage(replyTo, null, null, 0, true, hotelIds.size(), true));
+            Map<String, Integer> free = new HashMap<>();
+            for (RentARoomMessage.HotelSummary hotel : expect(reply, RentARoomMessage.HotelsPage.class).hotels) {
+                free.put(hotel.hotelId, hotel.availableRooms);
+            }
+            if(free.size() == hotelIds.size()){
+                return free;
+            }
+            if(System.currentTimeMillis() > deadline){
+                fail("Only " + free.size() + " of the " + hotelIds.size() + " hotels answered");
+            }
+            Thread.sleep(500);
+        }
+    }
+
+    private static void waitForMembers(ActorSystem<?> system, int amount) throws InterruptedException {
+        Cluster cluster = Cluster.get(system);
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (StreamSupport.stream(cluster.state().getMembers().spliterator(), false)
+            .filter(member -> member.status() == MemberStatus.up()).count() < amount) {
+            if(System.currentTimeMillis() > deadline){
+                throw new IllegalStateException("Cluster did not reach " + amount + " members");
+            }
+            Thread.sleep(200);
+        }
+    }
+
+    private static RentARoomMessage ask(ActorSystem<RentARoomMessage> system,
+                                        Function<ActorRef<RentARoomMessage>, RentARoomMessage> message) {
+        return AskPattern.ask(system, message, TIMEOUT, system.scheduler()).toCompletableFuture().join();
+    }
+
+    private static <T> T expect(RentARoomMessage reply, Class<T> expected) {
+        if(!expected.isInstance(reply)){
+            fail("Expected " + expected.getSimpleName() + " but got " + (reply instanceof RentARoomMessage.Response ?
+                ((RentARoomMessage.Response) reply).status : reply));
+        }
+        return expected.cast(reply);
+    }
+}
@@ -0,0 +1,212 @@
+package nl.saxion.concurrency.domain;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * The calendar of a hotel. 65 rooms use two words per night, of which the last one holds only room 64.
+ */
+public class HotelTest {
+    private static final int ROOMS = 65;
+
+    private LocalDate today;
+    private Hotel hotel;
+
+    @BeforeEach
+    void createHotel() {
+        today = LocalDate.now();
+        hotel = new Hotel("hotel", "Test hotel", ROOMS);
+    }
+
+    @Test
+    void everyRoomIsFreeInANewHotel() throws ReservationException {
+        assertEquals(ROOMS, hotel.getAvailableRoomCount());
+        assertEquals(ROOMS, hotel.getAvailableRoomCount(today, today.plusDays(Hotel.HORIZON_NIGHTS)));
+        assertCountsMatchCalendar(hotel);
+    }
+
+    @Test
+    void allRoomsCanBeReservedIncludingTheLastWord() throws ReservationException {
+        int[] rooms = hotel.reserveRooms(ROOMS, today, today.plusDays(1));
+        Arrays.sort(rooms);
+        assertEquals(0, rooms[0]);
+        assertEquals(ROOMS - 1, rooms[ROOMS - 1]);
+        assertEquals(0, hotel.getAvailableRoomCount());
+        assertThrows(ReservationException.class, () -> hotel.reserveRooms(1, today, today.plusDays(1)));
+        assertCountsMatchCalendar(hotel);
+    }
+
+    @Test
+    void roomsAroundTheWordBoundary() throws ReservationException {
+        hotel.reserveRooms(new int[]{63, 64}, today, today.plusDays(1));
+        assertEquals(ROOMS - 2, hotel.getAvailableRoomCount());
+        assertThrows(ReservationException.class, () -> hotel.reserveRooms(new int[]{63}, today, today.plusDays(1)));
+        assertThrows(ReservationException.class, () -> hotel.reserveRooms(new int[]{64}, today, today.plusDays(1)));
+        assertThrows(ReservationException.class, () -> hotel.reserveRooms(new int[]{65}, today, today.plusDays(1)));
+
+        //the rooms before the boundary are picked first
+        assertArrayEquals(new int[]{0, 1}, hotel.findAvailableRooms(2, today, today.plusDays(1)));
+        assertCountsMatchCalendar(hotel);
+    }
+
+    @Test
+    void aStayOfSeveralNightsNeedsTheSameRoomEveryNight() throws ReservationException {
+        //room 0 is taken on the second night, room 1 on the third night
+        hotel.reserveRooms(new int[]{0}, today.plusDays(1), today.plusDays(2));
+        hotel.reserveRooms(new int[]{1}, today.plusDays(2), today.plusDays(3));
+
+        assertEquals(ROOMS - 1, hotel.getAvailableRoomCount(today, today.plusDays(3)));
+        assertArrayEquals(new int[]{2, 3}, hotel.findAvailableRooms(2, today, today.plusDays(3)));
+        assertArrayEquals(new int[]{1, 2}, hotel.findAvailableRooms(2, today, today.plusDays(2)));
+        assertEquals(ROOMS, hotel.getAvailableRoomCount());
+        assertCountsMatchCalendar(hotel);
+    }
+
+    @Test
+    void excludedRoomsAreSkipped() throws ReservationException {
+        long[] excluded = hotel.newRoomMask();
+        Hotel.addRooms(excluded, new int[]{0, 2, 64});
+        assertArrayEquals(new int[]{1, 3}, hotel.findAvailableRooms(2, today, today.plusDays(2), excluded));
+        assertThrows(ReservationException.class, () -> hotel.findAvailableRooms(ROOMS - 2, today, today.plusDays(1), excluded));
+        assertEquals(ROOMS, hotel.getAvailableRoomCount());
+    }
+
+    @Test
+    void aReservationIsPendingUntilItIsConfirmed() throws ReservationException {
+        int[] rooms = hotel.reserveRooms(3, today, today.plusDays(2));
+        assertEquals(ROOMS - 3, hotel.getAvailableRoomCount(today, today.plusDays(2)));
+        assertThat(hotel.toString(), containsString("Room: 0 (PendingReservation)"));
+
+        hotel.confirmReservation(rooms, today, today.plusDays(2));
+        assertThat(hotel.toString(), containsString("Room: 0 (Reserved)"));
+        assertEquals(ROOMS - 3, hotel.getAvailableRoomCount());
+
+        //a confirmed reservation can not be confirmed or cancelled again
+        assertThrows(ReservationException.class, () -> hotel.confirmReservation(rooms, today, today.plusDays(2)));
+        assertThrows(ReservationException.class, () -> hotel.cancelReservation(rooms, today, today.plusDays(2)));
+        assertCountsMatchCalendar(hotel);
+    }
+
+    @Test
+    void aCancelledReservationFreesTheRooms() throws ReservationException {
+        int[] rooms = hotel.reserveRooms(3, today, today.plusDays(2));
+        hotel.cancelReservation(rooms, today, today.plusDays(2));
+        assertEquals(ROOMS, hotel.getAvailableRoomCount(today, today.plusDays(2)));
+        assertThat(hotel.toString(), containsString("Room: 0 (Available)"));
+
+        assertThrows(ReservationException.class, () -> hotel.cancelReservation(rooms, today, today.plusDays(2)));
+        assertThrows(ReservationException.class, () -> hotel.confirmReservation(rooms, today, today.plusDays(2)));
+        assertCountsMatchCalendar(hotel);
+    }
+
+    @Test
+    void aRoomCanOnlyBeGivenOnce() throws ReservationException {
+        assertThrows(ReservationException.class, () -> hotel.reserveRooms(new int[]{5, 5}, today, today.plusDays(1)));
+        assertEquals(ROOMS, hotel.getAvailableRoomCount());
+
+        hotel.reserveRooms(new int[]{5, 64}, today, today.plusDays(1));
+        assertThrows(ReservationException.class, () -> hotel.cancelReservation(new int[]{64, 5, 64}, today, today.plusDays(1)));
+        assertThrows(ReservationException.class, () -> hotel.confirmReservation(new int[]{5, 5}, today, today.plusDays(1)));
+        assertEquals(ROOMS - 2, hotel.getAvailableRoomCount());
+        assertCountsMatchCalendar(hotel);
+    }
+
+    @Test
+    void aFailedReservationChangesNothing() throws ReservationException {
+        hotel.reserveRooms(new int[]{10}, today.plusDays(1), today.plusDays(2));
+        assertThrows(ReservationException.class, () -> hotel.reserveRooms(new int[]{9, 10}, today, today.plusDays(2)));
+        assertEquals(ROOMS, hotel.getAvailableRoomCount());
+        assertEquals(ROOMS - 1, hotel.getAvailableRoomCount(today, today.plusDays(2)));
+        assertCountsMatchCalendar(hotel);
+    }
+
+    @Test
+    void staysOutsideTheHorizonAreRejected() {
+        assertThrows(ReservationException.class, () -> hotel.reserveRooms(1, today.minusDays(1), today.plusDays(1)));
+        assertThrows(ReservationException.class, () -> hotel.reserveRooms(1, today, today.plusDays(Hotel.HORIZON_NIGHTS + 1)));
+        assertThrows(ReservationException.class, () -> hotel.reserveRooms(1, today.plusDays(1), today.plusDays(1)));
+        assertThrows(ReservationException.class, () -> hotel.reserveRooms(0, today, today.plusDays(1)));
+    }
+
+    @Test
+    void theCalendarMovesWithTheDate() throws ReservationException {
+        //a hotel of which the whole calendar was booked, stored long ago
+        Hotel old = fullyBooked(today.minusDays(400));
+        assertEquals(ROOMS, old.getAvailableRoomCount());
+        assertEquals(ROOMS, old.getAvailableRoomCount(today, today.plusDays(Hotel.HORIZON_NIGHTS)));
+        assertEquals(today, old.getFirstNight());
+        old.reserveRooms(new int[]{0, 64}, today.plusDays(Hotel.HORIZON_NIGHTS - 1), today.plusDays(Hotel.HORIZON_NIGHTS));
+        assertCountsMatchCalendar(old);
+
+        //stored 100 days ago: the nights up to the old horizon are still booked, the new nights are free
+        Hotel recent = fullyBooked(today.minusDays(100));
+        LocalDate oldHorizon = today.minusDays(100).plusDays(Hotel.HORIZON_NIGHTS);
+        assertEquals(0, recent.getAvailableRoomCount());
+        assertEquals(0, recent.getAvailableRoomCount(oldHorizon.minusDays(1), oldHorizon));
+        assertEquals(ROOMS, recent.getAvailableRoomCount(oldHorizon, today.plusDays(Hotel.HORIZON_NIGHTS)));
+        assertCountsMatchCalendar(recent);
+    }
+
+    @Test
+    void theNightsThatPassedAreSkipped() throws ReservationException {
+        //a reservation that started before the first night, as when a journal is replayed
+        Hotel hotel = new Hotel("hotel", "Test hotel", ROOMS, today);
+        hotel.reserveRooms(new int[]{7}, today.minusDays(3), today.plusDays(1));
+        hotel.reserveRooms(new int[]{8}, today.minusDays(3), today.minusDays(1));
+        assertEquals(ROOMS - 1, hotel.getAvailableRoomCount());
+        hotel.cancelReservation(new int[]{7}, today.minusDays(3), today.plusDays(1));
+        assertEquals(ROOMS, hotel.getAvailableRoomCount());
+        assertCountsMatchCalendar(hotel);
+    }
+
+    @Test
+    void aStoredCalendarIsRestored() throws ReservationException {
+        int[] confirmed = hotel.reserveRooms(2, today, today.plusDays(3));
+        hotel.confirmReservation(confirmed, today, today.plusDays(3));
+        int[] pending = {64};
+        hotel.reserveRooms(pending, today.plusDays(1), today.plusDays(2));
+
+        Hotel restored = new Hotel(hotel.id, hotel.name, ROOMS, hotel.getFirstNight(), hotel.getTakenCalendar(),
+            hotel.getPendingCalendar());
+        assertArrayEquals(hotel.getTakenCalendar(), restored.getTakenCalendar());
+        assertArrayEquals(hotel.getPendingCalendar(), restored.getPendingCalendar());
+        assertEquals(hotel.toString(), restored.toString());
+        assertCountsMatchCalendar(restored);
+
+        //the pending reservation can still be confirmed, the confirmed one not
+        restored.confirmReservation(pending, today.plusDays(1), today.plusDays(2));
+        assertThrows(ReservationException.class, () -> restored.cancelReservation(confirmed, today, today.plusDays(3)));
+    }
+
+    private static Hotel fullyBooked(LocalDate firstNight) {
+        long[] taken = new long[Hotel.HORIZON_NIGHTS * ((ROOMS + 63) / 64)];
+        Arrays.fill(taken, -1L);
+        return new Hotel("hotel", "Test hotel", ROOMS, firstNight, taken, new long[taken.length]);
+    }
+
+    /**
+     * The amount of free rooms of every night has to match the rooms that are taken in the calendar.
+     */
+    private static void assertCountsMatchCalendar(Hotel hotel) throws ReservationException {
+        long[] taken = hotel.getTakenCalendar();
+        int wordsPerNight = taken.length / Hotel.HORIZON_NIGHTS;
+        for (int night = 0; night < Hotel.HORIZON_NIGHTS; night++) {
+            int takenRooms = 0;
+            for (int word = 0; word < wordsPerNight; word++) {
+                takenRooms += Long.bitCount(taken[night * wordsPerNight + word]);
+            }
+            LocalDate date = hotel.getFirstNight().plusDays(night);
+            assertEquals(hotel.getAmountOfRooms() - takenRooms, hotel.getAvailableRoomCount(date, date.plusDays(1)),
+                "free rooms on " + date);
+        }
+    }
+}